@@ -21,13 +21,15 @@
 
 package edu.uci.ics.luci.utility.webserver;
 
-import java.net.InetAddress;
+import java.io.File;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
@@ -37,6 +39,23 @@ import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.Globals;
 
+/**
+ * Decides which sources may make requests, from a list of regular expressions and CIDR ranges
+ * in a properties file that is reloaded once it expires.
+ * 
+ * The list is compiled into an {@link AccessList} when it is loaded and decisions are cached in it,
+ * so checking a source takes no locks.  Reverse lookups are done by a {@link ReverseLookupCache}; a request
+ * waits at most {@link #getReverseLookupDeadline()} for one and gets {@link #getReverseLookupDefault()} if it
+ * isn't done by then, while the lookup carries on for later requests.  Decisions that depend on a reverse lookup
+ * aren't cached in the list, so they last only as long as the lookup cache's TTLs.
+ * 
+ * Once {@link #startReloading(long)} has been called the list is reloaded in the background when its file
+ * changes or it expires.  A new list is only swapped in after it has passed the bad guy sanity check, so a
+ * broken file leaves the previous list in place.  Without a background reloader an expired list is reloaded
+ * by the first request that doesn't match it.
+ * 
+ * Sources that are allowed are also held to the {@link RateLimits} from {@link #getRateLimits()}.
+ */
 public class AccessControl {
 	protected final String defaultFilenameTest1 = "testSupport/access_control_list_for_testing.properties";
 	protected final String defaultFilenameTest2 = "testSupport/access_control_list.properties";
@@ -69,11 +88,26 @@ public class AccessControl {
 	protected String defaultFilename = null;
 
 	protected Configuration config;
-	protected long lastLoad;
+	protected volatile long lastLoad;
 	protected List<String> allowedConnections;
-	protected long expirationTime;
+	protected volatile long expirationTime;
 	protected List<String> badGuyTest = new ArrayList<String>();
 	
+	/* Compiled from allowedConnections, null until it has been loaded */
+	private volatile AccessList accessList = null;
+	private int decisionCacheSize = AccessList.DEFAULT_CACHE_SIZE;
+	
+	private volatile ReverseLookupCache reverseLookups = null;
+	private volatile long reverseLookupDeadline = 1000;
+	private volatile boolean reverseLookupDefault = false;
+	
+	private final RateLimits rateLimits = new RateLimits();
+	
+	private volatile ScheduledThreadPoolExecutor reloader = null;
+	/* The file the current list came from, if it came from one, and when it was modified */
+	private volatile File loadedFile = null;
+	private volatile long loadedFileModified = 0;
+	
 	protected long getExpirationTime() {
 		return expirationTime;
 	}
@@ -86,10 +120,90 @@ public class AccessControl {
 		return allowedConnections;
 	}
 
+	/**
+	 * @param allowedConnections regular expressions and CIDR ranges, it is copied and compiled.  null means it should be loaded again.
+	 */
 	protected synchronized void setAllowedConnections(List<String> allowedConnections) {
+		this.accessList = (allowedConnections == null) ? null : new AccessList(allowedConnections, decisionCacheSize);
 		this.allowedConnections = allowedConnections;
 	}
 	
+	/**
+	 * @return the compiled list currently being checked against, null if it hasn't been loaded
+	 */
+	public AccessList getAccessList() {
+		return accessList;
+	}
+	
+	public int getDecisionCacheSize() {
+		return decisionCacheSize;
+	}
+
+	/**
+	 * @param decisionCacheSize how many decisions to remember, takes effect when the list is next loaded
+	 */
+	public synchronized void setDecisionCacheSize(int decisionCacheSize) {
+		if(decisionCacheSize < 1){
+			throw new IllegalArgumentException("decisionCacheSize must be at least 1: "+decisionCacheSize);
+		}
+		this.decisionCacheSize = decisionCacheSize;
+	}
+	
+	/**
+	 * @return the request rates and connection counts allowed sources are held to
+	 */
+	public RateLimits getRateLimits() {
+		return rateLimits;
+	}
+	
+	/**
+	 * @return where host names of sources come from, created the first time one is needed
+	 */
+	public ReverseLookupCache getReverseLookups() {
+		ReverseLookupCache r = reverseLookups;
+		if(r == null){
+			synchronized(this){
+				if(reverseLookups == null){
+					reverseLookups = new ReverseLookupCache();
+				}
+				r = reverseLookups;
+			}
+		}
+		return r;
+	}
+
+	public void setReverseLookups(ReverseLookupCache reverseLookups) {
+		if(reverseLookups == null){
+			throw new IllegalArgumentException("reverseLookups can't be null");
+		}
+		this.reverseLookups = reverseLookups;
+	}
+
+	/**
+	 * @return milliseconds a request will wait for a reverse lookup that isn't already known
+	 */
+	public long getReverseLookupDeadline() {
+		return reverseLookupDeadline;
+	}
+
+	public void setReverseLookupDeadline(long reverseLookupDeadline) {
+		if(reverseLookupDeadline < 0){
+			throw new IllegalArgumentException("reverseLookupDeadline can't be negative: "+reverseLookupDeadline);
+		}
+		this.reverseLookupDeadline = reverseLookupDeadline;
+	}
+
+	/**
+	 * @return the verdict for a source that didn't match and whose reverse lookup didn't finish in time
+	 */
+	public boolean getReverseLookupDefault() {
+		return reverseLookupDefault;
+	}
+
+	public void setReverseLookupDefault(boolean reverseLookupDefault) {
+		this.reverseLookupDefault = reverseLookupDefault;
+	}
+	
 	/**
 	 * 
 	 * @return A list of bad guys IP addresses as regex's that should never be allowed.  
@@ -131,33 +245,164 @@ public class AccessControl {
 		this.config = config;
 	}
 
-	protected synchronized long getLastLoad() {
+	protected long getLastLoad() {
 		return lastLoad;
 	}
 
-	protected synchronized void setLastLoad(long lastLoad) {
+	protected void setLastLoad(long lastLoad) {
 		this.lastLoad = lastLoad;
 	}
 
-	protected synchronized void loadConfiguration() throws ConfigurationException{
-		
-		setConfig(new PropertiesConfiguration(defaultFilename));
+	/**
+	 * Read, compile and sanity check the list in {@link #getDefaultFilename()}, then swap it in.  The sanity
+	 * check waits on the resolver, so the lock is only taken to swap.
+	 * @throws ConfigurationException if the file can't be read, the current list is kept
+	 * @throws RuntimeException if the new list lets a bad guy through or doesn't compile, the current list is kept
+	 */
+	protected void loadConfiguration() throws ConfigurationException{
+		String filename;
+		int cacheSize;
+		List<String> badGuys;
+		synchronized(this){
+			filename = defaultFilename;
+			cacheSize = decisionCacheSize;
+			badGuys = badGuyTest;
+		}
 		
-		allowedConnections = Arrays.asList(getConfig().getStringArray("allowed_clients"));
-		lastLoad = System.currentTimeMillis();
+		PropertiesConfiguration newConfig = new PropertiesConfiguration(filename);
+		List<String> entries = Arrays.asList(newConfig.getStringArray("allowed_clients"));
+		AccessList candidate = new AccessList(entries, cacheSize);
 		
-		/*Sanity check on allowedConnections*/
-		for(int i = 0; i < badGuyTest.size(); i++){
-			if(allowSource(badGuyTest.get(i),true,false)){
-				allowedConnections = null;
-				lastLoad = 0;
-				getLog().error("Something is wrong with the access control list.  It is letting a test case through:"+badGuyTest.get(i));
+		/*Sanity check on the new list before any request sees it*/
+		for(int i = 0; i < badGuys.size(); i++){
+			if(letsIn(candidate, badGuys.get(i))){
+				getLog().error("Something is wrong with the access control list.  It is letting a test case through:"+badGuys.get(i));
 				throw new RuntimeException("Access Control List Sanity Check Failed");
 			}
 		}
+		
+		synchronized(this){
+			setConfig(newConfig);
+			this.allowedConnections = entries;
+			this.accessList = candidate;
+			lastLoad = System.currentTimeMillis();
+			File file = newConfig.getFile();
+			if((file != null) && file.isFile()){
+				loadedFile = file;
+				loadedFileModified = file.lastModified();
+			}
+			else{
+				loadedFile = null;
+				loadedFileModified = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Whether list lets source in, for the sanity check.  Unlike a request, it waits for source's names to be
+	 * resolved however long that takes instead of falling back on {@link #getReverseLookupDefault()}, so a slow
+	 * resolver can't pass a list that lets a bad guy in by name.
+	 */
+	private boolean letsIn(AccessList list, String source){
+		if(list.matches(source, false)){
+			return true;
+		}
+		List<String> hostnames;
+		try{
+			hostnames = ReverseLookupCache.resolve(source.substring(source.lastIndexOf('/') + 1));
+		}
+		catch(UnknownHostException e){
+			hostnames = Collections.emptyList();
+		}
+		return matchesAny(list, source, hostnames, false);
 	}
 	
-	protected synchronized boolean cacheExpired(){
+	/**
+	 * Load the list again, keeping the current one if that doesn't work
+	 * @return true if a new list was swapped in
+	 */
+	public boolean reload(){
+		try{
+			loadConfiguration();
+			getLog().info("Reloaded access control list from "+defaultFilename);
+			return true;
+		}catch(ConfigurationException e){
+			getLog().error("Can't reload property file:"+defaultFilename+", keeping the current access control list\n"+e.toString());
+		}catch(RuntimeException e){
+			getLog().error("Can't reload property file:"+defaultFilename+", keeping the current access control list\n"+e.toString());
+		}
+		return false;
+	}
+	
+	/**
+	 * Reload the list if it hasn't been loaded, its file has been modified or it has expired.  A reload
+	 * that fails isn't tried again until the file changes again or the list expires again.
+	 * @return true if a new list was swapped in
+	 */
+	public boolean reloadIfChanged(){
+		long modified;
+		synchronized(this){
+			File file = loadedFile;
+			modified = (file == null) ? 0 : file.lastModified();
+			boolean changed = (accessList == null) || cacheExpired() || ((file != null) && (modified != loadedFileModified));
+			if(!changed){
+				return false;
+			}
+		}
+		if(reload()){
+			return true;
+		}
+		synchronized(this){
+			lastLoad = System.currentTimeMillis();
+			loadedFileModified = modified;
+		}
+		return false;
+	}
+	
+	/**
+	 * Check for a new list every period milliseconds on a background thread, instead of on request threads.
+	 * Replaces a reloader that is already running.
+	 * @param period milliseconds between checks
+	 */
+	public synchronized void startReloading(long period){
+		if(period <= 0){
+			throw new IllegalArgumentException("period must be positive: "+period);
+		}
+		stopReloading();
+		reloader = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "AccessControl-Reloader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		reloader.scheduleWithFixedDelay(new Runnable(){
+			@Override
+			public void run() {
+				try{
+					reloadIfChanged();
+				}
+				catch(RuntimeException e){
+					/* An exception would stop the schedule */
+					getLog().error("Problem reloading the access control list",e);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+	
+	public synchronized void stopReloading(){
+		if(reloader != null){
+			reloader.shutdownNow();
+			reloader = null;
+		}
+	}
+	
+	public boolean isReloading(){
+		return reloader != null;
+	}
+	
+	protected boolean cacheExpired(){
 		if((System.currentTimeMillis() - lastLoad) > expirationTime){
 			return(true);
 		}
@@ -165,6 +410,34 @@ public class AccessControl {
 			return(false);
 		}
 	}
+	
+	/**
+	 * @return the compiled list, loading it first if necessary, null if it couldn't be loaded
+	 */
+	private AccessList loadedAccessList(){
+		AccessList list = accessList;
+		if(list != null){
+			return list;
+		}
+		synchronized(this){
+			if(accessList == null){
+				try{
+					loadConfiguration();
+				}catch(ConfigurationException e){
+					getLog().error("Can't load property file:"+defaultFilename+" from working directory:"+System.getProperty("user.dir")+"\n"+e.toString());
+				}catch(RuntimeException e){
+					getLog().error("Can't load property file:"+defaultFilename+" from working directory:"+System.getProperty("user.dir")+"\n"+e.toString());
+				}catch(Throwable e){
+					getLog().error("Can't load property file:"+defaultFilename+" from working directory:"+System.getProperty("user.dir")+"\n"+e.toString());
+				}
+			}
+			list = accessList;
+		}
+		if(list == null){
+			getLog().error("Couldn't load allowedConnections");
+		}
+		return list;
+	}
 
 	/**
 	 * 
@@ -172,78 +445,89 @@ public class AccessControl {
 	 * @param doReverseLookups attempts to do a reverse lookup on source
 	 * @return
 	 */
-	public synchronized boolean allowSource(String source, boolean doReverseLookups,boolean caseSensitive) {
+	public boolean allowSource(String source, boolean doReverseLookups,boolean caseSensitive) {
+		return allowSource(source, doReverseLookups, caseSensitive, getReverseLookupDeadline());
+	}
+	
+	/**
+	 * Like {@link #allowSource(String, boolean, boolean)} but with its own wait for reverse lookups.  A
+	 * thread that every request goes through should pass 0, so that it never waits on the resolver and a
+	 * source whose names aren't known yet gets {@link #getReverseLookupDefault()} until they are.
+	 * @param deadline milliseconds to wait for a reverse lookup that isn't already known
+	 */
+	public boolean allowSource(String source, boolean doReverseLookups,boolean caseSensitive, long deadline) {
 		
 		if(source == null){
 			return false;
 		}
 		
-		try{
-			if(allowedConnections == null){
-				loadConfiguration();
-			}
-		}catch(ConfigurationException e){
-			getLog().error("Can't load property file:"+defaultFilename+" from working directory:"+System.getProperty("user.dir")+"\n"+e.toString());
-			allowedConnections = null;
-		}catch(RuntimeException e){
-			getLog().error("Can't load property file:"+defaultFilename+" from working directory:"+System.getProperty("user.dir")+"\n"+e.toString());
-			allowedConnections = null;
-		}catch(Throwable e){
-			getLog().error("Can't load property file:"+defaultFilename+" from working directory:"+System.getProperty("user.dir")+"\n"+e.toString());
-			allowedConnections = null;
-		}
-		finally{
-			if(allowedConnections == null){
-				getLog().error("Couldn't load allowedConnections");
-				return(false);
-			}
+		AccessList list = loadedAccessList();
+		if(list == null){
+			return false;
 		}
 		
-		/*First check to see if the source matches any of the regular expressions*/
-		for (String s:allowedConnections){
-	        Pattern pattern =  null;
-	        if(caseSensitive){
-	        	pattern =  Pattern.compile(s);
-	        }
-	        else{
-	        	pattern =  Pattern.compile(s,Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-	        }
-	        Matcher matcher =  pattern.matcher(source);
-	
-	        if(matcher.find()){
-	        	getLog().debug("Access request "+source+" matched pattern:"+s);
-	        	return true;
-	        }
+		Boolean allowed = list.getDecision(source, doReverseLookups, caseSensitive);
+		if(allowed == null){
+			allowed = decide(list, source, doReverseLookups, caseSensitive, deadline);
+		}
+		if(allowed){
+			return true;
 		}
 		
-		if(doReverseLookups){
-			try{
-				InetAddress[] addresses = InetAddress.getAllByName(source);
-				for ( int i=0; i<addresses.length; i++ ){
-					String hostname = addresses[i].getHostName();
-					//log.info("Found hostname for source:"+source);
-					//log.info("\t hostname:"+hostname);
-					
-					/*Recursively test hostnames */
-					if(allowSource(hostname,false,caseSensitive)){
-						getLog().debug("Access request "+source+" matched pattern:"+hostname);
-						return true;
-					}
-				}
-			}
-			catch (UnknownHostException e ){
-				getLog().warn("The ip address:"+source+" contacted me and couldn't be resolved");
-				//Unknown Host shouldn't be allowed
+		/*At this point the answer should be false, so reload cache just in case, unless that's done in the background*/
+		if(cacheExpired() && !isReloading()){
+			if(reloadIfChanged() || (accessList != list)){
+				return(allowSource(source,doReverseLookups,caseSensitive,deadline));
 			}
 		}
+		return false;
+	}
+	
+	
+	/**
+	 * Decide, caching what only depends on the list.  Whether source itself matches never changes for a list so
+	 * that is cached for good.  Host names change and lookups fail, so a decision that depends on them isn't
+	 * cached here: the {@link ReverseLookupCache} keeps the names for as long as its TTLs say, and doesn't keep
+	 * a lookup it had to turn away at all.
+	 * @return the decision, or the default verdict while a reverse lookup is still running
+	 */
+	private boolean decide(final AccessList list, final String source, boolean doReverseLookups, final boolean caseSensitive, long deadline){
 		
-		/*At this point the answer should be false, so reload cache just in case*/
-		if(cacheExpired()){
-			allowedConnections = null;
-			return(allowSource(source,doReverseLookups,caseSensitive));
+		/*First check to see if the source matches any of the regular expressions*/
+		Boolean matched = list.getDecision(source, false, caseSensitive);
+		if(matched == null){
+			matched = list.matches(source, caseSensitive);
+			list.putDecision(source, false, caseSensitive, matched);
 		}
-		else{
+		if(matched){
+			getLog().debug("Access request "+source+" matched the access list");
+			if(doReverseLookups){
+				list.putDecision(source, true, caseSensitive, true);
+			}
+			return true;
+		}
+		
+		if(!doReverseLookups){
 			return false;
 		}
+		
+		List<String> hostnames = getReverseLookups().lookup(source, deadline);
+		if(hostnames == null){
+			/* It carries on, and the names are used by the next request once they are in */
+			getLog().debug("Reverse lookup of "+source+" didn't finish in time");
+			return getReverseLookupDefault();
+		}
+		return matchesAny(list, source, hostnames, caseSensitive);
+	}
+	
+	
+	private static boolean matchesAny(AccessList list, String source, List<String> hostnames, boolean caseSensitive){
+		for(String hostname:hostnames){
+			if(list.matches(hostname, caseSensitive)){
+				getLog().debug("Access request "+source+" matched the access list as:"+hostname);
+				return true;
+			}
+		}
+		return false;
 	}
 }
@@ -0,0 +1,157 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * An immutable, compiled form of an access control list together with a bounded, concurrent cache of
+ * the decisions that have been made with it.
+ * 
+ * Entries that are CIDR ranges, like "10.0.0.0/8", go into a {@link CIDRTrie}.  All the other entries
+ * are regular expressions which are combined into one alternation, compiled once for case sensitive
+ * and once for case insensitive matching.  To change the list build a new one, which also starts a new cache.
+ * @author djp3
+ *
+ */
+public class AccessList {
+	
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+	
+	private final List<String> entries;
+	private final Pattern caseSensitive;
+	private final Pattern caseInsensitive;
+	private final CIDRTrie ranges;
+	/* Indexed by decisionIndex() */
+	private final List<Cache<String, Boolean>> decisions;
+	
+	public AccessList(List<String> entries){
+		this(entries,DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * @param entries regular expressions and CIDR ranges that sources are allowed by
+	 * @param cacheSize the most decisions to remember for each combination of lookup options
+	 * @throws java.util.regex.PatternSyntaxException if an entry is neither a range nor a valid regular expression
+	 */
+	public AccessList(List<String> entries, int cacheSize){
+		if(entries == null){
+			throw new IllegalArgumentException("entries can't be null");
+		}
+		if(cacheSize < 1){
+			throw new IllegalArgumentException("cacheSize must be at least 1: "+cacheSize);
+		}
+		this.entries = Collections.unmodifiableList(new ArrayList<String>(entries));
+		
+		CIDRTrie trie = new CIDRTrie();
+		StringBuilder combined = new StringBuilder();
+		for(String entry:this.entries){
+			if(CIDRTrie.isCIDR(entry)){
+				trie.add(entry);
+			}
+			else{
+				/* Compiled on its own first so a bad entry is reported as itself */
+				Pattern.compile(entry);
+				if(combined.length() > 0){
+					combined.append('|');
+				}
+				combined.append("(?:").append(entry).append(')');
+			}
+		}
+		this.ranges = trie;
+		if(combined.length() == 0){
+			this.caseSensitive = null;
+			this.caseInsensitive = null;
+		}
+		else{
+			this.caseSensitive = Pattern.compile(combined.toString());
+			this.caseInsensitive = Pattern.compile(combined.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+		}
+		
+		List<Cache<String, Boolean>> d = new ArrayList<Cache<String, Boolean>>(4);
+		for(int i = 0; i < 4; i++){
+			Cache<String, Boolean> cache = CacheBuilder.newBuilder()
+					.maximumSize(cacheSize)
+					.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+					.recordStats()
+					.build();
+			d.add(cache);
+		}
+		this.decisions = Collections.unmodifiableList(d);
+	}
+	
+	public List<String> getEntries(){
+		return entries;
+	}
+	
+	/**
+	 * @param source an address or host name, a leading "name/" as in InetAddress.toString() is ignored by the ranges
+	 * @param caseSensitive
+	 * @return true if a regular expression is found in source or source is an address in one of the ranges
+	 */
+	public boolean matches(String source, boolean caseSensitive){
+		if(source == null){
+			return false;
+		}
+		Pattern pattern = caseSensitive ? this.caseSensitive : this.caseInsensitive;
+		if((pattern != null) && pattern.matcher(source).find()){
+			return true;
+		}
+		if(ranges.size() > 0){
+			return ranges.contains(source.substring(source.lastIndexOf('/') + 1));
+		}
+		return false;
+	}
+	
+	/**
+	 * @return a decision made earlier for the same source and options, null if there isn't one
+	 */
+	public Boolean getDecision(String source, boolean doReverseLookups, boolean caseSensitive){
+		return decisions.get(decisionIndex(doReverseLookups, caseSensitive)).getIfPresent(source);
+	}
+	
+	public void putDecision(String source, boolean doReverseLookups, boolean caseSensitive, boolean allowed){
+		decisions.get(decisionIndex(doReverseLookups, caseSensitive)).put(source, allowed);
+	}
+	
+	/**
+	 * @return the hit and miss counts of the decision caches since this list was built
+	 */
+	public CacheStats getCacheStats(){
+		CacheStats stats = decisions.get(0).stats();
+		for(int i = 1; i < decisions.size(); i++){
+			stats = stats.plus(decisions.get(i).stats());
+		}
+		return stats;
+	}
+	
+	private static int decisionIndex(boolean doReverseLookups, boolean caseSensitive){
+		return (doReverseLookups ? 2 : 0) + (caseSensitive ? 1 : 0);
+	}
+}
@@ -0,0 +1,140 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineQueuer;
+import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperQueuer;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * Decides whether the WebServer has room for another request.  When it doesn't the request is
+ * answered with a 503 and a Retry-After header straight from its Output, without ever being handed
+ * to an APIEvent.  The decision is cheap so it is made before each hand off.
+ * @author djp3
+ *
+ */
+public class AdmissionControl {
+	
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(AdmissionControl.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	private final boolean enabled;
+	private final ExecutorService executor;
+	private final int retryAfter;
+	private volatile PipelineQueuer pipeline = null;
+	private volatile EventWrapperQueuer eventQueue = null;
+	
+	private final AtomicLong rejected = new AtomicLong(0);
+	
+	/**
+	 * @param enabled if false every request is admitted
+	 * @param executor if this is a ThreadPoolExecutor requests are only admitted while its queue has room
+	 * @param retryAfter seconds the client is told to wait before trying again
+	 */
+	public AdmissionControl(boolean enabled, ExecutorService executor, int retryAfter){
+		if(retryAfter < 0){
+			throw new IllegalArgumentException("retryAfter can't be negative: "+retryAfter);
+		}
+		this.enabled = enabled;
+		this.executor = executor;
+		this.retryAfter = retryAfter;
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+	
+	/**
+	 * @param pipeline when set, requests are also only admitted while its ring buffer has room
+	 */
+	public void setPipeline(PipelineQueuer pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * @param eventQueue when set, requests are also only admitted while its ring buffer has room, publishing
+	 * to a full ring would wait
+	 */
+	public void setEventQueue(EventWrapperQueuer eventQueue) {
+		this.eventQueue = eventQueue;
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+	
+
+	/**
+	 * @return true if there is room for another request
+	 */
+	public boolean admit(){
+		if(enabled){
+			if(executor instanceof ThreadPoolExecutor){
+				if(((ThreadPoolExecutor) executor).getQueue().remainingCapacity() == 0){
+					rejected.incrementAndGet();
+					return false;
+				}
+			}
+			PipelineQueuer p = pipeline;
+			if((p != null) && (p.getRemainingCapacity() == 0)){
+				rejected.incrementAndGet();
+				return false;
+			}
+			EventWrapperQueuer q = eventQueue;
+			if((q != null) && (q.getRemainingCapacity() == 0)){
+				rejected.incrementAndGet();
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Answer a request that was not admitted
+	 * @param output where the 503 goes
+	 */
+	public void reject(Output output){
+		getLog().warn("Server is too busy, shedding a request");
+		if(output != null){
+			output.send_ServiceUnavailable(getRetryAfter());
+		}
+	}
+}
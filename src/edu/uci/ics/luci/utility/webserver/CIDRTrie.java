@@ -0,0 +1,148 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.net.InetAddress;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * A binary prefix trie of IPv4 and IPv6 address ranges written like "10.0.0.0/8" or "fe80::/10".
+ * Looking up an address costs at most one step per bit of the address however many ranges there are.
+ * 
+ * Ranges are added while the trie is being built, it is not safe to add to a trie that is being read.
+ * @author djp3
+ *
+ */
+public class CIDRTrie {
+	
+	private static final class Node{
+		private Node zero = null;
+		private Node one = null;
+		private boolean terminal = false;
+	}
+	
+	private final Node v4 = new Node();
+	private final Node v6 = new Node();
+	private int size = 0;
+	
+	public CIDRTrie(){
+	}
+	
+	/**
+	 * @param s
+	 * @return true if s is an address, followed by a slash and a prefix length that fits it
+	 */
+	public static boolean isCIDR(String s){
+		if(s == null){
+			return false;
+		}
+		int slash = s.indexOf('/');
+		if((slash <= 0) || (slash == s.length() - 1) || (s.length() - slash > 4)){
+			return false;
+		}
+		String address = s.substring(0, slash);
+		if(!InetAddresses.isInetAddress(address)){
+			return false;
+		}
+		for(int i = slash + 1; i < s.length(); i++){
+			if(!Character.isDigit(s.charAt(i))){
+				return false;
+			}
+		}
+		int bits = Integer.parseInt(s.substring(slash + 1));
+		return bits <= (InetAddresses.forString(address).getAddress().length * 8);
+	}
+	
+	/**
+	 * @param cidr a range like "192.168.0.0/16", the bits past the prefix length are ignored
+	 */
+	public void add(String cidr){
+		if(!isCIDR(cidr)){
+			throw new IllegalArgumentException("Not a CIDR range: "+cidr);
+		}
+		int slash = cidr.indexOf('/');
+		byte[] address = InetAddresses.forString(cidr.substring(0, slash)).getAddress();
+		int bits = Integer.parseInt(cidr.substring(slash + 1));
+		
+		Node node = (address.length == 4) ? v4 : v6;
+		for(int i = 0; (i < bits) && !node.terminal; i++){
+			if(bit(address, i)){
+				if(node.one == null){
+					node.one = new Node();
+				}
+				node = node.one;
+			}
+			else{
+				if(node.zero == null){
+					node.zero = new Node();
+				}
+				node = node.zero;
+			}
+		}
+		if(!node.terminal){
+			/* Anything below is covered by this range now */
+			node.terminal = true;
+			node.zero = null;
+			node.one = null;
+			size++;
+		}
+	}
+	
+	/**
+	 * @param address a literal address, no name lookups are done
+	 * @return true if it is in one of the ranges, false if it isn't or isn't an address
+	 */
+	public boolean contains(String address){
+		if((address == null) || !InetAddresses.isInetAddress(address)){
+			return false;
+		}
+		return contains(InetAddresses.forString(address));
+	}
+	
+	public boolean contains(InetAddress address){
+		byte[] b = address.getAddress();
+		Node node = (b.length == 4) ? v4 : v6;
+		int bits = b.length * 8;
+		for(int i = 0; i < bits; i++){
+			if(node.terminal){
+				return true;
+			}
+			node = bit(b, i) ? node.one : node.zero;
+			if(node == null){
+				return false;
+			}
+		}
+		return node.terminal;
+	}
+	
+	/**
+	 * @return how many ranges were added that weren't already covered by an earlier one
+	 */
+	public int size(){
+		return size;
+	}
+	
+	private static boolean bit(byte[] b, int i){
+		return ((b[i >>> 3] >>> (7 - (i & 7))) & 1) != 0;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Limits how many connections each source may have open at once.
+ * 
+ * The sockets themselves are remembered rather than a count, and ones that have since been closed are
+ * dropped whenever their source is looked at.  However a connection ends it stops counting, without
+ * whoever closes it having to know about the quota.
+ * @author djp3
+ *
+ */
+public class ConnectionQuota {
+	
+	/* How many openings between sweeps for sources that have gone away */
+	private static final int SWEEP_INTERVAL = 4096;
+	
+	private volatile int maxPerSource = 0;
+	private final ConcurrentHashMap<String, List<Socket>> open = new ConcurrentHashMap<String, List<Socket>>();
+	private final AtomicInteger untilSweep = new AtomicInteger(SWEEP_INTERVAL);
+	
+	public ConnectionQuota(){
+	}
+	
+	public ConnectionQuota(int maxPerSource){
+		setMaxPerSource(maxPerSource);
+	}
+	
+	/**
+	 * @return the most connections a source may have open, 0 for no limit
+	 */
+	public int getMaxPerSource() {
+		return maxPerSource;
+	}
+
+	public void setMaxPerSource(int maxPerSource) {
+		if(maxPerSource < 0){
+			throw new IllegalArgumentException("maxPerSource can't be negative: "+maxPerSource);
+		}
+		this.maxPerSource = maxPerSource;
+	}
+	
+	public boolean isEnabled(){
+		return maxPerSource > 0;
+	}
+	
+	/**
+	 * Count a newly accepted connection against its source
+	 * @param source where it came from, as in the requests it will carry
+	 * @param socket the connection, which stops counting once it is closed
+	 * @return false if source already has as many connections open as it may, in which case socket isn't counted
+	 */
+	public boolean tryOpen(String source, final Socket socket){
+		final int max = maxPerSource;
+		if((max <= 0) || (source == null)){
+			return true;
+		}
+		if(untilSweep.decrementAndGet() <= 0){
+			untilSweep.set(SWEEP_INTERVAL);
+			sweep();
+		}
+		final boolean[] opened = new boolean[]{false};
+		open.compute(source, new BiFunction<String, List<Socket>, List<Socket>>(){
+			@Override
+			public List<Socket> apply(String key, List<Socket> sockets) {
+				if(sockets == null){
+					sockets = new ArrayList<Socket>(2);
+				}
+				prune(sockets);
+				if(sockets.size() < max){
+					sockets.add(socket);
+					opened[0] = true;
+				}
+				return sockets;
+			}
+		});
+		return opened[0];
+	}
+	
+	/**
+	 * @param source
+	 * @return how many of source's connections are still open
+	 */
+	public int getOpen(String source){
+		final int[] count = new int[]{0};
+		open.computeIfPresent(source, new BiFunction<String, List<Socket>, List<Socket>>(){
+			@Override
+			public List<Socket> apply(String key, List<Socket> sockets) {
+				prune(sockets);
+				count[0] = sockets.size();
+				return sockets.isEmpty() ? null : sockets;
+			}
+		});
+		return count[0];
+	}
+	
+	/**
+	 * @return how many sources are being tracked
+	 */
+	public int getSources(){
+		return open.size();
+	}
+	
+	/**
+	 * Forget closed connections and the sources that have none left
+	 */
+	public void sweep(){
+		for(String source:open.keySet()){
+			getOpen(source);
+		}
+	}
+	
+	private static void prune(List<Socket> sockets){
+		Iterator<Socket> i = sockets.iterator();
+		while(i.hasNext()){
+			if(i.next().isClosed()){
+				i.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A token bucket for each of any number of keys, like source addresses.  Each bucket holds up to burst
+ * tokens and refills at rate tokens a second, and every request takes one.
+ * 
+ * A bucket is kept as a single long, the time at which it will be full again (the generic cell rate
+ * algorithm), and updated with compare and set so checking a key takes no locks.  The buckets live in a
+ * sharded, bounded map that forgets a key once its bucket would have refilled, which loses nothing since a
+ * new bucket starts out full.
+ * @author djp3
+ *
+ */
+public class RateLimiter {
+	
+	public static final int DEFAULT_MAX_KEYS = 256 * 1024;
+	
+	private final double rate;
+	private final int burst;
+	/* Nanoseconds for one token to come back, and for the whole bucket */
+	private final long interval;
+	private final long capacity;
+	private final ConcurrentMap<String, AtomicLong> buckets;
+	
+	public RateLimiter(double rate, int burst){
+		this(rate,burst,DEFAULT_MAX_KEYS);
+	}
+	
+	/**
+	 * @param rate tokens added to each bucket every second
+	 * @param burst the most tokens a bucket holds, so the most requests that can come at once
+	 * @param maxKeys the most buckets to keep, the least recently used go first
+	 */
+	public RateLimiter(double rate, int burst, int maxKeys){
+		if(!(rate > 0)){
+			throw new IllegalArgumentException("rate must be positive: "+rate);
+		}
+		if(burst < 1){
+			throw new IllegalArgumentException("burst must be at least 1: "+burst);
+		}
+		if(maxKeys < 1){
+			throw new IllegalArgumentException("maxKeys must be at least 1: "+maxKeys);
+		}
+		this.rate = rate;
+		this.burst = burst;
+		this.interval = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+		this.capacity = interval * burst;
+		this.buckets = CacheBuilder.newBuilder()
+				.maximumSize(maxKeys)
+				.expireAfterAccess(capacity, TimeUnit.NANOSECONDS)
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.<String, AtomicLong>build()
+				.asMap();
+	}
+	
+	public double getRate() {
+		return rate;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+	
+	/**
+	 * @param key
+	 * @return true if key's bucket had a token, which has now been taken
+	 */
+	public boolean tryAcquire(String key){
+		long now = System.nanoTime();
+		AtomicLong bucket = buckets.get(key);
+		if(bucket == null){
+			/* Full until now */
+			AtomicLong fresh = new AtomicLong(now);
+			bucket = buckets.putIfAbsent(key, fresh);
+			if(bucket == null){
+				bucket = fresh;
+			}
+		}
+		while(true){
+			long full = bucket.get();
+			long next = Math.max(full, now) + interval;
+			if(next - now > capacity){
+				return false;
+			}
+			if(bucket.compareAndSet(full, next)){
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * @return how many keys have a bucket that isn't full, roughly
+	 */
+	public int size(){
+		return buckets.size();
+	}
+}
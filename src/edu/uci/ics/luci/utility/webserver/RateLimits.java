@@ -0,0 +1,198 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.uci.ics.luci.utility.webserver.event.route.Route;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
+
+/**
+ * The request rates and connection counts that {@link AccessControl} holds sources to, checked before a
+ * request is dispatched so that a client over its limits costs no more than a canned 429.
+ * 
+ * <ul>
+ * <li>Each source has a token bucket, at the rate of the first rule its address matches or else the
+ * rate set with {@link #setSourceLimit(double, int)}.  Rules are regular expressions or CIDR ranges,
+ * just like the entries of an access control list.</li>
+ * <li>Each API command given a limit with {@link #setCommandLimit(String, double, int)} has a separate
+ * bucket for every source.  A request counts against the command it is routed to, so the limit covers
+ * every command line that reaches that command.</li>
+ * <li>{@link #getConnectionQuota()} caps the connections a source has open, enforced by the Inputs.</li>
+ * </ul>
+ * Nothing is limited until it is configured.
+ * @author djp3
+ *
+ */
+public class RateLimits {
+	
+	/** Sources that match entry get their own bucket at rate, instead of the default one */
+	private static final class Rule{
+		private final AccessList entry;
+		private final RateLimiter limiter;
+		
+		private Rule(String entry, RateLimiter limiter){
+			this.entry = new AccessList(Collections.singletonList(entry));
+			this.limiter = limiter;
+		}
+	}
+	
+	private volatile RateLimiter sourceLimiter = null;
+	private final List<Rule> rules = new CopyOnWriteArrayList<Rule>();
+	private final ConcurrentHashMap<String, RateLimiter> commandLimiters = new ConcurrentHashMap<String, RateLimiter>();
+	private final ConnectionQuota connectionQuota = new ConnectionQuota();
+	private volatile int retryAfter = 1;
+	
+	public RateLimits(){
+	}
+	
+	/**
+	 * @param rate requests a second each source may make, 0 for no limit
+	 * @param burst how many requests a source may make at once
+	 */
+	public void setSourceLimit(double rate, int burst){
+		sourceLimiter = (rate > 0) ? new RateLimiter(rate, burst) : null;
+	}
+	
+	/**
+	 * @return the default limit for each source, null if there isn't one
+	 */
+	public RateLimiter getSourceLimiter(){
+		return sourceLimiter;
+	}
+	
+	/**
+	 * Give the sources that match entry a limit of their own, rules are tried in the order they are added
+	 * @param entry a regular expression or a CIDR range
+	 * @param rate requests a second each matching source may make
+	 * @param burst how many requests a matching source may make at once
+	 */
+	public void addRuleLimit(String entry, double rate, int burst){
+		if(entry == null){
+			throw new IllegalArgumentException("entry can't be null");
+		}
+		rules.add(new Rule(entry, new RateLimiter(rate, burst)));
+	}
+	
+	public void clearRuleLimits(){
+		rules.clear();
+	}
+	
+	/**
+	 * @param command the API command to limit, as it is registered in the API Registry, like "/version" or
+	 * "/user/{id}".  Every command line that is routed to it counts, "/version/" and "/user/7" included.
+	 * @param rate requests a second each source may make to it, 0 to remove its limit
+	 * @param burst how many requests a source may make to it at once
+	 */
+	public void setCommandLimit(String command, double rate, int burst){
+		if(command == null){
+			throw new IllegalArgumentException("command can't be null");
+		}
+		if(rate > 0){
+			commandLimiters.put(command, new RateLimiter(rate, burst));
+		}
+		else{
+			commandLimiters.remove(command);
+		}
+	}
+	
+	public ConnectionQuota getConnectionQuota(){
+		return connectionQuota;
+	}
+	
+	/**
+	 * @return seconds a client over its limit is told to wait
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(int retryAfter) {
+		if(retryAfter < 0){
+			throw new IllegalArgumentException("retryAfter can't be negative: "+retryAfter);
+		}
+		this.retryAfter = retryAfter;
+	}
+	
+	/**
+	 * @return true if any request rate is limited
+	 */
+	public boolean isEnabled(){
+		return (sourceLimiter != null) || !rules.isEmpty() || !commandLimiters.isEmpty();
+	}
+	
+	/**
+	 * Take a token for a request from every bucket that applies to it
+	 * @param source where the request came from
+	 * @param commandLine its path, may be null
+	 * @param routes what commandLine is routed with to find its command
+	 * @return false if the request is over a limit and should be turned away
+	 */
+	public boolean tryAcquire(String source, String commandLine, RouteTable routes){
+		String command = null;
+		if((commandLine != null) && !commandLimiters.isEmpty()){
+			if(routes == null){
+				throw new IllegalArgumentException("routes can't be null");
+			}
+			Route route = routes.match(commandLine);
+			command = (route == null) ? null : route.getCommand();
+		}
+		return tryAcquire(source, command);
+	}
+	
+	/**
+	 * Take a token for a request from every bucket that applies to it
+	 * @param source where the request came from
+	 * @param command the API command it was routed to, may be null
+	 * @return false if the request is over a limit and should be turned away
+	 */
+	public boolean tryAcquire(String source, String command){
+		if(source == null){
+			return true;
+		}
+		RateLimiter limiter = sourceLimiter;
+		for(Rule rule:rules){
+			Boolean matched = rule.entry.getDecision(source, false, false);
+			if(matched == null){
+				matched = rule.entry.matches(source, false);
+				rule.entry.putDecision(source, false, false, matched);
+			}
+			if(matched){
+				limiter = rule.limiter;
+				break;
+			}
+		}
+		if((limiter != null) && !limiter.tryAcquire(source)){
+			return false;
+		}
+		if((command != null) && !commandLimiters.isEmpty()){
+			RateLimiter commandLimiter = commandLimiters.get(command);
+			if((commandLimiter != null) && !commandLimiter.tryAcquire(source)){
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,325 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.net.InetAddresses;
+
+/**
+ * Finds the host names of request sources on an executor of its own and remembers them, names that were
+ * found for {@link #getPositiveTTL()} milliseconds and failures for {@link #getNegativeTTL()}.  Concurrent
+ * lookups of the same source share one resolution, so a slow resolver only ever holds up the requests
+ * that are waiting on it.
+ * @author djp3
+ *
+ */
+public class ReverseLookupCache {
+	
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(ReverseLookupCache.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+	public static final long DEFAULT_POSITIVE_TTL = 60 * 60 * 1000; // 1 hour
+	public static final long DEFAULT_NEGATIVE_TTL = 5 * 60 * 1000; // 5 minutes
+	public static final int DEFAULT_THREADS = 4;
+	
+	private static final List<String> NO_NAMES = Collections.emptyList();
+	
+	/** One resolution, which may still be running */
+	private static final class Lookup{
+		private final CompletableFuture<List<String>> names = new CompletableFuture<List<String>>();
+		/* Set once the names are in */
+		private volatile long expires = Long.MAX_VALUE;
+	}
+	
+	private final Executor executor;
+	private final long positiveTTL;
+	private final long negativeTTL;
+	private final ConcurrentMap<String, Lookup> lookups;
+	
+	private final AtomicLong hits = new AtomicLong(0);
+	private final AtomicLong misses = new AtomicLong(0);
+	private final AtomicLong resolved = new AtomicLong(0);
+	private final AtomicLong failed = new AtomicLong(0);
+	private final AtomicLong timeouts = new AtomicLong(0);
+	private final AtomicLong totalNanos = new AtomicLong(0);
+	
+	public ReverseLookupCache(){
+		this(newDefaultExecutor(), DEFAULT_CACHE_SIZE, DEFAULT_POSITIVE_TTL, DEFAULT_NEGATIVE_TTL);
+	}
+	
+	/**
+	 * @param executor where lookups run, they block for as long as the resolver takes
+	 * @param cacheSize the most sources to remember
+	 * @param positiveTTL milliseconds to remember the names of a source
+	 * @param negativeTTL milliseconds to remember that a source had no name
+	 */
+	public ReverseLookupCache(Executor executor, int cacheSize, long positiveTTL, long negativeTTL){
+		if(executor == null){
+			throw new IllegalArgumentException("executor can't be null");
+		}
+		if(cacheSize < 1){
+			throw new IllegalArgumentException("cacheSize must be at least 1: "+cacheSize);
+		}
+		if((positiveTTL < 0) || (negativeTTL < 0)){
+			throw new IllegalArgumentException("TTLs can't be negative: "+positiveTTL+", "+negativeTTL);
+		}
+		this.executor = executor;
+		this.positiveTTL = positiveTTL;
+		this.negativeTTL = negativeTTL;
+		Cache<String, Lookup> cache = CacheBuilder.newBuilder()
+				.maximumSize(cacheSize)
+				.expireAfterWrite(Math.max(1, Math.max(positiveTTL, negativeTTL)), TimeUnit.MILLISECONDS)
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.build();
+		this.lookups = cache.asMap();
+	}
+	
+	/**
+	 * @return a small pool of daemon threads that go away when there is nothing to look up
+	 */
+	public static ThreadPoolExecutor newDefaultExecutor(){
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(1024),
+				new ThreadFactory(){
+					private final AtomicInteger count = new AtomicInteger(0);
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ReverseLookup-"+count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	public long getPositiveTTL() {
+		return positiveTTL;
+	}
+
+	public long getNegativeTTL() {
+		return negativeTTL;
+	}
+
+	/**
+	 * @param source an address or host name, a leading "name/" as in InetAddress.toString() is ignored
+	 * @return the host names of source when they are known, an empty list if it has none
+	 */
+	public CompletableFuture<List<String>> lookup(String source){
+		final String key = source.substring(source.lastIndexOf('/') + 1);
+		long now = System.currentTimeMillis();
+		
+		Lookup current = lookups.get(key);
+		if((current != null) && (current.expires > now)){
+			hits.incrementAndGet();
+			return current.names;
+		}
+		
+		Lookup fresh = new Lookup();
+		boolean mine = (current == null) ? (lookups.putIfAbsent(key, fresh) == null) : lookups.replace(key, current, fresh);
+		if(!mine){
+			/* Someone else just started one */
+			Lookup other = lookups.get(key);
+			if(other != null){
+				hits.incrementAndGet();
+				return other.names;
+			}
+			lookups.put(key, fresh);
+		}
+		misses.incrementAndGet();
+		
+		final Lookup lookup = fresh;
+		try{
+			executor.execute(new Runnable(){
+				@Override
+				public void run() {
+					resolve(key, lookup);
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			getLog().warn("Too many reverse lookups waiting, not resolving "+key);
+			lookup.expires = 0;
+			lookup.names.complete(NO_NAMES);
+		}
+		return lookup.names;
+	}
+	
+	/**
+	 * Wait a bounded time for a lookup
+	 * @param source as for {@link #lookup(String)}
+	 * @param deadline milliseconds to wait for the names, 0 to only use what is already known
+	 * @return the names, or null if they weren't known in time
+	 */
+	public List<String> lookup(String source, long deadline){
+		CompletableFuture<List<String>> names = lookup(source);
+		try{
+			if(names.isDone() || (deadline <= 0)){
+				return names.getNow(null);
+			}
+			return names.get(deadline, TimeUnit.MILLISECONDS);
+		}
+		catch(TimeoutException e){
+			return null;
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch(ExecutionException e){
+			return NO_NAMES;
+		}
+		finally{
+			if(!names.isDone()){
+				timeouts.incrementAndGet();
+			}
+		}
+	}
+	
+	
+	private void resolve(String key, Lookup lookup){
+		long start = System.nanoTime();
+		List<String> names = NO_NAMES;
+		try{
+			names = resolve(key);
+		}
+		catch(UnknownHostException e){
+			getLog().warn("The ip address:"+key+" contacted me and couldn't be resolved");
+		}
+		catch(RuntimeException e){
+			getLog().warn("Unable to resolve "+key+"\n"+e);
+		}
+		totalNanos.addAndGet(System.nanoTime() - start);
+		if(names.isEmpty()){
+			failed.incrementAndGet();
+		}
+		else{
+			resolved.incrementAndGet();
+		}
+		lookup.expires = System.currentTimeMillis() + (names.isEmpty() ? negativeTTL : positiveTTL);
+		lookup.names.complete(names);
+	}
+	
+	
+	/**
+	 * @param address an address, whose name is looked up, or a host name, whose addresses' names are looked up
+	 * @return the names found, an address without a name doesn't count
+	 * @throws UnknownHostException
+	 */
+	static List<String> resolve(String address) throws UnknownHostException{
+		InetAddress[] addresses;
+		if(InetAddresses.isInetAddress(address)){
+			addresses = new InetAddress[]{InetAddresses.forString(address)};
+		}
+		else{
+			addresses = InetAddress.getAllByName(address);
+		}
+		List<String> names = new ArrayList<String>(addresses.length);
+		for(InetAddress a:addresses){
+			String name = a.getHostName();
+			if(!name.equals(a.getHostAddress())){
+				names.add(name);
+			}
+		}
+		return names;
+	}
+	
+	
+	/**
+	 * @return lookups answered from the cache, including ones still running
+	 */
+	public long getHitCount(){
+		return hits.get();
+	}
+	
+	/**
+	 * @return lookups that had to go to the resolver
+	 */
+	public long getMissCount(){
+		return misses.get();
+	}
+	
+	public double getHitRate(){
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 1.0 : ((double) h / total);
+	}
+	
+	/**
+	 * @return resolutions that found a name
+	 */
+	public long getResolvedCount(){
+		return resolved.get();
+	}
+	
+	/**
+	 * @return resolutions that didn't find a name
+	 */
+	public long getFailedCount(){
+		return failed.get();
+	}
+	
+	/**
+	 * @return waits that gave up before the names were known
+	 */
+	public long getTimeoutCount(){
+		return timeouts.get();
+	}
+	
+	/**
+	 * @return the average time the resolver took, in milliseconds
+	 */
+	public double getAverageLookupMillis(){
+		long count = resolved.get() + failed.get();
+		return (count == 0) ? 0.0 : (totalNanos.get() / 1.0e6) / count;
+	}
+}
@@ -29,24 +29,37 @@ import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
 
 import edu.uci.ics.luci.utility.Globals;
 import edu.uci.ics.luci.utility.Quittable;
 import edu.uci.ics.luci.utility.datastructure.Pair;
+import edu.uci.ics.luci.utility.webserver.WebServerConfiguration.ExecutorMode;
 import edu.uci.ics.luci.utility.webserver.event.Event_MiddleWare;
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Error;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Handler;
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Shutdown;
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_UnstableWrapper;
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Version;
+import edu.uci.ics.luci.utility.webserver.event.api.APIHandler;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineQueuer;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineSlot;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineSlotFactory;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineStage_AccessControl;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineStage_Handle;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineStage_Respond;
+import edu.uci.ics.luci.utility.webserver.event.pipeline.PipelineStage_Route;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapper;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperFactory;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperHandler;
@@ -70,7 +83,8 @@ import edu.uci.ics.luci.utility.webserver.output.channel.Output;
  * threads to consume the incoming job.  The incoming job is just formatted into a Request in this thread.
  * 
  * The second thread is responsible for dispatching the jobs, once converted.  They are passed to a Request Dispatcher
- * which handles one or more jobs at a time.
+ * which handles one or more jobs at a time.  Dispatch is chained onto the conversion so it happens as soon as
+ * the Request is ready.
  * 
  * The third thread is the Request Dispatcher
  * 
@@ -94,6 +108,7 @@ public class WebServer implements Runnable,Quittable{
 	
 	Thread webServerThread = null;
 	private ExecutorService threadExecutor = null;
+	private ExecutorService inputExecutor = null;
 	
 	private long startTime = System.currentTimeMillis();
 	private long count = 0;
@@ -105,6 +120,11 @@ public class WebServer implements Runnable,Quittable{
 	
 	private EventWrapperQueuer eventPublisher;
 	private Map<String, APIEvent> aPIRegistry;
+	private volatile RouteTable routeTable;
+	
+	private WebServerConfiguration configuration;
+	private AdmissionControl admissionControl;
+	private PipelineQueuer pipelinePublisher;
 	
 	
 	
@@ -135,10 +155,22 @@ public class WebServer implements Runnable,Quittable{
 			threadExecutor.shutdown();
 		}
 		
+		if((inputExecutor != null) && (inputExecutor != threadExecutor)){
+			inputExecutor.shutdown();
+		}
+		
 		if(eventPublisher != null){
 			eventPublisher.setQuitting(true);
 		}
 		
+		if(pipelinePublisher != null){
+			pipelinePublisher.setQuitting(true);
+		}
+		
+		if(accessControl != null){
+			accessControl.stopReloading();
+		}
+		
 		getLog().info("WebServer shutdown");
 	}
 	
@@ -147,7 +179,7 @@ public class WebServer implements Runnable,Quittable{
 	}
 	
 	public boolean isTerminated(){
-		return(threadExecutor.isTerminated());
+		return(threadExecutor.isTerminated() && ((inputExecutor == null) || inputExecutor.isTerminated()));
 	}
 	
 	/*******************************************/
@@ -186,15 +218,43 @@ public class WebServer implements Runnable,Quittable{
 		return aPIRegistry;
 	}
 
-	public void setAPIRegistry(Map<String, APIEvent> aPIRegistry) {
+	public synchronized void setAPIRegistry(Map<String, APIEvent> aPIRegistry) {
 		this.aPIRegistry = aPIRegistry;
+		this.routeTable = (aPIRegistry == null) ? null : new RouteTable(aPIRegistry,getConfiguration().getRouteCacheSize());
 	}
 	
-	public void updateAPIRegistry(String restCommand, APIEvent webevent){
+	public synchronized void updateAPIRegistry(String restCommand, APIEvent webevent){
 		if(aPIRegistry == null){
 			throw new IllegalStateException("APIRegistry has not been initialized");
 		}
 		aPIRegistry.put(restCommand, webevent);
+		routeTable = new RouteTable(aPIRegistry,getConfiguration().getRouteCacheSize());
+	}
+	
+	/**
+	 * Put a stateless handler in the API Registry, it will be called for every matching request without being copied
+	 * @param restCommand
+	 * @param handler
+	 */
+	public void registerHandler(String restCommand, APIHandler handler){
+		if(handler == null){
+			throw new IllegalArgumentException("Handler can't be null");
+		}
+		if(handler instanceof APIEvent){
+			updateAPIRegistry(restCommand, (APIEvent) handler);
+		}
+		else{
+			updateAPIRegistry(restCommand, new APIEvent_Handler(handler));
+		}
+	}
+	
+	/**
+	 * Requests are routed against this immutable snapshot of the API Registry.  It is rebuilt, with an
+	 * empty route cache, whenever the registry is set or updated through this class.
+	 * @return the current snapshot
+	 */
+	public RouteTable getRouteTable() {
+		return routeTable;
 	}
 
 	public ExecutorService getThreadExecutor() {
@@ -205,6 +265,18 @@ public class WebServer implements Runnable,Quittable{
 		this.threadExecutor = threadExecutor;
 	}
 	
+	/**
+	 * @return what runs the incoming grabber and the conversion of incoming requests, the same as
+	 * {@link #getThreadExecutor()} unless that is BOUNDED
+	 */
+	public ExecutorService getInputExecutor() {
+		return inputExecutor;
+	}
+
+	public void setInputExecutor(ExecutorService inputExecutor) {
+		this.inputExecutor = inputExecutor;
+	}
+	
 	public EventWrapperQueuer getEventPublisher() {
 		return eventPublisher;
 	}
@@ -214,6 +286,54 @@ public class WebServer implements Runnable,Quittable{
 	}
 
 
+	public PipelineQueuer getPipelinePublisher() {
+		return pipelinePublisher;
+	}
+
+	public void setPipelinePublisher(PipelineQueuer pipelinePublisher) {
+		this.pipelinePublisher = pipelinePublisher;
+	}
+	
+	public AdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
+	private void setAdmissionControl(AdmissionControl admissionControl) {
+		this.admissionControl = admissionControl;
+	}
+	
+	public WebServerConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	private void setConfiguration(WebServerConfiguration configuration) {
+		this.configuration = configuration;
+	}
+	
+	public boolean isPipelined() {
+		return getConfiguration().isPipelined();
+	}
+
+	/**
+	 * Must be called before the WebServer is started.
+	 * @see WebServerConfiguration#setPipelined(boolean)
+	 */
+	public void setPipelined(boolean pipelined) {
+		getConfiguration().setPipelined(pipelined);
+	}
+
+	public int getPipelineWorkers() {
+		return getConfiguration().getPipelineWorkers();
+	}
+
+	/**
+	 * @see WebServerConfiguration#setPipelineWorkers(int)
+	 */
+	public void setPipelineWorkers(int pipelineWorkers) {
+		getConfiguration().setPipelineWorkers(pipelineWorkers);
+	}
+
+
 	public Thread getWebServerThread() {
 		return webServerThread;
 	}
@@ -230,6 +350,18 @@ public class WebServer implements Runnable,Quittable{
 	 * @param accessControl Are there any access restrictions?
 	 */
 	public WebServer(Input inputChannel, Map<String, APIEvent> requestHandlerRegistry,AccessControl accessControl){
+		this(inputChannel,requestHandlerRegistry,accessControl,new WebServerConfiguration());
+	}
+	
+	
+	/**
+	 * 
+	 * @param inputChannel  Where are the REST commands coming from?
+	 * @param requestDispatcher What is going to handle them?
+	 * @param accessControl Are there any access restrictions?
+	 * @param configuration How should the ring buffers be set up?
+	 */
+	public WebServer(Input inputChannel, Map<String, APIEvent> requestHandlerRegistry,AccessControl accessControl,WebServerConfiguration configuration){
 		
 		if(inputChannel == null){
 			throw new InvalidParameterException("The Input Channel can't be null");
@@ -240,14 +372,30 @@ public class WebServer implements Runnable,Quittable{
 		if(accessControl == null){
 			throw new InvalidParameterException("The Access Control can't be null");
 		}
+		if(configuration == null){
+			throw new InvalidParameterException("The Configuration can't be null");
+		}
+		
+		setConfiguration(configuration);
 		
 		setInputChannel(inputChannel);
 		
 		setAPIRegistry(requestHandlerRegistry);
 		
-		setThreadExecutor(Executors.newCachedThreadPool());
+		setThreadExecutor(configuration.createExecutor());
+		if(configuration.getExecutorMode() == ExecutorMode.BOUNDED){
+			/* Only the events are bounded, reads wait on clients */
+			setInputExecutor(configuration.createInputExecutor());
+		}
+		else{
+			setInputExecutor(getThreadExecutor());
+		}
+		setAdmissionControl(new AdmissionControl(configuration.getExecutorMode() == ExecutorMode.BOUNDED, getThreadExecutor(), configuration.getRetryAfter()));
 		
 		this.setAccessControl(accessControl);
+		if(inputChannel.getConnectionQuota() == null){
+			inputChannel.setConnectionQuota(accessControl.getRateLimits().getConnectionQuota());
+		}
 		if(this.accessControl.getDefaultFilename() == null){
 			throw new IllegalArgumentException("Initialize accessControl's defaultFilename before passing it to the web server");
 			//this.accessControl.setDefaultFilename(null);
@@ -271,13 +419,13 @@ public class WebServer implements Runnable,Quittable{
 	    EventWrapperFactory factory = new EventWrapperFactory();
 	
 	    // Specify the size of the ring buffer, must be power of 2.
-	    int bufferSize = 1024;
+	    int bufferSize = getConfiguration().getRingBufferSize();
 	
-	    // Construct the Disruptor
-	    Disruptor<EventWrapper> disruptor = new Disruptor<EventWrapper>(factory, bufferSize, Executors.defaultThreadFactory());
+	    // Construct the Disruptor, events are published from worker threads as well as the grabber so always multiple producers
+	    Disruptor<EventWrapper> disruptor = new Disruptor<EventWrapper>(factory, bufferSize, getConfiguration().getThreadFactory(),ProducerType.MULTI,getConfiguration().getWaitStrategy().create());
 	
 	    // Connect the handler
-	    disruptor.handleEventsWith(new EventWrapperHandler(getThreadExecutor()));
+	    disruptor.handleEventsWith(new EventWrapperHandler(getThreadExecutor(),getConfiguration().getRetryAfter()));
 	        
 	    // Start the Disruptor, starts all threads running
 	    disruptor.start();
@@ -293,6 +441,39 @@ public class WebServer implements Runnable,Quittable{
 	
 	
 	
+	/**
+	 * Create the staged pipeline that is used instead of the event queue when the server is pipelined.
+	 * Each request is published once and then passes through the stages on the same ring buffer slot,
+	 * each stage waiting on the sequence of the one before it:
+	 * access control, then routing, then a WorkerPool of handlers, then a WorkerPool of responders.
+	 * @return the publisher for the pipeline
+	 */
+	public PipelineQueuer createPipeline() {
+		PipelineSlotFactory factory = new PipelineSlotFactory();
+		
+		// Specify the size of the ring buffer, must be power of 2.
+		int bufferSize = getConfiguration().getRingBufferSize();
+		
+		Disruptor<PipelineSlot> disruptor = new Disruptor<PipelineSlot>(factory, bufferSize, getConfiguration().getThreadFactory(),getConfiguration().getProducerType(),getConfiguration().getWaitStrategy().create());
+		
+		PipelineStage_Handle[] handlers = new PipelineStage_Handle[getPipelineWorkers()];
+		PipelineStage_Respond[] responders = new PipelineStage_Respond[getPipelineWorkers()];
+		for(int i = 0; i < getPipelineWorkers(); i++){
+			handlers[i] = new PipelineStage_Handle();
+			responders[i] = new PipelineStage_Respond();
+		}
+		
+		disruptor.handleEventsWith(new PipelineStage_AccessControl(getAccessControl(),this))
+			.then(new PipelineStage_Route(this))
+			.thenHandleEventsWithWorkerPool(handlers)
+			.thenHandleEventsWithWorkerPool(responders);
+		
+		disruptor.start();
+		
+		return new PipelineQueuer(disruptor,disruptor.getRingBuffer());
+	}
+	
+	
 	/**
 	 * The default start method waits 1 second in order for the Threads to launch and stabilize
 	 */
@@ -311,6 +492,9 @@ public class WebServer implements Runnable,Quittable{
 	 * @param wait, After launching the webserver thread wait this many milliseconds before returning
 	 */
 	public void start(long wait){
+		if(getConfiguration().getAccessControlReloadPeriod() > 0){
+			getAccessControl().startReloading(getConfiguration().getAccessControlReloadPeriod());
+		}
 		getWebServerThread().start();
 		
 		if(wait > 0){
@@ -369,12 +553,46 @@ public class WebServer implements Runnable,Quittable{
 					/* Wait for work to come in, this often times out and returns null */
 					Callable<Pair<Request, Output>> incoming = webserver.getInputChannel().waitForIncomingRequest();
 				
-					/* Put in a conversion job to pull the input channel request off the channel */
-					if(!webserver.isQuitting() && (incoming != null)){
-						Event_MiddleWare event = new Event_MiddleWare(webserver,webserver.getThreadExecutor().submit(incoming),webserver.getAccessControl());
-						EventWrapper eventWrapper = new EventWrapper(event);
+					/* Put in a conversion job to pull the input channel request off the channel, the middleware
+					 * picks it up as soon as it is done */
+					if(!webserver.isQuitting() && (incoming != null) && !webserver.getAdmissionControl().admit()){
+						/* Too busy, turn it away before it uses anything */
+						webserver.incrementTotalRequests();
+						webserver.getInputChannel().reject(incoming,webserver.getAdmissionControl().getRetryAfter());
+					}
+					else if(!webserver.isQuitting() && (incoming != null) && webserver.isPipelined()){
+						webserver.incrementTotalRequests();
+						if(webserver.getConfiguration().getProducerType() == ProducerType.SINGLE){
+							/* This thread has to be the only publisher */
+							Pair<Request, Output> pair = null;
+							Throwable t = null;
+							try{
+								pair = incoming.call();
+							}
+							catch(Exception e){
+								t = e;
+							}
+							webserver.pipelineEntrance.accept(pair, t);
+						}
+						else{
+							try{
+								Event_MiddleWare.convert(incoming,webserver.getInputExecutor()).whenComplete(webserver.pipelineEntrance);
+							}
+							catch(RejectedExecutionException e){
+								webserver.getInputChannel().reject(incoming,webserver.getAdmissionControl().getRetryAfter());
+							}
+						}
+					}
+					else if(!webserver.isQuitting() && (incoming != null)){
 						webserver.incrementTotalRequests();
-						webserver.getEventPublisher().onData(eventWrapper);
+						try{
+							Event_MiddleWare event = new Event_MiddleWare(webserver,Event_MiddleWare.convert(incoming,webserver.getInputExecutor()),webserver.getAccessControl());
+							EventWrapper eventWrapper = new EventWrapper(event);
+							webserver.getEventPublisher().onData(eventWrapper);
+						}
+						catch(RejectedExecutionException e){
+							webserver.getInputChannel().reject(incoming,webserver.getAdmissionControl().getRetryAfter());
+						}
 					}
 				}
 			}catch(Exception e){
@@ -386,14 +604,38 @@ public class WebServer implements Runnable,Quittable{
 		}
 	}
 	
+	/* Hands converted requests to the pipeline */
+	private final BiConsumer<Pair<Request, Output>,Throwable> pipelineEntrance = new BiConsumer<Pair<Request, Output>,Throwable>(){
+		@Override
+		public void accept(Pair<Request, Output> pair, Throwable t) {
+			if(t != null){
+				getLog().debug("Unable to convert incoming request\n"+t);
+			}
+			else if((pair != null) && (pair.getFirst() != null)){
+				/* The ring may have filled up while this was converting */
+				if(getAdmissionControl().admit()){
+					getPipelinePublisher().onData(pair.getFirst(),pair.getSecond());
+				}
+				else{
+					getAdmissionControl().reject(pair.getSecond());
+				}
+			}
+		}
+	};
+	
 	public void run(){
 		
 		setEventPublisher(createEventQueue());
+		getAdmissionControl().setEventQueue(getEventPublisher());
+		if(isPipelined()){
+			setPipelinePublisher(createPipeline());
+			getAdmissionControl().setPipeline(getPipelinePublisher());
+		}
 		
 		try {
 			if (!isQuitting()) {
 				/* This won't return until the server is completely quitting */
-				Future<Void> result = getThreadExecutor().submit(new MyIncomingGrabber(this));
+				Future<Void> result = getInputExecutor().submit(new MyIncomingGrabber(this));
 				try {
 					result.get();
 				} catch (InterruptedException e) {
@@ -0,0 +1,346 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
+
+/**
+ * The tunable settings of a {@link WebServer}'s ring buffers.  The defaults are the settings
+ * the WebServer has always used.  Pass one to the WebServer constructor, changes after the
+ * server has started have no effect.
+ * @author djp3
+ *
+ */
+public class WebServerConfiguration {
+	
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(WebServerConfiguration.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	/**
+	 * How the threads consuming a ring buffer wait for the next event.  The choices trade CPU for latency,
+	 * from BLOCKING (least CPU, most latency) to BUSY_SPIN (a core per consumer, least latency).
+	 */
+	public enum WaitStrategyType {
+		BLOCKING,
+		SLEEPING,
+		YIELDING,
+		BUSY_SPIN;
+		
+		public WaitStrategy create(){
+			switch(this){
+				case SLEEPING: return new SleepingWaitStrategy();
+				case YIELDING: return new YieldingWaitStrategy();
+				case BUSY_SPIN: return new BusySpinWaitStrategy();
+				default: return new BlockingWaitStrategy();
+			}
+		}
+	}
+	
+	/**
+	 * What runs the conversion of incoming requests and, when not pipelined, each event.  A BOUNDED executor
+	 * only runs the events, the grabber and the conversions get a pool of their own, see {@link #createInputExecutor()}.
+	 */
+	public enum ExecutorMode {
+		/** A cached thread pool, one platform thread per concurrent task */
+		CACHED,
+		/** A virtual thread per task when the JVM has them (Java 21+), otherwise CACHED. Blocking handlers then cost very little. */
+		VIRTUAL,
+		/** At most maxThreads threads and queueDepth waiting events.  Requests beyond that are shed with a 503, see {@link AdmissionControl} */
+		BOUNDED;
+	}
+	
+	private int ringBufferSize = 1024;
+	private WaitStrategyType waitStrategy = WaitStrategyType.BLOCKING;
+	private ProducerType producerType = ProducerType.MULTI;
+	private ThreadFactory threadFactory = Executors.defaultThreadFactory();
+	private boolean pipelined = false;
+	private int pipelineWorkers = 16;
+	private ExecutorMode executorMode = ExecutorMode.CACHED;
+	private int maxThreads = 256;
+	private int queueDepth = 1024;
+	private int retryAfter = 1;
+	private int routeCacheSize = RouteTable.DEFAULT_CACHE_SIZE;
+	private long accessControlReloadPeriod = 10 * 1000;
+	
+	public WebServerConfiguration(){
+	}
+	
+	
+	/**
+	 * @return true if this JVM can run tasks on virtual threads
+	 */
+	public static boolean isVirtualThreadsAvailable(){
+		return getVirtualThreadExecutorFactory() != null;
+	}
+	
+	
+	private static Method getVirtualThreadExecutorFactory(){
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * @return a new executor as described by {@link #getExecutorMode()}
+	 */
+	public ExecutorService createExecutor(){
+		if(getExecutorMode() == ExecutorMode.BOUNDED){
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(getMaxThreads(), getMaxThreads(),
+					60L, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(getQueueDepth()));
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		}
+		if(getExecutorMode() == ExecutorMode.VIRTUAL){
+			/* Reflection so that this still compiles and runs on Java 8 */
+			Method factory = getVirtualThreadExecutorFactory();
+			if(factory != null){
+				try {
+					return (ExecutorService) factory.invoke(null);
+				} catch (IllegalAccessException e) {
+					getLog().error("Unable to create a virtual thread executor\n"+e);
+				} catch (InvocationTargetException e) {
+					getLog().error("Unable to create a virtual thread executor\n"+e);
+				}
+			}
+			else{
+				getLog().warn("Virtual threads are not available in this JVM ("+System.getProperty("java.version")+"), using a cached thread pool");
+			}
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	/**
+	 * Reading a request waits on the client, for as long as a kept alive connection stays idle, so the grabber
+	 * and the conversions don't share a BOUNDED executor with the events.  Idle clients would otherwise take
+	 * up its threads and every new request would be shed.
+	 * @return a new executor for the incoming grabber and the conversion of incoming requests, it is never bounded
+	 */
+	public ExecutorService createInputExecutor(){
+		if(getExecutorMode() == ExecutorMode.VIRTUAL){
+			return createExecutor();
+		}
+		return Executors.newCachedThreadPool();
+	}
+
+	public ExecutorMode getExecutorMode() {
+		return executorMode;
+	}
+
+	/**
+	 * The Disruptor consumer threads always come from the thread factory, this only changes the executor.
+	 * When pipelined, the handlers run on the pipeline's WorkerPool instead, so only conversions are affected.
+	 * @param executorMode
+	 */
+	public void setExecutorMode(ExecutorMode executorMode) {
+		if(executorMode == null){
+			throw new IllegalArgumentException("Executor mode can't be null");
+		}
+		this.executorMode = executorMode;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * @param maxThreads the most threads a BOUNDED executor will use to run events
+	 */
+	public void setMaxThreads(int maxThreads) {
+		if(maxThreads < 1){
+			throw new IllegalArgumentException("There must be at least one thread: "+maxThreads);
+		}
+		this.maxThreads = maxThreads;
+	}
+
+	public int getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * @param queueDepth how many events a BOUNDED executor will hold waiting for a thread before requests are shed
+	 */
+	public void setQueueDepth(int queueDepth) {
+		if(queueDepth < 1){
+			throw new IllegalArgumentException("Queue depth must be at least 1: "+queueDepth);
+		}
+		this.queueDepth = queueDepth;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * @param retryAfter seconds a shed client is told to wait before trying again
+	 */
+	public void setRetryAfter(int retryAfter) {
+		if(retryAfter < 0){
+			throw new IllegalArgumentException("Retry after can't be negative: "+retryAfter);
+		}
+		this.retryAfter = retryAfter;
+	}
+	
+	public int getRouteCacheSize() {
+		return routeCacheSize;
+	}
+	
+	/**
+	 * @param routeCacheSize how many command lines the server remembers the route of
+	 */
+	public void setRouteCacheSize(int routeCacheSize) {
+		if(routeCacheSize < 1){
+			throw new IllegalArgumentException("Route cache size must be at least 1: "+routeCacheSize);
+		}
+		this.routeCacheSize = routeCacheSize;
+	}
+
+	public long getAccessControlReloadPeriod() {
+		return accessControlReloadPeriod;
+	}
+	
+	/**
+	 * @param accessControlReloadPeriod milliseconds between background checks for a new access control list,
+	 * 0 to leave reloading to the requests, see {@link AccessControl#startReloading(long)}
+	 */
+	public void setAccessControlReloadPeriod(long accessControlReloadPeriod) {
+		if(accessControlReloadPeriod < 0){
+			throw new IllegalArgumentException("Access control reload period can't be negative: "+accessControlReloadPeriod);
+		}
+		this.accessControlReloadPeriod = accessControlReloadPeriod;
+	}
+
+	public int getRingBufferSize() {
+		return ringBufferSize;
+	}
+
+	/**
+	 * @param ringBufferSize how many events can be in flight before publishing waits, must be a power of 2
+	 */
+	public void setRingBufferSize(int ringBufferSize) {
+		if((ringBufferSize < 1) || (Integer.bitCount(ringBufferSize) != 1)){
+			throw new IllegalArgumentException("Ring buffer size must be a power of 2: "+ringBufferSize);
+		}
+		this.ringBufferSize = ringBufferSize;
+	}
+
+	public WaitStrategyType getWaitStrategy() {
+		return waitStrategy;
+	}
+
+	public void setWaitStrategy(WaitStrategyType waitStrategy) {
+		if(waitStrategy == null){
+			throw new IllegalArgumentException("Wait strategy can't be null");
+		}
+		this.waitStrategy = waitStrategy;
+	}
+
+	public ProducerType getProducerType() {
+		return producerType;
+	}
+
+	/**
+	 * The event queue is always published to from several threads, so this only applies to the pipeline.
+	 * With ProducerType.SINGLE the incoming grabber thread converts each request itself and is the only
+	 * publisher.  That suits an Input like HTTPInputOverSocketChannel whose conversions never block,
+	 * but would serialize the reads of a blocking Input.
+	 * @param producerType
+	 */
+	public void setProducerType(ProducerType producerType) {
+		if(producerType == null){
+			throw new IllegalArgumentException("Producer type can't be null");
+		}
+		this.producerType = producerType;
+	}
+
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * @param threadFactory makes the threads that consume the ring buffers
+	 */
+	public void setThreadFactory(ThreadFactory threadFactory) {
+		if(threadFactory == null){
+			throw new IllegalArgumentException("Thread factory can't be null");
+		}
+		this.threadFactory = threadFactory;
+	}
+
+	public boolean isPipelined() {
+		return pipelined;
+	}
+
+	/**
+	 * @param pipelined if true requests go through the staged pipeline built by {@link WebServer#createPipeline()} instead of
+	 * being re-published to the event queue between each step.  Every stage hands off through the wait strategy, so
+	 * the pipeline pays off most with the SLEEPING or YIELDING strategies, see WebServerBenchmark.
+	 */
+	public void setPipelined(boolean pipelined) {
+		this.pipelined = pipelined;
+	}
+
+	public int getPipelineWorkers() {
+		return pipelineWorkers;
+	}
+
+	/**
+	 * @param pipelineWorkers how many threads handle requests, and how many write responses, when pipelined
+	 */
+	public void setPipelineWorkers(int pipelineWorkers) {
+		if(pipelineWorkers < 1){
+			throw new IllegalArgumentException("There must be at least one pipeline worker: "+pipelineWorkers);
+		}
+		this.pipelineWorkers = pipelineWorkers;
+	}
+}
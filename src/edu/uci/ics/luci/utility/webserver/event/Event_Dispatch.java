@@ -22,20 +22,16 @@
 package edu.uci.ics.luci.utility.webserver.event;
 
 import java.security.InvalidParameterException;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
 import edu.uci.ics.luci.utility.webserver.event.result.EventResult;
+import edu.uci.ics.luci.utility.webserver.event.route.Route;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
 import edu.uci.ics.luci.utility.webserver.event.resultlistener.api.APIEventResultListener;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapper;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperQueuer;
@@ -72,8 +68,7 @@ public class Event_Dispatch extends Event{
 	/*******************************************/
 	
 	private EventWrapperQueuer eventPublisher = null;
-	private Map<String, APIEvent> aPIRegistry = null;
-	private Map<String, String> aPIRegistryDerived = null; //Implemented as an LRU cache
+	private RouteTable aPIRegistry = null;
 	private Request request = null;
 	private Output output = null;
     
@@ -89,6 +84,10 @@ public class Event_Dispatch extends Event{
 	}
     
 	
+	/**
+	 * A {@link RouteTable} is shared as is, any other registry is copied into a new one
+	 * @param newRegistry
+	 */
 	private void setAPIRegistry(Map<String,APIEvent> newRegistry){
 		
 		if(newRegistry == null){
@@ -96,22 +95,17 @@ public class Event_Dispatch extends Event{
 		}
 		
 		if(aPIRegistry == null){
-			aPIRegistry = Collections.synchronizedMap(new HashMap<String,APIEvent>(newRegistry));
-			aPIRegistryDerived = Collections.synchronizedMap(new LRUMap<String,String>(1024));
+			aPIRegistry = RouteTable.of(newRegistry);
 		}
 		else{
 			throw new IllegalStateException("APIRegistry is already initialized");
 		}	
 	}
 	
-	public Map<String, APIEvent> getAPIRegistry(){
+	public RouteTable getAPIRegistry(){
 		return aPIRegistry;
 	}
 	
-	private Map<String, String> getAPIRegistryDerived(){
-		return aPIRegistryDerived;
-	}
-	
 
 	public Request getRequest() {
 		return request;
@@ -204,53 +198,24 @@ public class Event_Dispatch extends Event{
 	
 	
 	
-	/* Make a pattern that matches chunks that end in a / */
-	Pattern slashPattern = Pattern.compile("[^/]*/");
 	/**
 	 * Based on the API Registry in in this class, return the command portion of the restFunction.
-	 * This is the string that best matches an entry in the API Registry.
-	 * The lookup is LRU cached so subsequent repeats are faster
+	 * This is the string that best matches an entry in the API Registry, see {@link RouteTable}
+	 * The lookup is cached, across all requests that share the registry, so subsequent repeats are faster
 	 * @param restFunction
 	 * @return the command that can be looked up in the API Registry to handle the request
 	 */
 	public String identifyCommand(String restFunction){
-		
-		/* See if there is an event handler that matches the called function exactly */
-		/* and handling null as well */
-		if(getAPIRegistry().containsKey(restFunction)){
-			return restFunction;
-		}
-		/* See if we've already solved a derived function and previously stored it in the cache */
-		String derivedCommand = getAPIRegistryDerived().get(restFunction);
-		if(derivedCommand != null) {
-			return derivedCommand;
-		}
-		
-		/* If the full restFunction doesn't map, then break down the command around slashes '/' and search for the parent commands */
-		Stack<Integer> s = new Stack<Integer>();
-		Matcher m = slashPattern.matcher(restFunction);
-		while(m.find()) {
-			s.push(m.end());
-		}
-		
-		while(!s.isEmpty()) {
-			Integer i = s.pop();
-			String sub = null;
-			if(i == 1) {
-				sub = "/";
-			}
-			else {
-				sub = restFunction.substring(0, i-1);
-			}
-			if(getAPIRegistry().containsKey(sub)) {
-				/* Store the answer in the cache */
-				getAPIRegistryDerived().put(restFunction, sub);
-				return sub;
-			}
-		}
-		return null;
+		return getAPIRegistry().identifyCommand(restFunction);
 	}
 	
+	/**
+	 * @param restFunction
+	 * @return a copy of the event registered for the command that restFunction names
+	 * @deprecated requests are no longer dispatched to a clone, registered events decide for themselves whether they
+	 * need one, see {@link APIEvent#handle(Request, Output)}.  Look the event up with {@link #identifyCommand(String)}.
+	 */
+	@Deprecated
 	public APIEvent getEvent(String restFunction){
 		/* See if there is an event handler that matches the called function exactly */
 		APIEvent event = getAPIRegistry().get(identifyCommand(restFunction));
@@ -267,17 +232,23 @@ public class Event_Dispatch extends Event{
 			incrementDispatchCounter();
 				
 			/* Find the command that we can handle from the command line */
-			getRequest().setCommand(identifyCommand(getRequest().getCommandLine()));
+			Route route = getAPIRegistry().match(getRequest().getCommandLine());
+			if(route == null){
+				getRequest().setCommand(null);
+			}
+			else{
+				getRequest().setCommand(route.getCommand());
+				getRequest().setPathParameters(route.getPathParameters(getRequest().getCommandLine()));
+			}
 			getLog().info(dispatchCounter+": request \""+getRequest().getCommand()+"\"<-(\""+getRequest().getCommandLine()+"\")");
 				
-			/* Get the handler */
-			APIEvent apiEvent = getEvent(getRequest().getCommand());
-			apiEvent.setRequest(getRequest());
-			apiEvent.setOutput(getOutput());
+			/* Get the handler, it isn't copied, see APIEvent.handle */
+			APIEvent apiEvent = getAPIRegistry().get(getRequest().getCommand());
+			Event_Handle handle = new Event_Handle(apiEvent, getRequest(), getOutput());
 			
 			APIEventResultListener aPIEventResultListener = new APIEventResultListener();
 			
-			EventWrapper eventWrapper = new EventWrapper(apiEvent,aPIEventResultListener);
+			EventWrapper eventWrapper = new EventWrapper(handle,aPIEventResultListener);
 			
 			getEventPublisher().onData(eventWrapper);
 		}
@@ -0,0 +1,82 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event;
+
+import java.security.InvalidParameterException;
+
+import edu.uci.ics.luci.utility.webserver.event.api.APIHandler;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * Runs one request through the handler it was routed to.  This is what {@link Event_Dispatch}
+ * queues, in place of a per request copy of the handler.
+ * @author djp3
+ *
+ */
+public class Event_Handle extends Event{
+	
+	private APIHandler handler = null;
+	private Request request = null;
+	private Output output = null;
+	
+	public Event_Handle(APIHandler handler, Request request, Output output){
+		super();
+		if(handler == null){
+			throw new IllegalArgumentException("Handler can't be null");
+		}
+		this.handler = handler;
+		this.request = request;
+		this.output = output;
+	}
+	
+	public APIHandler getHandler() {
+		return handler;
+	}
+
+	public Request getRequest() {
+		return request;
+	}
+
+	public Output getOutput() {
+		return output;
+	}
+
+	@Override
+	public void set(Event _incoming) {
+		if(_incoming instanceof Event_Handle){
+			Event_Handle incoming = (Event_Handle) _incoming;
+			this.handler = incoming.getHandler();
+			this.request = incoming.getRequest();
+			this.output = incoming.getOutput();
+		}
+		else{
+			throw new InvalidParameterException(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
+		}
+	}
+
+	@Override
+	public APIEventResult onEvent() {
+		return handler.handle(request, output);
+	}
+}
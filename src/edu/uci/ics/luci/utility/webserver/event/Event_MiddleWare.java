@@ -24,8 +24,12 @@ package edu.uci.ics.luci.utility.webserver.event;
 import java.security.InvalidParameterException;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,9 +37,12 @@ import org.apache.logging.log4j.Logger;
 import edu.uci.ics.luci.utility.Quittable;
 import edu.uci.ics.luci.utility.datastructure.Pair;
 import edu.uci.ics.luci.utility.webserver.AccessControl;
+import edu.uci.ics.luci.utility.webserver.AdmissionControl;
+import edu.uci.ics.luci.utility.webserver.RateLimits;
 import edu.uci.ics.luci.utility.webserver.WebServer;
 import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
 import edu.uci.ics.luci.utility.webserver.event.result.EventResult;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapper;
 import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperQueuer;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
@@ -58,6 +65,7 @@ public class Event_MiddleWare extends Event{
 	private EventWrapperQueuer eventPublisher = null;
 	private Future<Pair<Request, Output>> future;
 	private AccessControl accessControl;
+	private AdmissionControl admissionControl;
 	private Quittable shutdownChecker;
 	private Map<String, APIEvent> aPIRegistry;
 
@@ -85,6 +93,7 @@ public class Event_MiddleWare extends Event{
 			this.setEventPublisher(incoming.getEventPublisher());
 			this.setFuture(incoming.getFuture());
 			this.setAccessControl(incoming.getAccessControl());
+			this.setAdmissionControl(incoming.getAdmissionControl());
 			this.setShutdownChecker(incoming.getShutdownChecker());
 			this.setAPIRegistry(incoming.getAPIRegistry());
 		}
@@ -99,23 +108,44 @@ public class Event_MiddleWare extends Event{
 		this.setEventPublisher(webserver.getEventPublisher());
 		this.setFuture(incoming);
 		this.setAccessControl(accessControl);
+		this.setAdmissionControl(webserver.getAdmissionControl());
 		this.setShutdownChecker(webserver);
-		this.setAPIRegistry(webserver.getAPIRegistry());
+		this.setAPIRegistry(webserver.getRouteTable());
 	}
 	
 
+	/**
+	 * If the incoming job is a {@link CompletableFuture} then the access check and dispatch are chained onto it and
+	 * run on whichever thread finishes converting the request, the moment it finishes.  No thread waits
+	 * on the conversion.  Any other kind of Future is polled with a backoff as before.
+	 */
 	@Override
 	public EventResult onEvent() {
 		EventResult ret = new EventResult();
 		
-		int backoff = 0;
-
 		Future<Pair<Request, Output>> f = getFuture();
 
 		/* Check degenerate case */
 		if (f == null) {
-			return new EventResult();
+			return ret;
 		}
+		
+		if(f instanceof CompletableFuture){
+			((CompletableFuture<Pair<Request, Output>>) f).whenComplete(new BiConsumer<Pair<Request, Output>,Throwable>(){
+				@Override
+				public void accept(Pair<Request, Output> pair, Throwable t) {
+					if(t != null){
+						getLog().debug("Unable to convert incoming request\n"+t);
+					}
+					else{
+						dispatch(pair);
+					}
+				}
+			});
+			return ret;
+		}
+		
+		int backoff = 0;
 
 		/* Wait for incoming job to be converted */
 		while ((!getShutdownChecker().isQuitting()) && (!f.isDone())) {
@@ -137,31 +167,8 @@ public class Event_MiddleWare extends Event{
 			
 		/* If we aren't quitting and job is therefore done ... */
 		if(f.isDone()){
-			Pair<Request, Output> pair = null;
 			try {
-				pair = f.get();
-
-				Request request = pair.getFirst();
-
-				if (request != null) {
-					/*
-					 * Check to make sure this connection source is allowed
-					 */
-					String source = request.getSource();
-					if (getAccessControl().allowSource(source, true, false)) {
-						/*
-						 * Add the work order to the dispatchers work queue
-						 */
-						Event_Dispatch event = new Event_Dispatch(getAPIRegistry(),getEventPublisher(),pair.getFirst(), pair.getSecond());
-						EventWrapper eventWrapper = new EventWrapper(event);
-						
-						getEventPublisher().onData(eventWrapper);
-					} else {
-						getLog().warn(
-							"Server silently rejected request from "
-									+ source);
-					}
-				}
+				dispatch(f.get());
 			} catch (InterruptedException e1) {
 				// Getting the future result failed
 			} catch (ExecutionException e1) {
@@ -172,6 +179,78 @@ public class Event_MiddleWare extends Event{
 	}
 	
 	
+	/**
+	 * Check that there is room for the request and that the connection source is allowed and if so, add the work order
+	 * to the dispatchers work queue
+	 * @param pair the converted request and where to send the response
+	 */
+	private void dispatch(Pair<Request, Output> pair){
+		if(pair == null){
+			return;
+		}
+		
+		/* Things may have gotten busier while the request was converted */
+		if((getAdmissionControl() != null) && !getAdmissionControl().admit()){
+			getAdmissionControl().reject(pair.getSecond());
+			return;
+		}
+		
+		Request request = pair.getFirst();
+
+		if (request != null) {
+			String source = request.getSource();
+			if (getAccessControl().allowSource(source, true, false)) {
+				RateLimits limits = getAccessControl().getRateLimits();
+				if(!limits.tryAcquire(source, request.getCommandLine(), RouteTable.of(getAPIRegistry()))){
+					getLog().debug("Request from "+source+" is over its rate limit");
+					if(pair.getSecond() != null){
+						pair.getSecond().send_TooManyRequests(limits.getRetryAfter());
+					}
+					return;
+				}
+				Event_Dispatch event = new Event_Dispatch(getAPIRegistry(),getEventPublisher(),pair.getFirst(), pair.getSecond());
+				EventWrapper eventWrapper = new EventWrapper(event);
+				
+				getEventPublisher().onData(eventWrapper);
+			} else {
+				getLog().warn(
+					"Server silently rejected request from "
+							+ source);
+				/* Closing it is what gives the source's connection quota its slot back */
+				if(pair.getSecond() != null){
+					pair.getSecond().closeChannel();
+				}
+			}
+		}
+		else if(pair.getSecond() != null){
+			pair.getSecond().closeChannel();
+		}
+	}
+	
+	
+	/**
+	 * Start converting an incoming request on the executor.  The returned future completes as soon as the conversion
+	 * is done so it can be handed straight to an Event_MiddleWare.
+	 * @param incoming the conversion job from an Input
+	 * @param executor where to run it
+	 * @return a future for the converted request
+	 */
+	public static CompletableFuture<Pair<Request, Output>> convert(final Callable<Pair<Request, Output>> incoming, Executor executor){
+		final CompletableFuture<Pair<Request, Output>> ret = new CompletableFuture<Pair<Request, Output>>();
+		executor.execute(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					ret.complete(incoming.call());
+				} catch (Exception e) {
+					ret.completeExceptionally(e);
+				}
+			}
+		});
+		return ret;
+	}
+	
+	
 	public Future<Pair<Request, Output>> getFuture() {
 		return future;
 	}
@@ -190,6 +269,15 @@ public class Event_MiddleWare extends Event{
 	}
 	
 
+	public AdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
+	protected void setAdmissionControl(AdmissionControl admissionControl) {
+		this.admissionControl = admissionControl;
+	}
+	
+
 	public Quittable getShutdownChecker() {
 		return shutdownChecker;
 	}
@@ -33,6 +33,7 @@ import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.JSONWriter;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
 import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
@@ -44,7 +45,7 @@ import edu.uci.ics.luci.utility.webserver.output.channel.Output;
  * @author djp3
  *
  */
-public class APIEvent extends Event implements Cloneable{
+public class APIEvent extends Event implements Cloneable, APIHandler{
 	
 	private static transient volatile Logger log = null;
 	public static Logger getLog(){
@@ -56,6 +57,7 @@ public class APIEvent extends Event implements Cloneable{
 	
 	private Request request = null;
 	private Output output = null;
+	private ResponseCache responseCache = null;
 	
 	public APIEvent(){
 		super();
@@ -84,6 +86,7 @@ public class APIEvent extends Event implements Cloneable{
 			incoming = (APIEvent) _incoming;
 			this.setRequest(incoming.getRequest());
 			this.setOutput(incoming.getOutput());
+			this.setResponseCache(incoming.getResponseCache());
 		}
 		else{
 			getLog().error(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
@@ -103,6 +106,56 @@ public class APIEvent extends Event implements Cloneable{
 	}
 	
 
+	/**
+	 * The results the registered prototype of this event has kept, null if it doesn't keep any.  Clones share it.
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Declare that the result of this event depends only on the request parameters the cache is keyed by, so
+	 * that requests with a stored result can be answered without running it
+	 * @param responseCache null to run the event for every request
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+	
+
+	/**
+	 * An APIEvent in the registry is a prototype.  Each request is handled by a clone of it that
+	 * has been given the request and output, unless its {@link #getResponseCache() response cache} has a result
+	 * for the request.  Subclasses change how a request is handled by overriding {@link #respond(Request, Output)}.
+	 */
+	@Override
+	public APIEventResult handle(Request request, Output output){
+		ResponseCache cache = getResponseCache();
+		if(cache == null){
+			return respond(request, output);
+		}
+		APIEventResult result = cache.get(request, output);
+		if(result == null){
+			result = respond(request, output);
+			cache.put(request, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Make a result for a request that couldn't be answered from the response cache.
+	 * Subclasses that keep nothing about a request in their fields can override this to skip the clone,
+	 * or be written as an {@link APIHandler} instead.  The built-in events do so when they are not
+	 * themselves subclassed, since a subclass may keep state or override {@link #onEvent()}.
+	 */
+	protected APIEventResult respond(Request request, Output output){
+		APIEvent event = (APIEvent) clone();
+		event.setRequest(request);
+		event.setOutput(output);
+		return event.onEvent();
+	}
+	
+
 	protected static String wrapCallback(Map<String, Set<String>> parameters, String string) {
 		if(parameters != null){
 			Set<String> callback = parameters.get("callback");
@@ -132,18 +185,52 @@ public class APIEvent extends Event implements Cloneable{
 	}
 	
 
-	@Override
-	public APIEventResult onEvent() {
-		
-		APIEventResult response = null;
-		
-		response = getOutput().makeOutputChannelResponse();
-		
-		JSONObject ret = buildResponseSkeleton();
+	/**
+	 * Start the JSON answer to the request, in the JSONP callback it asks for if it does, with the members
+	 * every answer has.  Write any others and then hand it to {@link #finishResponse(JSONWriter)}.
+	 * @return a writer inside the answer's object
+	 */
+	protected JSONWriter beginResponse() {
+		return beginResponse(getRequest());
+	}
+	
+	/**
+	 * {@link #beginResponse()} for a request that wasn't set on this event
+	 */
+	protected static JSONWriter beginResponse(Request request) {
+		JSONWriter w = JSONWriter.forParameters(request.getParameters());
+		w.beginObject();
+		w.name("error").value("false");
+		w.name("errors").beginArray().endArray();
+		return w;
+	}
+	
+	/**
+	 * @param w a writer from {@link #beginResponse()}, which is ended
+	 * @return an OK result that sends what w wrote
+	 */
+	protected APIEventResult finishResponse(JSONWriter w) {
+		return finishResponse(w, getOutput());
+	}
+	
+	/**
+	 * {@link #finishResponse(JSONWriter)} for an output that wasn't set on this event
+	 */
+	protected static APIEventResult finishResponse(JSONWriter w, Output output) {
+		w.endObject();
 		
+		APIEventResult response = output.makeOutputChannelResponse();
 		response.setStatus(APIEventResult.Status.OK);
 		response.setDataType(APIEventResult.DataType.JSON);
-		response.setResponseBody(wrapCallback(getRequest().getParameters(),ret.toString()));
+		response.setResponseJSON(w);
+		return response;
+	}
+	
+
+	@Override
+	public APIEventResult onEvent() {
+		
+		APIEventResult response = finishResponse(beginResponse());
 		
 		getLog().info(this.getClass().getSimpleName()+" Executed");
 		return response;
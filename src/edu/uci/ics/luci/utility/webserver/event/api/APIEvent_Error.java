@@ -23,14 +23,14 @@ package edu.uci.ics.luci.utility.webserver.event.api;
 
 import java.security.InvalidParameterException;
 
-import net.minidev.json.JSONArray;
-import net.minidev.json.JSONObject;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.JSONWriter;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 public class APIEvent_Error extends APIEvent_Version implements Cloneable{ 
 	
@@ -68,23 +68,34 @@ public class APIEvent_Error extends APIEvent_Version implements Cloneable{
 	
 	
 	
+	/**
+	 * The error is the same for every request, so the registered event makes it without a clone
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		if(getClass() != APIEvent_Error.class){
+			return super.respond(request, output);
+		}
+		return answer(request, output);
+	}
+	
+	
 	@Override
 	public APIEventResult onEvent() {
+		return answer(getRequest(), getOutput());
+	}
+	
+	
+	private APIEventResult answer(Request request, Output output) {
 		
-		APIEventResult response = null;
-		
-		response = getOutput().makeOutputChannelResponse();
-		
-		JSONObject ret = buildResponseSkeleton();
-			
-		ret.put("error", "true");
-		JSONArray errors = (JSONArray) ret.get("errors");
-		errors.add("Intentional error ("+this.getClass().getSimpleName()+") in response to query:"+getRequest().getCommandLine());
-		ret.put("errors",errors);
+		JSONWriter w = JSONWriter.forParameters(request.getParameters());
+		w.beginObject();
+		w.name("error").value("true");
+		w.name("errors").beginArray();
+		w.value("Intentional error ("+this.getClass().getSimpleName()+") in response to query:"+request.getCommandLine());
+		w.endArray();
 		
-		response.setStatus(APIEventResult.Status.OK);
-		response.setDataType(APIEventResult.DataType.JSON);
-		response.setResponseBody(wrapCallback(getRequest().getParameters(),ret.toString()));
+		APIEventResult response = finishResponse(w, output);
 		
 		getLog().info(this.getClass().getSimpleName()+" Executed");
 		return response;
@@ -0,0 +1,209 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.api;
+
+import java.security.InvalidParameterException;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.luci.utility.webserver.event.Event;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.stream.Broadcaster;
+import edu.uci.ics.luci.utility.webserver.output.stream.StreamFormat;
+
+/**
+ * Subscribes each request to a {@link Broadcaster}.  A client that accepts text/event-stream gets
+ * Server-Sent Events until it goes away, starting with the last event published if it is newer than the
+ * client's Last-Event-ID.  Any other client is long-polling, its response is the next event published, or
+ * the last one if it is newer than the "since" parameter, or an empty body once the long-poll times out.
+ * @author djp3
+ *
+ */
+public class APIEvent_EventStream extends APIEvent implements Cloneable{
+	
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(APIEvent_EventStream.class);
+		}
+		return log;
+	}
+	
+	public static final long DEFAULT_LONG_POLL_TIMEOUT = 30 * 1000;
+	
+	private Broadcaster broadcaster = null;
+	private long longPollTimeout = DEFAULT_LONG_POLL_TIMEOUT;
+	private long streamTimeout = 0;
+	
+	public APIEvent_EventStream(Broadcaster broadcaster) {
+		super();
+		setBroadcaster(broadcaster);
+	}
+	
+	public Broadcaster getBroadcaster() {
+		return broadcaster;
+	}
+
+	public void setBroadcaster(Broadcaster broadcaster) {
+		this.broadcaster = broadcaster;
+	}
+
+	/**
+	 * @return milliseconds a long-poll waits for an event
+	 */
+	public long getLongPollTimeout() {
+		return longPollTimeout;
+	}
+
+	public void setLongPollTimeout(long longPollTimeout) {
+		if(longPollTimeout < 0){
+			throw new IllegalArgumentException("longPollTimeout can't be negative: "+longPollTimeout);
+		}
+		this.longPollTimeout = longPollTimeout;
+	}
+
+	/**
+	 * @return milliseconds after which an event stream is ended, so the client reconnects, 0 for never
+	 */
+	public long getStreamTimeout() {
+		return streamTimeout;
+	}
+
+	public void setStreamTimeout(long streamTimeout) {
+		if(streamTimeout < 0){
+			throw new IllegalArgumentException("streamTimeout can't be negative: "+streamTimeout);
+		}
+		this.streamTimeout = streamTimeout;
+	}
+	
+	
+	@Override
+	public void set(Event _incoming) {
+		APIEvent_EventStream incoming = null;
+		if(_incoming instanceof APIEvent_EventStream){
+			incoming = (APIEvent_EventStream) _incoming;
+			super.set(incoming);
+			this.setBroadcaster(incoming.getBroadcaster());
+			this.setLongPollTimeout(incoming.getLongPollTimeout());
+			this.setStreamTimeout(incoming.getStreamTimeout());
+		}
+		else{
+			getLog().error(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
+			throw new InvalidParameterException(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
+		}
+	}
+
+	@Override
+	public Object clone(){
+		return(super.clone());
+	}
+	
+	
+	/**
+	 * Nothing about the request is kept, so there is no clone
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		APIEventResult response = output.makeOutputChannelResponse();
+		response.setStatus(APIEventResult.Status.OK);
+		response.setDataType(APIEventResult.DataType.JSON);
+		
+		String accept = request.getHeader("Accept");
+		if((accept != null) && accept.contains("text/event-stream")){
+			long lastSeen = parseId(request.getHeader("Last-Event-ID"), -1);
+			response.setResponseEvents(getBroadcaster(), StreamFormat.EVENT_STREAM, 0, getStreamTimeout(), lastSeen);
+		}
+		else{
+			String since = null;
+			if(request.getParameters() != null){
+				Set<String> s = request.getParameters().get("since");
+				if((s != null) && !s.isEmpty()){
+					since = s.iterator().next();
+				}
+			}
+			long lastSeen = parseId(since, Long.MAX_VALUE);
+			response.setResponseEvents(getBroadcaster(), StreamFormat.CHUNKED, 1, getLongPollTimeout(), lastSeen);
+		}
+		return response;
+	}
+	
+	private static long parseId(String id, long otherwise){
+		if(id == null){
+			return otherwise;
+		}
+		try{
+			return Long.parseLong(id.trim());
+		}
+		catch(NumberFormatException e){
+			return otherwise;
+		}
+	}
+	
+
+	@Override
+	public APIEventResult onEvent() {
+		return respond(getRequest(), getOutput());
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + ((broadcaster == null) ? 0 : broadcaster.hashCode());
+		result = prime * result + (int) (longPollTimeout ^ (longPollTimeout >>> 32));
+		result = prime * result + (int) (streamTimeout ^ (streamTimeout >>> 32));
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof APIEvent_EventStream)) {
+			return false;
+		}
+		APIEvent_EventStream other = (APIEvent_EventStream) obj;
+		if (broadcaster == null) {
+			if (other.broadcaster != null) {
+				return false;
+			}
+		} else if (!broadcaster.equals(other.broadcaster)) {
+			return false;
+		}
+		if (longPollTimeout != other.longPollTimeout) {
+			return false;
+		}
+		if (streamTimeout != other.streamTimeout) {
+			return false;
+		}
+		return true;
+	}
+
+}
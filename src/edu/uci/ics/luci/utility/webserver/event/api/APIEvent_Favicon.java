@@ -30,6 +30,8 @@ import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 public class APIEvent_Favicon extends APIEvent implements Cloneable{
 	
@@ -41,6 +43,9 @@ public class APIEvent_Favicon extends APIEvent implements Cloneable{
 		return log;
 	}
 
+	/* The answer only changes if the favicon is changed */
+	private static final long CACHE_TIME_TO_LIVE = 60 * 60 * 1000;
+
 	private URIBuilder favicon;
 	
 
@@ -49,7 +54,11 @@ public class APIEvent_Favicon extends APIEvent implements Cloneable{
 	}
 
 	public void setFavicon(URIBuilder favicon) {
+		boolean changed = (this.favicon == null) ? (favicon != null) : !this.favicon.equals(favicon);
 		this.favicon = favicon;
+		if(changed && (getResponseCache() != null)){
+			getResponseCache().invalidateAll();
+		}
 	}
 
 	public APIEvent_Favicon(URIBuilder favicon) {
@@ -66,6 +75,10 @@ public class APIEvent_Favicon extends APIEvent implements Cloneable{
 		else{
 			setFavicon(null);
 		}
+		/* Only a plain favicon is known to answer every request alike, a subclass sets its own cache */
+		if(getClass() == APIEvent_Favicon.class){
+			setResponseCache(new ResponseCache(CACHE_TIME_TO_LIVE));
+		}
 	}
 	
 	@Override
@@ -89,11 +102,28 @@ public class APIEvent_Favicon extends APIEvent implements Cloneable{
 	
 	
 	
+	/**
+	 * The redirect is the same for every request, there's nothing for a clone to hold
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		if(getClass() != APIEvent_Favicon.class){
+			return super.respond(request, output);
+		}
+		return answer(output);
+	}
+	
+	
 	@Override
 	public APIEventResult onEvent() {
+		return answer(getOutput());
+	}
+	
+	
+	private APIEventResult answer(Output output) {
 		APIEventResult response = null;
 		
-		response = getOutput().makeOutputChannelResponse();
+		response = output.makeOutputChannelResponse();
 		
 		response.setStatus(APIEventResult.Status.PROXY);
 		response.setDataType(APIEventResult.DataType.PROXYSTRING);
@@ -21,18 +21,47 @@
 
 package edu.uci.ics.luci.utility.webserver.event.api;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
 import java.security.InvalidParameterException;
+import java.util.Date;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.http.client.utils.DateUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult_HTTP;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.encoding.Compression;
+import edu.uci.ics.luci.utility.webserver.output.encoding.ContentEncoding;
 
+/**
+ * Serves files, either resources from the classpath or files under a directory.
+ * 
+ * Responses carry an ETag and Last-Modified made from the file's size and modification time, and 
+ * a request whose copy is still current is answered with a 304 without the file being read.  Small
+ * classpath resources are kept in memory until their size or modification time changes, along with
+ * each compressed version of them that has been asked for.  Files from a directory are sent straight
+ * from the file to the socket when the input allows it, so they aren't compressed on the way out, but
+ * a gzipped copy next to a file, "name.gz", is sent instead of it to clients that accept gzip.
+ * @author djp3
+ *
+ */
 public class APIEvent_FileServer extends APIEvent implements Cloneable{
 	
 	private static transient volatile Logger log = null;
@@ -44,20 +73,76 @@ public class APIEvent_FileServer extends APIEvent implements Cloneable{
 	}
 
 
+	/** Classpath resources up to this many bytes are kept in memory */
+	public static final int MAX_CACHED_RESOURCE_SIZE = 64 * 1024;
+	/** The most bytes of resources kept in memory by one file server */
+	public static final long MAX_CACHE_SIZE = 16 * 1024 * 1024;
+	
+	/* What's in memory for a resource and what it was made from */
+	private static final class CachedResource{
+		private final byte[] bytes;
+		private final long length;
+		private final long lastModified;
+		/* Keyed by the name of the encoding */
+		private final ConcurrentHashMap<String, byte[]> encoded = new ConcurrentHashMap<String, byte[]>(2);
+		
+		CachedResource(byte[] bytes, long length, long lastModified){
+			this.bytes = bytes;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+		
+		byte[] getEncoded(ContentEncoding encoding){
+			byte[] ret = encoded.get(encoding.getName());
+			if(ret == null){
+				/* Two threads may both do this, which is cheaper than making one wait */
+				ret = Compression.encode(encoding, bytes, 0, bytes.length);
+				encoded.put(encoding.getName(), ret);
+			}
+			return ret;
+		}
+	}
+	
+	private static Cache<String, CachedResource> makeCache(){
+		return CacheBuilder.newBuilder()
+				.maximumWeight(MAX_CACHE_SIZE)
+				.weigher(new Weigher<String, CachedResource>(){
+					@Override
+					public int weigh(String key, CachedResource value) {
+						/* Leave room for the compressed versions, which are smaller */
+						return 2 * value.bytes.length;
+					}
+				})
+				.build();
+	}
+
+
 	private Class<?> resourceBaseClass;
 	private String resourcePrefix;
+	private File rootDirectory;
+	/* Shared with any clones that handle requests for a subclass */
+	private Cache<String, CachedResource> cache = makeCache();
+	private Compression compression = new Compression();
 
 	/**
-	 * 
+	 * Serve resources from the classpath
 	 * @param resourceBaseClass, something like Globals.getGlobals().getClass(), which says which package to look in
 	 * @param resourcePrefix, something like "/www/" for finding the relevant files in the package
-	 * @param stripPrefix, a file path to remove from the beginning of the incoming request in case the web URL has a prefix that the file system does not
 	 */
 	public APIEvent_FileServer(Class<?> resourceBaseClass,String resourcePrefix){
 		super();
 		this.resourceBaseClass = resourceBaseClass;
 		this.resourcePrefix = resourcePrefix;
 	}
+	
+	/**
+	 * Serve files from a directory.  Nothing outside of the directory will be served.
+	 * @param rootDirectory
+	 */
+	public APIEvent_FileServer(File rootDirectory){
+		super();
+		setRootDirectory(rootDirectory);
+	}
 
 
 	public String getResourcePrefix() {
@@ -76,6 +161,43 @@ public class APIEvent_FileServer extends APIEvent implements Cloneable{
 	public void setResourceBaseClass(Class<?> resourceBaseClass) {
 		this.resourceBaseClass = resourceBaseClass;
 	}
+	
+	/**
+	 * @return the directory files are served from, or null if they come from the classpath
+	 */
+	public File getRootDirectory() {
+		return rootDirectory;
+	}
+	
+	public void setRootDirectory(File rootDirectory) {
+		if(rootDirectory == null){
+			this.rootDirectory = null;
+			return;
+		}
+		if(!rootDirectory.isDirectory()){
+			throw new IllegalArgumentException("Not a directory: "+rootDirectory);
+		}
+		try {
+			this.rootDirectory = rootDirectory.getCanonicalFile();
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Unable to resolve "+rootDirectory+"\n"+e);
+		}
+	}
+
+	
+	/**
+	 * @return how what is served may be compressed
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression compression) {
+		if(compression == null){
+			throw new IllegalArgumentException("compression can't be null, disable it instead");
+		}
+		this.compression = compression;
+	}
 
 	
 	@Override
@@ -86,6 +208,9 @@ public class APIEvent_FileServer extends APIEvent implements Cloneable{
 			super.set(incoming);
 			this.setResourceBaseClass(incoming.getResourceBaseClass());
 			this.setResourcePrefix(incoming.getResourcePrefix());
+			this.rootDirectory = incoming.getRootDirectory();
+			this.cache = incoming.cache;
+			this.compression = incoming.getCompression();
 		}
 		else{
 			getLog().error(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
@@ -124,78 +249,301 @@ public class APIEvent_FileServer extends APIEvent implements Cloneable{
 	
 	
 	
-	@Override
-	public APIEventResult onEvent() {
-		APIEventResult response = null;
-		
-		response = getOutput().makeOutputChannelResponse();
-
-		String body = null;
+	private static APIEventResult.DataType dataTypeOf(String name){
+		if(name.endsWith(".css")){
+			return APIEventResult.DataType.CSS;
+		}
+		else if(name.endsWith(".png")){
+			return APIEventResult.DataType.PNG;
+		}
+		else if(name.endsWith(".js")){
+			return APIEventResult.DataType.JAVASCRIPT;
+		}else{
+			return APIEventResult.DataType.HTML;
+		}
+	}
+	
+	
+	protected static String makeETag(long length, long lastModified){
+		return "\""+Long.toHexString(length)+"-"+Long.toHexString(lastModified)+"\"";
+	}
+	
+	/**
+	 * @param encoding null for the unencoded file
+	 * @return an ETag that tells each encoding of the same file apart
+	 */
+	protected static String makeETag(long length, long lastModified, ContentEncoding encoding){
+		if(encoding == null){
+			return makeETag(length, lastModified);
+		}
+		return "\""+Long.toHexString(length)+"-"+Long.toHexString(lastModified)+"-"+encoding.getName()+"\"";
+	}
+	
+	
+	/**
+	 * Pick the encoding to send a file in
+	 * @param length the unencoded length of the file
+	 * @return the encoding, null to send it as is
+	 */
+	private ContentEncoding chooseEncoding(Request request, APIEventResult response, APIEventResult.DataType dataType, long length){
+		if(!compression.isCompressible(dataType)){
+			return null;
+		}
+		if(response instanceof APIEventResult_HTTP){
+			((APIEventResult_HTTP) response).setHttpHeader("Vary", "Accept-Encoding");
+		}
+		if(!compression.shouldCompress(dataType, length)){
+			return null;
+		}
+		return compression.negotiate(request.getHeader("Accept-Encoding"));
+	}
+	
+	
+	private static void setContentEncoding(APIEventResult response, ContentEncoding encoding){
+		if((encoding != null) && (response instanceof APIEventResult_HTTP)){
+			((APIEventResult_HTTP) response).setHttpHeader("Content-Encoding", encoding.getName());
+		}
+	}
+	
+	
+	/**
+	 * Put the validators on the response and check them against the request's conditional headers
+	 * @param encoding what the body will be sent in, null for nothing
+	 * @return true if the client's copy is current
+	 */
+	private static boolean notModified(Request request, APIEventResult response, long length, long lastModified, ContentEncoding encoding){
+		String eTag = makeETag(length, lastModified, encoding);
+		if(response instanceof APIEventResult_HTTP){
+			APIEventResult_HTTP r = (APIEventResult_HTTP) response;
+			r.setHttpHeader("ETag", eTag);
+			if(lastModified > 0){
+				r.setHttpHeader("Last-Modified", DateUtils.formatDate(new Date(lastModified)));
+			}
+		}
 		
-		InputStream ios = null;
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch != null){
+			for(String tag:ifNoneMatch.split(",")){
+				tag = tag.trim();
+				if(tag.startsWith("W/")){
+					tag = tag.substring(2);
+				}
+				if(tag.equals(eTag) || tag.equals("*")){
+					return true;
+				}
+			}
+			/* If-None-Match wins over If-Modified-Since */
+			return false;
+		}
 		
-		String cl = getRequest().getCommandLine();
-		String c = getRequest().getCommand();
-		String resource = null;
+		String ifModifiedSince = request.getHeader("If-Modified-Since");
+		if((ifModifiedSince != null) && (lastModified > 0)){
+			Date since = DateUtils.parseDate(ifModifiedSince);
+			/* HTTP dates only go down to the second */
+			return (since != null) && ((lastModified / 1000) <= (since.getTime() / 1000));
+		}
+		return false;
+	}
+	
+	
+	/**
+	 * @return the part of the command line that names the file
+	 */
+	private static String getPath(Request request){
+		String cl = request.getCommandLine();
+		String c = request.getCommand();
 		if(cl == null) {
-			resource = resourcePrefix+"/";
+			return "/";
 		}
 		else if (c == null) {
-			resource = resourcePrefix+cl;
+			return cl;
+		}
+		else if(cl.startsWith(c)){
+			if( c.equals("/")) {
+				return "/"+cl.substring(c.length());
+			}
+			else {
+				return cl.substring(c.length());
+			}
 		}
 		else {
-			if(cl.startsWith(c)){
-				if( c.equals("/")) {
-					resource = resourcePrefix+"/"+cl.substring(c.length());
+			//Who knows what to do in this case...
+			return cl;
+		}
+	}
+	
+	
+	/**
+	 * @return the file in the root directory named by path, or null if it would be outside the root directory
+	 */
+	private File resolve(String path) throws IOException{
+		File file = new File(rootDirectory, path).getCanonicalFile();
+		String root = rootDirectory.getPath();
+		if(!file.getPath().startsWith(root.endsWith(File.separator) ? root : root+File.separator)){
+			return null;
+		}
+		return file;
+	}
+	
+	
+	private void serveFile(Request request, APIEventResult response, String path) throws IOException{
+		File file = resolve(path);
+		if((file == null) || !file.isFile()){
+			response.setDataType(APIEventResult.DataType.HTML);
+			response.setResponseBody("Resource not found:"+path);
+			response.setStatus(APIEventResult.Status.OK);
+			return;
+		}
+		
+		long length = file.length();
+		long lastModified = file.lastModified();
+		APIEventResult.DataType dataType = dataTypeOf(file.getName());
+		
+		ContentEncoding encoding = chooseEncoding(request, response, dataType, length);
+		File precompressed = null;
+		if((encoding != null) && "gzip".equals(encoding.getName())){
+			precompressed = new File(file.getPath()+".gz");
+			/* A stale copy is worse than none */
+			if(!precompressed.isFile() || (precompressed.lastModified() < lastModified)){
+				precompressed = null;
+			}
+		}
+		if(precompressed == null){
+			encoding = null;
+		}
+		
+		if(notModified(request, response, length, lastModified, encoding)){
+			response.setStatus(APIEventResult.Status.NOT_MODIFIED);
+			return;
+		}
+		response.setDataType(dataType);
+		if(precompressed != null){
+			setContentEncoding(response, encoding);
+			response.setResponseFile(precompressed, 0, precompressed.length());
+		}
+		else{
+			response.setResponseFile(file, 0, length);
+		}
+		response.setStatus(APIEventResult.Status.OK);
+	}
+	
+	
+	private void serveResource(Request request, APIEventResult response, String resource) throws IOException{
+		URL url = resourceBaseClass.getResource(resource);
+		
+		/* Resources that are files can be checked without opening them */
+		File file = null;
+		if((url != null) && "file".equals(url.getProtocol())){
+			try {
+				file = new File(url.toURI());
+			} catch (URISyntaxException e) {
+				file = null;
+			}
+			if((file != null) && !file.isFile()){
+				url = null;
+			}
+		}
+		
+		if(url == null){
+			response.setDataType(APIEventResult.DataType.HTML);
+			response.setResponseBody("Resource not found:"+resource);
+			response.setStatus(APIEventResult.Status.OK);
+			return;
+		}
+		
+		URLConnection connection = null;
+		long length;
+		long lastModified;
+		if(file != null){
+			length = file.length();
+			lastModified = file.lastModified();
+		}
+		else{
+			connection = url.openConnection();
+			length = connection.getContentLengthLong();
+			lastModified = connection.getLastModified();
+		}
+		
+		APIEventResult.DataType dataType = dataTypeOf(resource);
+		boolean cacheable = (length >= 0) && (length <= MAX_CACHED_RESOURCE_SIZE);
+		/* Bigger resources are streamed, and compressed by the output if at all */
+		ContentEncoding encoding = cacheable ? chooseEncoding(request, response, dataType, length) : null;
+		
+		if(notModified(request, response, length, lastModified, encoding)){
+			response.setStatus(APIEventResult.Status.NOT_MODIFIED);
+			return;
+		}
+		response.setDataType(dataType);
+		response.setStatus(APIEventResult.Status.OK);
+		
+		if(cacheable){
+			CachedResource cached = cache.getIfPresent(resource);
+			if((cached == null) || (cached.length != length) || (cached.lastModified != lastModified)){
+				byte[] bytes = null;
+				if(file != null){
+					bytes = Files.readAllBytes(file.toPath());
 				}
-				else {
-					resource = resourcePrefix+cl.substring(c.length());
+				else{
+					try(InputStream ios = connection.getInputStream()){
+						bytes = IOUtils.toByteArray(ios);
+					}
 				}
+				cached = new CachedResource(bytes, length, lastModified);
+				cache.put(resource, cached);
 			}
-			else {
-				//Who knows what to do in this case...
-				resource = resourcePrefix+cl;
+			if(encoding != null){
+				setContentEncoding(response, encoding);
+				response.setResponseBytes(cached.getEncoded(encoding));
+			}
+			else{
+				response.setResponseBytes(cached.bytes);
 			}
 		}
-		getLog().debug("resource Prefix=\""+resourcePrefix+"\" command line = \""+cl+"\" command = \""+c+"\" result = \""+resource+"\"");
+		else if(file != null){
+			response.setResponseFile(file, 0, length);
+		}
+		else{
+			/* The output closes the stream once it has been sent */
+			response.setResponseStream(connection.getInputStream(), length);
+		}
+	}
+	
+	
+	/**
+	 * Everything a request needs is passed down to the helpers, so the registered event serves it directly
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		if(getClass() != APIEvent_FileServer.class){
+			return super.respond(request, output);
+		}
+		return answer(request, output);
+	}
+	
+	
+	@Override
+	public APIEventResult onEvent() {
+		return answer(getRequest(), getOutput());
+	}
+	
+	
+	private APIEventResult answer(Request request, Output output) {
+		APIEventResult response = null;
+		
+		response = output.makeOutputChannelResponse();
 		
-		ios = resourceBaseClass.getResourceAsStream(resource);
+		String path = getPath(request);
+		getLog().debug("resource Prefix=\""+resourcePrefix+"\" root=\""+rootDirectory+"\" command line = \""+request.getCommandLine()+"\" command = \""+request.getCommand()+"\" result = \""+path+"\"");
 		
 		try{
-			if(ios != null){
-				if(getRequest().getCommandLine().endsWith(".css")){
-					response.setDataType(APIEventResult.DataType.CSS);
-					body = convertStreamToString(ios);
-				}
-				else if(getRequest().getCommandLine().endsWith(".png")){
-					response.setDataType(APIEventResult.DataType.PNG);
-					body = IOUtils.toString(ios);
-				}
-				else if(getRequest().getCommandLine().endsWith(".js")){
-					response.setDataType(APIEventResult.DataType.JAVASCRIPT);
-					body = convertStreamToString(ios);
-				}else{
-					response.setDataType(APIEventResult.DataType.HTML);
-					body = convertStreamToString(ios);
-				}
+			if(rootDirectory != null){
+				serveFile(request, response, path);
 			}
 			else{
-				response.setDataType(APIEventResult.DataType.HTML);
-				body = ("Resource not found:"+resource);
+				serveResource(request, response, resourcePrefix+path);
 			}
-			response.setStatus(APIEventResult.Status.OK);
-			response.setResponseBody(body);
-			
 		} catch (IOException e) {
-			getLog().error("Problem serving up content:"+getRequest().getCommandLine()+"\n"+e);
-		}finally{
-			try {
-				if(ios != null){
-					ios.close();
-					ios = null;
-				}
-			} catch (IOException e) {
-			}
+			getLog().error("Problem serving up content:"+request.getCommandLine()+"\n"+e);
 		}
 		
 		return response;
@@ -212,6 +560,8 @@ public class APIEvent_FileServer extends APIEvent implements Cloneable{
 						.hashCode());
 		result = prime * result
 				+ ((resourcePrefix == null) ? 0 : resourcePrefix.hashCode());
+		result = prime * result
+				+ ((rootDirectory == null) ? 0 : rootDirectory.hashCode());
 		return result;
 	}
 
@@ -242,6 +592,13 @@ public class APIEvent_FileServer extends APIEvent implements Cloneable{
 		} else if (!resourcePrefix.equals(other.resourcePrefix)) {
 			return false;
 		}
+		if (rootDirectory == null) {
+			if (other.rootDirectory != null) {
+				return false;
+			}
+		} else if (!rootDirectory.equals(other.rootDirectory)) {
+			return false;
+		}
 		return true;
 	}
 
@@ -0,0 +1,114 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.api;
+
+import java.security.InvalidParameterException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.luci.utility.webserver.event.Event;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * Puts an {@link APIHandler} in the API Registry.  Requests are passed straight to the handler,
+ * this event is never cloned per request.
+ * @author djp3
+ *
+ */
+public class APIEvent_Handler extends APIEvent{
+	
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(APIEvent_Handler.class);
+		}
+		return log;
+	}
+	
+	private APIHandler handler;
+	
+	public APIEvent_Handler(APIHandler handler){
+		super();
+		setHandler(handler);
+	}
+	
+	public APIHandler getHandler() {
+		return handler;
+	}
+
+	public void setHandler(APIHandler handler) {
+		if(handler == null){
+			throw new IllegalArgumentException("Handler can't be null");
+		}
+		this.handler = handler;
+	}
+	
+	@Override
+	public void set(Event _incoming) {
+		APIEvent_Handler incoming = null;
+		if(_incoming instanceof APIEvent_Handler){
+			incoming = (APIEvent_Handler) _incoming;
+			super.set(incoming);
+			this.setHandler(incoming.getHandler());
+		}
+		else{
+			getLog().error(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
+			throw new InvalidParameterException(ERROR_SET_ENCOUNTERED_TYPE_MISMATCH+", incoming:"+_incoming.getClass().getName()+", this:"+this.getClass().getName());
+		}
+	}
+	
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		return handler.handle(request, output);
+	}
+	
+	@Override
+	public APIEventResult onEvent() {
+		return handler.handle(getRequest(), getOutput());
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + handler.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof APIEvent_Handler)) {
+			return false;
+		}
+		APIEvent_Handler other = (APIEvent_Handler) obj;
+		return handler.equals(other.handler);
+	}
+}
@@ -25,14 +25,14 @@ import java.security.InvalidParameterException;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import net.minidev.json.JSONArray;
-import net.minidev.json.JSONObject;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.JSONWriter;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 public class APIEvent_ParameterReflection extends APIEvent implements Cloneable{
 	
@@ -75,26 +75,36 @@ public class APIEvent_ParameterReflection extends APIEvent implements Cloneable{
 	 */
 	@Override
 	public APIEventResult onEvent() {
-		APIEventResult response = null;
-		
-		response = getOutput().makeOutputChannelResponse();
-		
-		JSONObject ret = buildResponseSkeleton();
-		
-		JSONObject parameters = new JSONObject();
+		return answer(getRequest(), getOutput());
+	}
+	
+	
+	/**
+	 * Reflecting the parameters needs nothing but the request, so the registered event does it itself
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		if(getClass() != APIEvent_ParameterReflection.class){
+			return super.respond(request, output);
+		}
+		return answer(request, output);
+	}
+	
+	
+	private APIEventResult answer(Request request, Output output) {
+		JSONWriter w = beginResponse(request);
 		
-		for(Entry<String, Set<String>> e:getRequest().getParameters().entrySet()){
-			JSONArray array = new JSONArray();
+		w.name("parameters").beginObject();
+		for(Entry<String, Set<String>> e:request.getParameters().entrySet()){
+			w.name(e.getKey()).beginArray();
 			for(String s:e.getValue()){
-				array.add(s);
+				w.value(s);
 			}
-			parameters.put(e.getKey(), array);
+			w.endArray();
 		}
-		ret.put("parameters", parameters);
+		w.endObject();
 		
-		response.setStatus(APIEventResult.Status.OK);
-		response.setDataType(APIEventResult.DataType.JSON);
-		response.setResponseBody(wrapCallback(getRequest().getParameters(),ret.toString()));
+		APIEventResult response = finishResponse(w, output);
 		
 		getLog().info(this.getClass().getSimpleName()+" Executed");
 		return response;
@@ -22,14 +22,15 @@ package edu.uci.ics.luci.utility.webserver.event.api;
 
 import java.security.InvalidParameterException;
 
-import net.minidev.json.JSONObject;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.Quittable;
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.JSONWriter;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 public class APIEvent_Shutdown extends APIEvent { 
 	
@@ -78,20 +79,29 @@ public class APIEvent_Shutdown extends APIEvent {
 	
 
 	
+	/**
+	 * Quitting only needs the quittable, so the registered event does it rather than a clone
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		if(getClass() != APIEvent_Shutdown.class){
+			return super.respond(request, output);
+		}
+		return answer(request, output);
+	}
+	
+	
 	@Override
 	public APIEventResult onEvent() {
+		return answer(getRequest(), getOutput());
+	}
+	
+	
+	private APIEventResult answer(Request request, Output output) {
 		
-		APIEventResult response = null;
-		
-		response = getOutput().makeOutputChannelResponse();
-		
-		JSONObject ret = buildResponseSkeleton();
-			
-		ret.put("shutdown", "true");
-		
-		response.setStatus(APIEventResult.Status.OK);
-		response.setDataType(APIEventResult.DataType.JSON);
-		response.setResponseBody(wrapCallback(getRequest().getParameters(),ret.toString()));
+		JSONWriter w = beginResponse(request);
+		w.name("shutdown").value("true");
+		APIEventResult response = finishResponse(w, output);
 		
 		this.q.setQuitting(true);
 		
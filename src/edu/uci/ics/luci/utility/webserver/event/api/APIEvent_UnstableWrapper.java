@@ -60,13 +60,17 @@ public class APIEvent_UnstableWrapper extends APIEvent implements Cloneable {
 	@Override
 	public void setRequest(Request request){
 		super.setRequest(request);
-		wrapMe.setRequest(request);
+		if(wrapMe != null){
+			wrapMe.setRequest(request);
+		}
 	}
 	
 	@Override
 	public void setOutput(Output output){
 		super.setOutput(output);
-		wrapMe.setOutput(output);
+		if(wrapMe != null){
+			wrapMe.setOutput(output);
+		}
 	}
 
 
@@ -106,15 +110,38 @@ public class APIEvent_UnstableWrapper extends APIEvent implements Cloneable {
 	}
 
 	
+	/**
+	 * The wrapped event is cloned too, so that a clone's request and output don't leak into the original 
+	 */
 	@Override
 	public Object clone(){
-		return(super.clone());
+		APIEvent_UnstableWrapper ret = (APIEvent_UnstableWrapper) super.clone();
+		if((ret != null) && (wrapMe != null)){
+			ret.wrapMe = (APIEvent) wrapMe.clone();
+		}
+		return(ret);
+	}
+	
+	
+	/**
+	 * Nothing about a request is stored in this class so there is no need to clone it per request.
+	 * A response cache set on the wrapper is still checked first, by {@link #handle(Request, Output)}.
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		misbehave();
+		return(this.wrapMe.handle(request, output));
 	}
 	
 	
 	@Override
 	public APIEventResult onEvent() {
-		
+		misbehave();
+		return(this.wrapMe.onEvent());
+	}
+	
+	
+	private void misbehave(){
 		/* Wait a random amount of time simulating latency */
 		if(wait > 0) {
 			try {
@@ -127,9 +154,6 @@ public class APIEvent_UnstableWrapper extends APIEvent implements Cloneable {
 		if(random.nextDouble()<failRate){
 			throw new RuntimeException("Handler intentionally failed");
 		}
-		else{
-			return(this.wrapMe.onEvent());
-		}
 	}
 
 
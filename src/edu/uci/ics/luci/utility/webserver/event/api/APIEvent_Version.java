@@ -23,13 +23,14 @@ package edu.uci.ics.luci.utility.webserver.event.api;
 
 import java.security.InvalidParameterException;
 
-import net.minidev.json.JSONObject;
-
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.webserver.event.Event;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.JSONWriter;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 public class APIEvent_Version extends APIEvent implements Cloneable{
 	
@@ -41,6 +42,9 @@ public class APIEvent_Version extends APIEvent implements Cloneable{
 		return log;
 	}
 	
+	/* The answer only changes with the JSONP callback, or if the version is changed */
+	private static final long CACHE_TIME_TO_LIVE = 60 * 60 * 1000;
+	
 	private String aPIVersion = null;
 	
 	public String getAPIVersion(){
@@ -48,12 +52,20 @@ public class APIEvent_Version extends APIEvent implements Cloneable{
 	}
 	
 	public void setAPIVersion(String version){
+		boolean changed = (aPIVersion == null) ? (version != null) : !aPIVersion.equals(version);
 		aPIVersion = version;
+		if(changed && (getResponseCache() != null)){
+			getResponseCache().invalidateAll();
+		}
 	}
 	
 	public APIEvent_Version(String version) {
 		super();
 		setAPIVersion(version);
+		/* A subclass's answer needn't be the same for every request, so it has to ask for a cache itself */
+		if(getClass() == APIEvent_Version.class){
+			setResponseCache(new ResponseCache(CACHE_TIME_TO_LIVE, "callback"));
+		}
 	}
 	
 
@@ -78,20 +90,29 @@ public class APIEvent_Version extends APIEvent implements Cloneable{
 	
 	
 	
+	/**
+	 * Answer from the registered event itself, it only reads the version
+	 */
+	@Override
+	protected APIEventResult respond(Request request, Output output){
+		if(getClass() != APIEvent_Version.class){
+			return super.respond(request, output);
+		}
+		return answer(request, output);
+	}
+	
+	
 	@Override
 	public APIEventResult onEvent() {
+		return answer(getRequest(), getOutput());
+	}
+	
+	
+	private APIEventResult answer(Request request, Output output) {
 		
-		APIEventResult response = null;
-		
-		response = getOutput().makeOutputChannelResponse();
-		
-		JSONObject ret = buildResponseSkeleton();
-		
-		ret.put("version", getAPIVersion());
-		
-		response.setStatus(APIEventResult.Status.OK);
-		response.setDataType(APIEventResult.DataType.JSON);
-		response.setResponseBody(wrapCallback(getRequest().getParameters(),ret.toString()));
+		JSONWriter w = beginResponse(request);
+		w.name("version").value(getAPIVersion());
+		APIEventResult response = finishResponse(w, output);
 			
 		getLog().info("Version is "+getAPIVersion());
 		
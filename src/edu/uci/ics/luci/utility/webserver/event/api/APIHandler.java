@@ -0,0 +1,46 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.api;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * Handles requests for a command in the API Registry.
+ * 
+ * One instance is called by many threads at once and is never copied, so an implementation
+ * must not keep anything about a request in its fields.  Register one with
+ * {@link edu.uci.ics.luci.utility.webserver.WebServer#registerHandler(String, APIHandler)}.
+ * @author djp3
+ *
+ */
+public interface APIHandler {
+	
+	/**
+	 * @param request the request to answer
+	 * @param output where the answer will go, see {@link Output#makeOutputChannelResponse()}
+	 * @return the answer
+	 */
+	public APIEventResult handle(Request request, Output output);
+
+}
@@ -0,0 +1,239 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.api;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult_HTTP;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * Results of an {@link APIEvent} whose answer depends only on some of the request's parameters.  A request
+ * whose key has a stored result is answered from it without the event running, until the result is older
+ * than the time to live.
+ * 
+ * Only results with a String or bytes body are kept.  A String body of an OK result is stored as its UTF-8
+ * bytes so that it doesn't have to be encoded again.
+ * @author djp3
+ *
+ */
+public class ResponseCache {
+	
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+	public static final int DEFAULT_MAX_BODY = 64 * 1024;
+	
+	private final String[] keyParameters;
+	private final int maxBody;
+	private final Cache<String, Stored> cache;
+	
+	/**
+	 * @param timeToLive milliseconds a result is served for
+	 * @param keyParameters the request parameters the result depends on, none if it is always the same
+	 */
+	public ResponseCache(long timeToLive, String... keyParameters){
+		this(timeToLive, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BODY, keyParameters);
+	}
+	
+	/**
+	 * @param timeToLive milliseconds a result is served for
+	 * @param maxEntries how many results are kept, the least recently used go first
+	 * @param maxBody results with bodies bigger than this many bytes aren't kept
+	 * @param keyParameters the request parameters the result depends on, none if it is always the same
+	 */
+	public ResponseCache(long timeToLive, int maxEntries, int maxBody, String... keyParameters){
+		if(timeToLive <= 0){
+			throw new IllegalArgumentException("timeToLive must be positive: "+timeToLive);
+		}
+		if(maxEntries < 1){
+			throw new IllegalArgumentException("maxEntries must be at least 1: "+maxEntries);
+		}
+		if(maxBody < 0){
+			throw new IllegalArgumentException("maxBody can't be negative: "+maxBody);
+		}
+		if(keyParameters == null){
+			throw new IllegalArgumentException("keyParameters can't be null, leave them out instead");
+		}
+		this.keyParameters = keyParameters.clone();
+		/* So that the same parameters in a different order make the same key */
+		Arrays.sort(this.keyParameters);
+		this.maxBody = maxBody;
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(maxEntries)
+				.expireAfterWrite(timeToLive, TimeUnit.MILLISECONDS)
+				.recordStats()
+				.build();
+	}
+	
+	public String[] getKeyParameters(){
+		return keyParameters.clone();
+	}
+	
+	/**
+	 * @param request
+	 * @return the values of the key parameters in request, which two requests share if they get the same result
+	 */
+	public String getKey(Request request){
+		if(keyParameters.length == 0){
+			return "";
+		}
+		Map<String, Set<String>> parameters = request.getParameters();
+		StringBuilder key = new StringBuilder();
+		for(String name: keyParameters){
+			Set<String> values = (parameters == null) ? null : parameters.get(name);
+			if(values == null){
+				/* Missing isn't the same as empty */
+				key.append('\u0001');
+			}
+			else{
+				List<String> sorted = new ArrayList<String>(values.size());
+				for(String v: values){
+					sorted.add((v == null) ? "" : v);
+				}
+				Collections.sort(sorted);
+				for(String v: sorted){
+					key.append(v).append('\u0002');
+				}
+			}
+			key.append('\u0000');
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * @param request
+	 * @param output
+	 * @return a result for request made from a stored one, or null if there isn't one
+	 */
+	public APIEventResult get(Request request, Output output){
+		Stored stored = cache.getIfPresent(getKey(request));
+		if(stored == null){
+			return null;
+		}
+		APIEventResult ret = output.makeOutputChannelResponse();
+		ret.setStatus(stored.status);
+		ret.setDataType(stored.dataType);
+		if(stored.string != null){
+			ret.setResponseBody(stored.string);
+		}
+		else{
+			ret.setResponseBytes(ByteBuffer.wrap(stored.bytes));
+		}
+		if((stored.headers != null) && (ret instanceof APIEventResult_HTTP)){
+			((APIEventResult_HTTP) ret).updateHttpHeaders(stored.headers);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Keep result for the requests that share request's key, if it can be kept
+	 * @param request
+	 * @param result
+	 * @return true if it was kept
+	 */
+	public boolean put(Request request, APIEventResult result){
+		if((result == null) || (result.getStatus() == null) || !result.hasResponseBody()){
+			return false;
+		}
+		
+		String string = null;
+		byte[] bytes = null;
+		switch(result.getBodyType()){
+			case STRING:
+				if(result.getStatus() == APIEventResult.Status.OK){
+					bytes = result.getResponseBody().getBytes(StandardCharsets.UTF_8);
+				}
+				else{
+					/* Other statuses, like PROXY, use the String itself */
+					string = result.getResponseBody();
+				}
+				break;
+			case BYTES:
+				ByteBuffer b = result.getResponseBytes().duplicate();
+				bytes = new byte[b.remaining()];
+				b.get(bytes);
+				break;
+			default:
+				/* Files, streams and events are read as they are sent */
+				return false;
+		}
+		if(((bytes != null) && (bytes.length > maxBody)) || ((string != null) && (string.length() > maxBody))){
+			return false;
+		}
+		
+		Map<String, Set<String>> headers = null;
+		if((result instanceof APIEventResult_HTTP) && ((APIEventResult_HTTP) result).hasHttpHeaders()){
+			headers = new HashMap<String, Set<String>>();
+			for(Entry<String, Set<String>> e: ((APIEventResult_HTTP) result).getHttpHeaders().entrySet()){
+				headers.put(e.getKey(), new HashSet<String>(e.getValue()));
+			}
+		}
+		
+		cache.put(getKey(request), new Stored(result.getStatus(), result.getDataType(), string, bytes, headers));
+		return true;
+	}
+	
+	public void invalidateAll(){
+		cache.invalidateAll();
+	}
+	
+	public long size(){
+		return cache.size();
+	}
+	
+	public CacheStats getCacheStats(){
+		return cache.stats();
+	}
+	
+	
+	private static class Stored{
+		final APIEventResult.Status status;
+		final APIEventResult.DataType dataType;
+		final String string;
+		final byte[] bytes;
+		final Map<String, Set<String>> headers;
+		
+		Stored(APIEventResult.Status status, APIEventResult.DataType dataType, String string, byte[] bytes, Map<String, Set<String>> headers){
+			this.status = status;
+			this.dataType = dataType;
+			this.string = string;
+			this.bytes = bytes;
+			this.headers = headers;
+		}
+	}
+}
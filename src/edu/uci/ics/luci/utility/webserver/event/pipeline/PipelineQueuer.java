@@ -0,0 +1,124 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.lmax.disruptor.EventTranslatorTwoArg;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+
+import edu.uci.ics.luci.utility.Quittable;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * Publishes converted requests into a pipelined WebServer's ring buffer.
+ * @author djp3
+ *
+ */
+public class PipelineQueuer implements Quittable {
+
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog() {
+		if (log == null) {
+			log = LogManager.getLogger(PipelineQueuer.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	private final RingBuffer<PipelineSlot> ringBuffer;
+	private final Disruptor<PipelineSlot> disruptor;
+	
+	/** Quittable interface */
+	
+	private volatile boolean quitting = false;
+
+	@Override
+	public void setQuitting(boolean quitting) {
+		if (this.quitting && !quitting) {
+			getLog().warn("Already quitting, can't unquit");
+		} else {
+			if (quitting) {
+				this.quitting = quitting;
+				if (disruptor != null) {
+					disruptor.shutdown();
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isQuitting() {
+		return quitting;
+	}
+	
+
+	public PipelineQueuer(Disruptor<PipelineSlot> disruptor, RingBuffer<PipelineSlot> ringBuffer) {
+		
+		if (disruptor == null) {
+			getLog().fatal("disruptor can't be null");
+			throw new IllegalArgumentException("disruptor can't be null");
+		}
+		this.disruptor = disruptor;
+
+		if (ringBuffer == null) {
+			getLog().fatal("ringBuffer can't be null");
+			throw new IllegalArgumentException("ringBuffer can't be null");
+		}
+		this.ringBuffer = ringBuffer;
+	}
+
+	
+	private static final EventTranslatorTwoArg<PipelineSlot, Request, Output> TRANSLATOR = new EventTranslatorTwoArg<PipelineSlot, Request, Output>() {
+		public void translateTo(PipelineSlot slot, long sequence, Request request, Output output) {
+			slot.set(request, output);
+		}
+	};
+	
+
+	/**
+	 * @return how many more requests can be published before publishing has to wait
+	 */
+	public long getRemainingCapacity() {
+		return ringBuffer.remainingCapacity();
+	}
+	
+
+	/**
+	 * @param request a converted request
+	 * @param output where its response goes
+	 */
+	public void onData(Request request, Output output) {
+		if (!isQuitting()) {
+			ringBuffer.publishEvent(TRANSLATOR, request, output);
+		}
+		else{
+			if(output != null){
+				output.closeChannel();
+			}
+		}
+	}
+}
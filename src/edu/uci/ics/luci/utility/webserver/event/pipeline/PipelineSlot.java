@@ -0,0 +1,116 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+/**
+ * One entry in the ring buffer of a pipelined WebServer.  Each stage fills in its part and the
+ * next stage picks it up from the same slot, so a request is published once and nothing is
+ * re-wrapped between stages.  The respond stage clears the slot when it is done.
+ * @author djp3
+ *
+ */
+public class PipelineSlot {
+	
+	private Request request;
+	private Output output;
+	private boolean allowed;
+	private int retryAfter = -1;
+	private APIEvent handler;
+	private APIEventResult result;
+	
+	public Request getRequest() {
+		return request;
+	}
+
+	public void setRequest(Request request) {
+		this.request = request;
+	}
+
+	public Output getOutput() {
+		return output;
+	}
+
+	public void setOutput(Output output) {
+		this.output = output;
+	}
+
+	/**
+	 * @return true if the access control stage let this request through
+	 */
+	public boolean isAllowed() {
+		return allowed;
+	}
+
+	public void setAllowed(boolean allowed) {
+		this.allowed = allowed;
+	}
+
+	/**
+	 * @return seconds a client over its rate limit is told to wait, -1 if it wasn't over one
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return the registered APIEvent the route stage matched, null if nothing matched
+	 */
+	public APIEvent getHandler() {
+		return handler;
+	}
+
+	public void setHandler(APIEvent handler) {
+		this.handler = handler;
+	}
+
+	public APIEventResult getResult() {
+		return result;
+	}
+
+	public void setResult(APIEventResult result) {
+		this.result = result;
+	}
+	
+	public void set(Request request, Output output){
+		clear();
+		this.setRequest(request);
+		this.setOutput(output);
+	}
+	
+	public void clear(){
+		this.request = null;
+		this.output = null;
+		this.allowed = false;
+		this.retryAfter = -1;
+		this.handler = null;
+		this.result = null;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.lmax.disruptor.EventHandler;
+
+import edu.uci.ics.luci.utility.webserver.AccessControl;
+import edu.uci.ics.luci.utility.webserver.WebServer;
+
+/**
+ * First stage of the pipeline, decides whether the source of a request is allowed.  Every request goes
+ * through this one thread, so it never waits for a reverse lookup: a source whose names aren't known yet
+ * gets the access control's default verdict while they are looked up.
+ * @author djp3
+ *
+ */
+public class PipelineStage_AccessControl implements EventHandler<PipelineSlot> {
+
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog() {
+		if (log == null) {
+			log = LogManager.getLogger(PipelineStage_AccessControl.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	private final AccessControl accessControl;
+	private final WebServer webserver;
+
+	/**
+	 * @param accessControl
+	 * @param webserver whose route table finds the command a request's rate limit is counted against
+	 */
+	public PipelineStage_AccessControl(AccessControl accessControl, WebServer webserver) {
+		if(accessControl == null){
+			throw new IllegalArgumentException("Access Control can't be null");
+		}
+		if(webserver == null){
+			throw new IllegalArgumentException("WebServer can't be null");
+		}
+		this.accessControl = accessControl;
+		this.webserver = webserver;
+	}
+
+	@Override
+	public void onEvent(PipelineSlot slot, long sequence, boolean endOfBatch) {
+		if(slot.getRequest() == null){
+			return;
+		}
+		String source = slot.getRequest().getSource();
+		try{
+			slot.setAllowed(accessControl.allowSource(source, true, false, 0));
+		}
+		catch(RuntimeException e){
+			getLog().error(e);
+			slot.setAllowed(false);
+		}
+		if(!slot.isAllowed()){
+			getLog().warn("Server silently rejected request from " + source);
+		}
+		else if(!accessControl.getRateLimits().tryAcquire(source, slot.getRequest().getCommandLine(), webserver.getRouteTable())){
+			/* The respond stage sends the 429 */
+			slot.setAllowed(false);
+			slot.setRetryAfter(accessControl.getRateLimits().getRetryAfter());
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.lmax.disruptor.WorkHandler;
+
+
+/**
+ * Third stage of the pipeline.  Several of these run as a WorkerPool and each routed request is
+ * handled by exactly one of them.
+ * @author djp3
+ *
+ */
+public class PipelineStage_Handle implements WorkHandler<PipelineSlot> {
+
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog() {
+		if (log == null) {
+			log = LogManager.getLogger(PipelineStage_Handle.class);
+		}
+		return log;
+	}
+	/*******************************************/
+
+	@Override
+	public void onEvent(PipelineSlot slot) {
+		if(slot.getHandler() == null){
+			return;
+		}
+		try{
+			slot.setResult(slot.getHandler().handle(slot.getRequest(), slot.getOutput()));
+		}
+		catch(RuntimeException e){
+			getLog().error(e);
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.lmax.disruptor.WorkHandler;
+
+import edu.uci.ics.luci.utility.webserver.event.resultlistener.api.APIEventResultListener;
+
+/**
+ * Last stage of the pipeline, writes the response and releases the slot.  Runs as a WorkerPool
+ * so that one slow client doesn't hold up the responses to everyone else.  Requests over a rate
+ * limit get a 429.  Requests that were rejected, or that failed along the way, have their connections
+ * closed without a response just as they would have been without the pipeline.
+ * @author djp3
+ *
+ */
+public class PipelineStage_Respond implements WorkHandler<PipelineSlot> {
+
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog() {
+		if (log == null) {
+			log = LogManager.getLogger(PipelineStage_Respond.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	private final APIEventResultListener responder = new APIEventResultListener();
+
+	@Override
+	public void onEvent(PipelineSlot slot) {
+		try{
+			if(slot.getResult() != null){
+				responder.onFinish(slot.getResult());
+			}
+			else if((slot.getRetryAfter() >= 0) && (slot.getOutput() != null)){
+				slot.getOutput().send_TooManyRequests(slot.getRetryAfter());
+			}
+			else if(slot.getOutput() != null){
+				slot.getOutput().closeChannel();
+			}
+		}
+		catch(RuntimeException e){
+			getLog().error(e);
+		}
+		finally{
+			slot.clear();
+		}
+	}
+}
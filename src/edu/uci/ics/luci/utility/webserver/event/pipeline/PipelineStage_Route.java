@@ -0,0 +1,83 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.lmax.disruptor.EventHandler;
+
+import edu.uci.ics.luci.utility.webserver.WebServer;
+import edu.uci.ics.luci.utility.webserver.event.route.Route;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+
+/**
+ * Second stage of the pipeline, matches the command line of an allowed request against the
+ * WebServer's routes.  The routes are read live so updates to the API Registry take effect.
+ * @author djp3
+ *
+ */
+public class PipelineStage_Route implements EventHandler<PipelineSlot> {
+
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog() {
+		if (log == null) {
+			log = LogManager.getLogger(PipelineStage_Route.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	private final WebServer webserver;
+
+	public PipelineStage_Route(WebServer webserver) {
+		if(webserver == null){
+			throw new IllegalArgumentException("WebServer can't be null");
+		}
+		this.webserver = webserver;
+	}
+
+	@Override
+	public void onEvent(PipelineSlot slot, long sequence, boolean endOfBatch) {
+		if(!slot.isAllowed()){
+			return;
+		}
+		try{
+			RouteTable registry = webserver.getRouteTable();
+			Request request = slot.getRequest();
+			Route route = registry.match(request.getCommandLine());
+			String command = null;
+			if(route != null){
+				command = route.getCommand();
+				request.setPathParameters(route.getPathParameters(request.getCommandLine()));
+			}
+			request.setCommand(command);
+			slot.setHandler(registry.get(command));
+			getLog().info("request \""+command+"\"<-(\""+request.getCommandLine()+"\")");
+		}
+		catch(RuntimeException e){
+			getLog().error(e);
+		}
+	}
+}
@@ -1,17 +1,39 @@
 package edu.uci.ics.luci.utility.webserver.event.result.api;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 import edu.uci.ics.luci.utility.webserver.event.result.EventResult;
 import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.stream.Broadcaster;
+import edu.uci.ics.luci.utility.webserver.output.stream.StreamFormat;
 
 
 public class APIEventResult extends EventResult{
 	
-	public enum Status{OK, REDIRECT, PROXY, NOT_FOUND};
+	public enum Status{OK, REDIRECT, PROXY, NOT_FOUND, NOT_MODIFIED};
 	public enum DataType{JSON,HTML,CSS,PNG,JAVASCRIPT,PROXYSTRING};
+	/** Which of the ways of holding a response body is in use, setting one clears the others */
+	public enum BodyType{STRING, BYTES, FILE, STREAM, EVENTS};
 	
 	Status status = null;
 	DataType responseDataType = null;
+	BodyType bodyType = null;
 	String responseBody = null;
+	ByteBuffer responseBytes = null;
+	File responseFile = null;
+	long responseFileOffset = 0;
+	InputStream responseStream = null;
+	long responseLength = -1;
+	/* The writer whose pooled buffer responseBytes is in, if it is */
+	JSONWriter responseJSON = null;
+	/* An EVENTS body */
+	Broadcaster responseBroadcaster = null;
+	StreamFormat responseStreamFormat = null;
+	int responseMaxEvents = 0;
+	long responseTimeout = 0;
+	long responseLastSeen = Long.MAX_VALUE;
 	Output output = null;
 	
 	public APIEventResult(Status status, DataType responseDataType, String responseBody,Output output){
@@ -39,12 +61,218 @@ public class APIEventResult extends EventResult{
 	}
 	
 	
+	private void clearResponseBody(){
+		if(this.responseJSON != null){
+			JSONWriter j = this.responseJSON;
+			this.responseJSON = null;
+			j.release();
+		}
+		this.bodyType = null;
+		this.responseBody = null;
+		this.responseBytes = null;
+		this.responseFile = null;
+		this.responseFileOffset = 0;
+		this.responseStream = null;
+		this.responseLength = -1;
+		this.responseBroadcaster = null;
+		this.responseStreamFormat = null;
+		this.responseMaxEvents = 0;
+		this.responseTimeout = 0;
+		this.responseLastSeen = Long.MAX_VALUE;
+	}
+	
+	public BodyType getBodyType() {
+		return bodyType;
+	}
+	
+	/**
+	 * @return true if a body of any type has been set
+	 */
+	public boolean hasResponseBody() {
+		return (bodyType != null);
+	}
+	
+	/**
+	 * @return the body's length in bytes, or -1 if it isn't known until it has been sent. 
+	 * A String body's length depends on how it is encoded so it is -1 too.
+	 */
+	public long getResponseLength() {
+		return responseLength;
+	}
+	
+	/**
+	 * @return the body if it is a String, otherwise null
+	 */
 	public String getResponseBody() {
 		return responseBody;
 	}
 
 	public void setResponseBody(String responseBody) {
-		this.responseBody = responseBody;
+		clearResponseBody();
+		if(responseBody != null){
+			this.bodyType = BodyType.STRING;
+			this.responseBody = responseBody;
+		}
+	}
+	
+	/**
+	 * @return the body if it is bytes, otherwise null.  The bytes between position and limit are sent.
+	 */
+	public ByteBuffer getResponseBytes() {
+		return responseBytes;
+	}
+	
+	/**
+	 * The array is sent as is, it isn't copied
+	 * @param responseBytes
+	 */
+	public void setResponseBytes(byte[] responseBytes) {
+		setResponseBytes((responseBytes == null) ? null : ByteBuffer.wrap(responseBytes));
+	}
+	
+	/**
+	 * The bytes between position and limit are sent, the buffer isn't copied or modified
+	 * @param responseBytes
+	 */
+	public void setResponseBytes(ByteBuffer responseBytes) {
+		clearResponseBody();
+		if(responseBytes != null){
+			this.bodyType = BodyType.BYTES;
+			this.responseBytes = responseBytes;
+			this.responseLength = responseBytes.remaining();
+		}
+	}
+	
+	/**
+	 * Send what json wrote, straight from its buffer.  The body is BYTES and the buffer goes back to its pool
+	 * when {@link #release()} is called, which the output does once the body has been sent.
+	 * @param json a writer that is done, {@link JSONWriter#finish()} is called if it hasn't been
+	 */
+	public void setResponseJSON(JSONWriter json) {
+		if(json == null){
+			setResponseBytes((ByteBuffer) null);
+			return;
+		}
+		ByteBuffer b = json.finish();
+		setResponseBytes(b);
+		this.responseJSON = json;
+	}
+	
+	/**
+	 * Let go of a body that was borrowed from a pool.  The body can't be used after this.
+	 */
+	public void release() {
+		if(this.responseJSON != null){
+			clearResponseBody();
+		}
+	}
+	
+	/**
+	 * @return the file the body is taken from, otherwise null
+	 */
+	public File getResponseFile() {
+		return responseFile;
+	}
+	
+	public long getResponseFileOffset() {
+		return responseFileOffset;
+	}
+	
+	/**
+	 * Send a whole file as the body
+	 * @param responseFile
+	 */
+	public void setResponseFile(File responseFile) {
+		setResponseFile(responseFile, 0, (responseFile == null) ? 0 : responseFile.length());
+	}
+	
+	/**
+	 * Send part of a file as the body.  The file is read as it is sent.
+	 * @param responseFile
+	 * @param offset where in the file the body starts
+	 * @param length how many bytes of the file to send
+	 */
+	public void setResponseFile(File responseFile, long offset, long length) {
+		if((offset < 0) || (length < 0)){
+			throw new IllegalArgumentException("File region can't be negative: "+offset+", "+length);
+		}
+		clearResponseBody();
+		if(responseFile != null){
+			this.bodyType = BodyType.FILE;
+			this.responseFile = responseFile;
+			this.responseFileOffset = offset;
+			this.responseLength = length;
+		}
+	}
+	
+	/**
+	 * @return the stream the body is read from, otherwise null
+	 */
+	public InputStream getResponseStream() {
+		return responseStream;
+	}
+	
+	/**
+	 * The stream is read as the body is sent and then closed.
+	 * @param responseStream 
+	 * @param length how many bytes the stream holds, or -1 if that isn't known, in which case the body is sent in chunks
+	 */
+	public void setResponseStream(InputStream responseStream, long length) {
+		clearResponseBody();
+		if(responseStream != null){
+			this.bodyType = BodyType.STREAM;
+			this.responseStream = responseStream;
+			this.responseLength = (length < 0) ? -1 : length;
+		}
+	}
+
+	/**
+	 * @return where the events in the body come from, otherwise null
+	 */
+	public Broadcaster getResponseBroadcaster() {
+		return responseBroadcaster;
+	}
+	
+	public StreamFormat getResponseStreamFormat() {
+		return responseStreamFormat;
+	}
+	
+	public int getResponseMaxEvents() {
+		return responseMaxEvents;
+	}
+	
+	public long getResponseTimeout() {
+		return responseTimeout;
+	}
+	
+	public long getResponseLastSeen() {
+		return responseLastSeen;
+	}
+	
+	/**
+	 * Keep the connection open and send events as they are published, in chunks, until the stream ends
+	 * @param broadcaster where the events come from
+	 * @param format how they are written
+	 * @param maxEvents the stream ends after this many events, 0 for no limit.  1 makes it a long-poll.
+	 * @param timeout milliseconds after which the stream ends, 0 for never
+	 * @param lastSeen the id of the last event the client has, see {@link Broadcaster#subscribe(edu.uci.ics.luci.utility.webserver.output.stream.Subscription, long)}
+	 */
+	public void setResponseEvents(Broadcaster broadcaster, StreamFormat format, int maxEvents, long timeout, long lastSeen) {
+		if((maxEvents < 0) || (timeout < 0)){
+			throw new IllegalArgumentException("maxEvents and timeout can't be negative: "+maxEvents+", "+timeout);
+		}
+		clearResponseBody();
+		if(broadcaster != null){
+			if(format == null){
+				throw new IllegalArgumentException("format can't be null");
+			}
+			this.bodyType = BodyType.EVENTS;
+			this.responseBroadcaster = broadcaster;
+			this.responseStreamFormat = format;
+			this.responseMaxEvents = maxEvents;
+			this.responseTimeout = timeout;
+			this.responseLastSeen = lastSeen;
+		}
 	}
 
 	public Output getOutput() {
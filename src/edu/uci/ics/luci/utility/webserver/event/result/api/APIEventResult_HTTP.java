@@ -7,6 +7,7 @@ import java.util.Map.Entry;
 import java.util.Set;
 
 import org.apache.http.HttpStatus;
+import org.apache.http.protocol.HTTP;
 
 import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
@@ -20,57 +21,72 @@ public class APIEventResult_HTTP extends APIEventResult {
 		super(status, responseDataType, responseBody,output);
 	}
 
+	/*
+	 * The Content-Type of each DataType is made once and shared by every response
+	 */
+	private static final HeaderBlock CONTENT_TYPE_JSON = HeaderBlock.of(HTTP.CONTENT_TYPE, "application/json; charset=UTF-8");
+	private static final HeaderBlock CONTENT_TYPE_HTML = HeaderBlock.of(HTTP.CONTENT_TYPE, "text/html; charset=UTF-8");
+	private static final HeaderBlock CONTENT_TYPE_CSS = HeaderBlock.of(HTTP.CONTENT_TYPE, "text/css; charset=UTF-8");
+	private static final HeaderBlock CONTENT_TYPE_JS = HeaderBlock.of(HTTP.CONTENT_TYPE, "text/javascript; charset=UTF-8");
+	private static final HeaderBlock CONTENT_TYPE_PNG = HeaderBlock.of(HTTP.CONTENT_TYPE, "image/png");
+	
+	/**
+	 * @param dataType
+	 * @return the headers that describe a body of dataType, empty for null or PROXYSTRING
+	 */
+	public static HeaderBlock getContentTypeHeaderBlock(DataType dataType) {
+		if(dataType == null){
+			return HeaderBlock.EMPTY;
+		}
+		switch(dataType){
+			case JSON:
+				return CONTENT_TYPE_JSON;
+			case HTML:
+				return CONTENT_TYPE_HTML;
+			case CSS:
+				return CONTENT_TYPE_CSS;
+			case PNG:
+				return CONTENT_TYPE_PNG;
+			case JAVASCRIPT:
+				return CONTENT_TYPE_JS;
+			case PROXYSTRING:
+				//Don't do anything
+				return HeaderBlock.EMPTY;
+			default:
+				throw new IllegalArgumentException("Unhandled case: "
+						+ dataType.toString());
+		}
+	}
+
 	/*
 	 * Convenience functions that generate headers for various kinds of
 	 * responses
 	 */
 	public static Map<String, Set<String>> getContentTypeHeader_JSON() {
-		HashMap<String, Set<String>> ret = new HashMap<String, Set<String>>();
-		Set<String> set = new HashSet<String>();
-		set.add("application/json");
-		set.add("charset=UTF-8");
-		ret.put("Content-type", set);
-		return ret;
+		return CONTENT_TYPE_JSON.toMap();
 	}
 
 	public static HashMap<String, Set<String>> getContentTypeHeader_HTML() {
-		HashMap<String, Set<String>> ret = new HashMap<String, Set<String>>();
-		Set<String> set = new HashSet<String>();
-		set.add("text/html");
-		set.add("charset=UTF-8");
-		ret.put("Content-type", set);
-		return ret;
+		return CONTENT_TYPE_HTML.toMap();
 	}
 
 	public static HashMap<String, Set<String>> getContentTypeHeader_CSS() {
-		HashMap<String, Set<String>> ret = new HashMap<String, Set<String>>();
-		Set<String> set = new HashSet<String>();
-		set.add("text/css");
-		set.add("charset=UTF-8");
-		ret.put("Content-type", set);
-		return ret;
+		return CONTENT_TYPE_CSS.toMap();
 	}
 
 	public static HashMap<String, Set<String>> getContentTypeHeader_JS() {
-		HashMap<String, Set<String>> ret = new HashMap<String, Set<String>>();
-		Set<String> set = new HashSet<String>();
-		set.add("text/javascript");
-		set.add("charset=UTF-8");
-		ret.put("Content-type", set);
-		return ret;
+		return CONTENT_TYPE_JS.toMap();
 	}
 
 	public static HashMap<String, Set<String>> getContentTypeHeader_PNG() {
-		HashMap<String, Set<String>> ret = new HashMap<String, Set<String>>();
-		Set<String> set = new HashSet<String>();
-		set.add("image/png");
-		set.add("charset=UTF-8");
-		ret.put("Content-type", set);
-		return ret;
+		return CONTENT_TYPE_PNG.toMap();
 	}
 
+	/* No initializers, the super constructor sets these through setStatus and setDataType */
 	private int httpStatus;
-	private Map<String, Set<String>> httpHeaders = new HashMap<String, Set<String>>();
+	private HeaderBlock headerBlock;
+	/* Only made for responses that have headers of their own */
+	private Map<String, Set<String>> httpHeaders;
 
 	@Override
 	public void setStatus(Status status) {
@@ -86,6 +102,8 @@ public class APIEventResult_HTTP extends APIEventResult {
 				//setHttpStatus(HttpStatus.SC_USE_PROXY);
 			} else if (status.equals(APIEventResult.Status.NOT_FOUND)) {
 				setHttpStatus(HttpStatus.SC_NOT_FOUND);
+			} else if (status.equals(APIEventResult.Status.NOT_MODIFIED)) {
+				setHttpStatus(HttpStatus.SC_NOT_MODIFIED);
 			} else {
 				throw new IllegalArgumentException("Unhandled case: "
 						+ status.toString());
@@ -96,24 +114,14 @@ public class APIEventResult_HTTP extends APIEventResult {
 	@Override
 	public void setDataType(DataType dataType) {
 		super.setDataType(dataType);
-		if(dataType != null){
-			if (dataType.equals(APIEventResult.DataType.JSON)) {
-				updateHttpHeaders(getContentTypeHeader_JSON());
-			} else if (dataType.equals(APIEventResult.DataType.HTML)) {
-				updateHttpHeaders(getContentTypeHeader_HTML());
-			} else if (dataType.equals(APIEventResult.DataType.CSS)) {
-				updateHttpHeaders(getContentTypeHeader_CSS());
-			} else if (dataType.equals(APIEventResult.DataType.PNG)) {
-				updateHttpHeaders(getContentTypeHeader_PNG());
-			} else if (dataType.equals(APIEventResult.DataType.JAVASCRIPT)) {
-				updateHttpHeaders(getContentTypeHeader_JS());
-			} else if (dataType.equals(APIEventResult.DataType.PROXYSTRING)) {
-				//Don't do anything
-			} else {
-				throw new IllegalArgumentException("Unhandled case: "
-						+ dataType.toString());
-			}
-		}
+		this.headerBlock = getContentTypeHeaderBlock(dataType);
+	}
+	
+	/**
+	 * @return the shared headers that come with the DataType, never null
+	 */
+	public HeaderBlock getHeaderBlock() {
+		return (headerBlock == null) ? HeaderBlock.EMPTY : headerBlock;
 	}
 
 	public int getHttpStatus() {
@@ -124,14 +132,38 @@ public class APIEventResult_HTTP extends APIEventResult {
 		this.httpStatus = httpStatus;
 	}
 
+	/**
+	 * @return the headers particular to this response, the Content-Type is in {@link #getHeaderBlock()}
+	 */
 	public Map<String, Set<String>> getHttpHeaders() {
+		if(httpHeaders == null){
+			httpHeaders = new HashMap<String, Set<String>>();
+		}
 		return httpHeaders;
 	}
+	
+	/**
+	 * @return true if {@link #getHttpHeaders()} has anything in it, without making it
+	 */
+	public boolean hasHttpHeaders() {
+		return (httpHeaders != null) && !httpHeaders.isEmpty();
+	}
 
 	public void setHttpHeaders(Map<String, Set<String>> httpHeaders) {
 		this.httpHeaders = httpHeaders;
 	}
 
+	/**
+	 * Replace any values of a header with a single value
+	 * @param name
+	 * @param value
+	 */
+	public void setHttpHeader(String name, String value) {
+		Set<String> set = new HashSet<String>();
+		set.add(value);
+		getHttpHeaders().put(name, set);
+	}
+
 	public void updateHttpHeaders(Map<String, Set<String>> headers) {
 		for (Entry<String, Set<String>> e : headers.entrySet()) {
 			Set<String> set = null;
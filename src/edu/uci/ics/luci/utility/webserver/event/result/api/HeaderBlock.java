@@ -0,0 +1,139 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.result.api;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.HttpMessage;
+import org.apache.http.message.BufferedHeader;
+import org.apache.http.util.CharArrayBuffer;
+
+/**
+ * An immutable, ordered set of response headers made once and shared by every response that needs them.
+ * The headers are already in their wire form, so httpcore copies them out without formatting them again.
+ * @author djp3
+ *
+ */
+public final class HeaderBlock {
+	
+	public static final HeaderBlock EMPTY = new HeaderBlock(new Header[0]);
+	
+	private final Header[] headers;
+	
+	private HeaderBlock(Header[] headers){
+		this.headers = headers;
+	}
+	
+	/**
+	 * @param name
+	 * @param value
+	 * @return a single header already formatted for the wire
+	 */
+	public static Header header(String name, String value){
+		if((name == null) || name.isEmpty()){
+			throw new IllegalArgumentException("Header name can't be empty");
+		}
+		if(value == null){
+			throw new IllegalArgumentException("Header value can't be null: "+name);
+		}
+		CharArrayBuffer buffer = new CharArrayBuffer(name.length() + 2 + value.length());
+		buffer.append(name);
+		buffer.append(": ");
+		buffer.append(value);
+		return new BufferedHeader(buffer);
+	}
+	
+	/**
+	 * @param namesAndValues name, value, name, value...
+	 * @return the headers in the order given
+	 */
+	public static HeaderBlock of(String... namesAndValues){
+		if((namesAndValues.length % 2) != 0){
+			throw new IllegalArgumentException("Names and values have to come in pairs");
+		}
+		Header[] headers = new Header[namesAndValues.length / 2];
+		for(int i = 0; i < headers.length; i++){
+			headers[i] = header(namesAndValues[2 * i], namesAndValues[2 * i + 1]);
+		}
+		return new HeaderBlock(headers);
+	}
+	
+	public int size(){
+		return headers.length;
+	}
+	
+	public Header get(int i){
+		return headers[i];
+	}
+	
+	/**
+	 * @param name
+	 * @return the value of the first header called name, ignoring case, or null
+	 */
+	public String getValue(String name){
+		for(Header h: headers){
+			if(h.getName().equalsIgnoreCase(name)){
+				return h.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Add every header to message, the headers themselves are shared, not copied
+	 * @param message
+	 */
+	public void addTo(HttpMessage message){
+		for(Header h: headers){
+			message.addHeader(h);
+		}
+	}
+	
+	/**
+	 * @return a new, modifiable map of these headers, in the form of {@link APIEventResult_HTTP#getHttpHeaders()}
+	 */
+	public HashMap<String, Set<String>> toMap(){
+		HashMap<String, Set<String>> ret = new HashMap<String, Set<String>>();
+		for(Header h: headers){
+			Set<String> set = ret.get(h.getName());
+			if(set == null){
+				set = new HashSet<String>();
+				ret.put(h.getName(), set);
+			}
+			set.add(h.getValue());
+		}
+		return ret;
+	}
+	
+	@Override
+	public String toString(){
+		StringBuilder sb = new StringBuilder();
+		for(Header h: headers){
+			sb.append(h.toString());
+			sb.append("\r\n");
+		}
+		return sb.toString();
+	}
+}
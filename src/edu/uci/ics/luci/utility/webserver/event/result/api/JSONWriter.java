@@ -0,0 +1,498 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.result.api;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.minidev.json.JSONAware;
+
+/**
+ * Writes JSON as UTF-8 straight into a pooled buffer, which {@link APIEventResult#setResponseJSON(JSONWriter)}
+ * sends as it is.  No tree of JSONObjects, no String of the whole response and no copy to add a JSONP callback.
+ * 
+ * Commas and colons are put in as needed, e.g.
+ * <pre>
+ * JSONWriter w = JSONWriter.forParameters(request.getParameters());
+ * w.beginObject().name("error").value("false").name("errors").beginArray().endArray().endObject();
+ * result.setResponseJSON(w);
+ * </pre>
+ * @author djp3
+ *
+ */
+public class JSONWriter {
+	
+	private static final ResponseBufferPool DEFAULT_POOL = new ResponseBufferPool(4 * 1024, 256 * 1024, 4 * Runtime.getRuntime().availableProcessors());
+	
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+	
+	/* Beyond this a writer is assumed to be looping on itself */
+	private static final int MAX_DEPTH = 256;
+	
+	private final ResponseBufferPool pool;
+	private final String callback;
+	private byte[] buffer;
+	private int count = 0;
+	
+	/* For each open object or array, whether it has anything in it yet, and whether it is an object */
+	private boolean[] hasMembers = new boolean[8];
+	private boolean[] isObject = new boolean[8];
+	private int depth = 0;
+	private boolean afterName = false;
+	private boolean hasValue = false;
+	private boolean finished = false;
+	
+	public JSONWriter(){
+		this(null, DEFAULT_POOL);
+	}
+	
+	/**
+	 * @param callback JSONP function to wrap the JSON in, null for plain JSON
+	 */
+	public JSONWriter(String callback){
+		this(callback, DEFAULT_POOL);
+	}
+	
+	public JSONWriter(String callback, ResponseBufferPool pool){
+		if(pool == null){
+			throw new IllegalArgumentException("pool can't be null");
+		}
+		this.pool = pool;
+		this.callback = callback;
+		this.buffer = pool.borrow();
+		if(callback != null){
+			raw(callback);
+			write((byte) '(');
+		}
+	}
+	
+	/**
+	 * @param parameters of the request being answered
+	 * @return a writer that wraps its JSON in the JSONP callback the parameters ask for, if they do
+	 */
+	public static JSONWriter forParameters(Map<String, Set<String>> parameters){
+		return new JSONWriter(getCallback(parameters));
+	}
+	
+	/**
+	 * @param parameters
+	 * @return the function named by the "callback" parameter, "unspecifiedCallback" if it has no value, or null if it isn't there
+	 */
+	public static String getCallback(Map<String, Set<String>> parameters){
+		if(parameters == null){
+			return null;
+		}
+		Set<String> callback = parameters.get("callback");
+		if(callback == null){
+			return null;
+		}
+		for(String s:callback){
+			return s;
+		}
+		return "unspecifiedCallback";
+	}
+	
+	
+	public JSONWriter beginObject(){
+		return begin(true, '{');
+	}
+	
+	public JSONWriter endObject(){
+		return end(true, '}');
+	}
+	
+	public JSONWriter beginArray(){
+		return begin(false, '[');
+	}
+	
+	public JSONWriter endArray(){
+		return end(false, ']');
+	}
+	
+	private JSONWriter begin(boolean object, char c){
+		beforeValue();
+		if(depth == MAX_DEPTH){
+			throw new IllegalStateException("JSON nested more than "+MAX_DEPTH+" deep");
+		}
+		if(depth == hasMembers.length){
+			hasMembers = Arrays.copyOf(hasMembers, depth * 2);
+			isObject = Arrays.copyOf(isObject, depth * 2);
+		}
+		hasMembers[depth] = false;
+		isObject[depth] = object;
+		depth++;
+		write((byte) c);
+		return this;
+	}
+	
+	private JSONWriter end(boolean object, char c){
+		if((depth == 0) || (isObject[depth - 1] != object) || afterName){
+			throw new IllegalStateException("Nothing to end with "+c);
+		}
+		depth--;
+		write((byte) c);
+		return this;
+	}
+	
+	/**
+	 * @param name of the next member of the object being written
+	 */
+	public JSONWriter name(String name){
+		if(name == null){
+			throw new IllegalArgumentException("name can't be null");
+		}
+		if((depth == 0) || !isObject[depth - 1] || afterName){
+			throw new IllegalStateException("Not expecting a name: "+name);
+		}
+		if(hasMembers[depth - 1]){
+			write((byte) ',');
+		}
+		hasMembers[depth - 1] = true;
+		string(name);
+		write((byte) ':');
+		afterName = true;
+		return this;
+	}
+	
+	/**
+	 * Get ready for a value: it has to follow a name in an object, go in an array, or be the only top level value
+	 */
+	private void beforeValue(){
+		if(finished){
+			throw new IllegalStateException("Already finished");
+		}
+		if(depth == 0){
+			if(hasValue){
+				throw new IllegalStateException("Only one top level value can be written");
+			}
+			hasValue = true;
+		}
+		else if(isObject[depth - 1]){
+			if(!afterName){
+				throw new IllegalStateException("A value in an object needs a name first");
+			}
+			afterName = false;
+		}
+		else{
+			if(hasMembers[depth - 1]){
+				write((byte) ',');
+			}
+			hasMembers[depth - 1] = true;
+		}
+	}
+	
+	public JSONWriter value(String value){
+		beforeValue();
+		if(value == null){
+			write(NULL);
+		}
+		else{
+			string(value);
+		}
+		return this;
+	}
+	
+	public JSONWriter value(boolean value){
+		beforeValue();
+		write(value ? TRUE : FALSE);
+		return this;
+	}
+	
+	public JSONWriter value(long value){
+		beforeValue();
+		raw(Long.toString(value));
+		return this;
+	}
+	
+	/**
+	 * @param value NaN and the infinities have no JSON form and are written as null
+	 */
+	public JSONWriter value(double value){
+		beforeValue();
+		if(Double.isNaN(value) || Double.isInfinite(value)){
+			write(NULL);
+		}
+		else{
+			raw(Double.toString(value));
+		}
+		return this;
+	}
+	
+	public JSONWriter nullValue(){
+		beforeValue();
+		write(NULL);
+		return this;
+	}
+	
+	/**
+	 * Write any value that json-smart could: Strings, Numbers, Booleans, null, Maps, Iterables, arrays
+	 * and anything that is {@link JSONAware}.  Anything else is written as the String of its toString().
+	 * @param value
+	 */
+	public JSONWriter value(Object value){
+		if((value == null) || (value instanceof String)){
+			return value((String) value);
+		}
+		if(value instanceof Boolean){
+			return value(((Boolean) value).booleanValue());
+		}
+		if((value instanceof Integer) || (value instanceof Long) || (value instanceof Short) || (value instanceof Byte)
+				|| (value instanceof AtomicInteger) || (value instanceof AtomicLong)){
+			return value(((Number) value).longValue());
+		}
+		if((value instanceof Double) || (value instanceof Float)){
+			return value(((Number) value).doubleValue());
+		}
+		if((value instanceof BigInteger) || (value instanceof BigDecimal)){
+			beforeValue();
+			raw(value.toString());
+			return this;
+		}
+		if(value instanceof JSONAware){
+			return rawValue(((JSONAware) value).toJSONString());
+		}
+		if(value instanceof Map){
+			beginObject();
+			for(Entry<?, ?> e: ((Map<?, ?>) value).entrySet()){
+				name(String.valueOf(e.getKey()));
+				value(e.getValue());
+			}
+			return endObject();
+		}
+		if(value instanceof Iterable){
+			beginArray();
+			for(Object o: (Iterable<?>) value){
+				value(o);
+			}
+			return endArray();
+		}
+		if(value.getClass().isArray()){
+			beginArray();
+			int length = Array.getLength(value);
+			for(int i = 0; i < length; i++){
+				value(Array.get(value, i));
+			}
+			return endArray();
+		}
+		return value(value.toString());
+	}
+	
+	/**
+	 * @param json already serialized JSON, which is written as it is
+	 */
+	public JSONWriter rawValue(String json){
+		beforeValue();
+		raw(json);
+		return this;
+	}
+	
+	
+	/**
+	 * Close the JSONP callback, if there is one.  Nothing more can be written after this.
+	 * @return the bytes written, which are only good until {@link #release()}
+	 */
+	public ByteBuffer finish(){
+		if(!finished){
+			if((depth > 0) || afterName){
+				throw new IllegalStateException("Finished with "+depth+" objects or arrays still open");
+			}
+			if(callback != null){
+				write((byte) ')');
+			}
+			finished = true;
+		}
+		return ByteBuffer.wrap(buffer, 0, count);
+	}
+	
+	/**
+	 * @return how many bytes have been written
+	 */
+	public int size(){
+		return count;
+	}
+	
+	/**
+	 * Give the buffer back to the pool.  Nothing may use what {@link #finish()} returned after this.
+	 */
+	public void release(){
+		byte[] b = buffer;
+		if(b != null){
+			buffer = null;
+			count = 0;
+			finished = true;
+			pool.release(b);
+		}
+	}
+	
+	/**
+	 * @return what has been written so far
+	 */
+	@Override
+	public String toString(){
+		return (buffer == null) ? "" : new String(buffer, 0, count, StandardCharsets.UTF_8);
+	}
+	
+	
+	private void ensure(int more){
+		if(buffer == null){
+			throw new IllegalStateException("Already released");
+		}
+		int needed = count + more;
+		if(needed > buffer.length){
+			if(needed < 0){
+				throw new OutOfMemoryError("JSON response too large");
+			}
+			buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+		}
+	}
+	
+	private void write(byte b){
+		ensure(1);
+		buffer[count++] = b;
+	}
+	
+	private void write(byte[] b){
+		ensure(b.length);
+		System.arraycopy(b, 0, buffer, count, b.length);
+		count += b.length;
+	}
+	
+	/**
+	 * Write s as UTF-8, without quoting or escaping it
+	 */
+	private void raw(String s){
+		int length = s.length();
+		ensure(length * 3);
+		for(int i = 0; i < length; i++){
+			char c = s.charAt(i);
+			if(c < 0x80){
+				buffer[count++] = (byte) c;
+			}
+			else{
+				i = encode(s, i, c);
+			}
+		}
+	}
+	
+	/**
+	 * Write s as a quoted JSON string.  U+2028 and U+2029 are escaped too, since JavaScript doesn't allow them
+	 * in a string literal and JSONP responses are run as JavaScript.
+	 */
+	private void string(String s){
+		int length = s.length();
+		write((byte) '"');
+		for(int i = 0; i < length; i++){
+			/* Enough for an escape or a surrogate pair */
+			ensure(6);
+			char c = s.charAt(i);
+			if(c < 0x80){
+				if((c >= 0x20) && (c != '"') && (c != '\\')){
+					buffer[count++] = (byte) c;
+				}
+				else{
+					escape(c);
+				}
+			}
+			else if((c == '\u2028') || (c == '\u2029')){
+				escape(c);
+			}
+			else{
+				i = encode(s, i, c);
+			}
+		}
+		write((byte) '"');
+	}
+	
+	private void escape(char c){
+		buffer[count++] = '\\';
+		switch(c){
+			case '"':
+				buffer[count++] = '"';
+				break;
+			case '\\':
+				buffer[count++] = '\\';
+				break;
+			case '\n':
+				buffer[count++] = 'n';
+				break;
+			case '\r':
+				buffer[count++] = 'r';
+				break;
+			case '\t':
+				buffer[count++] = 't';
+				break;
+			case '\b':
+				buffer[count++] = 'b';
+				break;
+			case '\f':
+				buffer[count++] = 'f';
+				break;
+			default:
+				buffer[count++] = 'u';
+				buffer[count++] = HEX[(c >> 12) & 0xF];
+				buffer[count++] = HEX[(c >> 8) & 0xF];
+				buffer[count++] = HEX[(c >> 4) & 0xF];
+				buffer[count++] = HEX[c & 0xF];
+		}
+	}
+	
+	/**
+	 * Write a char that isn't ASCII as UTF-8.  Room for 3 bytes a char has already been made.
+	 * @return the index of the last char used, which is the next one for a surrogate pair
+	 */
+	private int encode(String s, int i, char c){
+		if(c < 0x800){
+			buffer[count++] = (byte) (0xC0 | (c >> 6));
+			buffer[count++] = (byte) (0x80 | (c & 0x3F));
+			return i;
+		}
+		if(Character.isHighSurrogate(c) && ((i + 1) < s.length()) && Character.isLowSurrogate(s.charAt(i + 1))){
+			int cp = Character.toCodePoint(c, s.charAt(i + 1));
+			buffer[count++] = (byte) (0xF0 | (cp >> 18));
+			buffer[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+			buffer[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+			buffer[count++] = (byte) (0x80 | (cp & 0x3F));
+			return i + 1;
+		}
+		if(Character.isSurrogate(c)){
+			/* Unpaired, as String.getBytes would */
+			buffer[count++] = '?';
+			return i;
+		}
+		buffer[count++] = (byte) (0xE0 | (c >> 12));
+		buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+		buffer[count++] = (byte) (0x80 | (c & 0x3F));
+		return i;
+	}
+}
@@ -0,0 +1,94 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.result.api;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the byte arrays that response bodies are written into for reuse, so that a body that is built
+ * in memory doesn't need a fresh array, and the copies made while it grows, on every response.
+ * @author djp3
+ *
+ */
+public class ResponseBufferPool {
+	
+	private final int initialSize;
+	private final int maxRetainedSize;
+	private final int capacity;
+	private final ConcurrentLinkedQueue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+	private final AtomicInteger size = new AtomicInteger(0);
+	
+	/**
+	 * @param initialSize the size of a new buffer
+	 * @param maxRetainedSize buffers that have grown bigger than this aren't kept
+	 * @param capacity the most idle buffers kept
+	 */
+	public ResponseBufferPool(int initialSize, int maxRetainedSize, int capacity){
+		if(initialSize < 1){
+			throw new IllegalArgumentException("initialSize must be at least 1: "+initialSize);
+		}
+		if(maxRetainedSize < initialSize){
+			throw new IllegalArgumentException("maxRetainedSize can't be less than initialSize: "+maxRetainedSize);
+		}
+		if(capacity < 1){
+			throw new IllegalArgumentException("capacity must be at least 1: "+capacity);
+		}
+		this.initialSize = initialSize;
+		this.maxRetainedSize = maxRetainedSize;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * @return a buffer of at least the initial size, which should be given back with {@link #release(byte[])}
+	 */
+	public byte[] borrow(){
+		byte[] b = pool.poll();
+		if(b == null){
+			return new byte[initialSize];
+		}
+		size.decrementAndGet();
+		return b;
+	}
+	
+	/**
+	 * @param b a buffer that nothing refers to any more
+	 */
+	public void release(byte[] b){
+		if((b == null) || (b.length < initialSize) || (b.length > maxRetainedSize)){
+			return;
+		}
+		if(size.incrementAndGet() <= capacity){
+			pool.offer(b);
+		}
+		else{
+			size.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * @return how many buffers are waiting to be reused
+	 */
+	public int getIdle(){
+		return size.get();
+	}
+}
@@ -69,7 +69,7 @@ public class APIEventResultListener extends EventResultListener {
 			Output output = result.getOutput();
 			try{
 				if (result.getStatus() == APIEventResult.Status.OK) {
-					if (result.getResponseBody() == null) {
+					if (!result.hasResponseBody()) {
 						errors.add("Request Handler returned null response to this request\n"
 								+ result.toString());
 						error = true;
@@ -82,8 +82,15 @@ public class APIEventResultListener extends EventResultListener {
 						jsonArray.addAll(errors);
 						result.setResponseBody(jsonArray.toString());
 					}
-					getLog().info("Sending back a response the wire:\n"+result.getResponseBody());
+					if(result.getBodyType() == APIEventResult.BodyType.STRING){
+						getLog().info("Sending back a response the wire:\n"+result.getResponseBody());
+					}
+					else{
+						getLog().info("Sending back a "+result.getBodyType()+" response the wire, length:"+result.getResponseLength());
+					}
 					output.send_OK(result);
+				} else if (result.getStatus() == APIEventResult.Status.NOT_MODIFIED) {
+					output.send_NotModified(result);
 				} else {
 					if (result.getStatus() == APIEventResult.Status.REDIRECT) {
 						output.send_Redirect(result);
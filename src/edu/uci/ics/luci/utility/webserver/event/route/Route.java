@@ -0,0 +1,101 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.route;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A command from the API Registry as it is stored in a {@link RouteTrie}.
+ * Segments of the form {name} are path parameters and match any non-empty segment.
+ * @author djp3
+ *
+ */
+public class Route {
+	
+	private final String command;
+	private final int segmentCount;
+	private final String[] parameterNames; /* indexed by segment, null where the segment is literal */
+	private final boolean hasParameters;
+	
+	Route(String command, String[] segments){
+		this.command = command;
+		this.segmentCount = segments.length;
+		this.parameterNames = new String[segments.length];
+		boolean p = false;
+		for(int i = 0; i < segments.length; i++){
+			if(isParameter(segments[i])){
+				parameterNames[i] = segments[i].substring(1, segments[i].length()-1);
+				p = true;
+			}
+		}
+		this.hasParameters = p;
+	}
+	
+	static boolean isParameter(String segment){
+		return (segment.length() > 2) && (segment.charAt(0) == '{') && (segment.charAt(segment.length()-1) == '}');
+	}
+	
+	/**
+	 * @return the key this route was registered under in the API Registry
+	 */
+	public String getCommand() {
+		return command;
+	}
+	
+	int getSegmentCount() {
+		return segmentCount;
+	}
+
+	public boolean hasParameters() {
+		return hasParameters;
+	}
+	
+	/**
+	 * @param commandLine a command line that this route matched
+	 * @return the values of this route's path parameters in commandLine, by name
+	 */
+	public Map<String,String> getPathParameters(String commandLine){
+		if(!hasParameters || (commandLine == null)){
+			return Collections.emptyMap();
+		}
+		Map<String,String> ret = new HashMap<String,String>();
+		int start = 0;
+		for(int i = 0; (i < parameterNames.length) && (start <= commandLine.length()); i++){
+			int end = commandLine.indexOf('/', start);
+			if(end < 0){
+				end = commandLine.length();
+			}
+			if(parameterNames[i] != null){
+				ret.put(parameterNames[i], commandLine.substring(start, end));
+			}
+			start = end + 1;
+		}
+		return ret;
+	}
+	
+	@Override
+	public String toString(){
+		return command;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.route;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+
+/**
+ * An immutable snapshot of an API Registry together with its compiled {@link RouteTrie} and a
+ * bounded, concurrent cache of the routes that command lines resolved to.
+ * 
+ * One table is shared by every dispatch, so it is never copied per request.  To change the registry
+ * build a new table, which also starts a new cache.
+ * @author djp3
+ *
+ */
+public class RouteTable extends AbstractMap<String,APIEvent> {
+	
+	public static final int DEFAULT_CACHE_SIZE = 1024;
+	
+	/* Guava caches don't hold nulls, so this stands in for a command line that matched nothing */
+	private static final Route NO_ROUTE = new Route("", new String[0]);
+	
+	private final Map<String, APIEvent> registry;
+	private final RouteTrie trie;
+	private final Cache<String, Route> cache;
+	
+	public RouteTable(Map<String, APIEvent> registry){
+		this(registry,DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * @param registry the registry to copy, it may have a null key for the default handler
+	 * @param cacheSize the most command lines to remember
+	 */
+	public RouteTable(Map<String, APIEvent> registry, int cacheSize){
+		if(registry == null){
+			throw new IllegalArgumentException("API Registry can't be null");
+		}
+		if(cacheSize < 1){
+			throw new IllegalArgumentException("cacheSize must be at least 1: "+cacheSize);
+		}
+		this.registry = Collections.unmodifiableMap(new HashMap<String, APIEvent>(registry));
+		this.trie = RouteTrie.compile(this.registry.keySet());
+		this.cache = CacheBuilder.newBuilder()
+				.maximumSize(cacheSize)
+				.concurrencyLevel(Runtime.getRuntime().availableProcessors())
+				.recordStats()
+				.build();
+	}
+	
+	/**
+	 * @param registry
+	 * @return registry if it is already a RouteTable, otherwise a new RouteTable of it
+	 */
+	public static RouteTable of(Map<String, APIEvent> registry){
+		if(registry instanceof RouteTable){
+			return (RouteTable) registry;
+		}
+		return new RouteTable(registry);
+	}
+	
+	public RouteTrie getTrie(){
+		return trie;
+	}
+	
+	/**
+	 * @param commandLine
+	 * @return the route that best matches commandLine, or null if nothing does
+	 */
+	public Route match(String commandLine){
+		if(commandLine == null){
+			return null;
+		}
+		Route route = cache.getIfPresent(commandLine);
+		if(route == null){
+			route = trie.match(commandLine);
+			cache.put(commandLine, (route == null) ? NO_ROUTE : route);
+		}
+		return (route == NO_ROUTE) ? null : route;
+	}
+	
+	/**
+	 * @param commandLine
+	 * @return the command in the registry that should handle commandLine, null meaning the default handler
+	 */
+	public String identifyCommand(String commandLine){
+		if(registry.containsKey(commandLine)){
+			return commandLine;
+		}
+		Route route = match(commandLine);
+		return (route == null) ? null : route.getCommand();
+	}
+	
+	/**
+	 * @return the hit and miss counts of the route cache since this table was built
+	 */
+	public CacheStats getCacheStats(){
+		return cache.stats();
+	}
+	
+	@Override
+	public APIEvent get(Object key){
+		return registry.get(key);
+	}
+	
+	@Override
+	public boolean containsKey(Object key){
+		return registry.containsKey(key);
+	}
+	
+	@Override
+	public int size(){
+		return registry.size();
+	}
+	
+	@Override
+	public Set<Entry<String, APIEvent>> entrySet() {
+		return registry.entrySet();
+	}
+}
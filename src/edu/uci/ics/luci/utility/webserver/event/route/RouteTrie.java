@@ -0,0 +1,209 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.route;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An immutable trie of the commands in an API Registry, keyed by the segments between slashes.
+ * 
+ * A command line matches the registered command that equals it exactly.  Failing that it matches the
+ * longest registered command that is followed by a '/' in the command line, and failing that "/" if it is
+ * registered and the command line starts with a '/'.  So with "/foo" registered, "/foo/bar" matches
+ * "/foo" but "/fooby" does not.
+ * 
+ * Matching is a single walk over the command line that doesn't allocate or lock, so one trie can be
+ * shared by every thread.  Build a new one when the registry changes.
+ * @author djp3
+ *
+ */
+public class RouteTrie {
+	
+	private static final class Node{
+		private final String[] segments;
+		private final Node[] children;
+		private final Node parameter;
+		private final Route route;
+		
+		Node(String[] segments, Node[] children, Node parameter, Route route){
+			this.segments = segments;
+			this.children = children;
+			this.parameter = parameter;
+			this.route = route;
+		}
+	}
+	
+	/* Only used while building */
+	private static final class Builder{
+		private final Map<String,Builder> children = new LinkedHashMap<String,Builder>();
+		private Builder parameter = null;
+		private Route route = null;
+		
+		Node build(){
+			String[] segments = new String[children.size()];
+			Node[] nodes = new Node[children.size()];
+			int i = 0;
+			for(Entry<String, Builder> e:children.entrySet()){
+				segments[i] = e.getKey();
+				nodes[i] = e.getValue().build();
+				i++;
+			}
+			return new Node(segments, nodes, (parameter == null) ? null : parameter.build(), route);
+		}
+	}
+	
+	private final Node root;
+	private final Route slash;
+	
+	private RouteTrie(Node root, Route slash){
+		this.root = root;
+		this.slash = slash;
+	}
+	
+	
+	/**
+	 * @param commands the keys of an API Registry, a null key is ignored
+	 * @return a trie that matches those commands
+	 */
+	public static RouteTrie compile(Collection<String> commands){
+		Builder root = new Builder();
+		Route slash = null;
+		for(String command:commands){
+			if(command == null){
+				continue;
+			}
+			String[] segments = split(command);
+			Route route = new Route(command, segments);
+			if(command.equals("/")){
+				slash = route;
+			}
+			Builder b = root;
+			for(String segment:segments){
+				if(Route.isParameter(segment)){
+					if(b.parameter == null){
+						b.parameter = new Builder();
+					}
+					b = b.parameter;
+				}
+				else{
+					Builder next = b.children.get(segment);
+					if(next == null){
+						next = new Builder();
+						b.children.put(segment, next);
+					}
+					b = next;
+				}
+			}
+			b.route = route;
+		}
+		return new RouteTrie(root.build(), slash);
+	}
+	
+	
+	/* Like String.split("/",-1) which keeps empty segments */
+	private static String[] split(String command){
+		List<String> ret = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while((end = command.indexOf('/', start)) >= 0){
+			ret.add(command.substring(start, end));
+			start = end + 1;
+		}
+		ret.add(command.substring(start));
+		return ret.toArray(new String[ret.size()]);
+	}
+	
+	
+	/**
+	 * @param commandLine
+	 * @return the route that best matches commandLine, or null if nothing does
+	 */
+	public Route match(String commandLine){
+		if(commandLine == null){
+			return null;
+		}
+		Route ret = match(root, commandLine, 0);
+		if((ret == null) && (slash != null) && commandLine.startsWith("/")){
+			ret = slash;
+		}
+		return ret;
+	}
+	
+	
+	/**
+	 * @param commandLine
+	 * @return the registered command that best matches commandLine, or null if nothing does
+	 */
+	public String identifyCommand(String commandLine){
+		Route route = match(commandLine);
+		return (route == null) ? null : route.getCommand();
+	}
+	
+	
+	/**
+	 * The best route below node for the segments of commandLine starting at start
+	 */
+	private static Route match(Node node, String commandLine, int start){
+		int end = commandLine.indexOf('/', start);
+		boolean last = (end < 0);
+		if(last){
+			end = commandLine.length();
+		}
+		
+		Route best = null;
+		int length = end - start;
+		for(int i = 0; i < node.segments.length; i++){
+			String segment = node.segments[i];
+			if((segment.length() == length) && commandLine.regionMatches(start, segment, 0, length)){
+				best = descend(node.children[i], commandLine, end, last);
+				break;
+			}
+		}
+		
+		if((node.parameter != null) && (length > 0)){
+			Route p = descend(node.parameter, commandLine, end, last);
+			/* Literal segments win ties */
+			if((p != null) && ((best == null) || (p.getSegmentCount() > best.getSegmentCount()))){
+				best = p;
+			}
+		}
+		return best;
+	}
+	
+	
+	private static Route descend(Node child, String commandLine, int end, boolean last){
+		if(last){
+			return child.route;
+		}
+		Route deeper = match(child, commandLine, end + 1);
+		if(deeper != null){
+			return deeper;
+		}
+		/* A prefix only counts when it's followed by a slash, and the empty prefix never does */
+		return (end > 0) ? child.route : null;
+	}
+}
@@ -24,14 +24,25 @@ package edu.uci.ics.luci.utility.webserver.event.wrapper;
 
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import edu.uci.ics.luci.utility.datastructure.Pair;
 import edu.uci.ics.luci.utility.webserver.event.Event;
+import edu.uci.ics.luci.utility.webserver.event.Event_Dispatch;
+import edu.uci.ics.luci.utility.webserver.event.Event_Handle;
+import edu.uci.ics.luci.utility.webserver.event.Event_MiddleWare;
 import edu.uci.ics.luci.utility.webserver.event.result.EventResult;
 import edu.uci.ics.luci.utility.webserver.event.resultlistener.EventResultListener;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 
 public class EventWrapperHandler implements com.lmax.disruptor.EventHandler<EventWrapper> {
@@ -50,9 +61,22 @@ public class EventWrapperHandler implements com.lmax.disruptor.EventHandler<Even
 
 	
 	private ExecutorService executor;
+	private int retryAfter;
 	
 	public EventWrapperHandler(ExecutorService e){
+		this(e, 1);
+	}
+	
+	/**
+	 * @param e where the events are run
+	 * @param retryAfter seconds a request is told to wait before trying again when e is too full to take its event
+	 */
+	public EventWrapperHandler(ExecutorService e, int retryAfter){
+		if(retryAfter < 0){
+			throw new IllegalArgumentException("retryAfter can't be negative: "+retryAfter);
+		}
 		this.executor = e;
+		this.retryAfter = retryAfter;
 	}
 	
 	private static class MyHandlerWrapper implements Callable<EventResult>{
@@ -103,6 +127,61 @@ public class EventWrapperHandler implements com.lmax.disruptor.EventHandler<Even
 		if(eventWrapper == null){
 			throw new IllegalArgumentException(ERROR_EVENTWRAPPER_CANT_BE_NULL);
 		}
-		executor.submit(new MyHandlerWrapper(eventWrapper.getEvent(),eventWrapper.getResultListeners()));
+		MyHandlerWrapper handler = new MyHandlerWrapper(eventWrapper.getEvent(),eventWrapper.getResultListeners());
+		try{
+			executor.submit(handler);
+		}
+		catch(RejectedExecutionException e){
+			/* A bounded executor is full.  Running the event on the ring thread would stall every event behind it,
+			 * and throwing would stop the ring, so the request is shed instead */
+			shed(eventWrapper.getEvent());
+		}
+	}
+	
+	
+	/**
+	 * Answer the request an event belongs to with a 503, without running the event
+	 * @param event
+	 */
+	private void shed(Event event){
+		Output output = null;
+		if(event instanceof Event_Handle){
+			output = ((Event_Handle) event).getOutput();
+		}
+		else if(event instanceof Event_Dispatch){
+			output = ((Event_Dispatch) event).getOutput();
+		}
+		else if(event instanceof Event_MiddleWare){
+			Future<Pair<Request, Output>> f = ((Event_MiddleWare) event).getFuture();
+			if(f instanceof CompletableFuture){
+				/* The request may still be being converted, answer it once it is */
+				((CompletableFuture<Pair<Request, Output>>) f).whenComplete(new BiConsumer<Pair<Request, Output>,Throwable>(){
+					@Override
+					public void accept(Pair<Request, Output> pair, Throwable t) {
+						if(pair != null){
+							shed(pair.getSecond());
+						}
+					}
+				});
+				return;
+			}
+			if((f != null) && f.isDone()){
+				try {
+					Pair<Request, Output> pair = f.get();
+					output = (pair == null) ? null : pair.getSecond();
+				} catch (InterruptedException e) {
+				} catch (ExecutionException e) {
+				}
+			}
+		}
+		shed(output);
+	}
+	
+	
+	private void shed(Output output){
+		getLog().warn("Executor is full, shedding a request");
+		if(output != null){
+			output.send_ServiceUnavailable(retryAfter);
+		}
 	}
 }
@@ -102,6 +102,14 @@ public class EventWrapperQueuer implements Quittable {
 	};
 	
 
+	/**
+	 * @return how many more events can be published before publishing has to wait
+	 */
+	public long getRemainingCapacity() {
+		return ringBuffer.remainingCapacity();
+	}
+	
+
 	public void onData(EventWrapper incoming) {
 		if (!isQuitting()) {
 			/* Write event to log */
@@ -2,16 +2,59 @@ package edu.uci.ics.luci.utility.webserver.input.channel;
 
 import java.util.concurrent.Callable;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import edu.uci.ics.luci.utility.datastructure.Pair;
 import edu.uci.ics.luci.utility.webserver.Channel;
+import edu.uci.ics.luci.utility.webserver.ConnectionQuota;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
 import edu.uci.ics.luci.utility.webserver.output.channel.Output;
 
 
 public abstract class Input extends Channel{
 	
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(Input.class);
+		}
+		return log;
+	}
+	
+	private ConnectionQuota connectionQuota = null;
+	
+	/**
+	 * @return the limit on connections from each source that new connections are checked against, null for none
+	 */
+	public ConnectionQuota getConnectionQuota() {
+		return connectionQuota;
+	}
+
+	public void setConnectionQuota(ConnectionQuota connectionQuota) {
+		this.connectionQuota = connectionQuota;
+	}
+	
 	abstract public Callable<Pair<Request, Output>> waitForIncomingRequest();
 	
+	/**
+	 * Called instead of converting a request from {@link #waitForIncomingRequest()} when the server is too busy for it.
+	 * This implementation converts the request on the calling thread and answers it with a 503, so Inputs whose
+	 * conversions can block should override it.
+	 * @param incoming the conversion job that won't be run
+	 * @param retryAfter seconds before the client should try again
+	 */
+	public void reject(Callable<Pair<Request, Output>> incoming, int retryAfter){
+		try {
+			Pair<Request, Output> pair = incoming.call();
+			if((pair != null) && (pair.getSecond() != null)){
+				pair.getSecond().send_ServiceUnavailable(retryAfter);
+			}
+		} catch (Exception e) {
+			getLog().debug("Unable to reject incoming request\n"+e);
+		}
+	}
+	
 	//TODO:These only makes sense for sockets and need to be refactored
 	abstract public int getPort();
 	abstract public boolean getSecure();
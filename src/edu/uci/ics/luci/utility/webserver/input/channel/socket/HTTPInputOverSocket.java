@@ -1,45 +1,47 @@
 package edu.uci.ics.luci.utility.webserver.input.channel.socket;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ServerSocket;
 import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLServerSocketFactory;
-import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.SSLSocket;
 
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpServerConnection;
-import org.apache.http.NameValuePair;
-import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.RequestLine;
 import org.apache.http.impl.DefaultBHttpServerConnectionFactory;
-import org.apache.http.util.EntityUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HTTP;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.datastructure.Pair;
-import edu.uci.ics.luci.utility.webserver.MyKeyManager;
+import edu.uci.ics.luci.utility.webserver.ConnectionQuota;
 import edu.uci.ics.luci.utility.webserver.input.channel.Input;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.input.request.RequestBody;
 import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.channel.socket.ConnectionRecycler;
 import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
+import edu.uci.ics.luci.utility.webserver.output.encoding.Compression;
 
-public class HTTPInputOverSocket extends Input{
+public class HTTPInputOverSocket extends Input implements ConnectionRecycler{
 	
 	private static transient volatile Logger log = null;
 	public static Logger getLog(){
@@ -49,9 +51,20 @@ public class HTTPInputOverSocket extends Input{
 		return log;
 	}
 	
+	/** How long waitForIncomingRequest waits before returning control to the grabber so it can check for quitting */
+	private static final long POLL_TIMEOUT = 1000;
+	
 	private int port;
 	private boolean secure;
 	private DefaultBHttpServerConnectionFactory connFactory;
+	private KeepAlivePolicy keepAlivePolicy = new KeepAlivePolicy();
+	private Compression compression = new Compression();
+	private RequestBodyPolicy requestBodyPolicy = new RequestBodyPolicy();
+	private TLSPolicy tlsPolicy = null;
+	
+	/* Both newly accepted and recycled persistent connections wait here to have a request read */
+	private final LinkedBlockingQueue<MyHandler> incoming = new LinkedBlockingQueue<MyHandler>();
+	private Thread acceptor = null;
 
 
 	public HTTPInputOverSocket(int port, boolean secure){
@@ -80,6 +93,56 @@ public class HTTPInputOverSocket extends Input{
 		this.secure = secure;
 	}
 	
+	public KeepAlivePolicy getKeepAlivePolicy() {
+		return keepAlivePolicy;
+	}
+
+	public void setKeepAlivePolicy(KeepAlivePolicy keepAlivePolicy) {
+		if(keepAlivePolicy == null){
+			throw new IllegalArgumentException("keepAlivePolicy can't be null");
+		}
+		this.keepAlivePolicy = keepAlivePolicy;
+	}
+	
+	/**
+	 * @return how response bodies may be compressed
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression compression) {
+		if(compression == null){
+			throw new IllegalArgumentException("compression can't be null, disable it instead");
+		}
+		this.compression = compression;
+	}
+	
+	/**
+	 * @return how connections are secured, null until the server socket is made if it wasn't set
+	 */
+	public synchronized TLSPolicy getTLSPolicy() {
+		return tlsPolicy;
+	}
+
+	/**
+	 * @param tlsPolicy used when the server socket is made, null to take the key store from the system properties
+	 */
+	public synchronized void setTLSPolicy(TLSPolicy tlsPolicy) {
+		this.tlsPolicy = tlsPolicy;
+	}
+	
+	public RequestBodyPolicy getRequestBodyPolicy() {
+		return requestBodyPolicy;
+	}
+
+	public void setRequestBodyPolicy(RequestBodyPolicy requestBodyPolicy) {
+		if(requestBodyPolicy == null){
+			throw new IllegalArgumentException("requestBodyPolicy can't be null");
+		}
+		this.requestBodyPolicy = requestBodyPolicy;
+	}
+	
 	private ServerSocket localServerSocket = null;
 	private synchronized ServerSocket getServerSocket(){
 		if(localServerSocket == null){
@@ -92,53 +155,12 @@ public class HTTPInputOverSocket extends Input{
 		ServerSocket serverSoc = null;
 		try{
 			if(getSecure()){
-				SSLContext sctx1 = null;
 				try{
 					/* See the README.txt in testSupport/keystore for information on how to make the credentials*/
-					String keyStore = System.getProperty("javax.net.ssl.keyStore");
-					if(keyStore == null) {
-						getLog().fatal("javax.net.ssl.keyStore property is not set, see test/keystore for info");
-						throw new NullPointerException();
+					if(tlsPolicy == null){
+						tlsPolicy = TLSPolicy.fromSystemProperties();
 					}
-					
-					String keyStorePassword = System.getProperty("javax.net.ssl.keyStorePassword");
-					if(keyStorePassword == null) {
-						getLog().fatal("javax.net.ssl.keyStorePassword property is not set, see test/keystore for info");
-						throw new NullPointerException();
-					}
-					
-					String alias = System.getProperty("edu.uci.ics.luci.webserver.Alias");
-					if(alias == null) {
-						getLog().fatal("javax.net.ssl.keyStorePassword property is not set, see test/keystore for info");
-						throw new NullPointerException();
-					}
-					
-					String type = System.getProperty("keystore.type");
-					//System.out.println("Type: "+type);
-					
-					//Make sure openssl is installed to have this context
-					sctx1 = SSLContext.getInstance("TLSv1.2");
-					sctx1.init(new X509KeyManager[] { 
-						new MyKeyManager(
-								keyStore,
-								keyStorePassword.toCharArray(),
-								alias,
-								type
-								)
-						}
-					,null,null);
-				SSLServerSocketFactory ssocketFactory = (SSLServerSocketFactory) sctx1.getServerSocketFactory();
-					serverSoc = ssocketFactory.createServerSocket(port);
-					//ServerSocketFactory ssocketFactory = SSLServerSocketFactory.getDefault();
-				} catch (NoSuchAlgorithmException e) {
-					getLog().fatal("I'm not into this error:\n"+e);
-					/*
-					for (Provider p: Security.getProviders()) {
-						System.out.println(p.getName());
-					}
-					*/
-				} catch (KeyManagementException e) {
-					getLog().fatal("Problem managing keys:\n"+e);
+					serverSoc = tlsPolicy.createServerSocket(port);
 				} catch (GeneralSecurityException e) {
 					getLog().fatal("Security Exception:\n"+e);
 				}
@@ -326,20 +348,193 @@ public class HTTPInputOverSocket extends Input{
 	}
 
 
+	/**
+	 * Accepts connections as fast as possible and queues them up to have their requests read
+	 */
+	private class Acceptor implements Runnable{
+		
+		private final ServerSocket serverSocket;
+		
+		Acceptor(ServerSocket serverSocket){
+			this.serverSocket = serverSocket;
+		}
+		
+		@Override
+		public void run() {
+			while(!serverSocket.isClosed()){
+				java.net.Socket localSocket = null;
+				try{
+					localSocket = serverSocket.accept();
+					if(localSocket instanceof SSLSocket){
+						TLSPolicy tls = getTLSPolicy();
+						if(tls != null){
+							tls.accepted((SSLSocket) localSocket);
+						}
+					}
+					String source = localSocket.getInetAddress().toString();
+					ConnectionQuota quota = getConnectionQuota();
+					if((quota != null) && !quota.tryOpen(source, localSocket)){
+						getLog().debug("Too many connections from "+source);
+						try{
+							localSocket.getOutputStream().write(Output_Socket_HTTP.getTooManyRequests(1));
+						}
+						finally{
+							localSocket.close();
+						}
+						continue;
+					}
+					HttpServerConnection conn = connFactory.createConnection(localSocket);
+					incoming.add(new MyHandler(HTTPInputOverSocket.this,source,conn,localSocket,0));
+				} catch(SocketTimeoutException e){
+					getLog().trace("Socket timed out\n"+e);
+				} catch (IOException e) {
+					if(!serverSocket.isClosed()){
+						getLog().error("Problem getting incoming socket connection\n"+e);
+					}
+				}
+			}
+		}
+	}
+	
+	private synchronized void startAcceptor(){
+		if(acceptor == null){
+			ServerSocket serverSocket = getServerSocket();
+			if(serverSocket == null){
+				throw new IllegalStateException("Unable to open server socket on port "+getPort());
+			}
+			acceptor = new Thread(new Acceptor(serverSocket));
+			acceptor.setName("HTTPInputOverSocket acceptor:"+getPort());
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+	}
+
+
 	@Override
 	public Callable<Pair<Request,Output>> waitForIncomingRequest() {
-		java.net.Socket localSocket = null;
-		try{
-			localSocket = this.getServerSocket().accept();
-			HttpServerConnection conn = this.connFactory.createConnection(localSocket);
-			
-			return new MyHandler(localSocket.getInetAddress().toString(),conn);
-		} catch(SocketTimeoutException e){
-			getLog().trace("Socket timed out\n"+e);
+		startAcceptor();
+		try {
+			return incoming.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
 			return null;
+		}
+	}
+	
+	
+	/**
+	 * A response has been completely written on a persistent connection, so queue it up to read
+	 * the next request.  The socket timeout bounds how long a handler waits on an idle client.
+	 */
+	@Override
+	public void recycle(HttpServerConnection conn, java.net.Socket socket, Object context) {
+		int requestsServed = (context instanceof Integer)?((Integer) context):0;
+		try {
+			socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, getKeepAlivePolicy().getIdleTimeout()));
+			incoming.add(new MyHandler(this,socket.getInetAddress().toString(),conn,socket,requestsServed));
 		} catch (IOException e) {
-			getLog().error("Problem getting incoming socket connection\n"+e);
-			return null;
+			getLog().debug("Unable to recycle connection\n"+e);
+			try {
+				conn.shutdown();
+			} catch (IOException e1) {
+			}
+		}
+	}
+	
+
+	/**
+	 * Convert a parsed http request line and headers into a Request.  This is shared by the
+	 * blocking and the non-blocking socket inputs so that they produce identical Requests.
+	 * @param source the address of the requester
+	 * @param httpRequest the request line and headers as parsed off the wire
+	 * @return a Request without a command set, that is done by the dispatcher
+	 * @throws URISyntaxException if the request line has a malformed uri
+	 */
+	static Request buildRequest(String source, HttpRequest httpRequest) throws URISyntaxException{
+		RequestLine line = httpRequest.getRequestLine();
+		return buildRequest(source, line.getMethod(), line.getUri(), httpRequest.getAllHeaders());
+	}
+	
+	/**
+	 * Headers and parameters are handed over as they are, the Request decodes them if they are asked for
+	 * @param uri the request target
+	 * @throws URISyntaxException if uri isn't one
+	 */
+	static Request buildRequest(String source, String method, String uri, Header[] headers) throws URISyntaxException{
+		Request request = new Request();
+		/* Set Source */
+		request.setSource(source);
+		
+		/* Set Headers */
+		request.setRawHeaders(headers);
+		
+		/* Set Protocol/Method */
+		if(method.equalsIgnoreCase("GET")){
+			request.setProtocol(Protocol.HTTP_GET);
+		}
+		else if(method.equalsIgnoreCase("POST")){
+			request.setProtocol(Protocol.HTTP_POST);
+		}
+		else{
+			request.setProtocol(Protocol.UNKNOWN);
+		}
+		
+		/* Set the REST command line and the query it came with */
+		int query = uri.indexOf('?');
+		if(isPlainTarget(uri, query)){
+			request.setCommandLine((query < 0) ? uri : uri.substring(0, query));
+			request.setRawQuery((query < 0) ? "" : uri.substring(query + 1));
+		}
+		else{
+			URI u = new URI(uri);
+			request.setCommandLine(u.getPath());
+			request.setRawQuery((u.getRawQuery() == null) ? "" : u.getRawQuery());
+		}
+		return request;
+	}
+	
+	/**
+	 * Most targets are a path and maybe a query with nothing in them that needs decoding or checking
+	 * beyond what is done here.  Anything else goes through {@link URI}.
+	 * @param query the index of the '?' in uri, or -1
+	 * @return true if uri is an absolute path whose characters are all legal and which has no escapes, 
+	 * followed by a query that only has legal characters and well formed escapes
+	 */
+	static boolean isPlainTarget(String uri, int query){
+		if(uri.isEmpty() || (uri.charAt(0) != '/')){
+			return false;
+		}
+		int pathEnd = (query < 0) ? uri.length() : query;
+		for(int i = 0; i < pathEnd; i++){
+			if(!isPlainTargetChar(uri.charAt(i)) || (uri.charAt(i) == '?')){
+				return false;
+			}
+		}
+		for(int i = pathEnd + 1; i < uri.length(); i++){
+			char c = uri.charAt(i);
+			if(c == '%'){
+				if((i + 2 >= uri.length()) || (Character.digit(uri.charAt(i + 1), 16) < 0) || (Character.digit(uri.charAt(i + 2), 16) < 0)){
+					return false;
+				}
+				i += 2;
+			}
+			else if(!isPlainTargetChar(c)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/* Unreserved and reserved URI characters, apart from '%' and '#' */
+	private static boolean isPlainTargetChar(char c){
+		if(((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9'))){
+			return true;
+		}
+		switch(c){
+			case '-': case '.': case '_': case '~': case '!': case '\'': case '(': case ')': case '*':
+			case ';': case '/': case '?': case ':': case '@': case '&': case '=': case '+': case '$': case ',':
+				return true;
+			default:
+				return false;
 		}
 	}
 	
@@ -347,113 +542,143 @@ public class HTTPInputOverSocket extends Input{
 	
 	private static class MyHandler implements Callable<Pair<Request,Output>>{
 		
+		private HTTPInputOverSocket parent;
 		private String source;
 		private HttpServerConnection conn;
+		private java.net.Socket socket;
+		private int requestsServed;
 
-		MyHandler(String source, final HttpServerConnection conn){
+		MyHandler(HTTPInputOverSocket parent, String source, final HttpServerConnection conn, java.net.Socket socket, int requestsServed){
 			
+			this.parent = parent;
 			this.source = source;
 			
 			if(conn == null){
 				throw new IllegalArgumentException("conn can't be null");
 			}
 			this.conn = conn;
+			this.socket = socket;
+			this.requestsServed = requestsServed;
 		}
 		
 		
 		@Override
 		public Pair<Request, Output> call() throws Exception {
+			try{
+				return receive();
+			}
+			catch(IOException e){
+				/* Includes idle persistent connections timing out and clients hanging up */
+				getLog().debug("Closing connection from "+source+" after "+requestsServed+" requests\n"+e);
+				conn.shutdown();
+				throw e;
+			}
+			catch(HttpException e){
+				conn.shutdown();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Answer with a 503 without reading the request, reading could block the caller on a slow client.
+		 */
+		void reject(int retryAfter){
+			Output_Socket_HTTP oc = new Output_Socket_HTTP(conn,socket);
+			oc.send_ServiceUnavailable(retryAfter);
+		}
+		
+		/**
+		 * Read the body, or turn the request away with a 413 if it is too large
+		 * @return the body, or null if there wasn't one
+		 * @throws HttpException if the request was turned away
+		 */
+		private RequestBody receiveBody(HttpEntityEnclosingRequest httpRequest) throws IOException, HttpException {
+			RequestBodyPolicy policy = parent.getRequestBodyPolicy();
 			
-			Request request = new Request();
-			/* Set Source */
-			request.setSource(source);
-			
-			HttpRequest httpRequest = conn.receiveRequestHeader();
-			
-			/* Set Headers */
-			Header[] h = httpRequest.getAllHeaders();
-			Map<String,List<String>> headers = new HashMap<String,List<String>>();
-			for(int i = 0 ; i < h.length;i++){
-				String key = h[i].getName();
-				String value = h[i].getValue();
-				List<String> list = null;
-				if(headers.containsKey(key)){
-					list = headers.get(key);
+			/* Don't bother reading a body that is too large if the client said how large it is */
+			Header contentLength = httpRequest.getFirstHeader(HTTP.CONTENT_LEN);
+			if(contentLength != null){
+				try{
+					if(policy.isTooLarge(Long.parseLong(contentLength.getValue().trim()))){
+						tooLarge();
+					}
 				}
-				else{
-					list = new ArrayList<String>();
+				catch(NumberFormatException e){
+					/* The connection will complain about it */
 				}
-				list.add(value);
-				headers.put(key,list);
 			}
-			request.setHeaders(headers);
 			
-			/* Set Protocol/Method */
-			String method = httpRequest.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
-			if(method.equals("GET")){
-				request.setProtocol(Protocol.HTTP_GET);
+			/* A client that asked first is waiting to hear that it can send the body */
+			Header expect = httpRequest.getFirstHeader(HTTP.EXPECT_DIRECTIVE);
+			if((expect != null) && HTTP.EXPECT_CONTINUE.equalsIgnoreCase(expect.getValue().trim())){
+				conn.sendResponseHeader(new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_CONTINUE, "Continue"));
+				conn.flush();
 			}
-			else if(method.equals("POST")){
-				request.setProtocol(Protocol.HTTP_POST);
+			
+			conn.receiveRequestEntity(httpRequest);
+			HttpEntity entity = httpRequest.getEntity();
+			if(entity == null){
+				return null;
 			}
-			else{
-				request.setProtocol(Protocol.UNKNOWN);
+			RequestBody body = null;
+			try(InputStream in = entity.getContent()){
+				body = policy.read(in, entity.getContentLength());
 			}
+			if(body == null){
+				tooLarge();
+			}
+			return body;
+		}
+		
+		private void tooLarge() throws HttpException{
+			Output_Socket_HTTP oc = new Output_Socket_HTTP(conn,socket);
+			oc.send_PayloadTooLarge();
+			throw new HttpException("Request body from "+source+" is larger than "+parent.getRequestBodyPolicy().getMaxSize()+" bytes");
+		}
+		
+		private Pair<Request, Output> receive() throws IOException, HttpException, URISyntaxException {
+			
+			HttpRequest httpRequest = conn.receiveRequestHeader();
+			
+			Request request = buildRequest(source,httpRequest);
 			
-			/* Set the REST command line */
-            URIBuilder uri = new URIBuilder(httpRequest.getRequestLine().getUri());
-            request.setCommandLine(uri.getPath());
-            
-            Map<String, Set<String>> parameters = new HashMap<String,Set<String>>();
-            for (NameValuePair nvp : uri.getQueryParams()) {
-            	Set<String> set = null;
-            	if(parameters.containsKey(nvp.getName())){
-            		set = parameters.get(nvp.getName());
-            	}
-            	else{
-            		set = new HashSet<String>();
-            	}
-            	set.add(nvp.getValue());
-            	parameters.put(nvp.getName(), set);
-            }
-            
-            request.setParameters(parameters);
-            
-            /* Try and get the parameters */
-            if (httpRequest instanceof HttpEntityEnclosingRequest) {
-                HttpEntity entity = ((HttpEntityEnclosingRequest) httpRequest).getEntity();
-                byte[] entityContent = EntityUtils.toByteArray(entity);
-                System.err.println("Incoming entity content (bytes): " + entityContent.length);
-            }
-
-				
-			//TODO: Set all the required components of icr
-			//TODO: Rebuild an outputChannel object
-				
 			if (httpRequest instanceof HttpEntityEnclosingRequest) {
-				conn.receiveRequestEntity((HttpEntityEnclosingRequest) httpRequest);
-				HttpEntity entity = ((HttpEntityEnclosingRequest) httpRequest).getEntity();
-				if (entity != null) {
-					// Do something useful with the entity and, when done, ensure all
-					// content has been consumed, so that the underlying connection
-					// could be re-used
-					EntityUtils.consume(entity);
-				}
+				request.setBody(receiveBody((HttpEntityEnclosingRequest) httpRequest));
 			}
 			
-			Output_Socket_HTTP oc = new Output_Socket_HTTP(conn);
+			Output_Socket_HTTP oc = new Output_Socket_HTTP(conn,socket);
+			oc.setRequestBody(request.getBody());
+			if(parent.getKeepAlivePolicy().keepAlive(httpRequest, requestsServed)){
+				oc.setKeepAlive(parent, requestsServed+1);
+			}
+			oc.setCompression(parent.getCompression(), request.getHeader("Accept-Encoding"));
 			
-			getLog().info("Received a request on the wire:\n"+request.toString());
+			if(getLog().isInfoEnabled()){
+				getLog().info("Received a request on the wire:\n"+request.toString());
+			}
 			return new Pair<Request,Output>(request,oc);
-			
-			
 		}
 	}
 
 
 
+	/**
+	 * Connections that are turned away are not read, see {@link MyHandler#reject(int)}
+	 */
+	@Override
+	public void reject(Callable<Pair<Request, Output>> incoming, int retryAfter){
+		if(incoming instanceof MyHandler){
+			((MyHandler) incoming).reject(retryAfter);
+		}
+		else{
+			super.reject(incoming, retryAfter);
+		}
+	}
+	
+	
 	@Override
 	public synchronized void closeChannel() {
+		acceptor = null;
 		if(localServerSocket != null){
 			try {
 				localServerSocket.close();
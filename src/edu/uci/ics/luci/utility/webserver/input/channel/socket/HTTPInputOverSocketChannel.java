@@ -0,0 +1,748 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.http.Header;
+import org.apache.http.HttpServerConnection;
+import org.apache.http.impl.DefaultBHttpServerConnectionFactory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.luci.utility.datastructure.Pair;
+import edu.uci.ics.luci.utility.webserver.ConnectionQuota;
+import edu.uci.ics.luci.utility.webserver.input.channel.Input;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.input.request.RequestBody;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.channel.socket.ConnectionRecycler;
+import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
+import edu.uci.ics.luci.utility.webserver.output.encoding.Compression;
+
+/**
+ * A non-blocking alternative to {@link HTTPInputOverSocket}.
+ *
+ * Connections are accepted and their request headers (and any Content-Length body) are read
+ * with a single {@link Selector} that is driven from {@link #waitForIncomingRequest()}, i.e. from the
+ * WebServer's incoming grabber thread.  No thread is tied up while a client is slowly sending,
+ * or not sending, its request.  Only once a complete request has been buffered is the connection
+ * taken off the selector and handed on, so the Callable that is returned never blocks.
+ *
+ * Persistent connections are handed back after each response and go back on the selector, so
+ * idle keep-alive clients cost no threads.  Requests that were pipelined behind the current one stay
+ * buffered until its response has been written, which keeps the responses in order.
+ *
+ * TLS is not supported, use {@link HTTPInputOverSocket} for secure connections.
+ * @author djp3
+ *
+ */
+public class HTTPInputOverSocketChannel extends Input implements ConnectionRecycler{
+
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(HTTPInputOverSocketChannel.class);
+		}
+		return log;
+	}
+
+	public static final String ERROR_SECURE_NOT_SUPPORTED = "The non-blocking input does not support TLS, use HTTPInputOverSocket";
+
+	/** How long a select waits before returning control to the grabber so it can check for quitting */
+	private static final long SELECT_TIMEOUT = 1000;
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	private static final byte[] RESPONSE_HEADERS_TOO_LARGE =
+			"HTTP/1.1 431 Request Header Fields Too Large\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RESPONSE_BAD_REQUEST =
+			"HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RESPONSE_LENGTH_REQUIRED =
+			"HTTP/1.1 411 Length Required\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RESPONSE_PAYLOAD_TOO_LARGE =
+			"HTTP/1.1 413 Payload Too Large\r\nContent-Length: 0\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] RESPONSE_CONTINUE =
+			"HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+	private int port;
+	private int maxHeaderSize = 64 * 1024;
+	private long headerTimeout = 30 * 1000;
+
+	private DefaultBHttpServerConnectionFactory connFactory;
+	private KeepAlivePolicy keepAlivePolicy = new KeepAlivePolicy();
+	private Compression compression = new Compression();
+	private RequestBodyPolicy requestBodyPolicy = new RequestBodyPolicy();
+
+	private Selector selector = null;
+	private ServerSocketChannel serverChannel = null;
+	private long lastIdleSweep = System.currentTimeMillis();
+
+	/* Only touched by the thread calling waitForIncomingRequest */
+	private final ArrayDeque<Pair<Request,Output>> completed = new ArrayDeque<Pair<Request,Output>>();
+	
+	/* Complete requests whose channels are waiting to come off the selector, only touched by the thread calling waitForIncomingRequest */
+	private final ArrayDeque<Handoff> handoffs = new ArrayDeque<Handoff>();
+	
+	/* Persistent connections whose responses are done, waiting to go back on the selector */
+	private final ConcurrentLinkedQueue<ConnectionState> recycled = new ConcurrentLinkedQueue<ConnectionState>();
+
+
+	public HTTPInputOverSocketChannel(int port){
+		this(port,false);
+	}
+
+	public HTTPInputOverSocketChannel(int port, boolean secure){
+		if(secure){
+			throw new IllegalArgumentException(ERROR_SECURE_NOT_SUPPORTED);
+		}
+		this.setPort(port);
+		this.connFactory = DefaultBHttpServerConnectionFactory.INSTANCE;
+	}
+
+	@Override
+	public int getPort(){
+		return this.port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	@Override
+	public boolean getSecure() {
+		return false;
+	}
+
+	public int getMaxHeaderSize() {
+		return maxHeaderSize;
+	}
+
+	/**
+	 * @param maxHeaderSize the largest request line plus headers that will be buffered before the client is sent a 431
+	 */
+	public void setMaxHeaderSize(int maxHeaderSize) {
+		this.maxHeaderSize = maxHeaderSize;
+	}
+
+	/**
+	 * @return the largest body that will be accepted, see {@link #getRequestBodyPolicy()}
+	 */
+	public int getMaxBodySize() {
+		return (int) Math.min(Integer.MAX_VALUE, requestBodyPolicy.getMaxSize());
+	}
+
+	public void setMaxBodySize(int maxBodySize) {
+		requestBodyPolicy.setMaxSize(maxBodySize);
+	}
+
+	public long getHeaderTimeout() {
+		return headerTimeout;
+	}
+
+	/**
+	 * @param headerTimeout milliseconds a connection may sit without completing a request before it is closed
+	 */
+	public void setHeaderTimeout(long headerTimeout) {
+		this.headerTimeout = headerTimeout;
+	}
+	
+	public KeepAlivePolicy getKeepAlivePolicy() {
+		return keepAlivePolicy;
+	}
+
+	public void setKeepAlivePolicy(KeepAlivePolicy keepAlivePolicy) {
+		if(keepAlivePolicy == null){
+			throw new IllegalArgumentException("keepAlivePolicy can't be null");
+		}
+		this.keepAlivePolicy = keepAlivePolicy;
+	}
+	
+	/**
+	 * @return how response bodies may be compressed
+	 */
+	public Compression getCompression() {
+		return compression;
+	}
+
+	public void setCompression(Compression compression) {
+		if(compression == null){
+			throw new IllegalArgumentException("compression can't be null, disable it instead");
+		}
+		this.compression = compression;
+	}
+	
+	/**
+	 * @return how large request bodies may be and which ones go to a file as they arrive
+	 */
+	public RequestBodyPolicy getRequestBodyPolicy() {
+		return requestBodyPolicy;
+	}
+
+	public void setRequestBodyPolicy(RequestBodyPolicy requestBodyPolicy) {
+		if(requestBodyPolicy == null){
+			throw new IllegalArgumentException("requestBodyPolicy can't be null");
+		}
+		this.requestBodyPolicy = requestBodyPolicy;
+	}
+
+
+	private synchronized Selector getSelector() throws IOException{
+		if(selector == null){
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.configureBlocking(false);
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(getPort()));
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		}
+		return selector;
+	}
+
+
+	/**
+	 * The per connection state that is attached to each SelectionKey while the request is being read
+	 */
+	private static class ConnectionState{
+		private final SocketChannel channel;
+		private final String source;
+		private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+		private long lastActivity = System.currentTimeMillis();
+		private int headerEnd = -1;
+		/* How much of the buffer has already been searched for the end of the headers */
+		private int headerScanned = 0;
+		private long bodyLength = 0;
+		/* Parsed once the headers are in, kept until the body is too */
+		private RequestHead head = null;
+		/* A large body goes here instead of into the buffer, spoolRemaining is how much of it hasn't arrived */
+		private RequestBodyPolicy.Spool spool = null;
+		private long spoolRemaining = 0;
+		private int requestsServed = 0;
+
+		ConnectionState(SocketChannel channel, String source){
+			this.channel = channel;
+			this.source = source;
+		}
+		
+		void discardSpool(){
+			if(spool != null){
+				spool.abort();
+				spool = null;
+			}
+		}
+	}
+
+
+	@Override
+	public Callable<Pair<Request, Output>> waitForIncomingRequest() {
+		if(completed.isEmpty()){
+			try {
+				Selector s = getSelector();
+				registerRecycled(s);
+				/* Don't wait around if a recycled connection already had a pipelined request */
+				int ready = handoffs.isEmpty() ? s.select(SELECT_TIMEOUT) : s.selectNow();
+				if(ready > 0){
+					Iterator<SelectionKey> keys = s.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						if(!key.isValid()){
+							continue;
+						}
+						if(key.isAcceptable()){
+							accept(s);
+						}
+						else if(key.isReadable()){
+							read(key);
+						}
+					}
+				}
+				handOff(s);
+				sweepIdleConnections(s);
+			} catch (ClosedSelectorException e){
+				getLog().trace("Selector closed\n"+e);
+				return null;
+			} catch (IOException e) {
+				getLog().error("Problem selecting on incoming connections\n"+e);
+				return null;
+			}
+		}
+
+		Pair<Request, Output> ready = completed.poll();
+		if(ready == null){
+			return null;
+		}
+		else{
+			return new CompletedRequest(ready);
+		}
+	}
+
+
+	private void accept(Selector s){
+		SocketChannel channel = null;
+		try{
+			while((channel = serverChannel.accept()) != null){
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				String source = channel.socket().getInetAddress().toString();
+				ConnectionQuota quota = getConnectionQuota();
+				if((quota != null) && !quota.tryOpen(source, channel.socket())){
+					getLog().debug("Too many connections from "+source);
+					channel.write(ByteBuffer.wrap(Output_Socket_HTTP.getTooManyRequests(1)));
+					closeQuietly(channel);
+					continue;
+				}
+				channel.register(s, SelectionKey.OP_READ, new ConnectionState(channel,source));
+			}
+		}
+		catch(IOException e){
+			getLog().error("Problem accepting incoming socket connection\n"+e);
+			closeQuietly(channel);
+		}
+	}
+
+
+	private void read(SelectionKey key){
+		SocketChannel channel = (SocketChannel) key.channel();
+		ConnectionState state = (ConnectionState) key.attachment();
+		try{
+			int n;
+			while((n = channel.read(state.buffer)) > 0){
+				state.lastActivity = System.currentTimeMillis();
+				if(!state.buffer.hasRemaining()){
+					if(!grow(state)){
+						break;
+					}
+				}
+			}
+			if(n < 0){
+				/* Client went away before sending a whole request */
+				close(key);
+				return;
+			}
+			process(key,state);
+		}
+		catch(IOException e){
+			getLog().debug("Problem reading incoming request\n"+e);
+			close(key);
+		}
+	}
+
+
+	/**
+	 * Look at what has been buffered so far and complete the request if it is all there
+	 */
+	private void process(SelectionKey key, ConnectionState state) throws IOException{
+		if(state.headerEnd < 0){
+			state.headerEnd = findHeaderEnd(state.buffer, state.headerScanned);
+			if(state.headerEnd < 0){
+				state.headerScanned = state.buffer.position();
+				if(state.buffer.position() >= maxHeaderSize){
+					reject(key,RESPONSE_HEADERS_TOO_LARGE);
+				}
+				return;
+			}
+			if(!parseFraming(key,state)){
+				return;
+			}
+		}
+		
+		if(state.spool != null){
+			spool(state);
+			if(state.spoolRemaining == 0){
+				complete(key,state);
+			}
+		}
+		else if(state.buffer.position() >= (state.headerEnd + state.bodyLength)){
+			complete(key,state);
+		}
+		else if(!state.buffer.hasRemaining()){
+			grow(state);
+		}
+	}
+
+
+	/**
+	 * Put connections whose responses have been written back on the selector.  Anything the
+	 * client pipelined is already in the buffer so it is processed straight away.
+	 */
+	private void registerRecycled(Selector s){
+		ConnectionState state;
+		while((state = recycled.poll()) != null){
+			try{
+				state.channel.configureBlocking(false);
+				state.lastActivity = System.currentTimeMillis();
+				SelectionKey key = state.channel.register(s, SelectionKey.OP_READ, state);
+				process(key,state);
+			}
+			catch(IOException e){
+				getLog().debug("Unable to recycle connection from "+state.source+"\n"+e);
+				closeQuietly(state.channel);
+			}
+		}
+	}
+
+
+	@Override
+	public void recycle(HttpServerConnection conn, Socket socket, Object context) {
+		if(context instanceof ConnectionState){
+			recycled.add((ConnectionState) context);
+			synchronized(this){
+				if(selector != null){
+					selector.wakeup();
+				}
+			}
+		}
+		else{
+			try {
+				conn.shutdown();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+
+	/**
+	 * Double the read buffer, never past what a maximal request could need
+	 * @return false if the buffer is already as large as it is allowed to be
+	 */
+	private boolean grow(ConnectionState state){
+		long limit = (state.headerEnd < 0) ? maxHeaderSize : (state.headerEnd + state.bodyLength);
+		if(state.buffer.capacity() >= limit){
+			return false;
+		}
+		int size = (int) Math.min(limit, state.buffer.capacity() * 2L);
+		ByteBuffer bigger = ByteBuffer.allocate(size);
+		state.buffer.flip();
+		bigger.put(state.buffer);
+		state.buffer = bigger;
+		return true;
+	}
+
+
+	/**
+	 * @return the index just past the blank line ending the headers, or -1 if it hasn't arrived
+	 */
+	static int findHeaderEnd(ByteBuffer buffer){
+		return findHeaderEnd(buffer, 0);
+	}
+	
+	
+	/**
+	 * @param scanned the buffer's position when it was last searched, the blank line can only end after that
+	 * @return the index just past the blank line ending the headers, or -1 if it hasn't arrived
+	 */
+	static int findHeaderEnd(ByteBuffer buffer, int scanned){
+		byte[] b = buffer.array();
+		int end = buffer.position();
+		for(int i = Math.max(3, scanned - 3); i < end; i++){
+			if((b[i] == '\n') && (b[i-1] == '\r') && (b[i-2] == '\n') && (b[i-3] == '\r')){
+				return i+1;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Work out how long the body is from the headers
+	 * @return false if the connection was rejected
+	 */
+	private boolean parseFraming(SelectionKey key, ConnectionState state) throws IOException{
+		RequestHead head = RequestHead.parse(state.buffer.array(), 0, state.headerEnd);
+		if(head == null){
+			getLog().debug("Unable to parse request from "+state.source);
+			reject(key,RESPONSE_BAD_REQUEST);
+			return false;
+		}
+		if(head.containsHeader("Transfer-Encoding")){
+			reject(key,RESPONSE_LENGTH_REQUIRED);
+			return false;
+		}
+		Header contentLength = head.getFirstHeader("Content-Length");
+		if(contentLength != null){
+			try{
+				state.bodyLength = Long.parseLong(contentLength.getValue().trim());
+			}
+			catch(NumberFormatException e){
+				reject(key,RESPONSE_BAD_REQUEST);
+				return false;
+			}
+			if(state.bodyLength < 0){
+				reject(key,RESPONSE_BAD_REQUEST);
+				return false;
+			}
+			if(getRequestBodyPolicy().isTooLarge(state.bodyLength)){
+				reject(key,RESPONSE_PAYLOAD_TOO_LARGE);
+				return false;
+			}
+		}
+		state.head = head;
+		
+		if(getRequestBodyPolicy().shouldSpool(state.bodyLength)){
+			state.spool = getRequestBodyPolicy().openSpool();
+			state.spoolRemaining = state.bodyLength;
+			/* The head has been copied out, so the buffer only needs to hold what comes after it */
+			state.buffer.flip();
+			state.buffer.position(state.headerEnd);
+			state.buffer.compact();
+			state.headerEnd = 0;
+			state.bodyLength = 0;
+		}
+		
+		/* A client that asked first is waiting to hear that it can send the body */
+		Header expect = head.getFirstHeader("Expect");
+		if((expect != null) && "100-continue".equalsIgnoreCase(expect.getValue().trim()) && (state.spoolRemaining + state.bodyLength > 0)){
+			((SocketChannel) key.channel()).write(ByteBuffer.wrap(RESPONSE_CONTINUE));
+		}
+		return true;
+	}
+	
+	
+	/**
+	 * Move the part of a spooled body that has arrived out of the buffer and into its file
+	 */
+	private void spool(ConnectionState state) throws IOException{
+		int n = (int) Math.min(state.buffer.position(), state.spoolRemaining);
+		if(n == 0){
+			return;
+		}
+		state.buffer.flip();
+		ByteBuffer body = state.buffer.duplicate();
+		body.limit(n);
+		state.spool.write(body);
+		state.buffer.position(n);
+		state.buffer.compact();
+		state.spoolRemaining -= n;
+	}
+
+
+	/**
+	 * The whole request is buffered, take the channel off the selector and build the Request and Output
+	 */
+	private void complete(SelectionKey key, ConnectionState state) throws IOException{
+		RequestHead head = state.head;
+		state.head = null;
+
+		Request request = null;
+		try {
+			request = HTTPInputOverSocket.buildRequest(state.source, head.getMethod(), head.getUri(), head.getHeaders());
+		} catch (URISyntaxException e) {
+			getLog().debug("Bad uri from "+state.source+"\n"+e);
+			reject(key,RESPONSE_BAD_REQUEST);
+			return;
+		}
+
+		if(state.spool != null){
+			request.setBody(state.spool.finish());
+			state.spool = null;
+		}
+		else if(state.bodyLength > 0){
+			request.setBody(new RequestBody(Arrays.copyOfRange(state.buffer.array(), state.headerEnd, (int) (state.headerEnd + state.bodyLength))));
+		}
+
+		/* Keep anything pipelined behind this request for when the connection comes back */
+		int requestLength = (int) (state.headerEnd + state.bodyLength);
+		state.buffer.flip();
+		state.buffer.position(requestLength);
+		state.buffer.compact();
+		state.headerEnd = -1;
+		state.headerScanned = 0;
+		state.bodyLength = 0;
+
+		/* The channel can only leave the selector once the cancelled key has been flushed, see handOff() */
+		key.cancel();
+		handoffs.add(new Handoff(state,request,getKeepAlivePolicy().keepAlive(head.getProtocolVersion(), head.getFirstHeader("Connection"), state.requestsServed)));
+	}
+
+
+	/**
+	 * The state of a complete request while its channel waits to come off the selector
+	 */
+	private static class Handoff{
+		private final ConnectionState state;
+		private final Request request;
+		private final boolean keepAlive;
+
+		Handoff(ConnectionState state, Request request, boolean keepAlive){
+			this.state = state;
+			this.request = request;
+			this.keepAlive = keepAlive;
+		}
+	}
+
+
+	/**
+	 * The response is written with the blocking http connection, so switch the channels of completed requests
+	 * to blocking mode.  That isn't allowed until their cancelled keys are deregistered by a selection, which 
+	 * can't be done while the selected keys are being iterated, so it happens here once per select.
+	 */
+	private void handOff(Selector s) throws IOException{
+		if(handoffs.isEmpty()){
+			return;
+		}
+		s.selectNow();
+		/* Anything that became ready will be selected again next time around */
+		s.selectedKeys().clear();
+
+		Handoff handoff;
+		while((handoff = handoffs.poll()) != null){
+			ConnectionState state = handoff.state;
+			try{
+				state.channel.configureBlocking(true);
+			}
+			catch(IOException e){
+				getLog().debug("Unable to hand off connection from "+state.source+"\n"+e);
+				closeQuietly(state.channel);
+				continue;
+			}
+
+			HttpServerConnection conn = this.connFactory.createConnection(state.channel.socket());
+			Output_Socket_HTTP oc = new Output_Socket_HTTP(conn,state.channel.socket());
+			if(handoff.keepAlive){
+				state.requestsServed++;
+				oc.setKeepAlive(this, state);
+			}
+			oc.setCompression(getCompression(), handoff.request.getHeader("Accept-Encoding"));
+			oc.setRequestBody(handoff.request.getBody());
+
+			if(getLog().isInfoEnabled()){
+				getLog().info("Received a request on the wire:\n"+handoff.request.toString());
+			}
+			completed.add(new Pair<Request,Output>(handoff.request,oc));
+		}
+	}
+
+
+	private void reject(SelectionKey key, byte[] response){
+		SocketChannel channel = (SocketChannel) key.channel();
+		try{
+			channel.write(ByteBuffer.wrap(response));
+		}
+		catch(IOException e){
+			getLog().trace("Unable to send rejection\n"+e);
+		}
+		close(key);
+	}
+	
+	
+	/**
+	 * Drop a connection that is still on the selector, along with anything it had spooled
+	 */
+	private static void close(SelectionKey key){
+		key.cancel();
+		if(key.attachment() instanceof ConnectionState){
+			((ConnectionState) key.attachment()).discardSpool();
+		}
+		closeQuietly(key.channel());
+	}
+
+
+	/**
+	 * Close connections that have been sitting on the selector without finishing a request
+	 */
+	private void sweepIdleConnections(Selector s){
+		long now = System.currentTimeMillis();
+		if((now - lastIdleSweep) < SELECT_TIMEOUT){
+			return;
+		}
+		lastIdleSweep = now;
+		for(SelectionKey key:s.keys()){
+			Object attachment = key.attachment();
+			if(key.isValid() && (attachment instanceof ConnectionState)){
+				ConnectionState state = (ConnectionState) attachment;
+				long timeout = ((state.requestsServed > 0) && (state.buffer.position() == 0))?getKeepAlivePolicy().getIdleTimeout():headerTimeout;
+				if((now - state.lastActivity) > timeout){
+					close(key);
+				}
+			}
+		}
+	}
+
+
+	private static void closeQuietly(java.nio.channels.Channel channel){
+		if(channel != null){
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+
+	/**
+	 * The request has already been read off the wire so this just hands it over
+	 */
+	private static class CompletedRequest implements Callable<Pair<Request,Output>>{
+
+		private final Pair<Request,Output> pair;
+
+		CompletedRequest(Pair<Request,Output> pair){
+			this.pair = pair;
+		}
+
+		@Override
+		public Pair<Request, Output> call() {
+			return pair;
+		}
+	}
+
+
+	@Override
+	public synchronized void closeChannel() {
+		if(selector != null){
+			try{
+				for(SelectionKey key:selector.keys()){
+					close(key);
+				}
+			}
+			catch(ClosedSelectorException e){
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+			}
+		}
+		selector = null;
+		ConnectionState state;
+		while((state = recycled.poll()) != null){
+			closeQuietly(state.channel);
+		}
+		closeQuietly(serverChannel);
+		serverChannel = null;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+
+/**
+ * Decides whether a connection is kept open after a response so that the next
+ * request from the same client can be read off the same socket.
+ * @author djp3
+ *
+ */
+public class KeepAlivePolicy {
+
+	private boolean enabled = true;
+	private long idleTimeout = 15 * 1000;
+	private int maxRequests = 100;
+
+	public KeepAlivePolicy(){
+	}
+
+	public KeepAlivePolicy(boolean enabled, long idleTimeout, int maxRequests){
+		setEnabled(enabled);
+		setIdleTimeout(idleTimeout);
+		setMaxRequests(maxRequests);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return milliseconds a kept alive connection may wait for its next request before it is closed
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(long idleTimeout) {
+		if(idleTimeout <= 0){
+			throw new IllegalArgumentException("idleTimeout must be positive: "+idleTimeout);
+		}
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @return the most requests that will be answered on a single connection
+	 */
+	public int getMaxRequests() {
+		return maxRequests;
+	}
+
+	public void setMaxRequests(int maxRequests) {
+		if(maxRequests < 1){
+			throw new IllegalArgumentException("maxRequests must be at least 1: "+maxRequests);
+		}
+		this.maxRequests = maxRequests;
+	}
+
+	/**
+	 * @param httpRequest the request that is about to be answered
+	 * @param requestsServed how many responses have already been sent on this connection
+	 * @return true if the connection should stay open after the response to httpRequest
+	 */
+	public boolean keepAlive(HttpRequest httpRequest, int requestsServed){
+		return keepAlive(httpRequest.getRequestLine().getProtocolVersion(), httpRequest.getFirstHeader("Connection"), requestsServed);
+	}
+
+	/**
+	 * @param version the protocol version of the request that is about to be answered
+	 * @param connection its Connection header, null if it didn't have one
+	 * @param requestsServed how many responses have already been sent on this connection
+	 * @return true if the connection should stay open after the response
+	 */
+	public boolean keepAlive(ProtocolVersion version, Header connection, int requestsServed){
+		if(!isEnabled()){
+			return false;
+		}
+		if((requestsServed + 1) >= getMaxRequests()){
+			return false;
+		}
+
+		if(version.lessEquals(HttpVersion.HTTP_1_0)){
+			/* 1.0 clients have to ask */
+			return (connection != null) && "keep-alive".equalsIgnoreCase(connection.getValue().trim());
+		}
+		else{
+			/* 1.1 clients are persistent unless they say otherwise */
+			return (connection == null) || !"close".equalsIgnoreCase(connection.getValue().trim());
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+
+import edu.uci.ics.luci.utility.webserver.input.request.RequestBody;
+
+/**
+ * How big a request body may be and when it is spooled to a file instead of being held in memory.
+ * A body that is too big is turned away with a 413 before it is read if its length is declared up front.
+ * @author djp3
+ *
+ */
+public class RequestBodyPolicy {
+	
+	private static final int COPY_BUFFER_SIZE = 8 * 1024;
+	
+	private long maxSize = 1024 * 1024;
+	private int spoolThreshold = 64 * 1024;
+	private File spoolDirectory = null;
+	
+	public RequestBodyPolicy(){
+	}
+	
+	public RequestBodyPolicy(long maxSize, int spoolThreshold){
+		setMaxSize(maxSize);
+		setSpoolThreshold(spoolThreshold);
+	}
+
+	/**
+	 * @return the most bytes a request body may have
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(long maxSize) {
+		if(maxSize < 0){
+			throw new IllegalArgumentException("maxSize can't be negative: "+maxSize);
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @return bodies with more bytes than this go to a file
+	 */
+	public int getSpoolThreshold() {
+		return spoolThreshold;
+	}
+
+	public void setSpoolThreshold(int spoolThreshold) {
+		if(spoolThreshold < 0){
+			throw new IllegalArgumentException("spoolThreshold can't be negative: "+spoolThreshold);
+		}
+		this.spoolThreshold = spoolThreshold;
+	}
+
+	/**
+	 * @return where spooled bodies go, null for the system's temporary directory
+	 */
+	public File getSpoolDirectory() {
+		return spoolDirectory;
+	}
+
+	public void setSpoolDirectory(File spoolDirectory) {
+		if((spoolDirectory != null) && !spoolDirectory.isDirectory()){
+			throw new IllegalArgumentException("Not a directory: "+spoolDirectory);
+		}
+		this.spoolDirectory = spoolDirectory;
+	}
+	
+	/**
+	 * @param length the declared length of a body, negative if it wasn't declared
+	 * @return true if it can be turned away without reading it
+	 */
+	public boolean isTooLarge(long length){
+		return length > maxSize;
+	}
+	
+	/**
+	 * @param length the declared length of a body
+	 * @return true if it should be spooled from the start
+	 */
+	public boolean shouldSpool(long length){
+		return length > spoolThreshold;
+	}
+	
+	
+	/**
+	 * Read a body, in memory or spooled as its size calls for
+	 * @param in the body, which is read to its end
+	 * @param length its declared length, negative if it isn't known
+	 * @return the body, or null if it turned out to be larger than {@link #getMaxSize()}
+	 * @throws IOException including if in ends before length bytes
+	 */
+	public RequestBody read(InputStream in, long length) throws IOException{
+		if(isTooLarge(length)){
+			return null;
+		}
+		if((length >= 0) && !shouldSpool(length)){
+			byte[] b = new byte[(int) length];
+			IOUtils.readFully(in, b);
+			return new RequestBody(b);
+		}
+		
+		ByteArrayOutputStream heap = shouldSpool(length) ? null : new ByteArrayOutputStream();
+		Spool spool = (heap == null) ? openSpool() : null;
+		try{
+			byte[] buffer = new byte[COPY_BUFFER_SIZE];
+			long total = 0;
+			int n;
+			while((n = in.read(buffer)) >= 0){
+				total += n;
+				if(total > maxSize){
+					if(spool != null){
+						spool.abort();
+					}
+					return null;
+				}
+				if((spool == null) && (total > spoolThreshold)){
+					/* Outgrew memory */
+					spool = openSpool();
+					spool.write(ByteBuffer.wrap(heap.toByteArray()));
+					heap = null;
+				}
+				if(spool != null){
+					spool.write(ByteBuffer.wrap(buffer, 0, n));
+				}
+				else{
+					heap.write(buffer, 0, n);
+				}
+			}
+			if((length >= 0) && (total != length)){
+				throw new EOFException("Body ended after "+total+" of "+length+" bytes");
+			}
+			return (spool != null) ? spool.finish() : new RequestBody(heap.toByteArray());
+		}
+		catch(IOException e){
+			if(spool != null){
+				spool.abort();
+			}
+			throw e;
+		}
+	}
+	
+	
+	/**
+	 * @return a new, empty file for a body to be written to as it arrives
+	 * @throws IOException
+	 */
+	Spool openSpool() throws IOException{
+		return new Spool(File.createTempFile("request", ".body", spoolDirectory));
+	}
+	
+	
+	/** A body on its way to a file */
+	static class Spool{
+		private final File file;
+		private final FileChannel channel;
+		private long written = 0;
+		
+		private Spool(File file) throws IOException{
+			this.file = file;
+			try{
+				this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+			}
+			catch(IOException e){
+				file.delete();
+				throw e;
+			}
+		}
+		
+		/**
+		 * @param b everything remaining in it is written
+		 */
+		void write(ByteBuffer b) throws IOException{
+			while(b.hasRemaining()){
+				written += channel.write(b);
+			}
+		}
+		
+		long getWritten(){
+			return written;
+		}
+		
+		RequestBody finish() throws IOException{
+			channel.close();
+			return new RequestBody(file, written);
+		}
+		
+		/**
+		 * Throw away what has been written
+		 */
+		void abort(){
+			try{
+				channel.close();
+			}
+			catch(IOException e){
+			}
+			file.delete();
+		}
+	}
+}
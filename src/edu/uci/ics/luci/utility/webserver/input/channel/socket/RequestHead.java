@@ -0,0 +1,298 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpVersion;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.message.BasicHeaderValueParser;
+
+/**
+ * The request line and headers of an HTTP request, parsed straight out of the bytes they arrived in.
+ * The method and target are always needed so they are decoded up front, header names and values
+ * are only made into Strings when something asks for them.
+ * @author djp3
+ *
+ */
+final class RequestHead {
+	
+	private static final String[] COMMON_METHODS = {"GET", "POST", "HEAD", "PUT", "DELETE", "OPTIONS"};
+	private static final Header[] NO_HEADERS = new Header[0];
+	
+	private final String method;
+	private final String uri;
+	private final ProtocolVersion version;
+	private final Header[] headers;
+	
+	private RequestHead(String method, String uri, ProtocolVersion version, Header[] headers){
+		this.method = method;
+		this.uri = uri;
+		this.version = version;
+		this.headers = headers;
+	}
+	
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public ProtocolVersion getProtocolVersion() {
+		return version;
+	}
+	
+	/**
+	 * @return the headers in the order they arrived
+	 */
+	public Header[] getHeaders() {
+		return headers;
+	}
+	
+	/**
+	 * @param name compared without regard to case, and without decoding the names of the other headers
+	 * @return the first header called name, or null
+	 */
+	public Header getFirstHeader(String name){
+		for(Header h: headers){
+			if(((RawHeader) h).hasName(name)){
+				return h;
+			}
+		}
+		return null;
+	}
+	
+	public boolean containsHeader(String name){
+		return getFirstHeader(name) != null;
+	}
+	
+	
+	/**
+	 * @param b
+	 * @param offset where the request line starts
+	 * @param length up to and including the blank line that ends the headers
+	 * @return the parsed head, or null if it isn't a well formed HTTP/1.x request
+	 */
+	static RequestHead parse(byte[] b, int offset, int length){
+		/* The bytes are kept for decoding headers later, and the caller's buffer gets reused */
+		byte[] bytes = Arrays.copyOfRange(b, offset, offset + length);
+		int end = bytes.length;
+		
+		/* Request line */
+		int lineEnd = lineEnd(bytes, 0, end);
+		if(lineEnd < 0){
+			return null;
+		}
+		int sp1 = indexOf(bytes, (byte) ' ', 0, lineEnd);
+		if(sp1 <= 0){
+			return null;
+		}
+		int sp2 = indexOf(bytes, (byte) ' ', sp1 + 1, lineEnd);
+		if(sp2 <= sp1 + 1){
+			return null;
+		}
+		ProtocolVersion version = parseVersion(bytes, sp2 + 1, trimCR(bytes, sp2 + 1, lineEnd));
+		if(version == null){
+			return null;
+		}
+		String method = method(bytes, 0, sp1);
+		String uri = new String(bytes, sp1 + 1, sp2 - (sp1 + 1), StandardCharsets.ISO_8859_1);
+		
+		/* Header lines up to the blank one */
+		Header[] headers = NO_HEADERS;
+		int count = 0;
+		int start = lineEnd + 1;
+		while(true){
+			lineEnd = lineEnd(bytes, start, end);
+			if(lineEnd < 0){
+				return null;
+			}
+			int contentEnd = trimCR(bytes, start, lineEnd);
+			if(contentEnd == start){
+				break;
+			}
+			/* Folded lines are obsolete, and whitespace before the colon isn't allowed */
+			if((bytes[start] == ' ') || (bytes[start] == '\t')){
+				return null;
+			}
+			int colon = indexOf(bytes, (byte) ':', start, contentEnd);
+			if(colon <= start){
+				return null;
+			}
+			if((bytes[colon - 1] == ' ') || (bytes[colon - 1] == '\t')){
+				return null;
+			}
+			int valueStart = colon + 1;
+			while((valueStart < contentEnd) && ((bytes[valueStart] == ' ') || (bytes[valueStart] == '\t'))){
+				valueStart++;
+			}
+			int valueEnd = contentEnd;
+			while((valueEnd > valueStart) && ((bytes[valueEnd - 1] == ' ') || (bytes[valueEnd - 1] == '\t'))){
+				valueEnd--;
+			}
+			if(count == headers.length){
+				headers = Arrays.copyOf(headers, Math.max(16, count * 2));
+			}
+			headers[count++] = new RawHeader(bytes, start, colon, valueStart, valueEnd);
+			start = lineEnd + 1;
+		}
+		
+		return new RequestHead(method, uri, version, (count == headers.length) ? headers : Arrays.copyOf(headers, count));
+	}
+	
+	/**
+	 * @return the index of the next '\n', or -1
+	 */
+	private static int lineEnd(byte[] b, int from, int to){
+		return indexOf(b, (byte) '\n', from, to);
+	}
+	
+	private static int indexOf(byte[] b, byte c, int from, int to){
+		for(int i = from; i < to; i++){
+			if(b[i] == c){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the end of a line without the '\r' before its '\n'
+	 */
+	private static int trimCR(byte[] b, int start, int lineEnd){
+		return ((lineEnd > start) && (b[lineEnd - 1] == '\r')) ? lineEnd - 1 : lineEnd;
+	}
+	
+	private static String method(byte[] b, int start, int end){
+		for(String m: COMMON_METHODS){
+			if(matches(b, start, end, m, false)){
+				return m;
+			}
+		}
+		return new String(b, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+	
+	/**
+	 * @return HTTP/d.d, the two common versions without making anything
+	 */
+	private static ProtocolVersion parseVersion(byte[] b, int start, int end){
+		if(((end - start) != 8) || !matches(b, start, start + 5, "HTTP/", false) || (b[start + 6] != '.')){
+			return null;
+		}
+		int major = b[start + 5] - '0';
+		int minor = b[start + 7] - '0';
+		if((major != 1) || (minor < 0) || (minor > 9)){
+			return null;
+		}
+		if(minor == 1){
+			return HttpVersion.HTTP_1_1;
+		}
+		if(minor == 0){
+			return HttpVersion.HTTP_1_0;
+		}
+		return new HttpVersion(major, minor);
+	}
+	
+	/**
+	 * @return true if b[start,end) is s, which is ASCII
+	 */
+	private static boolean matches(byte[] b, int start, int end, String s, boolean ignoreCase){
+		if((end - start) != s.length()){
+			return false;
+		}
+		for(int i = 0; i < s.length(); i++){
+			int x = b[start + i];
+			int y = s.charAt(i);
+			if(x != y){
+				if(!ignoreCase){
+					return false;
+				}
+				if((x >= 'A') && (x <= 'Z')){
+					x += 'a' - 'A';
+				}
+				if((y >= 'A') && (y <= 'Z')){
+					y += 'a' - 'A';
+				}
+				if(x != y){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	
+	/** A header that decodes its name and value from the request's bytes the first time they are used */
+	private static final class RawHeader implements Header{
+		
+		private final byte[] bytes;
+		private final int nameStart;
+		private final int nameEnd;
+		private final int valueStart;
+		private final int valueEnd;
+		private String name = null;
+		private String value = null;
+		
+		RawHeader(byte[] bytes, int nameStart, int nameEnd, int valueStart, int valueEnd){
+			this.bytes = bytes;
+			this.nameStart = nameStart;
+			this.nameEnd = nameEnd;
+			this.valueStart = valueStart;
+			this.valueEnd = valueEnd;
+		}
+		
+		boolean hasName(String n){
+			return matches(bytes, nameStart, nameEnd, n, true);
+		}
+
+		@Override
+		public String getName() {
+			if(name == null){
+				name = new String(bytes, nameStart, nameEnd - nameStart, StandardCharsets.ISO_8859_1);
+			}
+			return name;
+		}
+
+		@Override
+		public String getValue() {
+			if(value == null){
+				value = new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+			}
+			return value;
+		}
+
+		@Override
+		public HeaderElement[] getElements() {
+			return BasicHeaderValueParser.parseElements(getValue(), null);
+		}
+		
+		@Override
+		public String toString(){
+			return getName()+": "+getValue();
+		}
+	}
+}
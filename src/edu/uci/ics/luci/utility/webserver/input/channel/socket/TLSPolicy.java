@@ -0,0 +1,589 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.luci.utility.webserver.MyKeyManager;
+
+/**
+ * How the secure {@link HTTPInputOverSocket} does TLS.  The SSLContext is built once and shared by every
+ * connection so that its session cache, and session tickets, let returning clients resume instead of paying
+ * for a full handshake.  Protocols, cipher suites and ALPN protocols are set explicitly, each filtered down to
+ * what the JVM supports.
+ * 
+ * The key store is checked for changes at most every {@link #getKeyStoreCheckInterval()} milliseconds and
+ * reloaded when it has changed, so a renewed certificate is picked up without a restart.
+ * @author djp3
+ *
+ */
+public class TLSPolicy {
+	
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(TLSPolicy.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	public static final String[] DEFAULT_PROTOCOLS = {"TLSv1.3", "TLSv1.2"};
+	
+	/* Forward secret AEAD suites only, fastest first */
+	public static final String[] DEFAULT_CIPHER_SUITES = {
+			"TLS_AES_128_GCM_SHA256",
+			"TLS_AES_256_GCM_SHA384",
+			"TLS_CHACHA20_POLY1305_SHA256",
+			"TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256",
+			"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256",
+			"TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+			"TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384",
+			"TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256",
+			"TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256"};
+	
+	public static final String[] DEFAULT_APPLICATION_PROTOCOLS = {"http/1.1"};
+	
+	/** JVM wide switch for stateless TLS session tickets, read when the first SSLContext is made (Java 13+) */
+	public static final String SESSION_TICKET_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+	
+	private final String keyStoreFile;
+	private final char[] password;
+	private final String alias;
+	private final String keyStoreType;
+	
+	private String[] protocols = DEFAULT_PROTOCOLS;
+	private String[] cipherSuites = DEFAULT_CIPHER_SUITES;
+	private String[] applicationProtocols = DEFAULT_APPLICATION_PROTOCOLS;
+	private int sessionCacheSize = 20 * 1000;
+	private int sessionTimeout = 24 * 60 * 60; // 1 day
+	private boolean sessionTickets = true;
+	private long keyStoreCheckInterval = 60 * 1000;
+	
+	private SSLContext context = null;
+	private volatile ReloadingKeyManager keyManager = null;
+	
+	private final AtomicLong handshakes = new AtomicLong(0);
+	private final AtomicLong resumed = new AtomicLong(0);
+	
+	/**
+	 * @param keyStoreFile where the server's key and certificate chain are
+	 * @param password of the key store and the key
+	 * @param alias of the key to serve with
+	 * @param keyStoreType null for the JVM's default
+	 */
+	public TLSPolicy(String keyStoreFile, char[] password, String alias, String keyStoreType){
+		if(keyStoreFile == null){
+			throw new IllegalArgumentException("keyStoreFile can't be null");
+		}
+		if(password == null){
+			throw new IllegalArgumentException("password can't be null");
+		}
+		if(alias == null){
+			throw new IllegalArgumentException("alias can't be null");
+		}
+		this.keyStoreFile = keyStoreFile;
+		this.password = password.clone();
+		this.alias = alias;
+		this.keyStoreType = keyStoreType;
+	}
+	
+	/**
+	 * The key store as it has always been configured for the secure input, see the README.txt in testSupport/keystore
+	 * @return a policy for javax.net.ssl.keyStore, javax.net.ssl.keyStorePassword, edu.uci.ics.luci.webserver.Alias and keystore.type
+	 */
+	public static TLSPolicy fromSystemProperties(){
+		String keyStore = System.getProperty("javax.net.ssl.keyStore");
+		if(keyStore == null) {
+			getLog().fatal("javax.net.ssl.keyStore property is not set, see test/keystore for info");
+			throw new IllegalStateException("javax.net.ssl.keyStore property is not set");
+		}
+		
+		String keyStorePassword = System.getProperty("javax.net.ssl.keyStorePassword");
+		if(keyStorePassword == null) {
+			getLog().fatal("javax.net.ssl.keyStorePassword property is not set, see test/keystore for info");
+			throw new IllegalStateException("javax.net.ssl.keyStorePassword property is not set");
+		}
+		
+		String alias = System.getProperty("edu.uci.ics.luci.webserver.Alias");
+		if(alias == null) {
+			getLog().fatal("edu.uci.ics.luci.webserver.Alias property is not set, see test/keystore for info");
+			throw new IllegalStateException("edu.uci.ics.luci.webserver.Alias property is not set");
+		}
+		
+		return new TLSPolicy(keyStore, keyStorePassword.toCharArray(), alias, System.getProperty("keystore.type"));
+	}
+	
+	public String[] getProtocols() {
+		return protocols.clone();
+	}
+
+	/**
+	 * @param protocols in order of preference, ones the JVM doesn't support are left out
+	 */
+	public synchronized void setProtocols(String... protocols) {
+		this.protocols = checkList("protocols", protocols);
+	}
+
+	public String[] getCipherSuites() {
+		return cipherSuites.clone();
+	}
+
+	/**
+	 * @param cipherSuites in order of preference, ones the JVM doesn't support are left out
+	 */
+	public synchronized void setCipherSuites(String... cipherSuites) {
+		this.cipherSuites = checkList("cipherSuites", cipherSuites);
+	}
+
+	public String[] getApplicationProtocols() {
+		return applicationProtocols.clone();
+	}
+
+	/**
+	 * @param applicationProtocols offered with ALPN, in order of preference.  Empty to not take part in ALPN.
+	 */
+	public synchronized void setApplicationProtocols(String... applicationProtocols) {
+		if(applicationProtocols == null){
+			throw new IllegalArgumentException("applicationProtocols can't be null");
+		}
+		this.applicationProtocols = applicationProtocols.clone();
+	}
+
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	/**
+	 * @param sessionCacheSize how many sessions are kept to be resumed, 0 for no limit
+	 */
+	public synchronized void setSessionCacheSize(int sessionCacheSize) {
+		if(sessionCacheSize < 0){
+			throw new IllegalArgumentException("sessionCacheSize can't be negative: "+sessionCacheSize);
+		}
+		this.sessionCacheSize = sessionCacheSize;
+		if(context != null){
+			context.getServerSessionContext().setSessionCacheSize(sessionCacheSize);
+		}
+	}
+
+	/**
+	 * @return seconds a session can be resumed for
+	 */
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	public synchronized void setSessionTimeout(int sessionTimeout) {
+		if(sessionTimeout < 0){
+			throw new IllegalArgumentException("sessionTimeout can't be negative: "+sessionTimeout);
+		}
+		this.sessionTimeout = sessionTimeout;
+		if(context != null){
+			context.getServerSessionContext().setSessionTimeout(sessionTimeout);
+		}
+	}
+
+	public boolean isSessionTickets() {
+		return sessionTickets;
+	}
+
+	/**
+	 * @param sessionTickets whether clients may resume with stateless tickets.  This sets {@link #SESSION_TICKET_PROPERTY}
+	 * for the whole JVM, unless it has already been set, when the context is first made.
+	 */
+	public synchronized void setSessionTickets(boolean sessionTickets) {
+		this.sessionTickets = sessionTickets;
+	}
+
+	/**
+	 * @return milliseconds between looks at the key store file for changes
+	 */
+	public long getKeyStoreCheckInterval() {
+		return keyStoreCheckInterval;
+	}
+
+	public synchronized void setKeyStoreCheckInterval(long keyStoreCheckInterval) {
+		if(keyStoreCheckInterval < 0){
+			throw new IllegalArgumentException("keyStoreCheckInterval can't be negative: "+keyStoreCheckInterval);
+		}
+		this.keyStoreCheckInterval = keyStoreCheckInterval;
+	}
+	
+	private static String[] checkList(String name, String[] list){
+		if((list == null) || (list.length == 0)){
+			throw new IllegalArgumentException(name+" can't be empty");
+		}
+		return list.clone();
+	}
+	
+	
+	/**
+	 * @return the context every secure connection shares, made the first time it is needed
+	 * @throws IOException if the key store can't be read
+	 * @throws GeneralSecurityException
+	 */
+	public synchronized SSLContext getSSLContext() throws IOException, GeneralSecurityException{
+		if(context == null){
+			if(System.getProperty(SESSION_TICKET_PROPERTY) == null){
+				System.setProperty(SESSION_TICKET_PROPERTY, Boolean.toString(sessionTickets));
+			}
+			keyManager = new ReloadingKeyManager(keyStoreFile, password, alias, keyStoreType, keyStoreCheckInterval);
+			SSLContext c = SSLContext.getInstance("TLS");
+			c.init(new KeyManager[] { keyManager }, null, null);
+			
+			SSLSessionContext sessions = c.getServerSessionContext();
+			sessions.setSessionCacheSize(sessionCacheSize);
+			sessions.setSessionTimeout(sessionTimeout);
+			context = c;
+		}
+		return context;
+	}
+	
+	
+	/**
+	 * @param context the context the parameters will be used with
+	 * @return the protocols, cipher suites and ALPN protocols of this policy that context supports
+	 */
+	SSLParameters makeSSLParameters(SSLContext context){
+		SSLParameters supported = context.getSupportedSSLParameters();
+		SSLParameters p = context.getDefaultSSLParameters();
+		
+		String[] ps = supportedOnly(protocols, supported.getProtocols());
+		if(ps.length > 0){
+			p.setProtocols(ps);
+		}
+		else{
+			getLog().warn("None of the protocols "+Arrays.toString(protocols)+" are supported, using the JVM's defaults");
+		}
+		
+		String[] cs = supportedOnly(cipherSuites, supported.getCipherSuites());
+		if(cs.length > 0){
+			p.setCipherSuites(cs);
+		}
+		else{
+			getLog().warn("None of the cipher suites "+Arrays.toString(cipherSuites)+" are supported, using the JVM's defaults");
+		}
+		p.setUseCipherSuitesOrder(true);
+		
+		setApplicationProtocols(p, applicationProtocols);
+		return p;
+	}
+	
+	private static String[] supportedOnly(String[] wanted, String[] supported){
+		List<String> s = Arrays.asList(supported);
+		List<String> ret = new ArrayList<String>(wanted.length);
+		for(String w:wanted){
+			if(s.contains(w)){
+				ret.add(w);
+			}
+		}
+		return ret.toArray(new String[ret.size()]);
+	}
+	
+	/**
+	 * SSLParameters.setApplicationProtocols only exists from Java 9 (and late updates of 8), so it is found reflectively
+	 */
+	private static void setApplicationProtocols(SSLParameters p, String[] applicationProtocols){
+		if(applicationProtocols.length == 0){
+			return;
+		}
+		try{
+			Method m = SSLParameters.class.getMethod("setApplicationProtocols", String[].class);
+			m.invoke(p, (Object) applicationProtocols);
+		}
+		catch(NoSuchMethodException e){
+			getLog().warn("This JVM doesn't do ALPN, not offering "+Arrays.toString(applicationProtocols));
+		}
+		catch(IllegalAccessException e){
+			getLog().warn("Unable to set ALPN protocols\n"+e);
+		}
+		catch(InvocationTargetException e){
+			getLog().warn("Unable to set ALPN protocols\n"+e.getCause());
+		}
+	}
+	
+	
+	/**
+	 * @param port
+	 * @return a listening socket whose connections follow this policy
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	public SSLServerSocket createServerSocket(int port) throws IOException, GeneralSecurityException{
+		SSLContext c = getSSLContext();
+		SSLServerSocket s = (SSLServerSocket) c.getServerSocketFactory().createServerSocket(port);
+		s.setSSLParameters(makeSSLParameters(c));
+		return s;
+	}
+	
+	
+	/**
+	 * Count the handshake of a connection that was just accepted, once it happens
+	 * @param socket
+	 */
+	public void accepted(SSLSocket socket){
+		final long acceptedAt = System.currentTimeMillis();
+		socket.addHandshakeCompletedListener(new HandshakeCompletedListener(){
+			@Override
+			public void handshakeCompleted(HandshakeCompletedEvent event) {
+				handshakes.incrementAndGet();
+				/* A resumed session keeps the creation time of the handshake that made it */
+				if(event.getSession().getCreationTime() < acceptedAt){
+					resumed.incrementAndGet();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return handshakes completed on accepted connections
+	 */
+	public long getHandshakeCount(){
+		return handshakes.get();
+	}
+	
+	/**
+	 * @return handshakes that resumed an earlier session instead of doing the key exchange again
+	 */
+	public long getResumedCount(){
+		return resumed.get();
+	}
+	
+	public long getFullHandshakeCount(){
+		return handshakes.get() - resumed.get();
+	}
+	
+	/**
+	 * @return the fraction of handshakes that were resumptions
+	 */
+	public double getResumptionRatio(){
+		long h = handshakes.get();
+		return (h == 0) ? 0.0 : ((double) resumed.get() / h);
+	}
+	
+	/**
+	 * @return how many times the key store has been reloaded since the context was made
+	 */
+	public long getKeyStoreReloads(){
+		ReloadingKeyManager k = keyManager;
+		return (k == null) ? 0 : k.getReloads();
+	}
+	
+	
+	/**
+	 * Serves from a {@link MyKeyManager} that is replaced when the key store file changes.  The check is done
+	 * by whichever handshake chooses an alias after the interval, the others carry on with the current keys.
+	 * 
+	 * The aliases handed out are tagged with the loading of the key store they came from, and the certificate
+	 * chain and private key are looked up in that same loading, so a reload in the middle of a handshake can't
+	 * pair the chain of one key store with the key of another.
+	 */
+	static class ReloadingKeyManager extends X509ExtendedKeyManager{
+		
+		/* One loading of the key store */
+		private static class Keys{
+			final long generation;
+			final MyKeyManager manager;
+			
+			Keys(long generation, MyKeyManager manager){
+				this.generation = generation;
+				this.manager = manager;
+			}
+		}
+		
+		private static final char SEPARATOR = '.';
+		
+		private final File file;
+		private final char[] password;
+		private final String alias;
+		private final String type;
+		private final long checkInterval;
+		private final ReentrantLock checking = new ReentrantLock();
+		private final AtomicLong reloads = new AtomicLong(0);
+		
+		/* The loading before current is kept for handshakes that chose their alias just before a reload */
+		private volatile Keys current;
+		private volatile Keys previous = null;
+		private volatile long modified;
+		private volatile long nextCheck;
+		
+		ReloadingKeyManager(String keyStoreFile, char[] password, String alias, String type, long checkInterval) throws IOException, GeneralSecurityException{
+			this.file = new File(keyStoreFile);
+			this.password = password;
+			this.alias = alias;
+			this.type = type;
+			this.checkInterval = checkInterval;
+			this.modified = file.lastModified();
+			this.current = new Keys(0, new MyKeyManager(keyStoreFile, password, alias, type));
+			this.nextCheck = System.currentTimeMillis() + checkInterval;
+		}
+		
+		long getReloads(){
+			return reloads.get();
+		}
+		
+		/**
+		 * @return the current keys, after reloading the key store if it is time to check and it has changed
+		 */
+		private Keys reload(){
+			long now = System.currentTimeMillis();
+			if((now >= nextCheck) && checking.tryLock()){
+				try{
+					nextCheck = now + checkInterval;
+					long m = file.lastModified();
+					if(m != modified){
+						modified = m;
+						Keys k = current;
+						Keys next = new Keys(k.generation + 1, new MyKeyManager(file.getPath(), password, alias, type));
+						previous = k;
+						current = next;
+						reloads.incrementAndGet();
+						getLog().info("Reloaded key store "+file);
+					}
+				}
+				catch(IOException e){
+					getLog().error("Unable to reload key store "+file+", keeping the current keys\n"+e);
+				}
+				catch(GeneralSecurityException e){
+					getLog().error("Unable to reload key store "+file+", keeping the current keys\n"+e);
+				}
+				finally{
+					checking.unlock();
+				}
+			}
+			return current;
+		}
+		
+		private static String tag(Keys keys, String alias){
+			return (alias == null) ? null : (keys.generation + String.valueOf(SEPARATOR) + alias);
+		}
+		
+		private static String[] tag(Keys keys, String[] aliases){
+			if(aliases == null){
+				return null;
+			}
+			String[] tagged = new String[aliases.length];
+			for(int i = 0; i < aliases.length; i++){
+				tagged[i] = tag(keys, aliases[i]);
+			}
+			return tagged;
+		}
+		
+		/**
+		 * @param tagged an alias that was handed out
+		 * @return the keys it was chosen from, or null if it isn't ours or those keys have been let go of
+		 */
+		private Keys keysFor(String tagged){
+			int i = (tagged == null) ? -1 : tagged.indexOf(SEPARATOR);
+			if(i <= 0){
+				return null;
+			}
+			long generation;
+			try{
+				generation = Long.parseLong(tagged.substring(0, i));
+			}
+			catch(NumberFormatException e){
+				return null;
+			}
+			Keys k = current;
+			if(k.generation == generation){
+				return k;
+			}
+			k = previous;
+			if((k != null) && (k.generation == generation)){
+				return k;
+			}
+			return null;
+		}
+
+		@Override
+		public String[] getClientAliases(String keyType, Principal[] issuers) {
+			Keys k = current;
+			return tag(k, k.manager.getClientAliases(keyType, issuers));
+		}
+
+		@Override
+		public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+			Keys k = current;
+			return tag(k, k.manager.chooseClientAlias(keyType, issuers, socket));
+		}
+
+		@Override
+		public String[] getServerAliases(String keyType, Principal[] issuers) {
+			Keys k = current;
+			return tag(k, k.manager.getServerAliases(keyType, issuers));
+		}
+
+		@Override
+		public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+			Keys k = reload();
+			return tag(k, k.manager.chooseServerAlias(keyType, issuers, socket));
+		}
+		
+		@Override
+		public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+			Keys k = reload();
+			return tag(k, k.manager.chooseServerAlias(keyType, issuers));
+		}
+
+		@Override
+		public X509Certificate[] getCertificateChain(String alias) {
+			Keys k = keysFor(alias);
+			return (k == null) ? null : k.manager.getCertificateChain(alias.substring(alias.indexOf(SEPARATOR) + 1));
+		}
+
+		@Override
+		public PrivateKey getPrivateKey(String alias) {
+			Keys k = keysFor(alias);
+			return (k == null) ? null : k.manager.getPrivateKey(alias.substring(alias.indexOf(SEPARATOR) + 1));
+		}
+	}
+}
@@ -1,15 +1,21 @@
 package edu.uci.ics.luci.utility.webserver.input.request;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import org.apache.http.Header;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+
 import edu.uci.ics.luci.utility.webserver.Channel;
 import edu.uci.ics.luci.utility.webserver.Channel.Protocol;
-import net.minidev.json.JSONArray;
-import net.minidev.json.JSONObject;
-import net.minidev.json.JSONStyle;
+import edu.uci.ics.luci.utility.webserver.event.result.api.JSONWriter;
 
 /**
  * This class represents a REST request, that can be delivered from an http or p2p source
@@ -32,6 +38,13 @@ public class Request {
 	private String commandLine;
 	private Map<String, List<String>> headers;
 	private Map<String, Set<String>> parameters;
+	/* What headers and parameters are decoded from, the first time they are asked for */
+	private Header[] rawHeaders;
+	private String rawQuery;
+	/* Null if the request didn't have one */
+	private RequestBody body;
+	/* Values of the {name} segments in command, taken from commandLine */
+	private Map<String, String> pathParameters;
 
 	/** Returns the protocol and address of the requester **/
 	public String getSource() {
@@ -59,11 +72,55 @@ public class Request {
 	}
 	
 	public Map<String, Set<String>> getParameters(){
+		if((this.parameters == null) && (this.rawQuery != null)){
+			Map<String, Set<String>> p = new HashMap<String,Set<String>>();
+			if(!rawQuery.isEmpty()){
+				for (NameValuePair nvp : URLEncodedUtils.parse(rawQuery, StandardCharsets.UTF_8)) {
+					Set<String> set = p.get(nvp.getName());
+					if(set == null){
+						set = new HashSet<String>();
+						p.put(nvp.getName(), set);
+					}
+					set.add(nvp.getValue());
+				}
+			}
+			this.parameters = p;
+			this.rawQuery = null;
+		}
 		return this.parameters;
 	}
 
 	public void setParameters(Map<String, Set<String>> parameters) {
 		this.parameters = parameters;
+		this.rawQuery = null;
+	}
+	
+	/**
+	 * Set the parameters from a query string, which isn't decoded until {@link #getParameters()} is called
+	 * @param rawQuery still percent encoded, without the '?', "" for a request that had none
+	 */
+	public void setRawQuery(String rawQuery) {
+		this.rawQuery = rawQuery;
+		this.parameters = null;
+	}
+
+	public Map<String, String> getPathParameters(){
+		return this.pathParameters;
+	}
+
+	public void setPathParameters(Map<String, String> pathParameters) {
+		this.pathParameters = pathParameters;
+	}
+
+	/**
+	 * @return the body the request came with, or null if it didn't have one
+	 */
+	public RequestBody getBody() {
+		return body;
+	}
+
+	public void setBody(RequestBody body) {
+		this.body = body;
 	}
 
 	public void setProtocol(Channel.Protocol protocol) {
@@ -76,42 +133,115 @@ public class Request {
 
 	public void setHeaders(Map<String, List<String>> headers) {
 		this.headers = headers;
+		this.rawHeaders = null;
+	}
+	
+	/**
+	 * Set the headers as they were parsed, they aren't put into a map unless {@link #getHeaders()} is called
+	 * @param rawHeaders
+	 */
+	public void setRawHeaders(Header[] rawHeaders) {
+		this.rawHeaders = rawHeaders;
+		this.headers = null;
 	}
 	
 	public Map<String, List<String>> getHeaders(){
+		if((this.headers == null) && (this.rawHeaders != null)){
+			Map<String, List<String>> h = new HashMap<String,List<String>>();
+			for(Header header: rawHeaders){
+				List<String> list = h.get(header.getName());
+				if(list == null){
+					list = new ArrayList<String>(1);
+					h.put(header.getName(), list);
+				}
+				list.add(header.getValue());
+			}
+			this.headers = h;
+			this.rawHeaders = null;
+		}
 		return this.headers;
 	}
 	
-	@Override
-	public String toString(){
-		JSONObject ret = new JSONObject();
-		JSONObject ret_ret = new JSONObject();
-		ret_ret.put("source", source);
-		ret_ret.put("command", command);
-		ret_ret.put("command_line", commandLine);
-		ret_ret.put("protocol", protocol.toString());
-		
-		JSONObject ret_headers = new JSONObject();
+	/**
+	 * @param name compared without regard to case, as HTTP header names are
+	 * @return the first value of the header, or null if the request doesn't have it
+	 */
+	public String getHeader(String name){
+		if(name == null){
+			return null;
+		}
+		if(rawHeaders != null){
+			for(Header h: rawHeaders){
+				if(name.equalsIgnoreCase(h.getName())){
+					return h.getValue();
+				}
+			}
+			return null;
+		}
+		if(headers == null){
+			return null;
+		}
 		for(Entry<String, List<String>> e: headers.entrySet()){
-			JSONArray values = new JSONArray();
-			for(String s: e.getValue()){
-				values.add(s);
+			if(name.equalsIgnoreCase(e.getKey()) && (e.getValue() != null) && !e.getValue().isEmpty()){
+				return e.getValue().get(0);
 			}
-			ret_headers.put(e.getKey(), values);
 		}
-		ret_ret.put("headers", ret_headers);
-		
-		JSONObject ret_parameters = new JSONObject();
-		for(Entry<String, Set<String>> e: parameters.entrySet()){
-			JSONArray values = new JSONArray();
-			for(String s: e.getValue()){
-				values.add(s);
+		return null;
+	}
+	
+	@Override
+	public String toString(){
+		JSONWriter w = new JSONWriter();
+		try{
+			w.beginObject().name("request").beginObject();
+			w.name("source").value(source);
+			w.name("command").value(command);
+			w.name("command_line").value(commandLine);
+			w.name("protocol").value((protocol == null) ? null : protocol.toString());
+			
+			w.name("headers").beginObject();
+			Map<String, List<String>> h = getHeaders();
+			if(h != null){
+				for(Entry<String, List<String>> e: h.entrySet()){
+					w.name(e.getKey()).beginArray();
+					for(String s: e.getValue()){
+						w.value(s);
+					}
+					w.endArray();
+				}
 			}
-			ret_parameters.put(e.getKey(), values);
+			w.endObject();
+			
+			w.name("parameters").beginObject();
+			Map<String, Set<String>> p = getParameters();
+			if(p != null){
+				for(Entry<String, Set<String>> e: p.entrySet()){
+					w.name(e.getKey()).beginArray();
+					for(String s: e.getValue()){
+						w.value(s);
+					}
+					w.endArray();
+				}
+			}
+			w.endObject();
+			
+			if(pathParameters != null){
+				w.name("path_parameters").beginObject();
+				for(Entry<String, String> e: pathParameters.entrySet()){
+					w.name(e.getKey()).value(e.getValue());
+				}
+				w.endObject();
+			}
+			
+			if(body != null){
+				w.name("body_length").value(body.getLength());
+			}
+			
+			w.endObject().endObject();
+			return w.toString();
+		}
+		finally{
+			w.release();
 		}
-		ret_ret.put("parameters", ret_parameters);
-		
-		ret.put("request",ret_ret);
-		return ret.toJSONString(JSONStyle.LT_COMPRESS);
 	}
 }
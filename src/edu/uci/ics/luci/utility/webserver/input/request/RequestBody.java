@@ -0,0 +1,141 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.request;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * The body of a request.  Small bodies are held in memory, bigger ones are spooled to a file as they
+ * arrive so they never have to fit on the heap.  A spooled body's file is deleted once the response to
+ * the request has been sent, a handler that wants the body after that has to copy it.
+ * @author djp3
+ *
+ */
+public class RequestBody implements Closeable{
+	
+	private final byte[] bytes;
+	private final File file;
+	private final long length;
+	
+	/**
+	 * @param bytes the whole body, which is not copied
+	 */
+	public RequestBody(byte[] bytes){
+		if(bytes == null){
+			throw new IllegalArgumentException("bytes can't be null");
+		}
+		this.bytes = bytes;
+		this.file = null;
+		this.length = bytes.length;
+	}
+	
+	/**
+	 * @param file holding the body, which will be deleted when this is closed
+	 * @param length how much of file is the body
+	 */
+	public RequestBody(File file, long length){
+		if(file == null){
+			throw new IllegalArgumentException("file can't be null");
+		}
+		if(length < 0){
+			throw new IllegalArgumentException("length can't be negative: "+length);
+		}
+		this.bytes = null;
+		this.file = file;
+		this.length = length;
+	}
+	
+	/**
+	 * @return the number of bytes in the body
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	 * @return true if the body is in a file rather than in memory
+	 */
+	public boolean isSpooled() {
+		return file != null;
+	}
+	
+	/**
+	 * @return a new stream over the whole body, which the caller should close
+	 * @throws IOException
+	 */
+	public InputStream getInputStream() throws IOException {
+		if(file == null){
+			return new ByteArrayInputStream(bytes);
+		}
+		return new BoundedInputStream(new BufferedInputStream(new FileInputStream(file)), length);
+	}
+	
+	/**
+	 * @return a read-only view of the whole body.  A spooled body is mapped rather than read in.
+	 * @throws IOException
+	 */
+	public ByteBuffer getByteBuffer() throws IOException {
+		if(file == null){
+			return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+		}
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+		}
+	}
+	
+	/**
+	 * @param charset
+	 * @return the whole body decoded, which had better fit in memory
+	 * @throws IOException
+	 */
+	public String getString(Charset charset) throws IOException {
+		if(file == null){
+			return new String(bytes, charset);
+		}
+		try(InputStream in = getInputStream()){
+			return new String(IOUtils.toByteArray(in), charset);
+		}
+	}
+
+	/**
+	 * Delete a spooled body's file
+	 */
+	@Override
+	public void close() {
+		if((file != null) && file.exists() && !file.delete()){
+			file.deleteOnExit();
+		}
+	}
+}
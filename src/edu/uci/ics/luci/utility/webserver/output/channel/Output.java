@@ -13,6 +13,31 @@ public abstract class Output extends Channel{
 	public abstract void send_Proxy(APIEventResult response);
 	public abstract void send_Error();
 	
+	/**
+	 * Keep the connection open and send the events of an EVENTS response as they are published.  This
+	 * returns once the stream is set up, the output lets go of the connection when the stream ends.
+	 * @param response
+	 */
+	public abstract void send_Stream(APIEventResult response);
+	
+	/**
+	 * Tell the client its cached copy is still good, only the headers of response are sent
+	 * @param response
+	 */
+	public abstract void send_NotModified(APIEventResult response);
+	
+	/**
+	 * Tell the client the server is too busy, without doing any work for the request
+	 * @param retryAfter seconds before the client should try again
+	 */
+	public abstract void send_ServiceUnavailable(int retryAfter);
+	
+	/**
+	 * Tell the client it is over its rate limit, without doing any work for the request
+	 * @param retryAfter seconds before the client should try again
+	 */
+	public abstract void send_TooManyRequests(int retryAfter);
+	
 	public abstract APIEventResult makeOutputChannelResponse();
 	
 	/**TODO These only make sense for sockets, needs refactoring **/
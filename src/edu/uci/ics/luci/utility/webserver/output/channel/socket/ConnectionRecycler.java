@@ -0,0 +1,43 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.channel.socket;
+
+import java.net.Socket;
+
+import org.apache.http.HttpServerConnection;
+
+/**
+ * Implemented by the input side of a socket connection so that, once a response has been
+ * completely written on a persistent connection, the connection can go back to reading the next request.
+ * @author djp3
+ *
+ */
+public interface ConnectionRecycler {
+
+	/**
+	 * After this call the recycler owns the connection, the Output will not touch it again.
+	 * @param conn the http connection the response was written on
+	 * @param socket the underlying socket
+	 * @param context whatever the input attached to the Output when it was created
+	 */
+	public void recycle(HttpServerConnection conn, Socket socket, Object context);
+}
@@ -1,30 +1,43 @@
 package edu.uci.ics.luci.utility.webserver.output.channel.socket;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpServerConnection;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
-import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HTTP;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import edu.uci.ics.luci.utility.Globals;
-import edu.uci.ics.luci.utility.webserver.WebUtil;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
 import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult_HTTP;
+import edu.uci.ics.luci.utility.webserver.event.result.api.HeaderBlock;
+import edu.uci.ics.luci.utility.webserver.input.request.RequestBody;
 import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.encoding.Compression;
+import edu.uci.ics.luci.utility.webserver.output.encoding.ContentEncoding;
+import edu.uci.ics.luci.utility.webserver.output.stream.Subscription;
 
 /**
  * This class is the implementation for the Webserver to respond on the normal internet using
@@ -42,9 +55,32 @@ public class Output_Socket_HTTP extends Output{
 		return log;
 	}
 	
+	/* Headers that are the same on every response they are on */
+	private static final Header CONNECTION_KEEP_ALIVE = HeaderBlock.header(HTTP.CONN_DIRECTIVE, HTTP.CONN_KEEP_ALIVE);
+	private static final Header CONNECTION_CLOSE = HeaderBlock.header(HTTP.CONN_DIRECTIVE, HTTP.CONN_CLOSE);
+	private static final Header TRANSFER_ENCODING_CHUNKED = HeaderBlock.header(HTTP.TRANSFER_ENCODING, HTTP.CHUNK_CODING);
+	private static final Header VARY_ACCEPT_ENCODING = HeaderBlock.header("Vary", "Accept-Encoding");
+	private static final Header CACHE_CONTROL_NO_CACHE = HeaderBlock.header("Cache-Control", "no-cache");
+	/* Tells nginx not to hold events back */
+	private static final Header X_ACCEL_BUFFERING_NO = HeaderBlock.header("X-Accel-Buffering", "no");
+	
+	/* Whole 429 responses, built once for each Retry-After they are sent with */
+	private static final AtomicReferenceArray<byte[]> TOO_MANY_REQUESTS = new AtomicReferenceArray<byte[]>(64);
+	
 	private Socket socket;
 	private HashMap<String, String> headers;
 	private HttpServerConnection conn;
+	
+	/* Set when the connection should be handed back to the input after the response */
+	private ConnectionRecycler recycler = null;
+	private Object recyclerContext = null;
+	
+	/* How the body may be compressed, null leaves it alone */
+	private Compression compression = null;
+	private String acceptEncoding = null;
+	
+	/* Let go of once the response is done with */
+	private RequestBody requestBody = null;
 
 	Output_Socket_HTTP(Socket socket){
 		this.socket = socket;
@@ -58,6 +94,55 @@ public class Output_Socket_HTTP extends Output{
 		this.conn = conn;
 	}
 	
+	public Output_Socket_HTTP(HttpServerConnection conn, Socket socket) {
+		this.conn = conn;
+		this.socket = socket;
+	}
+	
+	/**
+	 * Mark this response as being on a persistent connection.  After a response is completely
+	 * written the connection is handed to recycler instead of being closed.
+	 * @param recycler the input that will read the next request, null to close after the response
+	 * @param context handed back to the recycler with the connection
+	 */
+	public void setKeepAlive(ConnectionRecycler recycler, Object context){
+		this.recycler = recycler;
+		this.recyclerContext = context;
+	}
+	
+	public boolean isKeepAlive(){
+		return (recycler != null);
+	}
+	
+	/**
+	 * Let response bodies be compressed
+	 * @param compression the policy to follow, null to never compress
+	 * @param acceptEncoding the Accept-Encoding header of the request being answered, may be null
+	 */
+	public void setCompression(Compression compression, String acceptEncoding){
+		this.compression = compression;
+		this.acceptEncoding = acceptEncoding;
+	}
+	
+	public Compression getCompression(){
+		return compression;
+	}
+	
+	/**
+	 * @param requestBody the body of the request being answered, which is closed once the response has been
+	 * sent or the connection is closed
+	 */
+	public void setRequestBody(RequestBody requestBody){
+		this.requestBody = requestBody;
+	}
+	
+	private void releaseRequestBody(){
+		if(requestBody != null){
+			requestBody.close();
+			requestBody = null;
+		}
+	}
+	
 
 	@Override
 	public Socket getSocket() {
@@ -87,9 +172,17 @@ public class Output_Socket_HTTP extends Output{
 		}
 	}
 
-	private void composeHeadersMultiple(final HttpResponse httpResponse, Map<String, Set<String>> httpHeaders) {
-		if(httpHeaders != null){
-			for(Entry<String, Set<String>> e:httpHeaders.entrySet()){
+	/**
+	 * The shared headers of the response's DataType go on as they are, then any of its own.
+	 * A Content-Type of its own replaces the shared one.
+	 */
+	private void composeHeadersMultiple(final HttpResponse httpResponse, APIEventResult_HTTP response) {
+		response.getHeaderBlock().addTo(httpResponse);
+		if(response.hasHttpHeaders()){
+			for(Entry<String, Set<String>> e:response.getHttpHeaders().entrySet()){
+				if(HTTP.CONTENT_TYPE.equalsIgnoreCase(e.getKey())){
+					httpResponse.removeHeaders(HTTP.CONTENT_TYPE);
+				}
 				for(String s:e.getValue()){
 					httpResponse.addHeader(e.getKey(),s);
 				}
@@ -106,26 +199,161 @@ public class Output_Socket_HTTP extends Output{
 		}	
 		else{
 			APIEventResult_HTTP corh = (APIEventResult_HTTP)  response;
+			if(corh.getBodyType() == APIEventResult.BodyType.EVENTS){
+				send_Stream(corh);
+				return;
+			}
 			
 			HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, corh.getHttpStatus(), "OK") ;
-			try {
-				composeHeadersMultiple(httpResponse,corh.getHttpHeaders());
-				composeHeadersSingle(httpResponse,getServerHeaders());
-				
-				httpResponse.setEntity(new StringEntity(corh.getResponseBody()));
-				conn.sendResponseHeader(httpResponse);
-				conn.sendResponseEntity(httpResponse);
-			} catch (HttpException e) {
-				getLog().error(e.toString());
-			} catch (IOException e) {
-				getLog().error(e.toString());
+			composeHeadersMultiple(httpResponse,corh);
+			composeHeadersSingle(httpResponse,getServerHeaders());
+			
+			if(corh.getBodyType() == APIEventResult.BodyType.FILE){
+				finishConnection(sendFile(httpResponse,corh));
 			}
-			finally{
-				closeConnection();
+			else{
+				finishConnection(send(httpResponse,encode(httpResponse,corh,ResponseEntities.create(corh))));
+				/* The body has been written, so a pooled one can be reused */
+				corh.release();
 			}
 		}
 	}
 	
+	/**
+	 * Send the headers of a chunked response and subscribe the connection to the response's broadcaster,
+	 * whose writer threads send each event as its own chunk.  Nothing waits on the connection in between.
+	 * The stream isn't compressed because each event has to go out as soon as it is published.  Once it ends
+	 * properly the connection is recycled like any other, otherwise it is closed.
+	 */
+	@Override
+	public void send_Stream(APIEventResult response) {
+		if(!(response instanceof APIEventResult_HTTP)){
+			throw new IllegalArgumentException("response is wrong type: "+response.getClass().getCanonicalName());
+		}
+		if(response.getBodyType() != APIEventResult.BodyType.EVENTS){
+			throw new IllegalArgumentException("response doesn't have an EVENTS body: "+response.getBodyType());
+		}
+		APIEventResult_HTTP corh = (APIEventResult_HTTP) response;
+		releaseRequestBody();
+		if((conn == null) || (socket == null)){
+			getLog().error("Connection is not available, unable to send stream");
+			closeChannel();
+			return;
+		}
+		
+		HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, corh.getHttpStatus(), "OK") ;
+		composeHeadersMultiple(httpResponse,corh);
+		composeHeadersSingle(httpResponse,getServerHeaders());
+		httpResponse.setHeader(HTTP.CONTENT_TYPE, corh.getResponseStreamFormat().getContentType());
+		httpResponse.setHeader(CACHE_CONTROL_NO_CACHE);
+		httpResponse.setHeader(X_ACCEL_BUFFERING_NO);
+		httpResponse.setHeader(TRANSFER_ENCODING_CHUNKED);
+		httpResponse.setHeader(isKeepAlive()?CONNECTION_KEEP_ALIVE:CONNECTION_CLOSE);
+		
+		final OutputStream out;
+		try {
+			conn.sendResponseHeader(httpResponse);
+			conn.flush();
+			out = socket.getOutputStream();
+		} catch (HttpException e) {
+			getLog().error(e.toString());
+			closeChannel();
+			return;
+		} catch (IOException e) {
+			getLog().error(e.toString());
+			closeChannel();
+			return;
+		}
+		
+		/* From here on the connection belongs to the stream */
+		final HttpServerConnection c = conn;
+		final Socket s = socket;
+		final ConnectionRecycler r = recycler;
+		final Object context = recyclerContext;
+		conn = null;
+		socket = null;
+		
+		Subscription subscription = new Subscription(out, corh.getResponseStreamFormat(), corh.getResponseMaxEvents(), corh.getResponseTimeout(), new Subscription.Ending(){
+			@Override
+			public void ended(boolean complete) {
+				if(complete && (r != null) && c.isOpen()){
+					r.recycle(c, s, context);
+				}
+				else{
+					try {
+						/* A dropped subscriber may have a write stuck on it, which only shutdown stops */
+						if(complete){
+							c.close();
+						}
+						else{
+							c.shutdown();
+						}
+					} catch (IOException e) {
+					}
+					try {
+						s.close();
+					} catch (IOException e) {
+					}
+				}
+			}
+		});
+		corh.getResponseBroadcaster().subscribe(subscription, corh.getResponseLastSeen());
+	}
+	
+	/**
+	 * Compress a body if the client accepts it and it is worth it.  Files aren't, they go zero-copy,
+	 * and neither is anything that already has a Content-Encoding.
+	 * @return the entity to send, which is entity if nothing was done
+	 */
+	private HttpEntity encode(HttpResponse httpResponse, APIEventResult response, HttpEntity entity){
+		if((compression == null) || !compression.isCompressible(response.getDataType()) || httpResponse.containsHeader(HTTP.CONTENT_ENCODING)){
+			return entity;
+		}
+		/* Whatever happens next depended on the request's Accept-Encoding */
+		if(!httpResponse.containsHeader("Vary")){
+			httpResponse.setHeader(VARY_ACCEPT_ENCODING);
+		}
+		if(!compression.shouldCompress(response.getDataType(), entity.getContentLength())){
+			return entity;
+		}
+		ContentEncoding encoding = compression.negotiate(acceptEncoding);
+		if(encoding == null){
+			return entity;
+		}
+		try {
+			HttpEntity encoded = ResponseEntities.encode(entity, encoding);
+			httpResponse.setHeader(HTTP.CONTENT_ENCODING, encoding.getName());
+			/* A strong validator can't be shared by the plain and compressed bytes */
+			Header eTag = httpResponse.getFirstHeader("ETag");
+			if((eTag != null) && !eTag.getValue().startsWith("W/")){
+				httpResponse.setHeader("ETag", "W/"+eTag.getValue());
+			}
+			return encoded;
+		} catch (IOException e) {
+			getLog().error("Unable to "+encoding.getName()+" a response, sending it as is\n"+e);
+			return entity;
+		}
+	}
+	
+	
+	@Override
+	public void send_NotModified(APIEventResult response) {
+		if(!(response instanceof APIEventResult_HTTP)){
+			throw new IllegalArgumentException("response is wrong type: "+response.getClass().getCanonicalName());
+		}	
+		else{
+			APIEventResult_HTTP corh = (APIEventResult_HTTP)  response;
+			
+			HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_MODIFIED, "Not Modified") ;
+			composeHeadersMultiple(httpResponse,corh);
+			composeHeadersSingle(httpResponse,getServerHeaders());
+			/* A 304 has no body, so nothing describing one */
+			httpResponse.removeHeaders(HTTP.CONTENT_TYPE);
+			
+			finishConnection(send(httpResponse,null));
+		}
+	}
+	
 	
 
 	@Override
@@ -136,81 +364,246 @@ public class Output_Socket_HTTP extends Output{
 		else{
 			APIEventResult_HTTP corh = (APIEventResult_HTTP) response;
 			HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, corh.getHttpStatus(), "Found") ;
-			try {
-				composeHeadersMultiple(httpResponse,corh.getHttpHeaders());
-				composeHeadersSingle(httpResponse,getServerHeaders());
-				
-				httpResponse.setEntity(new StringEntity(corh.getResponseBody()));
-				conn.sendResponseHeader(httpResponse);
-				conn.sendResponseEntity(httpResponse);
-			} catch (HttpException e) {
-				getLog().error(e.toString());
-			} catch (IOException e) {
-				getLog().error(e.toString());
-			}
-			finally{
-				closeConnection();
-			}
+			composeHeadersMultiple(httpResponse,corh);
+			composeHeadersSingle(httpResponse,getServerHeaders());
+			
+			finishConnection(send(httpResponse,ResponseEntities.create(corh)));
 		}
 	}
 	
 	
+	/**
+	 * Send on what the response's body points at, as fetched by the {@link ReverseProxy#getShared() shared proxy}.
+	 * The upstream's status and the headers describing its body are kept, and the body is streamed through
+	 * unless it came from the proxy's cache.
+	 */
 	@Override
 	public void send_Proxy(APIEventResult response){
-		String responseString = null;
+		if(!(response instanceof APIEventResult_HTTP)){
+			throw new IllegalArgumentException("response is wrong type: "+response.getClass().getCanonicalName());
+		}
+		APIEventResult_HTTP corh = (APIEventResult_HTTP) response;
+		
+		ReverseProxy.Response upstream = null;
 		try {
-			String responseBody = response.getResponseBody();
-			URIBuilder uriBuilder = new URIBuilder(responseBody);
-			responseString = WebUtil.fetchWebPage(
-					uriBuilder,
-					null,
-					null,
-					null,
-					30*1000);
-			response.setResponseBody(responseString);
-			send_OK(response);
-		} catch (MalformedURLException e) {
-			getLog().error(e.toString());
-		} catch (IOException e) {
-			getLog().error(e.toString());
+			upstream = ReverseProxy.getShared().fetch(corh.getResponseBody());
+			HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, upstream.getStatus(), upstream.getReason()) ;
+			upstream.addHeadersTo(httpResponse);
+			composeHeadersMultiple(httpResponse,corh);
+			composeHeadersSingle(httpResponse,getServerHeaders());
+			
+			HttpEntity entity = upstream.getEntity();
+			finishConnection(send(httpResponse,(entity == null) ? new ByteArrayEntity(new byte[0]) : entity));
 		} catch (URISyntaxException e) {
-			getLog().error(e.toString());
+			getLog().error("Unable to proxy "+corh.getResponseBody()+"\n"+e);
+			send_Error();
+		} catch (IOException e) {
+			getLog().error("Unable to proxy "+corh.getResponseBody()+"\n"+e);
+			send_BadGateway();
 		}
 		finally{
-			closeConnection();
+			if(upstream != null){
+				upstream.close();
+			}
 		}
 	}
 	
+	private void send_BadGateway() {
+		HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_BAD_GATEWAY, "Bad Gateway") ;
+		composeHeadersSingle(httpResponse,getServerHeaders());
+		
+		setKeepAlive(null,null);
+		finishConnection(send(httpResponse,new StringEntity("",ContentType.DEFAULT_TEXT)));
+	}
+	
 
 	@Override
 	public void send_Error() {
 		HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Not Found - Internal Error") ;
+		composeHeadersSingle(httpResponse,getServerHeaders());
+		
+		/* Something went wrong upstream so don't trust the connection any further */
+		setKeepAlive(null,null);
+		finishConnection(send(httpResponse,new StringEntity("",ContentType.DEFAULT_TEXT)));
+	}
+	
+	
+	@Override
+	public void send_ServiceUnavailable(int retryAfter) {
+		HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_SERVICE_UNAVAILABLE, "Service Unavailable") ;
+		composeHeadersSingle(httpResponse,getServerHeaders());
+		httpResponse.setHeader("Retry-After", Integer.toString(retryAfter));
+		
+		/* Shed the connection too */
+		setKeepAlive(null,null);
+		finishConnection(send(httpResponse,new StringEntity("",ContentType.DEFAULT_TEXT)));
+	}
+	
+	
+	/**
+	 * Shed a client that is over its rate limit.  The response is written as it was built the first time,
+	 * straight onto the socket, and the connection is closed.
+	 */
+	@Override
+	public void send_TooManyRequests(int retryAfter) {
+		setKeepAlive(null,null);
+		boolean sent = false;
+		if(socket == null){
+			getLog().error("Socket is not available, unable to send response");
+		}
+		else{
+			try{
+				OutputStream out = socket.getOutputStream();
+				out.write(getTooManyRequests(retryAfter));
+				out.flush();
+				sent = true;
+			}
+			catch(IOException e){
+				getLog().debug("Unable to send 429\n"+e);
+			}
+		}
+		finishConnection(sent);
+	}
+	
+	
+	/**
+	 * @param retryAfter seconds before the client should try again
+	 * @return a complete 429 response that closes the connection, ready to be written as is
+	 */
+	public static byte[] getTooManyRequests(int retryAfter){
+		if((retryAfter >= 0) && (retryAfter < TOO_MANY_REQUESTS.length())){
+			byte[] response = TOO_MANY_REQUESTS.get(retryAfter);
+			if(response == null){
+				response = makeTooManyRequests(retryAfter);
+				TOO_MANY_REQUESTS.set(retryAfter, response);
+			}
+			return response;
+		}
+		return makeTooManyRequests(retryAfter);
+	}
+	
+	private static byte[] makeTooManyRequests(int retryAfter){
+		return ("HTTP/1.1 429 Too Many Requests\r\nRetry-After: "+Math.max(0, retryAfter)+"\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+	}
+	
+	
+	/**
+	 * Turn a request away because its body is larger than the input will take.  The connection is closed
+	 * because the rest of the body may still be on its way.
+	 */
+	public void send_PayloadTooLarge() {
+		HttpResponse httpResponse = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_REQUEST_TOO_LONG, "Payload Too Large") ;
+		composeHeadersSingle(httpResponse,getServerHeaders());
+		
+		setKeepAlive(null,null);
+		finishConnection(send(httpResponse,new StringEntity("",ContentType.DEFAULT_TEXT)));
+	}
+	
+	
+	/**
+	 * Write a complete response with framing headers so that the client can tell where it ends
+	 * without waiting for the connection to close.  A body of unknown length is sent chunked.
+	 * @param entity the body, null for a response that can't have one
+	 * @return true if the whole response made it onto the wire
+	 */
+	private boolean send(HttpResponse httpResponse, HttpEntity entity){
+		if(conn == null){
+			getLog().error("Connection is not available, unable to send response");
+			ResponseEntities.discard(entity);
+			return false;
+		}
 		try {
-			composeHeadersSingle(httpResponse,getServerHeaders());
-			httpResponse.setEntity(new StringEntity(""));
+			if(entity != null){
+				if(entity.getContentLength() >= 0){
+					httpResponse.setHeader(HTTP.CONTENT_LEN, Long.toString(entity.getContentLength()));
+				}
+				else{
+					httpResponse.setHeader(TRANSFER_ENCODING_CHUNKED);
+				}
+			}
+			httpResponse.setHeader(isKeepAlive()?CONNECTION_KEEP_ALIVE:CONNECTION_CLOSE);
+			
 			conn.sendResponseHeader(httpResponse);
-			conn.sendResponseEntity(httpResponse);
+			if(entity != null){
+				httpResponse.setEntity(entity);
+				conn.sendResponseEntity(httpResponse);
+			}
+			conn.flush();
+			return true;
 		} catch (HttpException e) {
 			getLog().error(e.toString());
 		} catch (IOException e) {
 			getLog().error(e.toString());
 		}
-		finally{
-			closeConnection();
+		return false;
+	}
+	
+	/**
+	 * Send a file body straight from the file to the socket with {@link FileChannel#transferTo}, so that
+	 * the bytes don't pass through the JVM.  That needs the socket's channel, which sockets from a
+	 * selector based input have, otherwise the file is copied through the connection like any other body.
+	 * @return true if the whole response made it onto the wire
+	 */
+	private boolean sendFile(HttpResponse httpResponse, APIEventResult response){
+		SocketChannel channel = (socket == null) ? null : socket.getChannel();
+		if((conn == null) || (channel == null) || !channel.isBlocking()){
+			return send(httpResponse,ResponseEntities.create(response));
 		}
+		try(FileChannel file = FileChannel.open(response.getResponseFile().toPath(), StandardOpenOption.READ)){
+			long position = response.getResponseFileOffset();
+			long remaining = response.getResponseLength();
+			
+			httpResponse.setHeader(HTTP.CONTENT_LEN, Long.toString(remaining));
+			httpResponse.setHeader(isKeepAlive()?CONNECTION_KEEP_ALIVE:CONNECTION_CLOSE);
+			conn.sendResponseHeader(httpResponse);
+			/* Everything buffered has to be on the wire before the file goes around the buffer */
+			conn.flush();
+			
+			while(remaining > 0){
+				long n = file.transferTo(position, remaining, channel);
+				if((n <= 0) && (position >= file.size())){
+					throw new IOException("File "+response.getResponseFile()+" ended "+remaining+" bytes early");
+				}
+				position += n;
+				remaining -= n;
+			}
+			return true;
+		} catch (HttpException e) {
+			getLog().error(e.toString());
+		} catch (IOException e) {
+			getLog().error(e.toString());
+		}
+		return false;
 	}
 	
+	/**
+	 * After a response either hand a persistent connection back to the input or close it
+	 * @param sent true if the response was completely written
+	 */
+	private void finishConnection(boolean sent){
+		releaseRequestBody();
+		if(sent && isKeepAlive() && (conn != null) && conn.isOpen()){
+			HttpServerConnection c = conn;
+			Socket s = socket;
+			/* From here on the connection belongs to the input side */
+			conn = null;
+			socket = null;
+			recycler.recycle(c, s, recyclerContext);
+		}
+		else{
+			closeConnection();
+		}
+	}
 	
 	public void closeConnection(){
 		if((conn != null) && (conn.isOpen())){
 			try {
-				conn.flush();
+				/* close flushes and closes gracefully, shutdown would reset the connection under unsent data */
+				conn.close();
 			} catch (IOException e) {
-			}
-			finally{
 				try {
 					conn.shutdown();
-				} catch (IOException e) {
+				} catch (IOException e1) {
 				}
 			}
 		}
@@ -228,6 +621,7 @@ public class Output_Socket_HTTP extends Output{
 	
 	@Override
 	public void closeChannel(){
+		releaseRequestBody();
 		closeConnection();
 		conn = null;
 		closeSocket();
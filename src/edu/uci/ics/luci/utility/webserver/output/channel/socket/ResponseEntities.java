@@ -0,0 +1,258 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.channel.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.entity.InputStreamEntity;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.output.encoding.ContentEncoding;
+
+/**
+ * Turns the body of an {@link APIEventResult} into something httpcore can write, without making a String of it
+ * @author djp3
+ *
+ */
+class ResponseEntities {
+	
+	private static final int COPY_BUFFER_SIZE = 8 * 1024;
+	
+	private ResponseEntities(){
+	}
+	
+	/**
+	 * @param response
+	 * @return an entity with the body of response, an empty one if it has none
+	 */
+	static HttpEntity create(APIEventResult response){
+		if(!response.hasResponseBody()){
+			return new ByteArrayEntity(new byte[0]);
+		}
+		switch(response.getBodyType()){
+			case BYTES:
+				ByteBuffer b = response.getResponseBytes();
+				if(b.hasArray()){
+					return new ByteArrayEntity(b.array(), b.arrayOffset() + b.position(), b.remaining());
+				}
+				return new ByteBufferEntity(b);
+			case FILE:
+				return new FileRegionEntity(response.getResponseFile().getPath(), response.getResponseFileOffset(), response.getResponseLength());
+			case STREAM:
+				return new InputStreamEntity(response.getResponseStream(), response.getResponseLength());
+			case EVENTS:
+				throw new IllegalArgumentException("An EVENTS body is sent with send_Stream, it isn't an entity");
+			case STRING:
+			default:
+				return new ByteArrayEntity(response.getResponseBody().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+	
+	/**
+	 * A body that is already in memory is encoded up front so its encoded length can still be sent.
+	 * A streaming one is encoded as it is written, and so goes out chunked.
+	 * @param entity
+	 * @param encoding
+	 * @return the body of entity in encoding
+	 * @throws IOException
+	 */
+	static HttpEntity encode(HttpEntity entity, ContentEncoding encoding) throws IOException{
+		if(entity.isStreaming()){
+			return new EncodedEntity(entity, encoding);
+		}
+		long length = entity.getContentLength();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream((int) Math.min(COPY_BUFFER_SIZE, Math.max(64, length / 3)));
+		OutputStream out = encoding.wrap(baos);
+		try{
+			entity.writeTo(out);
+		}
+		finally{
+			out.close();
+		}
+		return new ByteArrayEntity(baos.toByteArray());
+	}
+	
+	/**
+	 * Close anything an entity that was never written holds open
+	 * @param entity
+	 */
+	static void discard(HttpEntity entity){
+		if((entity != null) && entity.isStreaming()){
+			try {
+				entity.getContent().close();
+			} catch (IOException e) {
+			}
+		}
+	}
+	
+	
+	/** For direct buffers, which have no array to hand over */
+	private static class ByteBufferEntity extends AbstractHttpEntity{
+		
+		private final ByteBuffer buffer;
+		
+		ByteBufferEntity(ByteBuffer buffer){
+			this.buffer = buffer;
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return buffer.remaining();
+		}
+
+		@Override
+		public InputStream getContent() {
+			byte[] b = new byte[buffer.remaining()];
+			buffer.duplicate().get(b);
+			return new ByteArrayInputStream(b);
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			ByteBuffer b = buffer.duplicate();
+			byte[] chunk = new byte[Math.min(COPY_BUFFER_SIZE, Math.max(1, b.remaining()))];
+			while(b.hasRemaining()){
+				int n = Math.min(chunk.length, b.remaining());
+				b.get(chunk, 0, n);
+				out.write(chunk, 0, n);
+			}
+			out.flush();
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+	
+	
+	/** Part of a file, read as it is written */
+	private static class FileRegionEntity extends AbstractHttpEntity{
+		
+		private final String path;
+		private final long offset;
+		private final long length;
+		
+		FileRegionEntity(String path, long offset, long length){
+			this.path = path;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return length;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			FileInputStream in = new FileInputStream(path);
+			try{
+				in.getChannel().position(offset);
+			}
+			catch(IOException e){
+				in.close();
+				throw e;
+			}
+			return new BoundedInputStream(in, length);
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			try(RandomAccessFile file = new RandomAccessFile(path, "r")){
+				file.seek(offset);
+				byte[] chunk = new byte[(int) Math.min(COPY_BUFFER_SIZE, Math.max(1, length))];
+				long remaining = length;
+				while(remaining > 0){
+					int n = file.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+					if(n < 0){
+						throw new IOException("File "+path+" ended "+remaining+" bytes early");
+					}
+					out.write(chunk, 0, n);
+					remaining -= n;
+				}
+			}
+			out.flush();
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+	
+	
+	/** A streaming body encoded on its way out, getContent still gives the unencoded body */
+	private static class EncodedEntity extends HttpEntityWrapper{
+		
+		private final ContentEncoding encoding;
+		
+		EncodedEntity(HttpEntity wrapped, ContentEncoding encoding){
+			super(wrapped);
+			this.encoding = encoding;
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+		
+		@Override
+		public boolean isChunked() {
+			return true;
+		}
+
+		@Override
+		public void writeTo(OutputStream out) throws IOException {
+			OutputStream encoded = encoding.wrap(out);
+			try{
+				super.writeTo(encoded);
+			}
+			finally{
+				encoded.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,434 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.channel.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HTTP;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * Fetches what a PROXY response points at for {@link Output_Socket_HTTP#send_Proxy}.  Every output shares one
+ * pooled client so upstream connections are kept alive between requests.  An upstream body is streamed to the
+ * client as it arrives, except that small responses the upstream says may be cached are kept in memory until
+ * their Cache-Control max-age (or Expires) is up and served from there.
+ * @author djp3
+ *
+ */
+public class ReverseProxy implements Closeable{
+	
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(ReverseProxy.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	public static final int DEFAULT_MAX_CONNECTIONS = 64;
+	public static final int DEFAULT_TIMEOUT = 10 * 1000;
+	public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+	public static final int DEFAULT_MAX_CACHED_BODY = 1024 * 1024;
+	
+	/* The upstream headers that describe the body, and so go along with it */
+	private static final String[] FORWARDED_HEADERS = {HTTP.CONTENT_TYPE, HTTP.CONTENT_ENCODING, "Cache-Control", "Expires", "Last-Modified", "ETag"};
+	
+	private static volatile ReverseProxy shared = null;
+	
+	/**
+	 * @return the proxy every output uses, made with the defaults the first time it is asked for
+	 */
+	public static ReverseProxy getShared(){
+		if(shared == null){
+			synchronized(ReverseProxy.class){
+				if(shared == null){
+					shared = new ReverseProxy();
+				}
+			}
+		}
+		return shared;
+	}
+	
+	/**
+	 * @param proxy the proxy every output should use from now on, the one it replaces is not closed
+	 */
+	public static void setShared(ReverseProxy proxy){
+		if(proxy == null){
+			throw new IllegalArgumentException("proxy can't be null");
+		}
+		synchronized(ReverseProxy.class){
+			shared = proxy;
+		}
+	}
+	
+	private final CloseableHttpClient client;
+	private final PoolingHttpClientConnectionManager pool;
+	private final Cache<String, Cached> cache;
+	private final int maxCachedBody;
+	
+	public ReverseProxy(){
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_TIMEOUT, DEFAULT_CACHE_SIZE, DEFAULT_MAX_CACHED_BODY);
+	}
+	
+	/**
+	 * @param maxConnections the most upstream connections open at once, across all hosts
+	 * @param timeout milliseconds to wait to connect, for a pooled connection, and between bytes from upstream
+	 * @param cacheSize the most bytes of bodies kept in memory, 0 not to cache
+	 * @param maxCachedBody bodies bigger than this are always streamed
+	 */
+	public ReverseProxy(int maxConnections, int timeout, long cacheSize, int maxCachedBody){
+		if(maxConnections < 1){
+			throw new IllegalArgumentException("maxConnections must be at least 1: "+maxConnections);
+		}
+		if(timeout < 0){
+			throw new IllegalArgumentException("timeout can't be negative: "+timeout);
+		}
+		if(cacheSize < 0){
+			throw new IllegalArgumentException("cacheSize can't be negative: "+cacheSize);
+		}
+		if(maxCachedBody < 0){
+			throw new IllegalArgumentException("maxCachedBody can't be negative: "+maxCachedBody);
+		}
+		
+		pool = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+		pool.setMaxTotal(maxConnections);
+		pool.setDefaultMaxPerRoute(maxConnections);
+		pool.setValidateAfterInactivity(2 * 1000);
+		
+		RequestConfig config = RequestConfig.custom()
+				.setConnectTimeout(timeout)
+				.setConnectionRequestTimeout(timeout)
+				.setSocketTimeout(timeout)
+				.build();
+		
+		/* Bodies pass through as the upstream encoded them, along with their Content-Encoding */
+		client = HttpClients.custom()
+				.setConnectionManager(pool)
+				.setDefaultRequestConfig(config)
+				.disableContentCompression()
+				.disableCookieManagement()
+				.evictExpiredConnections()
+				.evictIdleConnections(60, TimeUnit.SECONDS)
+				.build();
+		
+		cache = CacheBuilder.newBuilder()
+				.maximumWeight(cacheSize)
+				.weigher(new Weigher<String, Cached>(){
+					@Override
+					public int weigh(String key, Cached value) {
+						return value.body.length;
+					}
+				})
+				.recordStats()
+				.build();
+		this.maxCachedBody = maxCachedBody;
+	}
+	
+	
+	/**
+	 * @param uri what to fetch
+	 * @return the upstream's answer, which must be closed once it has been sent on
+	 * @throws URISyntaxException if uri isn't one
+	 * @throws IOException if the upstream couldn't be reached or failed part way
+	 */
+	public Response fetch(String uri) throws URISyntaxException, IOException{
+		if(uri == null){
+			throw new URISyntaxException("null", "No uri to proxy");
+		}
+		URI target = new URI(uri);
+		
+		Cached cached = cache.getIfPresent(uri);
+		if(cached != null){
+			if(cached.expires > System.currentTimeMillis()){
+				return new Response(cached.status, cached.reason, cached.headers, new ByteArrayEntity(cached.body), null);
+			}
+			cache.invalidate(uri);
+		}
+		
+		CloseableHttpResponse upstream = client.execute(new HttpGet(target));
+		try{
+			int status = upstream.getStatusLine().getStatusCode();
+			String reason = upstream.getStatusLine().getReasonPhrase();
+			Header[] headers = forwardedHeaders(upstream);
+			HttpEntity entity = upstream.getEntity();
+			if(entity == null){
+				upstream.close();
+				return new Response(status, reason, headers, null, null);
+			}
+			
+			long expires = (status == HttpStatus.SC_OK) ? expires(upstream, System.currentTimeMillis()) : 0;
+			if((expires > 0) && (entity.getContentLength() <= maxCachedBody)){
+				/* Read up to the limit, a body that turns out bigger is streamed after all */
+				InputStream in = entity.getContent();
+				byte[] head = readUpTo(in, maxCachedBody + 1);
+				if(head.length <= maxCachedBody){
+					upstream.close();
+					cache.put(uri, new Cached(status, reason, headers, head, expires));
+					return new Response(status, reason, headers, new ByteArrayEntity(head), null);
+				}
+				InputStream rest = new SequenceInputStream(new ByteArrayInputStream(head), in);
+				return new Response(status, reason, headers, new InputStreamEntity(rest, entity.getContentLength()), upstream);
+			}
+			return new Response(status, reason, headers, new InputStreamEntity(entity.getContent(), entity.getContentLength()), upstream);
+		}
+		catch(IOException e){
+			upstream.close();
+			throw e;
+		}
+		catch(RuntimeException e){
+			upstream.close();
+			throw e;
+		}
+	}
+	
+	private static Header[] forwardedHeaders(HttpResponse upstream){
+		List<Header> ret = new ArrayList<Header>(FORWARDED_HEADERS.length);
+		for(String name: FORWARDED_HEADERS){
+			for(Header h: upstream.getHeaders(name)){
+				ret.add(new BasicHeader(h.getName(), h.getValue()));
+			}
+		}
+		return ret.toArray(new Header[ret.size()]);
+	}
+	
+	private static byte[] readUpTo(InputStream in, int limit) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, 8 * 1024));
+		byte[] buffer = new byte[8 * 1024];
+		int n;
+		while((out.size() < limit) && ((n = in.read(buffer, 0, Math.min(buffer.length, limit - out.size()))) >= 0)){
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * When a shared cache may serve a response until, going by its Cache-Control, or failing that its Expires
+	 * @param response
+	 * @param now
+	 * @return the time in milliseconds, 0 if it mustn't be cached
+	 */
+	static long expires(HttpResponse response, long now){
+		long maxAge = -1;
+		long sMaxAge = -1;
+		for(Header h: response.getHeaders("Cache-Control")){
+			for(HeaderElement e: h.getElements()){
+				String name = e.getName().toLowerCase();
+				if(name.equals("no-store") || name.equals("no-cache") || name.equals("private")){
+					return 0;
+				}
+				if(name.equals("max-age")){
+					maxAge = seconds(e.getValue());
+				}
+				else if(name.equals("s-maxage")){
+					sMaxAge = seconds(e.getValue());
+				}
+			}
+		}
+		if(response.containsHeader("Vary")){
+			/* The cache keeps one body per uri */
+			return 0;
+		}
+		
+		long age = 0;
+		Header ageHeader = response.getFirstHeader("Age");
+		if(ageHeader != null){
+			age = Math.max(0, seconds(ageHeader.getValue()));
+		}
+		
+		long lifetime = (sMaxAge >= 0) ? sMaxAge : maxAge;
+		if(lifetime >= 0){
+			return (lifetime > age) ? now + ((lifetime - age) * 1000) : 0;
+		}
+		
+		Header expiresHeader = response.getFirstHeader("Expires");
+		if(expiresHeader != null){
+			Date expires = DateUtils.parseDate(expiresHeader.getValue());
+			if(expires == null){
+				return 0;
+			}
+			Header dateHeader = response.getFirstHeader("Date");
+			Date date = (dateHeader == null) ? null : DateUtils.parseDate(dateHeader.getValue());
+			/* Measured against the upstream's clock when it gave one */
+			long freshFor = expires.getTime() - ((date == null) ? now : date.getTime());
+			return (freshFor > 0) ? now + freshFor : 0;
+		}
+		return 0;
+	}
+	
+	private static long seconds(String value){
+		if(value == null){
+			return -1;
+		}
+		try{
+			return Long.parseLong(value.trim());
+		}
+		catch(NumberFormatException e){
+			return -1;
+		}
+	}
+	
+	/**
+	 * @return hits and misses of the response cache
+	 */
+	public CacheStats getCacheStats(){
+		return cache.stats();
+	}
+	
+	/**
+	 * @return how many responses are cached, some of which may have expired
+	 */
+	public long getCacheCount(){
+		return cache.size();
+	}
+	
+	public void invalidateCache(){
+		cache.invalidateAll();
+	}
+	
+	@Override
+	public void close() throws IOException{
+		cache.invalidateAll();
+		client.close();
+	}
+	
+	
+	/**
+	 * What came back from upstream, ready to be sent on
+	 */
+	public static class Response implements Closeable{
+		private final int status;
+		private final String reason;
+		private final Header[] headers;
+		private final HttpEntity entity;
+		private final CloseableHttpResponse upstream;
+		
+		Response(int status, String reason, Header[] headers, HttpEntity entity, CloseableHttpResponse upstream){
+			this.status = status;
+			this.reason = reason;
+			this.headers = headers;
+			this.entity = entity;
+			this.upstream = upstream;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		/**
+		 * @return the upstream's headers that describe the body
+		 */
+		public Header[] getHeaders() {
+			return headers.clone();
+		}
+		
+		void addHeadersTo(HttpResponse response){
+			for(Header h: headers){
+				response.addHeader(h);
+			}
+		}
+
+		/**
+		 * @return the body, streaming from upstream unless it was cached, null if there wasn't one
+		 */
+		public HttpEntity getEntity() {
+			return entity;
+		}
+		
+		/**
+		 * @return true if the body is in memory rather than still coming from upstream
+		 */
+		public boolean isBuffered(){
+			return upstream == null;
+		}
+
+		/**
+		 * A body read to its end has already given its upstream connection back to the pool, one that wasn't
+		 * is dropped rather than reading the rest of it
+		 */
+		@Override
+		public void close() {
+			if(upstream != null){
+				try{
+					upstream.close();
+				}
+				catch(IOException e){
+				}
+			}
+		}
+	}
+	
+	
+	/** A response that may be served from memory until it expires */
+	private static class Cached{
+		final int status;
+		final String reason;
+		final Header[] headers;
+		final byte[] body;
+		final long expires;
+		
+		Cached(int status, String reason, Header[] headers, byte[] body, long expires){
+			this.status = status;
+			this.reason = reason;
+			this.headers = headers;
+			this.body = body;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult.DataType;
+
+/**
+ * Decides whether and how a response body is compressed.  The encoding is negotiated from the
+ * client's Accept-Encoding header against the encodings configured here, in order of preference.
+ * @author djp3
+ *
+ */
+public class Compression {
+	
+	/** Bodies smaller than this many bytes aren't worth the trouble of compressing */
+	public static final int DEFAULT_MIN_SIZE = 1024;
+	
+	private boolean enabled = true;
+	private int minSize = DEFAULT_MIN_SIZE;
+	private List<ContentEncoding> encodings = Collections.unmodifiableList(new ArrayList<ContentEncoding>(Arrays.asList(GzipEncoding.getInstance(), DeflateEncoding.getInstance())));
+	private Set<DataType> compressible = Collections.unmodifiableSet(EnumSet.of(DataType.JSON, DataType.HTML, DataType.CSS, DataType.JAVASCRIPT));
+	
+	public Compression(){
+	}
+	
+	public Compression(boolean enabled, int minSize){
+		setEnabled(enabled);
+		setMinSize(minSize);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return the smallest body, in bytes, that will be compressed
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public void setMinSize(int minSize) {
+		if(minSize < 0){
+			throw new IllegalArgumentException("minSize can't be negative: "+minSize);
+		}
+		this.minSize = minSize;
+	}
+
+	/**
+	 * @return the encodings on offer, most preferred first
+	 */
+	public List<ContentEncoding> getEncodings() {
+		return encodings;
+	}
+
+	public void setEncodings(List<ContentEncoding> encodings) {
+		if(encodings == null){
+			throw new IllegalArgumentException("encodings can't be null");
+		}
+		for(ContentEncoding e: encodings){
+			if(e == null){
+				throw new IllegalArgumentException("encodings can't contain null");
+			}
+		}
+		this.encodings = Collections.unmodifiableList(new ArrayList<ContentEncoding>(encodings));
+	}
+	
+	public Set<DataType> getCompressible() {
+		return compressible;
+	}
+
+	public void setCompressible(Set<DataType> compressible) {
+		if(compressible == null){
+			throw new IllegalArgumentException("compressible can't be null");
+		}
+		this.compressible = Collections.unmodifiableSet(compressible.isEmpty()?EnumSet.noneOf(DataType.class):EnumSet.copyOf(compressible));
+	}
+	
+	/**
+	 * @param dataType
+	 * @return true if bodies of this type are compressed at all.  Already compressed formats like PNG aren't.
+	 */
+	public boolean isCompressible(DataType dataType){
+		return enabled && (dataType != null) && compressible.contains(dataType);
+	}
+
+	/**
+	 * @param dataType
+	 * @param length the body length in bytes, negative if it isn't known ahead of time
+	 * @return true if a body like this should be compressed, when the client accepts it
+	 */
+	public boolean shouldCompress(DataType dataType, long length){
+		return isCompressible(dataType) && ((length < 0) || (length >= minSize));
+	}
+
+	/**
+	 * Pick the encoding for a response
+	 * @param acceptEncoding the value of the request's Accept-Encoding header, may be null
+	 * @return the encoding with the highest quality value the client gave, ties going to
+	 * the one earliest in {@link #getEncodings()}, or null if the body should go as is
+	 */
+	public ContentEncoding negotiate(String acceptEncoding){
+		if(!enabled || (acceptEncoding == null) || acceptEncoding.isEmpty() || encodings.isEmpty()){
+			return null;
+		}
+		
+		double[] quality = new double[encodings.size()];
+		Arrays.fill(quality, -1.0);
+		double wildcard = -1.0;
+		
+		for(String coding: acceptEncoding.split(",")){
+			int semi = coding.indexOf(';');
+			String name = ((semi < 0)?coding:coding.substring(0, semi)).trim();
+			double q = (semi < 0)?1.0:parseQuality(coding.substring(semi+1));
+			if(name.equals("*")){
+				wildcard = q;
+			}
+			else{
+				for(int i = 0; i < quality.length; i++){
+					if(name.equalsIgnoreCase(encodings.get(i).getName())){
+						quality[i] = q;
+					}
+				}
+			}
+		}
+		
+		ContentEncoding best = null;
+		double bestQuality = 0.0;
+		for(int i = 0; i < quality.length; i++){
+			double q = (quality[i] >= 0)?quality[i]:wildcard;
+			if(q > bestQuality){
+				best = encodings.get(i);
+				bestQuality = q;
+			}
+		}
+		return best;
+	}
+	
+	private static double parseQuality(String parameters){
+		for(String p: parameters.split(";")){
+			p = p.trim();
+			if(p.startsWith("q=") || p.startsWith("Q=")){
+				try{
+					return Double.parseDouble(p.substring(2).trim());
+				}
+				catch(NumberFormatException e){
+					return 0.0;
+				}
+			}
+		}
+		return 1.0;
+	}
+	
+	/**
+	 * @param encoding
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return bytes[offset,offset+length) encoded
+	 */
+	public static byte[] encode(ContentEncoding encoding, byte[] bytes, int offset, int length){
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, length / 3));
+		try{
+			OutputStream out = encoding.wrap(baos);
+			try{
+				out.write(bytes, offset, length);
+			}
+			finally{
+				out.close();
+			}
+		}
+		catch(IOException e){
+			/* Nothing to fail writing to memory */
+			throw new IllegalStateException(e);
+		}
+		return baos.toByteArray();
+	}
+}
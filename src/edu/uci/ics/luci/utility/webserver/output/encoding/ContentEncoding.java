@@ -0,0 +1,47 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A content-coding that response bodies can be sent in, see {@link Compression}
+ * @author djp3
+ *
+ */
+public interface ContentEncoding {
+	
+	/**
+	 * @return the token used in Accept-Encoding and Content-Encoding headers, e.g. "gzip"
+	 */
+	public String getName();
+	
+	/**
+	 * @param out where the encoded bytes go
+	 * @return a stream that encodes what is written to it.  Closing it finishes the encoding and
+	 * releases anything it holds, but leaves out open.
+	 * @throws IOException
+	 */
+	public OutputStream wrap(OutputStream out) throws IOException;
+
+}
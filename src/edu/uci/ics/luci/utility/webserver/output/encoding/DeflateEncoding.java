@@ -0,0 +1,63 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * "deflate" content-coding, which HTTP defines as the zlib format, with pooled Deflaters
+ * @author djp3
+ *
+ */
+public class DeflateEncoding implements ContentEncoding {
+	
+	private static final DeflateEncoding instance = new DeflateEncoding(Deflater.DEFAULT_COMPRESSION);
+	
+	/**
+	 * @return a shared instance at the default compression level
+	 */
+	public static DeflateEncoding getInstance(){
+		return instance;
+	}
+	
+	private final DeflaterPool pool;
+	
+	public DeflateEncoding(int level){
+		pool = new DeflaterPool(level, false, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	@Override
+	public String getName() {
+		return "deflate";
+	}
+
+	@Override
+	public OutputStream wrap(OutputStream out) throws IOException {
+		return new PooledDeflaterOutputStream(out, pool, false);
+	}
+	
+	DeflaterPool getPool(){
+		return pool;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * Keeps Deflaters for reuse.  Each one holds native zlib state that is expensive to set up and
+ * is only freed by {@link Deflater#end()}, so making one per response is wasteful.
+ * @author djp3
+ *
+ */
+public class DeflaterPool {
+	
+	private final int level;
+	private final boolean nowrap;
+	private final int capacity;
+	private final ConcurrentLinkedQueue<Deflater> pool = new ConcurrentLinkedQueue<Deflater>();
+	private final AtomicInteger size = new AtomicInteger(0);
+	
+	/**
+	 * @param level compression level, see {@link Deflater}
+	 * @param nowrap true for raw deflate data, false for the zlib format
+	 * @param capacity the most idle Deflaters kept, extras are ended when they are released
+	 */
+	public DeflaterPool(int level, boolean nowrap, int capacity){
+		if(capacity < 1){
+			throw new IllegalArgumentException("capacity must be at least 1: "+capacity);
+		}
+		this.level = level;
+		this.nowrap = nowrap;
+		this.capacity = capacity;
+	}
+	
+	/**
+	 * @return a Deflater ready for new input, which must be given back with {@link #release(Deflater)}
+	 */
+	public Deflater borrow(){
+		Deflater d = pool.poll();
+		if(d == null){
+			return new Deflater(level, nowrap);
+		}
+		size.decrementAndGet();
+		return d;
+	}
+	
+	public void release(Deflater d){
+		if(d == null){
+			return;
+		}
+		d.reset();
+		if(size.incrementAndGet() <= capacity){
+			pool.offer(d);
+		}
+		else{
+			size.decrementAndGet();
+			d.end();
+		}
+	}
+	
+	/**
+	 * @return how many Deflaters are waiting to be reused
+	 */
+	public int getIdle(){
+		return size.get();
+	}
+}
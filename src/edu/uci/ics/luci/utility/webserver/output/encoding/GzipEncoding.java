@@ -0,0 +1,63 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * "gzip" content-coding with pooled Deflaters
+ * @author djp3
+ *
+ */
+public class GzipEncoding implements ContentEncoding {
+	
+	private static final GzipEncoding instance = new GzipEncoding(Deflater.DEFAULT_COMPRESSION);
+	
+	/**
+	 * @return a shared instance at the default compression level
+	 */
+	public static GzipEncoding getInstance(){
+		return instance;
+	}
+	
+	private final DeflaterPool pool;
+	
+	public GzipEncoding(int level){
+		pool = new DeflaterPool(level, true, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	@Override
+	public String getName() {
+		return "gzip";
+	}
+
+	@Override
+	public OutputStream wrap(OutputStream out) throws IOException {
+		return new PooledDeflaterOutputStream(out, pool, true);
+	}
+	
+	DeflaterPool getPool(){
+		return pool;
+	}
+}
@@ -0,0 +1,111 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Deflates with a Deflater borrowed from a {@link DeflaterPool}, optionally framed as gzip.
+ * Closing finishes the data and returns the Deflater but doesn't close the underlying stream.
+ * @author djp3
+ *
+ */
+class PooledDeflaterOutputStream extends DeflaterOutputStream {
+	
+	private static final byte[] GZIP_HEADER = {
+		(byte) 0x1f, (byte) 0x8b,	/* magic */
+		8,							/* deflate */
+		0,							/* no flags */
+		0, 0, 0, 0,					/* no modification time */
+		0,							/* no extra flags */
+		(byte) 0xff					/* unknown operating system */
+	};
+	
+	private final DeflaterPool pool;
+	private final CRC32 crc;
+	private boolean closed = false;
+	
+	/**
+	 * @param out
+	 * @param pool a pool of raw (nowrap) Deflaters if gzip, otherwise zlib ones
+	 * @param gzip
+	 * @throws IOException
+	 */
+	PooledDeflaterOutputStream(OutputStream out, DeflaterPool pool, boolean gzip) throws IOException{
+		super(out, pool.borrow(), 8 * 1024);
+		this.pool = pool;
+		if(gzip){
+			this.crc = new CRC32();
+			out.write(GZIP_HEADER);
+		}
+		else{
+			this.crc = null;
+		}
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(closed){
+			throw new IOException("Stream closed");
+		}
+		super.write(b, off, len);
+		if(crc != null){
+			crc.update(b, off, len);
+		}
+	}
+	
+	@Override
+	public void write(int b) throws IOException {
+		byte[] one = {(byte) b};
+		write(one, 0, 1);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if(closed){
+			return;
+		}
+		closed = true;
+		try{
+			finish();
+			if(crc != null){
+				writeInt((int) crc.getValue());
+				writeInt(def.getTotalIn());
+			}
+			out.flush();
+		}
+		finally{
+			pool.release(def);
+		}
+	}
+	
+	/* Little endian as gzip wants */
+	private void writeInt(int i) throws IOException {
+		out.write(i & 0xff);
+		out.write((i >> 8) & 0xff);
+		out.write((i >> 16) & 0xff);
+		out.write((i >> 24) & 0xff);
+	}
+}
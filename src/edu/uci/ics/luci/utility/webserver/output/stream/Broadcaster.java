@@ -0,0 +1,315 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.stream;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.uci.ics.luci.utility.Quittable;
+
+/**
+ * Fans each published event out to every open streaming response that is subscribed to it.  An event is
+ * framed once per {@link StreamFormat} and queued on each {@link Subscription}, and a small pool of writer
+ * threads does the writing, so thousands of subscribers don't need thousands of threads.  Subscribers that
+ * can't keep up are dropped rather than being allowed to hold up the others or to queue without bound.
+ * @author djp3
+ *
+ */
+public class Broadcaster implements Quittable{
+	
+	/*******************************************/
+	private static transient volatile Logger log = null;
+	public static Logger getLog(){
+		if(log == null){
+			log = LogManager.getLogger(Broadcaster.class);
+		}
+		return log;
+	}
+	/*******************************************/
+	
+	public static final int DEFAULT_WRITERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+	public static final long DEFAULT_HEARTBEAT = 15 * 1000;
+	public static final int DEFAULT_MAX_PENDING = 64;
+	
+	private static final AtomicInteger instances = new AtomicInteger(0);
+	
+	/** An event as it is written in each format, framed the first time a subscriber in that format needs it */
+	private static class Event{
+		final long id;
+		final String event;
+		final String data;
+		private volatile byte[] eventStream = null;
+		private volatile byte[] chunked = null;
+		
+		Event(long id, String event, String data){
+			this.id = id;
+			this.event = event;
+			this.data = data;
+		}
+		
+		byte[] frame(StreamFormat format){
+			if(format == StreamFormat.EVENT_STREAM){
+				if(eventStream == null){
+					eventStream = format.frame(id, event, data);
+				}
+				return eventStream;
+			}
+			else{
+				if(chunked == null){
+					chunked = format.frame(id, event, data);
+				}
+				return chunked;
+			}
+		}
+	}
+	
+	private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+	private final ThreadPoolExecutor writers;
+	private final ScheduledThreadPoolExecutor timer;
+	private final int maxPending;
+	private final long heartbeat;
+	
+	private final Object publishing = new Object();
+	private final AtomicLong nextId = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0);
+	private volatile Event last = null;
+	private volatile boolean quitting = false;
+	
+	public Broadcaster(){
+		this(DEFAULT_WRITERS, DEFAULT_HEARTBEAT, DEFAULT_MAX_PENDING);
+	}
+	
+	/**
+	 * @param writerThreads how many threads write to subscribers
+	 * @param heartbeat milliseconds between the chunks that keep quiet streams from being timed out by clients
+	 * and proxies, 0 for none
+	 * @param maxPending how many chunks a subscriber may fall behind before it is dropped
+	 */
+	public Broadcaster(int writerThreads, long heartbeat, int maxPending){
+		if(writerThreads < 1){
+			throw new IllegalArgumentException("writerThreads must be positive: "+writerThreads);
+		}
+		if(heartbeat < 0){
+			throw new IllegalArgumentException("heartbeat can't be negative: "+heartbeat);
+		}
+		if(maxPending < 1){
+			throw new IllegalArgumentException("maxPending must be positive: "+maxPending);
+		}
+		this.maxPending = maxPending;
+		this.heartbeat = heartbeat;
+		
+		final int instance = instances.incrementAndGet();
+		writers = (ThreadPoolExecutor) Executors.newFixedThreadPool(writerThreads, new ThreadFactory(){
+			private final AtomicInteger count = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Broadcaster-"+instance+"-Writer-"+count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory(){
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Broadcaster-"+instance+"-Timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		if(heartbeat > 0){
+			timer.scheduleWithFixedDelay(new Runnable(){
+				@Override
+				public void run() {
+					try{
+						for(Subscription s: subscribers){
+							offer(s, s.getFormat().heartbeat());
+						}
+					}
+					catch(RuntimeException e){
+						getLog().error("Unable to send heartbeats", e);
+					}
+				}
+			}, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	public long getHeartbeat() {
+		return heartbeat;
+	}
+	
+	/**
+	 * @param data
+	 * @return the id of the event
+	 */
+	public long publish(String data){
+		return publish(null, data);
+	}
+	
+	/**
+	 * Send an event to every subscriber.  It doesn't wait for any of them to be written to.
+	 * @param event the name of the event, null for the default.  Only event streams carry it.
+	 * @param data
+	 * @return the id of the event
+	 */
+	public long publish(String event, String data){
+		if(data == null){
+			throw new IllegalArgumentException("data can't be null");
+		}
+		if((event != null) && ((event.indexOf('\n') >= 0) || (event.indexOf('\r') >= 0))){
+			throw new IllegalArgumentException("event can't have a line break: "+event);
+		}
+		if(quitting){
+			throw new IllegalStateException("Broadcaster is quitting");
+		}
+		synchronized(publishing){
+			Event e = new Event(nextId.incrementAndGet(), event, data);
+			last = e;
+			for(Subscription s: subscribers){
+				offer(s, e.frame(s.getFormat()));
+			}
+			return e.id;
+		}
+	}
+	
+	/**
+	 * Start sending events to a subscriber, without the last one that was published
+	 * @param s
+	 */
+	public void subscribe(Subscription s){
+		subscribe(s, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Start sending events to a subscriber
+	 * @param s
+	 * @param lastSeen the id of the last event the subscriber has, it is sent the last event published if
+	 * that is newer.  Negative if it has none, Long.MAX_VALUE to only send it events published from now on.
+	 * A subscriber to a broadcaster that is quitting is dropped straight away.
+	 */
+	public void subscribe(final Subscription s, long lastSeen){
+		if(s == null){
+			throw new IllegalArgumentException("Subscription can't be null");
+		}
+		s.setBroadcaster(this);
+		synchronized(publishing){
+			if(quitting){
+				s.abort();
+				return;
+			}
+			subscribers.add(s);
+			Event e = last;
+			if((e != null) && (lastSeen < e.id)){
+				offer(s, e.frame(s.getFormat()));
+			}
+		}
+		if(s.getTimeout() > 0){
+			s.setTimeoutTask(timer.schedule(new Runnable(){
+				@Override
+				public void run() {
+					s.end(writers);
+				}
+			}, s.getTimeout(), TimeUnit.MILLISECONDS));
+		}
+	}
+	
+	/**
+	 * Stop sending events to a subscriber, which doesn't end its stream
+	 * @param s
+	 */
+	public void unsubscribe(Subscription s){
+		subscribers.remove(s);
+	}
+	
+	private void offer(Subscription s, byte[] chunk){
+		/* One that is over takes itself out */
+		s.offer(chunk, writers, maxPending);
+	}
+	
+	void dropped(Subscription s){
+		dropped.incrementAndGet();
+		getLog().debug("Dropped a subscriber that fell {} chunks behind", maxPending);
+	}
+	
+	/**
+	 * End every stream, after what is already queued for it, leaving the broadcaster running
+	 */
+	public void endAll(){
+		for(Subscription s: subscribers){
+			s.end(writers);
+		}
+	}
+	
+	public int getSubscriberCount(){
+		return subscribers.size();
+	}
+	
+	/**
+	 * @return the id of the last event published, 0 if there hasn't been one
+	 */
+	public long getLastId(){
+		return nextId.get();
+	}
+	
+	/**
+	 * @return how many subscribers have been dropped for falling behind
+	 */
+	public long getDropped(){
+		return dropped.get();
+	}
+
+	/**
+	 * Once quitting, every stream is ended and the broadcaster can't be used again
+	 */
+	@Override
+	public synchronized void setQuitting(boolean quitting) {
+		if(this.quitting || !quitting){
+			return;
+		}
+		synchronized(publishing){
+			this.quitting = true;
+			endAll();
+		}
+		timer.shutdownNow();
+		/* Lets the ends that were just queued be written */
+		writers.shutdown();
+	}
+
+	@Override
+	public boolean isQuitting() {
+		return quitting;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.stream;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * How published events are written to a streaming response.  Each event is turned into a whole HTTP chunk,
+ * framing included, once per publish and that one array is written to every subscriber.
+ * @author djp3
+ *
+ */
+public enum StreamFormat {
+	
+	/** Server-Sent Events, for an EventSource in a browser */
+	EVENT_STREAM("text/event-stream; charset=UTF-8"),
+	
+	/** Each event's data followed by a newline, for long-polling and streaming clients that aren't browsers */
+	CHUNKED("application/json; charset=UTF-8");
+	
+	private final String contentType;
+	
+	private StreamFormat(String contentType){
+		this.contentType = contentType;
+	}
+	
+	public String getContentType(){
+		return contentType;
+	}
+	
+	/**
+	 * @param id of the event
+	 * @param event its name, null for the default
+	 * @param data
+	 * @return the event as a chunk ready to be written
+	 */
+	public byte[] frame(long id, String event, String data){
+		StringBuilder sb = new StringBuilder(data.length() + 32);
+		if(this == EVENT_STREAM){
+			sb.append("id: ").append(id).append('\n');
+			if(event != null){
+				sb.append("event: ").append(event).append('\n');
+			}
+			/* Every line of the data needs its own field, and a client ends a line at "\r\n", '\r' or '\n' */
+			int start = 0;
+			for(int i = 0; i < data.length(); i++){
+				char c = data.charAt(i);
+				if((c == '\r') || (c == '\n')){
+					sb.append("data: ").append(data, start, i).append('\n');
+					if((c == '\r') && (i + 1 < data.length()) && (data.charAt(i + 1) == '\n')){
+						i++;
+					}
+					start = i + 1;
+				}
+			}
+			sb.append("data: ").append(data, start, data.length()).append("\n\n");
+		}
+		else{
+			sb.append(data).append('\n');
+		}
+		return chunk(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * @return a chunk that keeps the connection from looking idle without clients seeing an event
+	 */
+	public byte[] heartbeat(){
+		return (this == EVENT_STREAM) ? EVENT_STREAM_HEARTBEAT : CHUNKED_HEARTBEAT;
+	}
+	
+	private static final byte[] EVENT_STREAM_HEARTBEAT = chunk(":\n\n".getBytes(StandardCharsets.US_ASCII));
+	private static final byte[] CHUNKED_HEARTBEAT = chunk("\n".getBytes(StandardCharsets.US_ASCII));
+	
+	/** The chunk that ends a chunked body */
+	static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	
+	static byte[] chunk(byte[] data){
+		byte[] size = (Integer.toHexString(data.length)+"\r\n").getBytes(StandardCharsets.US_ASCII);
+		byte[] ret = new byte[size.length + data.length + 2];
+		System.arraycopy(size, 0, ret, 0, size.length);
+		System.arraycopy(data, 0, ret, size.length, data.length);
+		ret[ret.length - 2] = '\r';
+		ret[ret.length - 1] = '\n';
+		return ret;
+	}
+}
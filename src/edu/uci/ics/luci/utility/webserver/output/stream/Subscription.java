@@ -0,0 +1,252 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One open streaming response.  Chunks for it are queued by whoever publishes and written by one of its
+ * {@link Broadcaster}'s writer threads, so no thread waits on a subscriber between events.  A subscriber
+ * that falls more than the broadcaster's maximum pending chunks behind is dropped.
+ * @author djp3
+ *
+ */
+public class Subscription {
+	
+	/** How the connection is let go of when the stream is over */
+	public interface Ending{
+		/**
+		 * @param complete true if the stream was ended properly, so the connection can take another request,
+		 * false if it has to be closed
+		 */
+		void ended(boolean complete);
+	}
+	
+	/* Queued to end the stream after what is already queued */
+	private static final byte[] END = new byte[0];
+	
+	private final OutputStream out;
+	private final StreamFormat format;
+	private final int maxEvents;
+	private final long timeout;
+	private final Ending ending;
+	
+	private final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<byte[]>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+	private final AtomicBoolean ended = new AtomicBoolean(false);
+	
+	/* Only touched by the thread that is draining */
+	private int events = 0;
+	
+	private volatile Broadcaster broadcaster = null;
+	private volatile ScheduledFuture<?> timeoutTask = null;
+	
+	/**
+	 * @param out where the response's chunks go, the headers have already been sent
+	 * @param format
+	 * @param maxEvents the stream ends after this many events, 0 for no limit.  1 makes it a long-poll.
+	 * @param timeout milliseconds after which the stream ends, 0 for never
+	 * @param ending told once the stream is over
+	 */
+	public Subscription(OutputStream out, StreamFormat format, int maxEvents, long timeout, Ending ending){
+		if((out == null) || (format == null) || (ending == null)){
+			throw new IllegalArgumentException("out, format and ending can't be null");
+		}
+		if(maxEvents < 0){
+			throw new IllegalArgumentException("maxEvents can't be negative: "+maxEvents);
+		}
+		if(timeout < 0){
+			throw new IllegalArgumentException("timeout can't be negative: "+timeout);
+		}
+		this.out = out;
+		this.format = format;
+		this.maxEvents = maxEvents;
+		this.timeout = timeout;
+		this.ending = ending;
+	}
+	
+	public StreamFormat getFormat() {
+		return format;
+	}
+
+	public int getMaxEvents() {
+		return maxEvents;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+	
+	public boolean isEnded(){
+		return ended.get();
+	}
+	
+	void setBroadcaster(Broadcaster broadcaster){
+		this.broadcaster = broadcaster;
+	}
+	
+	ScheduledFuture<?> getTimeoutTask(){
+		return timeoutTask;
+	}
+	
+	/**
+	 * @param timeoutTask what ends the stream after its timeout, cancelled once the stream is over
+	 */
+	void setTimeoutTask(ScheduledFuture<?> timeoutTask){
+		this.timeoutTask = timeoutTask;
+		/* The stream may have ended before the task was handed over */
+		if(ended.get()){
+			timeoutTask.cancel(false);
+		}
+	}
+	
+	/**
+	 * Queue a chunk to be written
+	 * @return false if the subscriber has fallen too far behind, or is over, and has been dropped
+	 */
+	boolean offer(byte[] chunk, Executor writers, int maxPending){
+		if(ended.get()){
+			return false;
+		}
+		if(pending.incrementAndGet() > maxPending){
+			Broadcaster b = broadcaster;
+			if(abort() && (b != null)){
+				b.dropped(this);
+			}
+			return false;
+		}
+		queue.offer(chunk);
+		schedule(writers);
+		return true;
+	}
+	
+	/**
+	 * Finish the stream after anything already queued
+	 */
+	void end(Executor writers){
+		if(!ended.get()){
+			pending.incrementAndGet();
+			queue.offer(END);
+			schedule(writers);
+		}
+	}
+	
+	private void schedule(final Executor writers){
+		if(draining.compareAndSet(false, true)){
+			try{
+				writers.execute(new Runnable(){
+					@Override
+					public void run() {
+						drain(writers);
+					}
+				});
+			}
+			catch(RejectedExecutionException e){
+				draining.set(false);
+				abort();
+			}
+		}
+	}
+	
+	private void drain(Executor writers){
+		try{
+			byte[] chunk;
+			while(!ended.get() && ((chunk = queue.poll()) != null)){
+				pending.decrementAndGet();
+				if(chunk == END){
+					finish();
+					return;
+				}
+				out.write(chunk);
+				if((chunk != format.heartbeat()) && (maxEvents > 0) && (++events >= maxEvents)){
+					out.flush();
+					finish();
+					return;
+				}
+				if(queue.isEmpty()){
+					out.flush();
+				}
+			}
+		}
+		catch(IOException e){
+			abort();
+			return;
+		}
+		finally{
+			draining.set(false);
+		}
+		/* Something may have been queued after the last poll but before draining was cleared */
+		if(!ended.get() && !queue.isEmpty()){
+			schedule(writers);
+		}
+	}
+	
+	/**
+	 * End the chunked body properly and hand the connection back
+	 */
+	private void finish(){
+		if(ended.compareAndSet(false, true)){
+			boolean complete = false;
+			try{
+				out.write(StreamFormat.LAST_CHUNK);
+				out.flush();
+				complete = true;
+			}
+			catch(IOException e){
+			}
+			done(complete);
+		}
+	}
+	
+	/**
+	 * Drop the subscriber and close its connection, which also stops a write that is stuck on it
+	 * @return false if it was already over
+	 */
+	boolean abort(){
+		if(ended.compareAndSet(false, true)){
+			queue.clear();
+			done(false);
+			return true;
+		}
+		return false;
+	}
+	
+	private void done(boolean complete){
+		ScheduledFuture<?> t = timeoutTask;
+		if(t != null){
+			t.cancel(false);
+		}
+		Broadcaster b = broadcaster;
+		if(b != null){
+			b.unsubscribe(this);
+		}
+		ending.ended(complete);
+	}
+}
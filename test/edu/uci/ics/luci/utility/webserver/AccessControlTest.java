@@ -24,9 +24,16 @@ package edu.uci.ics.luci.utility.webserver;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.logging.log4j.LogManager;
@@ -277,6 +284,73 @@ public class AccessControlTest extends AccessControl{
 		
 	}
 	
+	@Test
+	public void testReverseLookupDeadline() {
+		final List<Runnable> held = new ArrayList<Runnable>();
+		Executor executor = held::add;
+		setReverseLookups(new ReverseLookupCache(executor, 10, 60000, 60000));
+		setExpirationTime(System.currentTimeMillis() *2);
+		setAllowedConnections(Arrays.asList("^localhost$"));
+		setReverseLookupDefault(false);
+		
+		/* Doesn't wait for the resolver */
+		long start = System.currentTimeMillis();
+		assertTrue(!allowSource("127.0.0.1", true, false, 0));
+		assertTrue(System.currentTimeMillis() - start < getReverseLookupDeadline());
+		
+		/* The lookup carried on and its answer is used once it is in */
+		assertTrue(held.size() == 1);
+		held.get(0).run();
+		assertTrue(allowSource("127.0.0.1", true, false, 0));
+	}
+	
+	@Test
+	public void testSanityCheckWaitsForNames() throws IOException {
+		/* The request path's resolver never answers */
+		final List<Runnable> held = new ArrayList<Runnable>();
+		Executor executor = held::add;
+		setReverseLookups(new ReverseLookupCache(executor, 10, 60000, 60000));
+		setReverseLookupDefault(false);
+		setBadGuyTest(Arrays.asList("127.0.0.1"));
+		
+		File list = File.createTempFile("AccessControlTest", ".properties");
+		try{
+			Files.write(list.toPath(), "allowed_clients = ^localhost$\n".getBytes(StandardCharsets.UTF_8));
+			setDefaultFilename(list.getPath());
+			try {
+				loadConfiguration();
+				fail("This should throw an exception for letting a bad guy through by name");
+			} catch (ConfigurationException e) {
+				fail("Failed to load "+list);
+			} catch (RuntimeException e) {
+			}
+		}
+		finally{
+			list.delete();
+		}
+	}
+	
+	@Test
+	public void testRejectedLookupIsNotCached() {
+		final AtomicBoolean reject = new AtomicBoolean(true);
+		Executor executor = r -> {
+			if(reject.getAndSet(false)){
+				throw new RejectedExecutionException("full");
+			}
+			r.run();
+		};
+		setReverseLookups(new ReverseLookupCache(executor, 10, 60000, 60000));
+		setExpirationTime(System.currentTimeMillis() *2);
+		setAllowedConnections(Arrays.asList("^localhost$"));
+		
+		/* The lookup was turned away, which isn't the source's fault */
+		assertTrue(!allowSource("127.0.0.1", true, false));
+		assertTrue(allowSource("127.0.0.1", true, false));
+		
+		/* Only the lookup cache remembers the names */
+		assertTrue(getAccessList().getDecision("127.0.0.1", true, false) == null);
+	}
+	
 	@Test
 	public void testBadConfiguration() {
 		try{
@@ -325,4 +399,39 @@ public class AccessControlTest extends AccessControl{
 		assertTrue(allowSource("128.0.0.1",true,false));
 		assertTrue(!allowSource("127.0.0.1",true,false));
 	}
+	
+	@Test
+	public void testReloadKeepsListOnBadFile() throws IOException {
+		File file = File.createTempFile("access_control", ".properties");
+		try{
+			Files.write(file.toPath(), "allowed_clients = 127\\\\.0\\\\.0\\\\.1$\n".getBytes(StandardCharsets.UTF_8));
+			setDefaultFilename(file.getPath());
+			setBadGuyTest(Arrays.asList("10.0.0.1"));
+			setExpirationTime(System.currentTimeMillis() *2);
+			assertTrue(allowSource("127.0.0.1",false,false));
+			assertTrue(!isReloading());
+			
+			/* This one lets a bad guy in so it is never swapped in */
+			Files.write(file.toPath(), "allowed_clients = 10.0.0.0/8\n".getBytes(StandardCharsets.UTF_8));
+			assertTrue(file.setLastModified(file.lastModified() + 2000));
+			assertTrue(!reloadIfChanged());
+			assertTrue(allowSource("127.0.0.1",false,false));
+			assertTrue(!allowSource("10.1.2.3",false,false));
+			
+			Files.write(file.toPath(), "allowed_clients = 10.1.0.0/16\n".getBytes(StandardCharsets.UTF_8));
+			assertTrue(file.setLastModified(file.lastModified() + 4000));
+			assertTrue(reloadIfChanged());
+			assertTrue(!allowSource("127.0.0.1",false,false));
+			assertTrue(allowSource("10.1.2.3",false,false));
+			assertTrue(!reloadIfChanged());
+			
+			startReloading(1000);
+			assertTrue(isReloading());
+			stopReloading();
+			assertTrue(!isReloading());
+		}
+		finally{
+			file.delete();
+		}
+	}
 }
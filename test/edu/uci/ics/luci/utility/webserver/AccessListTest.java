@@ -0,0 +1,117 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.jupiter.api.Test;
+
+class AccessListTest {
+
+	@Test
+	void testCIDRTrie() {
+		assertTrue(CIDRTrie.isCIDR("10.0.0.0/8"));
+		assertTrue(CIDRTrie.isCIDR("fe80::/10"));
+		assertFalse(CIDRTrie.isCIDR("10.0.0.0/33"));
+		assertFalse(CIDRTrie.isCIDR("10.0.0.0"));
+		assertFalse(CIDRTrie.isCIDR("127\\.0\\.0\\.1$"));
+		assertFalse(CIDRTrie.isCIDR("/8"));
+		
+		CIDRTrie trie = new CIDRTrie();
+		trie.add("10.1.0.0/16");
+		trie.add("192.168.1.7/32");
+		trie.add("fe80::/10");
+		assertEquals(3,trie.size());
+		
+		assertTrue(trie.contains("10.1.255.3"));
+		assertFalse(trie.contains("10.2.0.1"));
+		assertTrue(trie.contains("192.168.1.7"));
+		assertFalse(trie.contains("192.168.1.8"));
+		assertTrue(trie.contains("fe80::1"));
+		assertFalse(trie.contains("fec0::1"));
+		assertFalse(trie.contains("localhost"));
+		assertFalse(trie.contains((String) null));
+		
+		/* A wider range swallows the one inside it */
+		trie.add("10.0.0.0/8");
+		assertTrue(trie.contains("10.2.0.1"));
+		trie.add("10.3.0.0/16");
+		assertEquals(4,trie.size());
+		
+		trie.add("0.0.0.0/0");
+		assertTrue(trie.contains("8.8.8.8"));
+		assertFalse(trie.contains("::2"));
+		
+		assertThrows(IllegalArgumentException.class,() -> trie.add("10.0.0.0"));
+	}
+	
+	@Test
+	void testMatches() {
+		AccessList list = new AccessList(Arrays.asList("127\\.0\\.0\\.1$","a\\.b\\.c\\.d","uci.edu$","172.16.0.0/12"));
+		assertTrue(list.matches("127.0.0.1",true));
+		assertTrue(list.matches("/127.0.0.1",true));
+		assertFalse(list.matches("127.0.0.10",true));
+		assertTrue(list.matches("A.b.c.d",false));
+		assertFalse(list.matches("A.b.c.d",true));
+		assertTrue(list.matches("www.ics.uci.edu",false));
+		assertTrue(list.matches("/172.20.1.1",false));
+		assertTrue(list.matches("somehost/172.31.255.255",true));
+		assertFalse(list.matches("/172.32.0.1",true));
+		assertFalse(list.matches(null,true));
+		
+		AccessList empty = new AccessList(new ArrayList<String>());
+		assertFalse(empty.matches("127.0.0.1",false));
+		
+		assertThrows(PatternSyntaxException.class,() -> new AccessList(Arrays.asList("(")));
+	}
+	
+	@Test
+	void testSnapshot() {
+		List<String> entries = new ArrayList<String>();
+		entries.add("localhost");
+		AccessList list = new AccessList(entries);
+		entries.add(".*");
+		assertFalse(list.matches("127.0.0.1",false));
+		assertEquals(1,list.getEntries().size());
+	}
+	
+	@Test
+	void testDecisions() {
+		AccessList list = new AccessList(Arrays.asList(".*"),2);
+		assertNull(list.getDecision("a",true,false));
+		list.putDecision("a",true,false,true);
+		assertTrue(list.getDecision("a",true,false));
+		assertNull(list.getDecision("a",false,false));
+		assertNull(list.getDecision("a",true,true));
+		assertEquals(1,list.getCacheStats().hitCount());
+		assertEquals(3,list.getCacheStats().missCount());
+	}
+}
@@ -0,0 +1,122 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.dsl.Disruptor;
+
+import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapper;
+import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperFactory;
+import edu.uci.ics.luci.utility.webserver.event.wrapper.EventWrapperQueuer;
+
+class AdmissionControlTest {
+	
+	private ThreadPoolExecutor executor;
+	private CountDownLatch release;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1));
+		release = new CountDownLatch(1);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		release.countDown();
+		executor.shutdown();
+	}
+	
+	private void fillExecutor(){
+		Runnable block = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+		};
+		/* One running, one waiting */
+		executor.execute(block);
+		executor.execute(block);
+	}
+
+	@Test
+	void testAdmitsUntilFull() {
+		AdmissionControl ac = new AdmissionControl(true, executor, 5);
+		assertEquals(5,ac.getRetryAfter());
+		assertTrue(ac.admit());
+		
+		fillExecutor();
+		assertFalse(ac.admit());
+		assertFalse(ac.admit());
+		assertEquals(2,ac.getRejected());
+	}
+
+	@Test
+	void testAdmitsUntilEventRingIsFull() {
+		Disruptor<EventWrapper> disruptor = new Disruptor<EventWrapper>(new EventWrapperFactory(), 2, Executors.defaultThreadFactory());
+		disruptor.handleEventsWith((EventHandler<EventWrapper>) (event, sequence, endOfBatch) -> release.await());
+		disruptor.start();
+		EventWrapperQueuer queue = new EventWrapperQueuer(disruptor, disruptor.getRingBuffer());
+		try{
+			AdmissionControl ac = new AdmissionControl(true, executor, 5);
+			ac.setEventQueue(queue);
+			queue.onData(new EventWrapper());
+			assertTrue(ac.admit());
+			
+			/* The handler is stuck on the first, so the second fills the ring */
+			queue.onData(new EventWrapper());
+			assertFalse(ac.admit());
+			assertEquals(1,ac.getRejected());
+		}
+		finally{
+			release.countDown();
+			queue.setQuitting(true);
+		}
+	}
+
+	@Test
+	void testDisabledAlwaysAdmits() {
+		AdmissionControl ac = new AdmissionControl(false, executor, 5);
+		fillExecutor();
+		assertTrue(ac.admit());
+		assertEquals(0,ac.getRejected());
+	}
+
+	@Test
+	void testBadRetryAfter() {
+		assertThrows(IllegalArgumentException.class,() -> new AdmissionControl(true, executor, -1));
+	}
+}
@@ -0,0 +1,140 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Version;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
+
+class RateLimitsTest {
+
+	@Test
+	void testRateLimiter() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(10, 3);
+		assertTrue(limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a"));
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("a"));
+		/* Buckets are separate */
+		assertTrue(limiter.tryAcquire("b"));
+		
+		/* A token comes back every 100ms */
+		Thread.sleep(150);
+		assertTrue(limiter.tryAcquire("a"));
+		assertFalse(limiter.tryAcquire("a"));
+		
+		assertThrows(IllegalArgumentException.class,() -> new RateLimiter(0, 1));
+		assertThrows(IllegalArgumentException.class,() -> new RateLimiter(1, 0));
+	}
+	
+	@Test
+	void testRules() {
+		RateLimits limits = new RateLimits();
+		assertFalse(limits.isEnabled());
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/version"));
+		
+		limits.setSourceLimit(0.001, 1);
+		limits.addRuleLimit("10.0.0.0/8", 0.001, 2);
+		assertTrue(limits.isEnabled());
+		
+		assertTrue(limits.tryAcquire("/192.168.0.1", null));
+		assertFalse(limits.tryAcquire("/192.168.0.1", null));
+		
+		/* The rule's bucket is bigger */
+		assertTrue(limits.tryAcquire("/10.0.0.1", null));
+		assertTrue(limits.tryAcquire("/10.0.0.1", null));
+		assertFalse(limits.tryAcquire("/10.0.0.1", null));
+	}
+	
+	@Test
+	void testCommands() {
+		RateLimits limits = new RateLimits();
+		limits.setCommandLimit("/expensive", 0.001, 1);
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/expensive"));
+		assertFalse(limits.tryAcquire("/10.0.0.1", "/expensive"));
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/cheap"));
+		assertTrue(limits.tryAcquire("/10.0.0.2", "/expensive"));
+		
+		limits.setCommandLimit("/expensive", 0, 0);
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/expensive"));
+		assertFalse(limits.isEnabled());
+	}
+	
+	@Test
+	void testCommandLinesAreRouted() {
+		HashMap<String, APIEvent> registry = new HashMap<String, APIEvent>();
+		registry.put("/version", new APIEvent_Version("1"));
+		registry.put("/user/{id}", new APIEvent_Version("1"));
+		RouteTable routes = new RouteTable(registry);
+		
+		RateLimits limits = new RateLimits();
+		limits.setCommandLimit("/version", 0.001, 1);
+		limits.setCommandLimit("/user/{id}", 0.001, 1);
+		
+		/* Every command line that reaches a command shares its bucket */
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/version", routes));
+		assertFalse(limits.tryAcquire("/10.0.0.1", "/version/", routes));
+		assertFalse(limits.tryAcquire("/10.0.0.1", "/version/more", routes));
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/user/1", routes));
+		assertFalse(limits.tryAcquire("/10.0.0.1", "/user/2", routes));
+		assertTrue(limits.tryAcquire("/10.0.0.1", "/other", routes));
+	}
+	
+	@Test
+	void testConnectionQuota() throws IOException {
+		ConnectionQuota quota = new ConnectionQuota();
+		Socket a = new Socket();
+		Socket b = new Socket();
+		Socket c = new Socket();
+		assertTrue(quota.tryOpen("/10.0.0.1", a));
+		assertEquals(0,quota.getSources());
+		
+		quota.setMaxPerSource(2);
+		assertTrue(quota.tryOpen("/10.0.0.1", a));
+		assertTrue(quota.tryOpen("/10.0.0.1", b));
+		assertFalse(quota.tryOpen("/10.0.0.1", c));
+		assertTrue(quota.tryOpen("/10.0.0.2", c));
+		assertEquals(2,quota.getOpen("/10.0.0.1"));
+		
+		/* Closing a connection is all it takes to free its place */
+		a.close();
+		assertTrue(quota.tryOpen("/10.0.0.1", new Socket()));
+		
+		b.close();
+		c.close();
+		quota.sweep();
+		assertEquals(1,quota.getSources());
+		
+		assertThrows(IllegalArgumentException.class,() -> quota.setMaxPerSource(-1));
+	}
+}
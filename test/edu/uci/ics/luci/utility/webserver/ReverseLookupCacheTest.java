@@ -0,0 +1,94 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+
+class ReverseLookupCacheTest {
+	
+	/** Runs lookups only when told to */
+	private static class HeldExecutor implements Executor{
+		private final List<Runnable> held = new ArrayList<Runnable>();
+		
+		@Override
+		public void execute(Runnable command) {
+			held.add(command);
+		}
+		
+		void release(){
+			for(Runnable r:held){
+				r.run();
+			}
+			held.clear();
+		}
+	}
+
+	@Test
+	void testLookupsAreShared() {
+		HeldExecutor executor = new HeldExecutor();
+		ReverseLookupCache cache = new ReverseLookupCache(executor, 10, 60000, 60000);
+		
+		CompletableFuture<List<String>> first = cache.lookup("/localhost");
+		CompletableFuture<List<String>> second = cache.lookup("localhost");
+		assertSame(first,second);
+		assertEquals(1,executor.held.size());
+		assertFalse(first.isDone());
+		
+		/* Nothing is known and nothing waits */
+		assertNull(cache.lookup("localhost",0));
+		assertEquals(1,cache.getTimeoutCount());
+		
+		executor.release();
+		assertTrue(first.getNow(null).contains("localhost"));
+		assertTrue(cache.lookup("localhost",0).contains("localhost"));
+		assertEquals(1,cache.getMissCount());
+		assertEquals(3,cache.getHitCount());
+		assertEquals(1,cache.getResolvedCount());
+	}
+	
+	@Test
+	void testNegativeEntriesExpire() throws InterruptedException {
+		HeldExecutor executor = new HeldExecutor();
+		ReverseLookupCache cache = new ReverseLookupCache(executor, 10, 60000, 1);
+		
+		CompletableFuture<List<String>> first = cache.lookup("no-such-host.invalid");
+		executor.release();
+		assertTrue(first.getNow(null).isEmpty());
+		assertEquals(1,cache.getFailedCount());
+		
+		Thread.sleep(10);
+		assertNotSame(first,cache.lookup("no-such-host.invalid"));
+		assertEquals(2,cache.getMissCount());
+	}
+}
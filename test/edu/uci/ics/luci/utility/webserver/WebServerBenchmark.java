@@ -0,0 +1,218 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.uci.ics.luci.utility.Globals;
+import edu.uci.ics.luci.utility.GlobalsForTesting;
+import edu.uci.ics.luci.utility.webserver.WebServerConfiguration.WaitStrategyType;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Error;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Test;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Version;
+import edu.uci.ics.luci.utility.webserver.input.channel.socket.HTTPInputOverSocketChannel;
+
+/**
+ * Not a unit test.  Run main() to compare the ring buffer wait strategies, with and without the
+ * pipeline, by hammering /version over persistent connections.  Reports throughput and latency
+ * percentiles for each combination.
+ * @author djp3
+ *
+ */
+public class WebServerBenchmark {
+	
+	static final int NUM_THREADS = 20;
+	static final int NUM_TESTS = 2500;
+	static final int NUM_WARMUP = 250;
+	
+	private static final byte[] REQUEST = "GET /version HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+	
+	
+	private static class HitTheWebsite implements Runnable{
+		
+		private final int port;
+		private final long[] latencies = new long[NUM_TESTS];
+		public boolean failed = false;
+		public String failureReason = "";
+		
+		HitTheWebsite(int port){
+			this.port = port;
+		}
+
+		@Override
+		public void run() {
+			try(Socket s = new Socket("localhost",port)){
+				s.setTcpNoDelay(true);
+				OutputStream out = s.getOutputStream();
+				InputStream in = new BufferedInputStream(s.getInputStream());
+				for(int i = 0; i < NUM_WARMUP; i++){
+					out.write(REQUEST);
+					out.flush();
+					readResponse(in);
+				}
+				for(int i = 0; i < NUM_TESTS; i++){
+					long start = System.nanoTime();
+					out.write(REQUEST);
+					out.flush();
+					readResponse(in);
+					latencies[i] = System.nanoTime() - start;
+				}
+			} catch (IOException e) {
+				failed = true;
+				failureReason = e.getLocalizedMessage();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Read one Content-Length framed response off a persistent connection
+	 */
+	private static void readResponse(InputStream in) throws IOException{
+		StringBuilder line = new StringBuilder();
+		int contentLength = 0;
+		int c;
+		while((c = in.read()) >= 0){
+			if(c == '\n'){
+				String header = line.toString().trim();
+				if(header.isEmpty()){
+					break;
+				}
+				if(header.regionMatches(true, 0, "Content-Length:", 0, 15)){
+					contentLength = Integer.parseInt(header.substring(15).trim());
+				}
+				line.setLength(0);
+			}
+			else{
+				line.append((char) c);
+			}
+		}
+		if(c < 0){
+			throw new IOException("Connection closed before the response was complete");
+		}
+		for(int i = 0; i < contentLength; i++){
+			if(in.read() < 0){
+				throw new IOException("Connection closed in the middle of the body");
+			}
+		}
+	}
+	
+	
+	private static WebServer startAWebServer(WebServerConfiguration configuration, int port){
+		HTTPInputOverSocketChannel inputChannel = new HTTPInputOverSocketChannel(port);
+		/* Each agent uses one connection for the whole run */
+		inputChannel.getKeepAlivePolicy().setMaxRequests(NUM_WARMUP + NUM_TESTS + 1);
+		HashMap<String, APIEvent> requestHandlerRegistry = new HashMap<String,APIEvent>();
+		requestHandlerRegistry.put(null,new APIEvent_Error(Globals.getGlobals().getSystemVersion()));
+		requestHandlerRegistry.put("/version",new APIEvent_Version(Globals.getGlobals().getSystemVersion()));
+
+		AccessControl accessControl = new AccessControl();
+		accessControl.reset();
+		WebServer ws = new WebServer(inputChannel, requestHandlerRegistry, accessControl, configuration);
+		ws.start(1000);
+		return ws;
+	}
+	
+	
+	private static void run(WaitStrategyType waitStrategy, boolean pipelined){
+		WebServerConfiguration configuration = new WebServerConfiguration();
+		configuration.setWaitStrategy(waitStrategy);
+		configuration.setPipelined(pipelined);
+		/* Keep the number of spinning threads sane */
+		configuration.setPipelineWorkers(Math.max(1, Runtime.getRuntime().availableProcessors()));
+		
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAWebServer(configuration, port);
+		
+		List<HitTheWebsite> agents = new ArrayList<HitTheWebsite>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0 ; i < NUM_THREADS; i++){
+			HitTheWebsite agent = new HitTheWebsite(port);
+			agents.add(agent);
+			Thread thread = new Thread(agent);
+			thread.setName("Agent "+i);
+			threads.add(thread);
+		}
+		
+		long start = System.currentTimeMillis();
+		for(Thread thread:threads){
+			thread.start();
+		}
+		for(Thread thread:threads){
+			while(thread.isAlive()){
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+		long end = System.currentTimeMillis();
+		
+		ws.setQuitting(true);
+		ws.getInputChannel().closeChannel();
+		
+		long[] all = new long[NUM_THREADS * NUM_TESTS];
+		for(int i = 0 ; i < NUM_THREADS; i++){
+			if(agents.get(i).failed){
+				System.out.println(waitStrategy+(pipelined?" pipelined":"")+": an agent failed, "+agents.get(i).failureReason);
+				return;
+			}
+			System.arraycopy(agents.get(i).latencies, 0, all, i * NUM_TESTS, NUM_TESTS);
+		}
+		Arrays.sort(all);
+		
+		System.out.println(String.format("%-10s %-10s %8.0f req/s   p50 %8.1f us   p99 %8.1f us   p99.9 %8.1f us",
+				waitStrategy,
+				(pipelined?"pipelined":"queued"),
+				(all.length * 1000.0d)/(end - start),
+				all[(int)(all.length * 0.50)]/1000.0d,
+				all[(int)(all.length * 0.99)]/1000.0d,
+				all[(int)(all.length * 0.999)]/1000.0d));
+	}
+
+
+	public static void main(String[] args) {
+		/* First set up the globals in this convoluted way */
+		GlobalsForTesting.reset("testSupport/JustFatals.log4j.xml");
+		GlobalsForTesting g = new GlobalsForTesting();
+		Globals.setGlobals(g);
+		
+		System.out.println(NUM_THREADS+" persistent connections, "+NUM_TESTS+" requests each to /version");
+		for(WaitStrategyType waitStrategy:WaitStrategyType.values()){
+			for(boolean pipelined:new boolean[]{false,true}){
+				run(waitStrategy,pipelined);
+			}
+		}
+		
+		g.setQuitting(true);
+	}
+}
@@ -0,0 +1,153 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.jupiter.api.Test;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import edu.uci.ics.luci.utility.webserver.WebServerConfiguration.ExecutorMode;
+import edu.uci.ics.luci.utility.webserver.WebServerConfiguration.WaitStrategyType;
+import edu.uci.ics.luci.utility.webserver.event.route.RouteTable;
+
+class WebServerConfigurationTest {
+
+	@Test
+	void testDefaults() {
+		WebServerConfiguration c = new WebServerConfiguration();
+		assertEquals(1024,c.getRingBufferSize());
+		assertEquals(WaitStrategyType.BLOCKING,c.getWaitStrategy());
+		assertEquals(ProducerType.MULTI,c.getProducerType());
+		assertTrue(c.getThreadFactory() != null);
+		assertTrue(!c.isPipelined());
+	}
+
+	@Test
+	void testRingBufferSize() {
+		WebServerConfiguration c = new WebServerConfiguration();
+		c.setRingBufferSize(1 << 16);
+		assertEquals(1 << 16,c.getRingBufferSize());
+		assertThrows(IllegalArgumentException.class,() -> c.setRingBufferSize(1000));
+		assertThrows(IllegalArgumentException.class,() -> c.setRingBufferSize(0));
+		assertThrows(IllegalArgumentException.class,() -> c.setRingBufferSize(-1024));
+	}
+
+	@Test
+	void testWaitStrategies() {
+		assertTrue(WaitStrategyType.BLOCKING.create() instanceof BlockingWaitStrategy);
+		assertTrue(WaitStrategyType.SLEEPING.create() instanceof SleepingWaitStrategy);
+		assertTrue(WaitStrategyType.YIELDING.create() instanceof YieldingWaitStrategy);
+		assertTrue(WaitStrategyType.BUSY_SPIN.create() instanceof BusySpinWaitStrategy);
+	}
+
+	@Test
+	void testNullsAreRejected() {
+		WebServerConfiguration c = new WebServerConfiguration();
+		assertThrows(IllegalArgumentException.class,() -> c.setWaitStrategy(null));
+		assertThrows(IllegalArgumentException.class,() -> c.setProducerType(null));
+		assertThrows(IllegalArgumentException.class,() -> c.setThreadFactory(null));
+		assertThrows(IllegalArgumentException.class,() -> c.setPipelineWorkers(0));
+	}
+
+	@Test
+	void testExecutorModes() throws InterruptedException, ExecutionException {
+		WebServerConfiguration c = new WebServerConfiguration();
+		assertEquals(ExecutorMode.CACHED,c.getExecutorMode());
+		assertThrows(IllegalArgumentException.class,() -> c.setExecutorMode(null));
+		
+		/* Falls back to platform threads when the JVM doesn't have virtual threads */
+		c.setExecutorMode(ExecutorMode.VIRTUAL);
+		ExecutorService executor = c.createExecutor();
+		try{
+			Future<String> f = executor.submit(() -> Thread.currentThread().toString());
+			String thread = f.get();
+			assertEquals(WebServerConfiguration.isVirtualThreadsAvailable(),thread.startsWith("VirtualThread"));
+		}
+		finally{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testBoundedExecutor() {
+		WebServerConfiguration c = new WebServerConfiguration();
+		c.setExecutorMode(ExecutorMode.BOUNDED);
+		c.setMaxThreads(8);
+		c.setQueueDepth(16);
+		c.setRetryAfter(3);
+		assertEquals(3,c.getRetryAfter());
+		
+		ExecutorService executor = c.createExecutor();
+		try{
+			assertTrue(executor instanceof ThreadPoolExecutor);
+			assertEquals(8,((ThreadPoolExecutor) executor).getMaximumPoolSize());
+			assertEquals(16,((ThreadPoolExecutor) executor).getQueue().remainingCapacity());
+		}
+		finally{
+			executor.shutdown();
+		}
+		
+		/* Reads wait on clients, so they aren't bounded */
+		ExecutorService input = c.createInputExecutor();
+		try{
+			assertEquals(Integer.MAX_VALUE,((ThreadPoolExecutor) input).getMaximumPoolSize());
+		}
+		finally{
+			input.shutdown();
+		}
+		
+		assertThrows(IllegalArgumentException.class,() -> c.setMaxThreads(0));
+		assertThrows(IllegalArgumentException.class,() -> c.setQueueDepth(0));
+		assertThrows(IllegalArgumentException.class,() -> c.setRetryAfter(-1));
+	}
+
+	@Test
+	void testRouteCacheSize() {
+		WebServerConfiguration c = new WebServerConfiguration();
+		assertEquals(RouteTable.DEFAULT_CACHE_SIZE,c.getRouteCacheSize());
+		c.setRouteCacheSize(10);
+		assertEquals(10,c.getRouteCacheSize());
+		assertThrows(IllegalArgumentException.class,() -> c.setRouteCacheSize(0));
+	}
+
+	@Test
+	void testAccessControlReloadPeriod() {
+		WebServerConfiguration c = new WebServerConfiguration();
+		assertTrue(c.getAccessControlReloadPeriod() > 0);
+		c.setAccessControlReloadPeriod(0);
+		assertEquals(0,c.getAccessControlReloadPeriod());
+		assertThrows(IllegalArgumentException.class,() -> c.setAccessControlReloadPeriod(-1));
+	}
+}
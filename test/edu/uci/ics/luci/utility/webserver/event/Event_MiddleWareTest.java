@@ -0,0 +1,162 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.Globals;
+import edu.uci.ics.luci.utility.GlobalsForTesting;
+import edu.uci.ics.luci.utility.datastructure.Pair;
+import edu.uci.ics.luci.utility.webserver.AccessControl;
+import edu.uci.ics.luci.utility.webserver.WebServer;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Error;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Test;
+import edu.uci.ics.luci.utility.webserver.input.channel.socket.HTTPInputOverSocket;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+
+class Event_MiddleWareTest {
+	
+	private ExecutorService executor;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		executor.shutdown();
+	}
+
+	@Test
+	void testConvertCompletes() {
+		final Request request = new Request();
+		CompletableFuture<Pair<Request, Output>> f = Event_MiddleWare.convert(new Callable<Pair<Request, Output>>(){
+			@Override
+			public Pair<Request, Output> call() throws Exception {
+				return new Pair<Request,Output>(request,null);
+			}
+		}, executor);
+		
+		try {
+			assertEquals(request,f.get().getFirst());
+		} catch (InterruptedException e) {
+			fail("Interrupted "+e);
+		} catch (ExecutionException e) {
+			fail("Conversion failed "+e);
+		}
+	}
+
+	@Test
+	void testConvertFails() {
+		CompletableFuture<Pair<Request, Output>> f = Event_MiddleWare.convert(new Callable<Pair<Request, Output>>(){
+			@Override
+			public Pair<Request, Output> call() throws Exception {
+				throw new Exception("Intentional");
+			}
+		}, executor);
+		
+		try {
+			f.get();
+			fail("Should have thrown an exception");
+		} catch (InterruptedException e) {
+			fail("Interrupted "+e);
+		} catch (ExecutionException e) {
+			assertTrue(f.isCompletedExceptionally());
+		}
+	}
+	
+	private static String fetch(int port, String path) throws IOException{
+		try(Socket s = new Socket("localhost",port)){
+			OutputStream out = s.getOutputStream();
+			out.write(("GET "+path+" HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			
+			s.setSoTimeout(10 * 1000);
+			InputStream in = s.getInputStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] b = new byte[4096];
+			int n;
+			while((n = in.read(b)) >= 0){
+				bytes.write(b,0,n);
+			}
+			return new String(bytes.toByteArray(),StandardCharsets.UTF_8);
+		}
+	}
+	
+	@Test
+	void testDeniedConnectionsAreClosed() {
+		GlobalsForTesting.reset("testSupport/APIEvent_Test.log4j.xml");
+		GlobalsForTesting g = new GlobalsForTesting();
+		Globals.setGlobals(g);
+		try{
+			AccessControl accessControl = new AccessControl(){
+				@Override
+				public boolean allowSource(String source, boolean doReverseLookups, boolean caseSensitive) {
+					return false;
+				}
+			};
+			accessControl.reset();
+			accessControl.getRateLimits().getConnectionQuota().setMaxPerSource(2);
+			
+			HashMap<String, APIEvent> requestHandlerRegistry = new HashMap<String,APIEvent>();
+			requestHandlerRegistry.put(null,new APIEvent_Error(g.getSystemVersion()));
+			int port = APIEvent_Test.testPortPlusPlus();
+			WebServer ws = new WebServer(new HTTPInputOverSocket(port,false), requestHandlerRegistry, accessControl);
+			g.addQuittable(ws);
+			ws.start();
+			
+			/* More denials than the quota has slots, each one closed without an answer rather than a 429 */
+			for(int i = 0; i < 5; i++){
+				assertEquals("",fetch(port,"/version"));
+			}
+			assertEquals(0,accessControl.getRateLimits().getConnectionQuota().getOpen("/127.0.0.1"));
+		} catch (IOException e) {
+			fail("IO Exception "+e);
+		}
+		finally{
+			g.setQuitting(true);
+			Globals.setGlobals(null);
+		}
+	}
+}
@@ -21,14 +21,24 @@
 
 package edu.uci.ics.luci.utility.webserver.event.api;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.http.client.utils.URIBuilder;
 import org.junit.jupiter.api.AfterAll;
@@ -43,6 +53,8 @@ import edu.uci.ics.luci.utility.webserver.AccessControl;
 import edu.uci.ics.luci.utility.webserver.WebServer;
 import edu.uci.ics.luci.utility.webserver.WebUtil;
 import edu.uci.ics.luci.utility.webserver.event.EventVoid;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult_HTTP;
 import edu.uci.ics.luci.utility.webserver.input.channel.socket.HTTPInputOverSocket;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
 import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
@@ -245,4 +257,86 @@ public class APIEvent_FileServer_Test {
 		}
 	}
 
+	
+	private static APIEventResult_HTTP serve(APIEvent_FileServer server, String command, String commandLine, Map<String, List<String>> headers){
+		APIEvent_FileServer a = (APIEvent_FileServer) server.clone();
+		Request r = new Request();
+		r.setCommand(command);
+		r.setCommandLine(commandLine);
+		r.setHeaders(headers);
+		a.setRequest(r);
+		a.setOutput(new Output_Socket_HTTP(null));
+		return (APIEventResult_HTTP) a.onEvent();
+	}
+	
+	
+	@Test
+	public void testDirectory() throws IOException {
+		File root = Files.createTempDirectory("APIEvent_FileServer_Test").toFile();
+		root.deleteOnExit();
+		File file = new File(root,"a.png");
+		file.deleteOnExit();
+		byte[] bytes = new byte[256];
+		for(int i = 0; i < bytes.length; i++){
+			bytes[i] = (byte) i;
+		}
+		Files.write(file.toPath(),bytes);
+		file.setLastModified(1500000000000L);
+		
+		assertThrows(IllegalArgumentException.class,() -> new APIEvent_FileServer(file));
+		APIEvent_FileServer server = new APIEvent_FileServer(root);
+		
+		Map<String, List<String>> none = new HashMap<String, List<String>>();
+		APIEventResult_HTTP result = serve(server,"/files","/files/a.png",none);
+		assertEquals(APIEventResult.Status.OK,result.getStatus());
+		assertEquals(APIEventResult.DataType.PNG,result.getDataType());
+		assertEquals(APIEventResult.BodyType.FILE,result.getBodyType());
+		assertEquals(file.getCanonicalFile(),result.getResponseFile());
+		assertEquals(256,result.getResponseLength());
+		String eTag = APIEvent_FileServer.makeETag(256,1500000000000L);
+		assertEquals(Collections.singleton(eTag),result.getHttpHeaders().get("ETag"));
+		assertEquals(Collections.singleton("Fri, 14 Jul 2017 02:40:00 GMT"),result.getHttpHeaders().get("Last-Modified"));
+		
+		/* Conditional requests */
+		Map<String, List<String>> h = new HashMap<String, List<String>>();
+		h.put("if-none-match",Arrays.asList(eTag));
+		assertEquals(APIEventResult.Status.NOT_MODIFIED,serve(server,"/files","/files/a.png",h).getStatus());
+		h.put("if-none-match",Arrays.asList("\"nope\""));
+		assertEquals(APIEventResult.Status.OK,serve(server,"/files","/files/a.png",h).getStatus());
+		h.clear();
+		h.put("If-Modified-Since",Arrays.asList("Fri, 14 Jul 2017 02:40:00 GMT"));
+		assertEquals(APIEventResult.Status.NOT_MODIFIED,serve(server,"/files","/files/a.png",h).getStatus());
+		h.put("If-Modified-Since",Arrays.asList("Fri, 14 Jul 2017 02:39:59 GMT"));
+		assertEquals(APIEventResult.Status.OK,serve(server,"/files","/files/a.png",h).getStatus());
+		
+		/* Nothing outside of the root */
+		result = serve(server,"/files","/files/../"+root.getName()+"/a.png",none);
+		assertEquals(APIEventResult.BodyType.FILE,result.getBodyType());
+		result = serve(server,"/files","/files/../../etc/passwd",none);
+		assertEquals(APIEventResult.BodyType.STRING,result.getBodyType());
+		assertTrue(result.getResponseBody().startsWith("Resource not found"));
+		result = serve(server,"/files","/files/",none);
+		assertTrue(result.getResponseBody().startsWith("Resource not found"));
+	}
+	
+	
+	@Test
+	public void testResourceCache() throws IOException {
+		APIEvent_FileServer server = new APIEvent_FileServer(edu.uci.ics.luci.utility.GlobalsForTesting.class,"/www_test");
+		Map<String, List<String>> none = new HashMap<String, List<String>>();
+		
+		APIEventResult_HTTP first = serve(server,"/content","/content/index.html",none);
+		assertEquals(APIEventResult.BodyType.BYTES,first.getBodyType());
+		assertTrue(new String(first.getResponseBytes().array(),StandardCharsets.UTF_8).contains("<h1>This is a test html file</h1>"));
+		
+		/* The clones share the cache so the second request gets the same bytes */
+		APIEventResult_HTTP second = serve(server,"/content","/content/index.html",none);
+		assertTrue(first.getResponseBytes().array() == second.getResponseBytes().array());
+		assertArrayEquals(first.getResponseBytes().array(),second.getResponseBytes().array());
+		
+		Map<String, List<String>> h = new HashMap<String, List<String>>();
+		h.put("If-None-Match",Arrays.asList(first.getHttpHeaders().get("ETag").iterator().next()));
+		assertEquals(APIEventResult.Status.NOT_MODIFIED,serve(server,"/content","/content/index.html",h).getStatus());
+	}
+
 }
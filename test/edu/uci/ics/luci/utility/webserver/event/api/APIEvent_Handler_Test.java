@@ -0,0 +1,164 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.security.InvalidParameterException;
+
+import org.apache.http.client.utils.URIBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.Globals;
+import edu.uci.ics.luci.utility.GlobalsForTesting;
+import edu.uci.ics.luci.utility.webserver.WebServer;
+import edu.uci.ics.luci.utility.webserver.WebUtil;
+import edu.uci.ics.luci.utility.webserver.event.EventVoid;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+public class APIEvent_Handler_Test {
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		GlobalsForTesting.reset("testSupport/APIEvent_Test.log4j.xml");
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		while(Globals.getGlobals() != null){
+			try{
+				Thread.sleep(1000);
+			}
+			catch(InterruptedException e){
+			}
+		}
+		GlobalsForTesting g = new GlobalsForTesting();
+		Globals.setGlobals(g);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		Globals.getGlobals().setQuitting(true);
+		Globals.setGlobals(null);
+	}
+	
+	private WebServer ws = null;
+	
+	@Test
+	public void test() {
+		APIHandler h1 = (request, output) -> null;
+		APIHandler h2 = (request, output) -> null;
+		
+		APIEvent_Handler a = new APIEvent_Handler(h1);
+		APIEvent_Handler b = (APIEvent_Handler) a.clone();
+		
+		assertTrue(!a.equals(null));
+		assertTrue(!a.equals(new APIEvent_TimeOut()));
+		assertTrue(a.equals(b));
+		assertTrue(a.hashCode() == b.hashCode());
+		
+		b.setHandler(h2);
+		assertTrue(!a.equals(b));
+		a.set(b);
+		assertTrue(a.equals(b));
+		
+		assertThrows(IllegalArgumentException.class,() -> new APIEvent_Handler(null));
+		assertThrows(InvalidParameterException.class,() -> a.set(new EventVoid()));
+	}
+	
+	
+	@Test
+	public void testUnstableWrapperDoesNotShareState() {
+		APIEvent_Version v = new APIEvent_Version("1.0");
+		APIEvent_UnstableWrapper a = new APIEvent_UnstableWrapper(0.0,0,v);
+		APIEvent_UnstableWrapper b = (APIEvent_UnstableWrapper) a.clone();
+		assertNotSame(a.getWrapMe(),b.getWrapMe());
+		assertTrue(a.equals(b));
+		
+		Request request = new Request();
+		b.setRequest(request);
+		assertSame(request,b.getWrapMe().getRequest());
+		assertEquals(null,v.getRequest());
+	}
+	
+	
+	@Test
+	public void testWebServerSocket() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		boolean secure = false;
+		ws = APIEvent_Test.startAWebServerSocket(Globals.getGlobals(),port,secure);
+		ws.registerHandler("/user/{id}", (request, output) -> {
+			APIEventResult response = output.makeOutputChannelResponse();
+			JSONObject ret = new JSONObject();
+			ret.put("error", "false");
+			ret.put("id", request.getPathParameters().get("id"));
+			response.setStatus(APIEventResult.Status.OK);
+			response.setDataType(APIEventResult.DataType.JSON);
+			response.setResponseBody(ret.toString());
+			return response;
+		});
+		assertTrue(ws.getAPIRegistry().get("/user/{id}") instanceof APIEvent_Handler);
+
+		String responseString = null;
+		try {
+			URIBuilder uriBuilder = new URIBuilder()
+									.setScheme("http")
+									.setHost("localhost")
+									.setPort(ws.getInputChannel().getPort())
+									.setPath("/user/42");
+			responseString = WebUtil.fetchWebPage(uriBuilder, null,null, null, 30 * 1000);
+		} catch (MalformedURLException e) {
+			e.printStackTrace();
+			fail("Bad URL");
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IO Exception");
+		}
+		catch (URISyntaxException e) {
+			e.printStackTrace();
+			fail("URISyntaxException");
+		}
+
+		JSONObject response = null;
+		try {
+			response = (JSONObject) JSONValue.parse(responseString);
+			assertEquals("false",response.get("error"));
+			assertEquals("42",response.get("id"));
+		} catch (ClassCastException e) {
+			fail("Bad JSON Response");
+		}
+	}
+}
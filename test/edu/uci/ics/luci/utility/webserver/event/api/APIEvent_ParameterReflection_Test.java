@@ -22,15 +22,19 @@
 package edu.uci.ics.luci.utility.webserver.event.api;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidParameterException;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.http.HttpServerConnection;
 import org.apache.http.client.utils.URIBuilder;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -43,6 +47,7 @@ import edu.uci.ics.luci.utility.GlobalsForTesting;
 import edu.uci.ics.luci.utility.webserver.WebServer;
 import edu.uci.ics.luci.utility.webserver.WebUtil;
 import edu.uci.ics.luci.utility.webserver.event.EventVoid;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
 import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
 import net.minidev.json.JSONArray;
@@ -132,6 +137,43 @@ public class APIEvent_ParameterReflection_Test {
 	}
 	
 	
+	@Test
+	public void testRespondsWithoutACopy() {
+		Request request = new Request();
+		request.setRawQuery("a=1&a=2");
+		
+		APIEvent_ParameterReflection a = new APIEvent_ParameterReflection();
+		APIEventResult r = a.handle(request, new Output_Socket_HTTP((HttpServerConnection) null));
+		JSONObject parameters = (JSONObject) ((JSONObject) JSONValue.parse(body(r))).get("parameters");
+		assertEquals(2, ((JSONArray) parameters.get("a")).size());
+		assertNull(a.getRequest());
+		
+		/* A subclass still gets a copy with the request set, and its own onEvent */
+		final AtomicInteger calls = new AtomicInteger(0);
+		APIEvent_ParameterReflection b = new APIEvent_ParameterReflection(){
+			@Override
+			public APIEventResult onEvent() {
+				calls.incrementAndGet();
+				assertEquals(request, getRequest());
+				return super.onEvent();
+			}
+		};
+		r = b.handle(request, new Output_Socket_HTTP((HttpServerConnection) null));
+		assertTrue(body(r).contains("parameters"));
+		assertEquals(1, calls.get());
+		assertNull(b.getRequest());
+	}
+	
+	private static String body(APIEventResult r){
+		if(r.getBodyType() == APIEventResult.BodyType.STRING){
+			return r.getResponseBody();
+		}
+		byte[] b = new byte[r.getResponseBytes().remaining()];
+		r.getResponseBytes().duplicate().get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+	
+	
 	@Test
 	public void testWebServerSocket() {
 		int port = APIEvent_Test.testPortPlusPlus();
@@ -30,7 +30,9 @@ import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URISyntaxException;
 import java.security.InvalidParameterException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.http.HttpServerConnection;
 import org.apache.http.client.utils.URIBuilder;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -43,6 +45,7 @@ import edu.uci.ics.luci.utility.GlobalsForTesting;
 import edu.uci.ics.luci.utility.webserver.WebServer;
 import edu.uci.ics.luci.utility.webserver.WebUtil;
 import edu.uci.ics.luci.utility.webserver.event.EventVoid;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
 import edu.uci.ics.luci.utility.webserver.input.request.Request;
 import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
 import net.minidev.json.JSONObject;
@@ -182,6 +185,27 @@ public class APIEvent_UnstableWrapper_Test {
 	
 	
 	@Test
+	public void testResponseCache() {
+		final AtomicInteger calls = new AtomicInteger(0);
+		APIEvent_Handler counted = new APIEvent_Handler((request, output) -> {
+			calls.incrementAndGet();
+			APIEventResult r = output.makeOutputChannelResponse();
+			r.setStatus(APIEventResult.Status.OK);
+			r.setDataType(APIEventResult.DataType.JSON);
+			r.setResponseBody("{}");
+			return r;
+		});
+		APIEvent_UnstableWrapper a = new APIEvent_UnstableWrapper(0.0, 0, counted);
+		a.setResponseCache(new ResponseCache(60 * 1000));
+		
+		a.handle(new Request(), new Output_Socket_HTTP((HttpServerConnection) null));
+		a.handle(new Request(), new Output_Socket_HTTP((HttpServerConnection) null));
+		assertEquals(1, calls.get());
+		assertEquals(1, a.getResponseCache().getCacheStats().hitCount());
+	}
+	
+	
+		@Test
 	public void testWebServerSocketFail() {
 		String version = System.currentTimeMillis()+"";
 		
@@ -0,0 +1,149 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpServerConnection;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult_HTTP;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.Output;
+import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
+
+class ResponseCacheTest {
+	
+	private static Request request(String query){
+		Request r = new Request();
+		r.setRawQuery(query);
+		return r;
+	}
+	
+	private static Output output(){
+		return new Output_Socket_HTTP((HttpServerConnection) null);
+	}
+	
+	private static String body(APIEventResult r){
+		if(r.getBodyType() == APIEventResult.BodyType.STRING){
+			return r.getResponseBody();
+		}
+		byte[] b = new byte[r.getResponseBytes().remaining()];
+		r.getResponseBytes().duplicate().get(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testKey() {
+		ResponseCache c = new ResponseCache(1000, "callback", "a");
+		assertEquals("", new ResponseCache(1000).getKey(request("callback=f")));
+		assertEquals(c.getKey(request("a=1&callback=f")), c.getKey(request("callback=f&a=1&ignored=2")));
+		assertEquals(c.getKey(request("a=1&a=2")), c.getKey(request("a=2&a=1")));
+		assertNotEquals(c.getKey(request("callback=f")), c.getKey(request("callback=g")));
+		assertNotEquals(c.getKey(request("")), c.getKey(request("callback=")));
+		
+		assertThrows(IllegalArgumentException.class, () -> new ResponseCache(0));
+		assertThrows(IllegalArgumentException.class, () -> new ResponseCache(1000, 0, 10));
+		assertThrows(IllegalArgumentException.class, () -> new ResponseCache(1000, (String[]) null));
+	}
+	
+	@Test
+	void testSubclassesAreNotCached() {
+		assertTrue(new APIEvent_Version("1").getResponseCache() != null);
+		assertNull(new APIEvent_Version("1"){}.getResponseCache());
+		assertNull(new APIEvent_Error("1").getResponseCache());
+		assertNull(((APIEvent) new APIEvent_Error("1").clone()).getResponseCache());
+		
+		assertTrue(new APIEvent_Favicon(null).getResponseCache() != null);
+		assertNull(new APIEvent_Favicon(null){}.getResponseCache());
+	}
+	
+	@Test
+	void testHandlerIsSkipped() {
+		final AtomicInteger calls = new AtomicInteger(0);
+		APIEvent_Handler event = new APIEvent_Handler((request, output) -> {
+			calls.incrementAndGet();
+			APIEventResult_HTTP r = (APIEventResult_HTTP) output.makeOutputChannelResponse();
+			r.setStatus(APIEventResult.Status.OK);
+			r.setDataType(APIEventResult.DataType.JSON);
+			r.setHttpHeader("Cache-Control", "max-age=60");
+			r.setResponseBody(APIEvent.wrapCallback(request.getParameters(), "{\"n\":"+calls.get()+"}"));
+			return r;
+		});
+		event.setResponseCache(new ResponseCache(60 * 1000, "callback"));
+		
+		assertEquals("{\"n\":1}", body(event.handle(request(""), output())));
+		assertEquals("f({\"n\":2})", body(event.handle(request("callback=f"), output())));
+		
+		APIEventResult hit = event.handle(request("other=1"), output());
+		assertEquals("{\"n\":1}", body(hit));
+		assertEquals(APIEventResult.BodyType.BYTES, hit.getBodyType());
+		assertEquals(APIEventResult.DataType.JSON, hit.getDataType());
+		assertTrue(((APIEventResult_HTTP) hit).getHttpHeaders().get("Cache-Control").contains("max-age=60"));
+		assertEquals("f({\"n\":2})", body(event.handle(request("callback=f"), output())));
+		assertEquals(2, calls.get());
+		assertEquals(2, event.getResponseCache().getCacheStats().hitCount());
+		
+		/* Each hit gets headers of its own */
+		APIEventResult_HTTP again = (APIEventResult_HTTP) event.handle(request(""), output());
+		assertNotSame(again.getHttpHeaders(), ((APIEventResult_HTTP) hit).getHttpHeaders());
+		
+		event.getResponseCache().invalidateAll();
+		assertEquals("{\"n\":3}", body(event.handle(request(""), output())));
+	}
+	
+	@Test
+	void testWhatIsKept() {
+		ResponseCache c = new ResponseCache(60 * 1000, 10, 5);
+		Request request = request("");
+		
+		APIEventResult r = output().makeOutputChannelResponse();
+		r.setStatus(APIEventResult.Status.OK);
+		r.setDataType(APIEventResult.DataType.HTML);
+		r.setResponseBody("too long");
+		assertFalse(c.put(request, r));
+		
+		r.setResponseStream(new ByteArrayInputStream(new byte[1]), 1);
+		assertFalse(c.put(request, r));
+		assertNull(c.get(request, output()));
+		
+		/* A proxied uri stays a String */
+		r.setStatus(APIEventResult.Status.PROXY);
+		r.setDataType(APIEventResult.DataType.PROXYSTRING);
+		r.setResponseBody("http:");
+		assertTrue(c.put(request, r));
+		APIEventResult hit = c.get(request, output());
+		assertEquals(APIEventResult.Status.PROXY, hit.getStatus());
+		assertEquals("http:", hit.getResponseBody());
+	}
+}
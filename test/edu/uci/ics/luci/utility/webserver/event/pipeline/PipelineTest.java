@@ -0,0 +1,152 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.Globals;
+import edu.uci.ics.luci.utility.GlobalsForTesting;
+import edu.uci.ics.luci.utility.webserver.AccessControl;
+import edu.uci.ics.luci.utility.webserver.WebServer;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Error;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_ParameterReflection;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Test;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Version;
+import edu.uci.ics.luci.utility.webserver.input.channel.socket.HTTPInputOverSocket;
+
+class PipelineTest {
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		GlobalsForTesting.reset("testSupport/APIEvent_Test.log4j.xml");
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		while(Globals.getGlobals() != null){
+			try{
+				Thread.sleep(1000);
+			}
+			catch(InterruptedException e){
+			}
+		}
+		GlobalsForTesting g = new GlobalsForTesting();
+		Globals.setGlobals(g);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		Globals.getGlobals().setQuitting(true);
+		Globals.setGlobals(null);
+	}
+
+	private static WebServer startAPipelinedWebServer(Globals globals,int port) {
+		WebServer ws = null;
+		try {
+			HTTPInputOverSocket inputChannel = new HTTPInputOverSocket(port,false);
+			HashMap<String, APIEvent> requestHandlerRegistry = new HashMap<String,APIEvent>();
+			requestHandlerRegistry.put(null,new APIEvent_Error(globals.getSystemVersion()));
+			requestHandlerRegistry.put("/version",new APIEvent_Version(globals.getSystemVersion()));
+
+			AccessControl accessControl = new AccessControl();
+			accessControl.reset();
+			ws = new WebServer(inputChannel, requestHandlerRegistry, accessControl);
+			ws.setPipelined(true);
+			ws.setPipelineWorkers(4);
+			globals.addQuittable(ws);
+			ws.start();
+		} catch (RuntimeException e) {
+			fail("Couldn't start webserver"+e);
+		}
+		return ws;
+	}
+
+	private static String fetch(WebServer ws, String path) throws IOException{
+		try(Socket s = new Socket("localhost",ws.getInputChannel().getPort())){
+			OutputStream out = s.getOutputStream();
+			out.write(("GET "+path+" HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			InputStream in = s.getInputStream();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] b = new byte[4096];
+			int n;
+			while((n = in.read(b)) >= 0){
+				bytes.write(b,0,n);
+			}
+			return new String(bytes.toByteArray(),StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	void testPipelinedResponses() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAPipelinedWebServer(Globals.getGlobals(),port);
+		assertTrue(ws.isPipelined());
+
+		try{
+			String response = fetch(ws,"/version");
+			assertTrue(response.startsWith("HTTP/1.1 200"));
+			assertTrue(response.contains(Globals.getGlobals().getSystemVersion()));
+
+			/* Falls through to the default handler */
+			response = fetch(ws,"/nothing/here");
+			assertTrue(response.contains("\"error\":\"true\""));
+
+			/* Changes to the registry take effect right away */
+			ws.updateAPIRegistry("/reflect", new APIEvent_ParameterReflection());
+			response = fetch(ws,"/reflect?foo=bar");
+			assertTrue(response.contains("\"foo\""));
+			assertTrue(response.contains("\"bar\""));
+		} catch (IOException e) {
+			fail("IO Exception "+e);
+		}
+	}
+
+	@Test
+	void testPipelineWorkersMustBePositive() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAPipelinedWebServer(Globals.getGlobals(),port);
+		try{
+			ws.setPipelineWorkers(0);
+			fail("Should have thrown an exception");
+		}
+		catch(IllegalArgumentException e){
+			//okay
+		}
+	}
+}
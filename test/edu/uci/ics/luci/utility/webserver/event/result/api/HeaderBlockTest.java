@@ -0,0 +1,82 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.result.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult.DataType;
+
+class HeaderBlockTest {
+
+	@Test
+	void testOf() {
+		HeaderBlock b = HeaderBlock.of("A","1","B","2");
+		assertEquals(2,b.size());
+		assertEquals("A",b.get(0).getName());
+		assertEquals("2",b.get(1).getValue());
+		assertEquals("1",b.getValue("a"));
+		assertNull(b.getValue("C"));
+		assertEquals("A: 1\r\nB: 2\r\n",b.toString());
+		assertEquals(Collections.singleton("2"),b.toMap().get("B"));
+		
+		assertThrows(IllegalArgumentException.class, () -> HeaderBlock.of("A"));
+		assertThrows(IllegalArgumentException.class, () -> HeaderBlock.of("A",null));
+		
+		HttpResponse r = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+		b.addTo(r);
+		assertEquals("2",r.getFirstHeader("B").getValue());
+	}
+	
+	@Test
+	void testContentTypeIsShared() {
+		for(DataType t: DataType.values()){
+			assertSame(APIEventResult_HTTP.getContentTypeHeaderBlock(t),APIEventResult_HTTP.getContentTypeHeaderBlock(t));
+		}
+		assertSame(HeaderBlock.EMPTY,APIEventResult_HTTP.getContentTypeHeaderBlock(null));
+		assertSame(HeaderBlock.EMPTY,APIEventResult_HTTP.getContentTypeHeaderBlock(DataType.PROXYSTRING));
+		
+		APIEventResult_HTTP result = new APIEventResult_HTTP(APIEventResult.Status.OK, DataType.JSON, "{}", null);
+		assertEquals(1,result.getHeaderBlock().size());
+		assertEquals("application/json; charset=UTF-8",result.getHeaderBlock().getValue("Content-Type"));
+		assertFalse(result.hasHttpHeaders());
+		
+		result.setDataType(DataType.PNG);
+		assertEquals("image/png",result.getHeaderBlock().getValue("Content-Type"));
+		
+		result.setHttpHeader("ETag","\"1\"");
+		assertTrue(result.hasHttpHeaders());
+	}
+
+}
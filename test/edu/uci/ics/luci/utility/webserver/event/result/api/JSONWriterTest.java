@@ -0,0 +1,179 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.result.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+class JSONWriterTest {
+	
+	private static String string(ByteBuffer b){
+		return new String(b.array(), b.arrayOffset() + b.position(), b.remaining(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testStructure() {
+		JSONWriter w = new JSONWriter();
+		w.beginObject();
+		w.name("error").value("false");
+		w.name("errors").beginArray().endArray();
+		w.name("n").value(42);
+		w.name("d").value(1.5);
+		w.name("nan").value(Double.NaN);
+		w.name("b").value(true);
+		w.name("nothing").nullValue();
+		w.name("list").beginArray().value(1).value("two").beginObject().endObject().endArray();
+		w.endObject();
+		assertEquals("{\"error\":\"false\",\"errors\":[],\"n\":42,\"d\":1.5,\"nan\":null,\"b\":true,\"nothing\":null,\"list\":[1,\"two\",{}]}", string(w.finish()));
+		w.release();
+	}
+	
+	@Test
+	void testStrings() {
+		String[] strings = {"", "plain", "quote\" back\\slash /", "\n\r\t\b\f\u0001\u001f", "caf\u00e9 \u4e2d\u6587", "\ud83d\ude00 emoji", "line\u2028sep\u2029"};
+		for(String s: strings){
+			JSONWriter w = new JSONWriter();
+			w.value(s);
+			String json = string(w.finish());
+			assertEquals(s, JSONValue.parse(json), json);
+			w.release();
+		}
+		
+		JSONWriter w = new JSONWriter();
+		w.value("a\u2028\"\u0001");
+		assertEquals("\"a\\u2028\\\"\\u0001\"", string(w.finish()));
+		
+		/* Non-ASCII is written as UTF-8, not escaped */
+		w = new JSONWriter();
+		w.value("\u00e9\ud83d\ude00");
+		assertEquals(Arrays.toString("\"\u00e9\ud83d\ude00\"".getBytes(StandardCharsets.UTF_8)), Arrays.toString(Arrays.copyOf(w.finish().array(), w.size())));
+	}
+	
+	@Test
+	void testCallback() {
+		Map<String, Set<String>> parameters = new HashMap<String, Set<String>>();
+		assertNull(JSONWriter.getCallback(null));
+		assertNull(JSONWriter.getCallback(parameters));
+		parameters.put("callback", new HashSet<String>());
+		assertEquals("unspecifiedCallback", JSONWriter.getCallback(parameters));
+		parameters.put("callback", Collections.singleton("f"));
+		
+		JSONWriter w = JSONWriter.forParameters(parameters);
+		w.beginArray().value(1).endArray();
+		assertEquals("f([1])", string(w.finish()));
+		/* Finishing again doesn't add another ) */
+		assertEquals("f([1])", string(w.finish()));
+	}
+	
+	@Test
+	void testValueObject() {
+		Map<String, Object> m = new LinkedHashMap<String, Object>();
+		m.put("s", "x");
+		m.put("i", 3);
+		m.put("list", Arrays.asList(1L, null, false));
+		m.put("array", new int[]{4, 5});
+		JSONObject aware = new JSONObject();
+		aware.put("k", "v");
+		m.put("aware", aware);
+		JSONArray awareArray = new JSONArray();
+		awareArray.add("e");
+		m.put("awareArray", awareArray);
+		
+		JSONWriter w = new JSONWriter();
+		w.value((Object) m);
+		assertEquals("{\"s\":\"x\",\"i\":3,\"list\":[1,null,false],\"array\":[4,5],\"aware\":{\"k\":\"v\"},\"awareArray\":[\"e\"]}", string(w.finish()));
+	}
+	
+	@Test
+	void testMisuse() {
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().beginObject().value("no name"));
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().beginArray().name("name"));
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().beginArray().endObject());
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().endArray());
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().value(1).value(2));
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().beginObject().name("a").endObject());
+		assertThrows(IllegalStateException.class, () -> new JSONWriter().beginObject().finish());
+		assertThrows(IllegalArgumentException.class, () -> new JSONWriter().beginObject().name(null));
+		
+		JSONWriter w = new JSONWriter();
+		w.value(1).finish();
+		assertThrows(IllegalStateException.class, () -> w.beginArray());
+	}
+	
+	@Test
+	void testPool() {
+		ResponseBufferPool pool = new ResponseBufferPool(16, 64, 2);
+		assertThrows(IllegalArgumentException.class, () -> new ResponseBufferPool(16, 8, 2));
+		
+		JSONWriter w = new JSONWriter(null, pool);
+		w.value("short");
+		w.release();
+		assertEquals(1, pool.getIdle());
+		
+		/* One that outgrew what the pool keeps is let go */
+		w = new JSONWriter(null, pool);
+		assertEquals(0, pool.getIdle());
+		w.value(String.join("", Collections.nCopies(100, "x")));
+		assertEquals(102, w.finish().remaining());
+		w.release();
+		assertEquals(0, pool.getIdle());
+		w.release();
+		
+		/* A result gives its writer's buffer back when it is released, or its body is replaced */
+		w = new JSONWriter(null, pool);
+		w.beginArray().endArray();
+		APIEventResult r = new APIEventResult(APIEventResult.Status.OK, APIEventResult.DataType.JSON, null, null);
+		r.setResponseJSON(w);
+		assertEquals(APIEventResult.BodyType.BYTES, r.getBodyType());
+		assertEquals(2, r.getResponseLength());
+		r.release();
+		assertFalse(r.hasResponseBody());
+		assertEquals(1, pool.getIdle());
+		
+		w = new JSONWriter(null, pool);
+		w.value(true);
+		r.setResponseJSON(w);
+		r.setResponseBody("replaced");
+		assertEquals(1, pool.getIdle());
+		r.release();
+		assertTrue(r.hasResponseBody());
+	}
+}
@@ -0,0 +1,91 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.route;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Error;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Version;
+
+class RouteTableTest {
+	
+	private static Map<String, APIEvent> registry(){
+		Map<String, APIEvent> registry = new HashMap<String, APIEvent>();
+		registry.put(null, new APIEvent_Error("1.0"));
+		registry.put("/", new APIEvent_Version("1.0"));
+		registry.put("/foo", new APIEvent_Version("1.0"));
+		return registry;
+	}
+
+	@Test
+	void testSnapshot() {
+		Map<String, APIEvent> registry = registry();
+		RouteTable table = new RouteTable(registry);
+		assertEquals(3,table.size());
+		
+		/* Later changes to the source don't show up */
+		registry.put("/bar", new APIEvent_Version("1.0"));
+		assertEquals(3,table.size());
+		assertEquals("/",table.identifyCommand("/bar"));
+		
+		assertThrows(UnsupportedOperationException.class,() -> table.put("/bar", null));
+		assertThrows(UnsupportedOperationException.class,() -> table.remove("/foo"));
+		
+		assertSame(table,RouteTable.of(table));
+		assertThrows(IllegalArgumentException.class,() -> new RouteTable(null));
+		assertThrows(IllegalArgumentException.class,() -> new RouteTable(registry,0));
+	}
+	
+	@Test
+	void testCache() {
+		RouteTable table = new RouteTable(registry());
+		
+		assertNull(table.identifyCommand(null));
+		assertEquals("/foo",table.identifyCommand("/foo"));
+		assertEquals(0,table.getCacheStats().requestCount());
+		
+		assertEquals("/foo",table.identifyCommand("/foo/bar"));
+		assertEquals(0,table.getCacheStats().hitCount());
+		assertEquals(1,table.getCacheStats().missCount());
+		
+		for(int i = 0; i < 10; i++){
+			assertEquals("/foo",table.identifyCommand("/foo/bar"));
+		}
+		assertEquals(10,table.getCacheStats().hitCount());
+		assertEquals(1,table.getCacheStats().missCount());
+		
+		/* Misses are remembered too */
+		RouteTable noDefault = new RouteTable(new HashMap<String, APIEvent>());
+		assertNull(noDefault.match("/nothing"));
+		assertNull(noDefault.match("/nothing"));
+		assertEquals(1,noDefault.getCacheStats().hitCount());
+	}
+}
@@ -0,0 +1,95 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.route;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RouteTrieTest {
+
+	@Test
+	void testLongestPrefix() {
+		RouteTrie trie = RouteTrie.compile(Arrays.asList(null,"/","/foo","/foo/bar","/bar","bar"));
+		
+		assertNull(trie.identifyCommand(null));
+		assertNull(trie.identifyCommand("fudge"));
+		assertEquals("/",trie.identifyCommand("/"));
+		assertEquals("/",trie.identifyCommand("/baz"));
+		assertEquals("/",trie.identifyCommand("/fooby"));
+		assertEquals("/",trie.identifyCommand("//foo"));
+		assertEquals("/foo",trie.identifyCommand("/foo"));
+		assertEquals("/foo",trie.identifyCommand("/foo/"));
+		assertEquals("/foo",trie.identifyCommand("/foo/baz"));
+		assertEquals("/foo/bar",trie.identifyCommand("/foo/bar"));
+		assertEquals("/foo/bar",trie.identifyCommand("/foo/bar/baz"));
+		assertEquals("/bar",trie.identifyCommand("/bar//foo/"));
+		assertEquals("bar",trie.identifyCommand("bar"));
+		assertEquals("bar",trie.identifyCommand("bar/foo"));
+		assertNull(trie.identifyCommand("barfoo"));
+	}
+	
+	@Test
+	void testNoSlash() {
+		RouteTrie trie = RouteTrie.compile(Arrays.asList("/foo"));
+		assertNull(trie.identifyCommand("/"));
+		assertNull(trie.identifyCommand("/baz"));
+		assertEquals("/foo",trie.identifyCommand("/foo/baz"));
+	}
+	
+	@Test
+	void testPathParameters() {
+		RouteTrie trie = RouteTrie.compile(Arrays.asList("/","/user/{id}","/user/me","/user/{id}/photo/{photo}"));
+		
+		Route route = trie.match("/user/42");
+		assertEquals("/user/{id}",route.getCommand());
+		assertTrue(route.hasParameters());
+		Map<String, String> p = route.getPathParameters("/user/42");
+		assertEquals(1,p.size());
+		assertEquals("42",p.get("id"));
+		
+		/* Trailing segments are left to the handler, as with any prefix */
+		assertEquals("42",trie.match("/user/42/friends").getPathParameters("/user/42/friends").get("id"));
+		
+		/* Literals win over parameters */
+		route = trie.match("/user/me");
+		assertEquals("/user/me",route.getCommand());
+		assertFalse(route.hasParameters());
+		assertTrue(route.getPathParameters("/user/me").isEmpty());
+		
+		/* but not over a longer match */
+		route = trie.match("/user/me/photo/7");
+		assertEquals("/user/{id}/photo/{photo}",route.getCommand());
+		p = route.getPathParameters("/user/me/photo/7");
+		assertEquals("me",p.get("id"));
+		assertEquals("7",p.get("photo"));
+		
+		/* Parameters don't match empty segments */
+		assertEquals("/",trie.identifyCommand("/user//photo/7"));
+	}
+}
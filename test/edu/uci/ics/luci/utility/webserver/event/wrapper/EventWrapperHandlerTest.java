@@ -0,0 +1,70 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.event.wrapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpServerConnection;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.Event_Handle;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+import edu.uci.ics.luci.utility.webserver.output.channel.socket.Output_Socket_HTTP;
+
+class EventWrapperHandlerTest {
+	
+	/* Remembers the Retry-After it was shed with instead of writing a response */
+	private static class ShedOutput extends Output_Socket_HTTP{
+		final AtomicInteger retryAfter = new AtomicInteger(-1);
+		
+		ShedOutput(){
+			super((HttpServerConnection) null);
+		}
+		
+		@Override
+		public void send_ServiceUnavailable(int retryAfter) {
+			this.retryAfter.set(retryAfter);
+		}
+	}
+
+	@Test
+	void testFullExecutorSheds() {
+		ExecutorService full = Executors.newSingleThreadExecutor();
+		full.shutdown();
+		EventWrapperHandler handler = new EventWrapperHandler(full, 7);
+		
+		final AtomicBoolean ran = new AtomicBoolean(false);
+		ShedOutput output = new ShedOutput();
+		handler.onEvent(new EventWrapper(new Event_Handle((request, o) -> {
+			ran.set(true);
+			return null;
+		}, new Request(), output)), 0, true);
+		assertFalse(ran.get());
+		assertEquals(7, output.retryAfter.get());
+	}
+}
@@ -0,0 +1,213 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.Globals;
+import edu.uci.ics.luci.utility.GlobalsForTesting;
+import edu.uci.ics.luci.utility.webserver.AccessControl;
+import edu.uci.ics.luci.utility.webserver.WebServer;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Error;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Test;
+import edu.uci.ics.luci.utility.webserver.event.api.APIEvent_Version;
+
+class HTTPInputOverSocketChannelTest {
+
+	@BeforeAll
+	static void setUpBeforeClass() throws Exception {
+		GlobalsForTesting.reset("testSupport/APIEvent_Test.log4j.xml");
+	}
+
+	@BeforeEach
+	void setUp() throws Exception {
+		while(Globals.getGlobals() != null){
+			try{
+				Thread.sleep(1000);
+			}
+			catch(InterruptedException e){
+			}
+		}
+		GlobalsForTesting g = new GlobalsForTesting();
+		Globals.setGlobals(g);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		Globals.getGlobals().setQuitting(true);
+		Globals.setGlobals(null);
+	}
+
+	private static WebServer startAWebServerSocketChannel(Globals globals,int port) {
+		WebServer ws = null;
+		try {
+			HTTPInputOverSocketChannel inputChannel = new HTTPInputOverSocketChannel(port);
+			HashMap<String, APIEvent> requestHandlerRegistry = new HashMap<String,APIEvent>();
+			requestHandlerRegistry.put(null,new APIEvent_Error(globals.getSystemVersion()));
+			requestHandlerRegistry.put("/version",new APIEvent_Version(globals.getSystemVersion()));
+
+			AccessControl accessControl = new AccessControl();
+			accessControl.reset();
+			ws = new WebServer(inputChannel, requestHandlerRegistry, accessControl);
+			globals.addQuittable(ws);
+			ws.start();
+		} catch (RuntimeException e) {
+			fail("Couldn't start webserver"+e);
+		}
+		return ws;
+	}
+
+	private static String readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[4096];
+		int n;
+		while((n = in.read(b)) >= 0){
+			out.write(b,0,n);
+		}
+		return new String(out.toByteArray(),StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void testSecureIsRejected() {
+		assertThrows(IllegalArgumentException.class,() -> {
+			new HTTPInputOverSocketChannel(APIEvent_Test.testPortPlusPlus(),true);
+		});
+	}
+
+	@Test
+	void testFindHeaderEnd() {
+		ByteBuffer b = ByteBuffer.allocate(64);
+		b.put("GET / HTTP/1.1\r\nHost: x\r\n".getBytes(StandardCharsets.US_ASCII));
+		assertEquals(-1,HTTPInputOverSocketChannel.findHeaderEnd(b));
+		b.put("\r\n".getBytes(StandardCharsets.US_ASCII));
+		assertEquals(b.position(),HTTPInputOverSocketChannel.findHeaderEnd(b));
+		
+		/* Picking up where the last search left off still finds a blank line split across reads */
+		b.clear();
+		b.put("GET / HTTP/1.1\r\nHost: x\r\n\r".getBytes(StandardCharsets.US_ASCII));
+		int scanned = b.position();
+		assertEquals(-1,HTTPInputOverSocketChannel.findHeaderEnd(b,0));
+		b.put("\n".getBytes(StandardCharsets.US_ASCII));
+		assertEquals(b.position(),HTTPInputOverSocketChannel.findHeaderEnd(b,scanned));
+	}
+
+	@Test
+	void testSlowRequestIsAnswered() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAWebServerSocketChannel(Globals.getGlobals(),port);
+
+		/* Dribble the request out to make sure partial headers don't tie anything up */
+		try(Socket s = new Socket("localhost",ws.getInputChannel().getPort())){
+			OutputStream out = s.getOutputStream();
+			out.write("GET /version HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			Thread.sleep(250);
+			out.write("Host: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			String response = readAll(s.getInputStream());
+			assertTrue(response.startsWith("HTTP/1.1 200"));
+			assertTrue(response.contains("\"version\""));
+			assertTrue(response.contains(Globals.getGlobals().getSystemVersion()));
+		} catch (IOException e) {
+			fail("IO Exception "+e);
+		} catch (InterruptedException e) {
+			fail("Interrupted "+e);
+		}
+	}
+
+	@Test
+	void testPipelinedRequestsAreAnsweredInOrder() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAWebServerSocketChannel(Globals.getGlobals(),port);
+
+		/* Both requests go out before either response comes back, the second one closes the connection */
+		try(Socket s = new Socket("localhost",ws.getInputChannel().getPort())){
+			OutputStream out = s.getOutputStream();
+			out.write(("GET /version HTTP/1.1\r\nHost: localhost\r\n\r\n"+
+					"GET /nothing HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			String response = readAll(s.getInputStream());
+			assertTrue(response.startsWith("HTTP/1.1 200"));
+			int second = response.indexOf("HTTP/1.1",1);
+			assertTrue(second > 0);
+			assertTrue(response.substring(0,second).contains("Connection: Keep-Alive"));
+			assertTrue(response.substring(0,second).contains("\"version\""));
+			assertTrue(response.substring(second).contains("Connection: Close"));
+		} catch (IOException e) {
+			fail("IO Exception "+e);
+		}
+	}
+
+	@Test
+	void testBadRequest() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAWebServerSocketChannel(Globals.getGlobals(),port);
+
+		try(Socket s = new Socket("localhost",ws.getInputChannel().getPort())){
+			OutputStream out = s.getOutputStream();
+			out.write("POST /version HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			String response = readAll(s.getInputStream());
+			assertTrue(response.startsWith("HTTP/1.1 411"));
+		} catch (IOException e) {
+			fail("IO Exception "+e);
+		}
+	}
+
+	@Test
+	void testPayloadTooLarge() {
+		int port = APIEvent_Test.testPortPlusPlus();
+		WebServer ws = startAWebServerSocketChannel(Globals.getGlobals(),port);
+		((HTTPInputOverSocketChannel) ws.getInputChannel()).setMaxBodySize(10);
+
+		/* Turned away on the Content-Length alone */
+		try(Socket s = new Socket("localhost",ws.getInputChannel().getPort())){
+			OutputStream out = s.getOutputStream();
+			out.write("POST /version HTTP/1.1\r\nHost: localhost\r\nContent-Length: 11\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+			String response = readAll(s.getInputStream());
+			assertTrue(response.startsWith("HTTP/1.1 413"));
+		} catch (IOException e) {
+			fail("IO Exception "+e);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.input.request.RequestBody;
+
+class RequestBodyPolicyTest {
+	
+	private static byte[] bytes(int length){
+		byte[] b = new byte[length];
+		for(int i = 0; i < length; i++){
+			b[i] = (byte) ('a' + (i % 26));
+		}
+		return b;
+	}
+
+	@Test
+	void testLimits() {
+		RequestBodyPolicy policy = new RequestBodyPolicy(100,10);
+		assertFalse(policy.isTooLarge(-1));
+		assertFalse(policy.isTooLarge(100));
+		assertTrue(policy.isTooLarge(101));
+		assertFalse(policy.shouldSpool(10));
+		assertTrue(policy.shouldSpool(11));
+		
+		assertThrows(IllegalArgumentException.class,() -> policy.setMaxSize(-1));
+		assertThrows(IllegalArgumentException.class,() -> policy.setSpoolThreshold(-1));
+	}
+	
+	@Test
+	void testInMemory() throws IOException {
+		RequestBodyPolicy policy = new RequestBodyPolicy(100,10);
+		try(RequestBody body = policy.read(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)),5)){
+			assertFalse(body.isSpooled());
+			assertEquals(5,body.getLength());
+			assertEquals("hello",body.getString(StandardCharsets.UTF_8));
+			assertTrue(body.getByteBuffer().isReadOnly());
+		}
+		
+		/* Unknown length, still small */
+		try(RequestBody body = policy.read(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)),-1)){
+			assertFalse(body.isSpooled());
+			assertEquals("hello",body.getString(StandardCharsets.UTF_8));
+		}
+	}
+	
+	@Test
+	void testSpooled() throws IOException {
+		RequestBodyPolicy policy = new RequestBodyPolicy(100000,10);
+		byte[] b = bytes(50000);
+		
+		/* Declared and undeclared lengths both end up in a file */
+		for(long length:new long[]{b.length,-1}){
+			RequestBody body = policy.read(new ByteArrayInputStream(b),length);
+			assertTrue(body.isSpooled());
+			assertEquals(b.length,body.getLength());
+			try(InputStream in = body.getInputStream()){
+				assertArrayEquals(b,IOUtils.toByteArray(in));
+			}
+			ByteBuffer buffer = body.getByteBuffer();
+			assertEquals(b.length,buffer.remaining());
+			assertEquals(b[b.length-1],buffer.get(b.length-1));
+			body.close();
+			body.close();
+		}
+	}
+	
+	@Test
+	void testTooLarge() throws IOException {
+		RequestBodyPolicy policy = new RequestBodyPolicy(100,10);
+		assertNull(policy.read(new ByteArrayInputStream(bytes(101)),101));
+		/* Only found out by reading it */
+		assertNull(policy.read(new ByteArrayInputStream(bytes(101)),-1));
+		try(RequestBody body = policy.read(new ByteArrayInputStream(bytes(100)),-1)){
+			assertEquals(100,body.getLength());
+		}
+	}
+	
+	@Test
+	void testShortBody() {
+		RequestBodyPolicy policy = new RequestBodyPolicy(100000,10);
+		assertThrows(EOFException.class,() -> policy.read(new ByteArrayInputStream(bytes(5)),8));
+		assertThrows(EOFException.class,() -> policy.read(new ByteArrayInputStream(bytes(500)),800));
+	}
+}
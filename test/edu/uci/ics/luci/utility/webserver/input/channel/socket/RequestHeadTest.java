@@ -0,0 +1,102 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.HttpVersion;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.Channel.Protocol;
+import edu.uci.ics.luci.utility.webserver.input.request.Request;
+
+class RequestHeadTest {
+	
+	private static RequestHead parse(String s){
+		/* Some junk on either side to make sure only the given range is read */
+		byte[] b = ("xx"+s+"yy").getBytes(StandardCharsets.ISO_8859_1);
+		return RequestHead.parse(b, 2, b.length - 4);
+	}
+
+	@Test
+	void testParse() {
+		RequestHead head = parse("GET /a?b=c HTTP/1.1\r\nHost: localhost\r\nX-Thing:  two words \t\r\nEmpty:\r\n\r\n");
+		assertEquals("GET",head.getMethod());
+		assertEquals("/a?b=c",head.getUri());
+		assertSame(HttpVersion.HTTP_1_1,head.getProtocolVersion());
+		assertEquals(3,head.getHeaders().length);
+		assertEquals("localhost",head.getFirstHeader("HOST").getValue());
+		assertEquals("two words",head.getFirstHeader("x-thing").getValue());
+		assertEquals("",head.getFirstHeader("Empty").getValue());
+		assertTrue(head.containsHeader("host"));
+		assertFalse(head.containsHeader("Hos"));
+		
+		head = parse("PATCH / HTTP/1.0\r\n\r\n");
+		assertEquals("PATCH",head.getMethod());
+		assertSame(HttpVersion.HTTP_1_0,head.getProtocolVersion());
+		assertEquals(0,head.getHeaders().length);
+	}
+	
+	@Test
+	void testMalformed() {
+		assertNull(parse("GET /\r\n\r\n"));
+		assertNull(parse("GET  / HTTP/1.1\r\n\r\n"));
+		assertNull(parse("GET / HTTP/2.0\r\n\r\n"));
+		assertNull(parse("GET / HTTP/1.1\r\nHost : x\r\n\r\n"));
+		assertNull(parse("GET / HTTP/1.1\r\nNoColon\r\n\r\n"));
+		assertNull(parse("GET / HTTP/1.1\r\nA: b\r\n folded\r\n\r\n"));
+		assertNull(parse("GET / HTTP/1.1\r\nA: b\r\n"));
+	}
+	
+	@Test
+	void testBuildRequest() throws URISyntaxException {
+		RequestHead head = parse("GET /a/b?x=1&y=%20 HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n");
+		Request r = HTTPInputOverSocket.buildRequest("source", head.getMethod(), head.getUri(), head.getHeaders());
+		assertEquals("/a/b",r.getCommandLine());
+		assertEquals(Protocol.HTTP_GET,r.getProtocol());
+		assertEquals("gzip",r.getHeader("accept-encoding"));
+		assertTrue(r.getParameters().get("y").contains(" "));
+		
+		/* Escaped paths and absolute targets go through java.net.URI */
+		r = HTTPInputOverSocket.buildRequest("source", "POST", "/a%2Fb", head.getHeaders());
+		assertEquals("/a/b",r.getCommandLine());
+		assertEquals(Protocol.HTTP_POST,r.getProtocol());
+		assertTrue(r.getParameters().isEmpty());
+		r = HTTPInputOverSocket.buildRequest("source", "GET", "http://host/c?d=e", head.getHeaders());
+		assertEquals("/c",r.getCommandLine());
+		assertTrue(r.getParameters().containsKey("d"));
+		
+		assertTrue(HTTPInputOverSocket.isPlainTarget("/a?b=%41", 2));
+		assertFalse(HTTPInputOverSocket.isPlainTarget("/a?b=%4", 2));
+		assertFalse(HTTPInputOverSocket.isPlainTarget("/a%41", -1));
+		assertFalse(HTTPInputOverSocket.isPlainTarget("/a b", -1));
+		assertFalse(HTTPInputOverSocket.isPlainTarget("/a#b", -1));
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.input.channel.socket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.FileInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.jupiter.api.Test;
+
+class TLSPolicyTest {
+	
+	/* See the README.txt in testSupport/keystore */
+	private static TLSPolicy makePolicy(){
+		return new TLSPolicy("testSupport/keystore/mySrvKeystore", "D5WOgddFtiV0NSqcpFJ6uLU0I1uWe6o".toCharArray(), "server", null);
+	}
+	
+	private static SSLContext makeClientContext() throws Exception{
+		KeyStore trust = KeyStore.getInstance(KeyStore.getDefaultType());
+		try(InputStream in = new FileInputStream("testSupport/keystore/myClientTrustStore")){
+			trust.load(in, "x3mgbgxF9YcJWg8ITUmnMsx37VyR6v4".toCharArray());
+		}
+		TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		tmf.init(trust);
+		SSLContext c = SSLContext.getInstance("TLS");
+		c.init(null, tmf.getTrustManagers(), null);
+		return c;
+	}
+
+	@Test
+	void testSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new TLSPolicy(null, new char[0], "server", null));
+		
+		TLSPolicy p = makePolicy();
+		assertArrayEquals(TLSPolicy.DEFAULT_PROTOCOLS, p.getProtocols());
+		assertThrows(IllegalArgumentException.class, () -> p.setProtocols());
+		assertThrows(IllegalArgumentException.class, () -> p.setCipherSuites((String[]) null));
+		assertThrows(IllegalArgumentException.class, () -> p.setSessionCacheSize(-1));
+		assertThrows(IllegalArgumentException.class, () -> p.setSessionTimeout(-1));
+		assertEquals(0.0, p.getResumptionRatio());
+	}
+	
+	@Test
+	void testOnlySupportedAreUsed() throws Exception {
+		TLSPolicy p = makePolicy();
+		p.setProtocols("SSLv2", "TLSv1.2");
+		p.setCipherSuites("NOT_A_CIPHER_SUITE", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256");
+		
+		SSLContext c = p.getSSLContext();
+		assertSame(c, p.getSSLContext());
+		
+		SSLParameters sp = p.makeSSLParameters(c);
+		assertArrayEquals(new String[]{"TLSv1.2"}, sp.getProtocols());
+		assertArrayEquals(new String[]{"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"}, sp.getCipherSuites());
+	}
+
+	@Test
+	void testResumptionIsCounted() throws Exception {
+		TLSPolicy p = makePolicy();
+		SSLServerSocket server = p.createServerSocket(0);
+		try{
+			Thread t = new Thread(() -> {
+				try{
+					for(int i = 0; i < 3; i++){
+						try(SSLSocket s = (SSLSocket) server.accept()){
+							p.accepted(s);
+							s.getOutputStream().write(s.getInputStream().read());
+						}
+					}
+				}
+				catch(Exception e){
+					e.printStackTrace();
+				}
+			});
+			t.start();
+			
+			/* One client context, so the second and third connections can resume the first's session */
+			SSLContext client = makeClientContext();
+			for(int i = 0; i < 3; i++){
+				try(SSLSocket s = (SSLSocket) client.getSocketFactory().createSocket("localhost", server.getLocalPort())){
+					s.getOutputStream().write(i);
+					assertEquals(i, s.getInputStream().read());
+				}
+			}
+			t.join(10 * 1000);
+		}
+		finally{
+			server.close();
+		}
+		
+		assertEquals(3, p.getHandshakeCount());
+		assertEquals(2, p.getResumedCount());
+		assertEquals(1, p.getFullHandshakeCount());
+	}
+	
+	@Test
+	void testReloadKeepsChainAndKeyTogether() throws Exception {
+		File keyStore = File.createTempFile("TLSPolicyTest", ".keystore");
+		try{
+			Files.copy(new File("testSupport/keystore/mySrvKeystore").toPath(), keyStore.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			TLSPolicy.ReloadingKeyManager k = new TLSPolicy.ReloadingKeyManager(keyStore.getPath(), "D5WOgddFtiV0NSqcpFJ6uLU0I1uWe6o".toCharArray(), "server", null, 0);
+			
+			String first = k.chooseServerAlias("RSA", null, null);
+			assertNotNull(k.getCertificateChain(first));
+			
+			/* Only choosing an alias looks for a new key store */
+			keyStore.setLastModified(keyStore.lastModified() - 10 * 1000);
+			assertNotNull(k.getPrivateKey(first));
+			assertEquals(0, k.getReloads());
+			
+			/* A handshake that chose before the reload still gets its key from the key store it chose from */
+			String second = k.chooseServerAlias("RSA", null, null);
+			assertEquals(1, k.getReloads());
+			assertNotEquals(first, second);
+			assertNotNull(k.getPrivateKey(first));
+			assertNotNull(k.getCertificateChain(second));
+			assertNotNull(k.getPrivateKey(second));
+			
+			keyStore.setLastModified(keyStore.lastModified() - 10 * 1000);
+			k.chooseEngineServerAlias("RSA", null, null);
+			assertEquals(2, k.getReloads());
+			assertNull(k.getPrivateKey(first));
+			assertNull(k.getCertificateChain("server"));
+		}
+		finally{
+			keyStore.delete();
+		}
+	}
+}
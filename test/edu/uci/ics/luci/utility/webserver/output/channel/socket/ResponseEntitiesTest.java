@@ -0,0 +1,130 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.channel.socket;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult;
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult_HTTP;
+
+class ResponseEntitiesTest {
+	
+	private static byte[] write(APIEventResult r) throws IOException{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ResponseEntities.create(r).writeTo(out);
+		return out.toByteArray();
+	}
+	
+	private static byte[] bytes(){
+		byte[] ret = new byte[20000];
+		for(int i = 0; i < ret.length; i++){
+			ret[i] = (byte) i;
+		}
+		return ret;
+	}
+
+	@Test
+	void testBytes() throws IOException {
+		byte[] all = bytes();
+		APIEventResult r = new APIEventResult_HTTP();
+		
+		r.setResponseBytes(all);
+		assertEquals(APIEventResult.BodyType.BYTES,r.getBodyType());
+		assertEquals(all.length,r.getResponseLength());
+		assertArrayEquals(all,write(r));
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(all.length);
+		direct.put(all);
+		direct.flip();
+		direct.position(10);
+		r.setResponseBytes(direct);
+		assertArrayEquals(Arrays.copyOfRange(all,10,all.length),write(r));
+		assertEquals(10,direct.position());
+		assertNull(r.getResponseBody());
+	}
+	
+	@Test
+	void testFile() throws IOException {
+		byte[] all = bytes();
+		File f = File.createTempFile("ResponseEntitiesTest",".bin");
+		f.deleteOnExit();
+		Files.write(f.toPath(),all);
+		
+		APIEventResult r = new APIEventResult_HTTP();
+		r.setResponseFile(f);
+		assertEquals(all.length,ResponseEntities.create(r).getContentLength());
+		assertArrayEquals(all,write(r));
+		
+		r.setResponseFile(f,100,15000);
+		assertArrayEquals(Arrays.copyOfRange(all,100,15100),write(r));
+		try(InputStream in = ResponseEntities.create(r).getContent()){
+			assertArrayEquals(Arrays.copyOfRange(all,100,15100),IOUtils.toByteArray(in));
+		}
+		
+		assertThrows(IllegalArgumentException.class,() -> r.setResponseFile(f,-1,10));
+	}
+	
+	@Test
+	void testStream() throws IOException {
+		byte[] all = bytes();
+		APIEventResult r = new APIEventResult_HTTP();
+		
+		r.setResponseStream(new ByteArrayInputStream(all),-1);
+		HttpEntity e = ResponseEntities.create(r);
+		assertEquals(-1,e.getContentLength());
+		assertArrayEquals(all,write(r));
+		
+		r.setResponseStream(new ByteArrayInputStream(all),all.length);
+		assertEquals(all.length,ResponseEntities.create(r).getContentLength());
+	}
+	
+	@Test
+	void testString() throws IOException {
+		APIEventResult r = new APIEventResult_HTTP();
+		assertFalse(r.hasResponseBody());
+		assertEquals(0,write(r).length);
+		
+		r.setResponseBody("héllo");
+		assertArrayEquals("héllo".getBytes(StandardCharsets.UTF_8),write(r));
+		
+		r.setResponseBody(null);
+		assertFalse(r.hasResponseBody());
+	}
+}
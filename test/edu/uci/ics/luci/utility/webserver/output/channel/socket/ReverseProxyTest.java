@@ -0,0 +1,82 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.channel.socket;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Date;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+class ReverseProxyTest {
+	
+	private static final long NOW = 1000 * 1000 * 1000L;
+	
+	private static HttpResponse response(String... headers){
+		HttpResponse r = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		for(int i = 0; i < headers.length; i += 2){
+			r.addHeader(headers[i], headers[i + 1]);
+		}
+		return r;
+	}
+
+	@Test
+	void testExpires() {
+		assertEquals(0, ReverseProxy.expires(response(), NOW));
+		assertEquals(NOW + 60 * 1000, ReverseProxy.expires(response("Cache-Control", "public, max-age=60"), NOW));
+		assertEquals(NOW + 120 * 1000, ReverseProxy.expires(response("Cache-Control", "max-age=60, s-maxage=120"), NOW));
+		assertEquals(NOW + 50 * 1000, ReverseProxy.expires(response("Cache-Control", "max-age=60", "Age", "10"), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Cache-Control", "max-age=60", "Age", "60"), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Cache-Control", "max-age=bogus"), NOW));
+		
+		/* Not for a shared cache */
+		assertEquals(0, ReverseProxy.expires(response("Cache-Control", "max-age=60, private"), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Cache-Control", "no-store"), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Cache-Control", "no-cache, max-age=60"), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Cache-Control", "max-age=60", "Vary", "Accept-Encoding"), NOW));
+	}
+	
+	@Test
+	void testExpiresHeader() {
+		Date date = new Date(1500000000000L);
+		Date later = new Date(date.getTime() + 30 * 1000);
+		assertEquals(NOW + 30 * 1000, ReverseProxy.expires(response("Date", DateUtils.formatDate(date), "Expires", DateUtils.formatDate(later)), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Date", DateUtils.formatDate(later), "Expires", DateUtils.formatDate(date)), NOW));
+		assertEquals(0, ReverseProxy.expires(response("Expires", "0"), NOW));
+		
+		/* max-age wins */
+		assertEquals(NOW + 5 * 1000, ReverseProxy.expires(response("Cache-Control", "max-age=5", "Date", DateUtils.formatDate(date), "Expires", DateUtils.formatDate(later)), NOW));
+	}
+	
+	@Test
+	void testSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new ReverseProxy(0, 1000, 0, 0));
+		assertThrows(IllegalArgumentException.class, () -> new ReverseProxy(1, -1, 0, 0));
+		assertThrows(IllegalArgumentException.class, () -> new ReverseProxy(1, 1000, -1, 0));
+		assertThrows(IllegalArgumentException.class, () -> ReverseProxy.setShared(null));
+	}
+}
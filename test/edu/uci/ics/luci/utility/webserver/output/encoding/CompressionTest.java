@@ -0,0 +1,122 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.encoding;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import edu.uci.ics.luci.utility.webserver.event.result.api.APIEventResult.DataType;
+
+class CompressionTest {
+	
+	private static byte[] sample(){
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 500; i++){
+			sb.append("{\"i\":"+i+"}");
+		}
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	private static byte[] decode(InputStream in) throws IOException{
+		try{
+			return IOUtils.toByteArray(in);
+		}
+		finally{
+			in.close();
+		}
+	}
+
+	@Test
+	void testNegotiate() {
+		Compression c = new Compression();
+		assertNull(c.negotiate(null));
+		assertNull(c.negotiate(""));
+		assertNull(c.negotiate("identity"));
+		assertEquals("gzip",c.negotiate("gzip").getName());
+		assertEquals("gzip",c.negotiate("deflate, gzip").getName());
+		assertEquals("deflate",c.negotiate("gzip;q=0.5, deflate").getName());
+		assertEquals("deflate",c.negotiate("GZIP;q=0, *").getName());
+		assertEquals("gzip",c.negotiate("*").getName());
+		assertNull(c.negotiate("gzip;q=0, deflate;q=0"));
+		assertNull(c.negotiate("gzip;q=bogus"));
+		
+		c.setEnabled(false);
+		assertNull(c.negotiate("gzip"));
+	}
+	
+	@Test
+	void testShouldCompress() {
+		Compression c = new Compression(true,100);
+		assertTrue(c.shouldCompress(DataType.JSON,100));
+		assertTrue(c.shouldCompress(DataType.HTML,-1));
+		assertFalse(c.shouldCompress(DataType.JSON,99));
+		assertFalse(c.shouldCompress(DataType.PNG,1000));
+		assertFalse(c.shouldCompress(null,1000));
+		assertThrows(IllegalArgumentException.class, () -> c.setMinSize(-1));
+		assertThrows(IllegalArgumentException.class, () -> c.setEncodings(null));
+	}
+	
+	@Test
+	void testRoundTrip() throws IOException {
+		byte[] b = sample();
+		
+		byte[] gzipped = Compression.encode(GzipEncoding.getInstance(), b, 0, b.length);
+		assertTrue(gzipped.length < b.length);
+		assertArrayEquals(b, decode(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+		
+		byte[] deflated = Compression.encode(DeflateEncoding.getInstance(), b, 0, b.length);
+		assertTrue(deflated.length < b.length);
+		assertArrayEquals(b, decode(new InflaterInputStream(new ByteArrayInputStream(deflated))));
+		
+		/* A part of the array */
+		byte[] part = Compression.encode(GzipEncoding.getInstance(), b, 10, 100);
+		assertArrayEquals(Arrays.copyOfRange(b, 10, 110), decode(new GZIPInputStream(new ByteArrayInputStream(part))));
+	}
+	
+	@Test
+	void testDeflatersAreReused() throws IOException {
+		GzipEncoding e = new GzipEncoding(1);
+		byte[] b = sample();
+		byte[] first = Compression.encode(e, b, 0, b.length);
+		assertEquals(1, e.getPool().getIdle());
+		byte[] second = Compression.encode(e, b, 0, b.length);
+		assertEquals(1, e.getPool().getIdle());
+		/* A reused Deflater starts over */
+		assertArrayEquals(first, second);
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+	Copyright 2007-2018
+		Donald J. Patterson
+*/
+/*
+	This file is part of the Laboratory for Ubiquitous Computing java Utility package, i.e. "Utilities"
+
+    Utilities is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Utilities is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with Utilities.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package edu.uci.ics.luci.utility.webserver.output.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BroadcasterTest {
+	
+	/** Remembers how the stream ended */
+	private static class Ended implements Subscription.Ending{
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Boolean> complete = new AtomicReference<Boolean>();
+		
+		@Override
+		public void ended(boolean complete) {
+			this.complete.set(complete);
+			latch.countDown();
+		}
+		
+		boolean await() throws InterruptedException{
+			assertTrue(latch.await(5, TimeUnit.SECONDS), "Stream didn't end");
+			return complete.get();
+		}
+	}
+	
+	private static String chunk(String s){
+		return Integer.toHexString(s.getBytes(StandardCharsets.UTF_8).length)+"\r\n"+s+"\r\n";
+	}
+	
+	private Broadcaster broadcaster;
+	
+	@BeforeEach
+	void setUp() {
+		broadcaster = new Broadcaster(2, 0, 4);
+	}
+	
+	@AfterEach
+	void tearDown() {
+		broadcaster.setQuitting(true);
+	}
+
+	@Test
+	void testFrame() {
+		assertEquals(chunk("id: 7\nevent: update\ndata: a\ndata: b\n\n"), new String(StreamFormat.EVENT_STREAM.frame(7, "update", "a\nb"), StandardCharsets.UTF_8));
+		assertEquals(chunk("id: 8\ndata: é\n\n"), new String(StreamFormat.EVENT_STREAM.frame(8, null, "é"), StandardCharsets.UTF_8));
+		assertEquals(chunk("id: 1\ndata: a\ndata: b\ndata: c\ndata: \ndata: d\n\n"), new String(StreamFormat.EVENT_STREAM.frame(1, null, "a\rb\r\nc\n\rd"), StandardCharsets.UTF_8));
+		/* A line break in the data can't start a field of its own */
+		assertEquals(chunk("id: 2\ndata: x\ndata: id: 9\ndata: \n\n"), new String(StreamFormat.EVENT_STREAM.frame(2, null, "x\rid: 9\r\n"), StandardCharsets.UTF_8));
+		assertEquals(chunk("{\"a\":1}\n"), new String(StreamFormat.CHUNKED.frame(9, "ignored", "{\"a\":1}"), StandardCharsets.UTF_8));
+		assertEquals(chunk(":\n\n"), new String(StreamFormat.EVENT_STREAM.heartbeat(), StandardCharsets.US_ASCII));
+	}
+	
+	@Test
+	void testLongPoll() throws InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ended ended = new Ended();
+		broadcaster.subscribe(new Subscription(out, StreamFormat.CHUNKED, 1, 0, ended));
+		assertEquals(1, broadcaster.getSubscriberCount());
+		
+		assertEquals(1, broadcaster.publish("first"));
+		assertTrue(ended.await());
+		broadcaster.publish("second");
+		assertEquals(chunk("first\n")+"0\r\n\r\n", out.toString());
+		assertEquals(0, broadcaster.getSubscriberCount());
+	}
+	
+	@Test
+	void testFanOut() throws InterruptedException {
+		ByteArrayOutputStream[] outs = new ByteArrayOutputStream[50];
+		Ended[] ends = new Ended[outs.length];
+		for(int i = 0; i < outs.length; i++){
+			outs[i] = new ByteArrayOutputStream();
+			ends[i] = new Ended();
+			broadcaster.subscribe(new Subscription(outs[i], StreamFormat.EVENT_STREAM, 2, 0, ends[i]));
+		}
+		broadcaster.publish("one");
+		broadcaster.publish("tick", "two");
+		for(int i = 0; i < outs.length; i++){
+			assertTrue(ends[i].await());
+			assertEquals(chunk("id: 1\ndata: one\n\n")+chunk("id: 2\nevent: tick\ndata: two\n\n")+"0\r\n\r\n", outs[i].toString());
+		}
+		assertEquals(0, broadcaster.getDropped());
+	}
+	
+	@Test
+	void testReplay() throws InterruptedException {
+		long id = broadcaster.publish("state");
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ended ended = new Ended();
+		broadcaster.subscribe(new Subscription(out, StreamFormat.CHUNKED, 1, 0, ended), -1);
+		assertTrue(ended.await());
+		assertEquals(chunk("state\n")+"0\r\n\r\n", out.toString());
+		
+		/* Already has it, so waits for the next */
+		out = new ByteArrayOutputStream();
+		ended = new Ended();
+		broadcaster.subscribe(new Subscription(out, StreamFormat.CHUNKED, 1, 0, ended), id);
+		assertEquals(1, broadcaster.getSubscriberCount());
+		broadcaster.publish("next");
+		assertTrue(ended.await());
+		assertEquals(chunk("next\n")+"0\r\n\r\n", out.toString());
+	}
+	
+	@Test
+	void testTimeout() throws InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ended ended = new Ended();
+		broadcaster.subscribe(new Subscription(out, StreamFormat.CHUNKED, 1, 50, ended));
+		assertTrue(ended.await());
+		assertEquals("0\r\n\r\n", out.toString());
+		assertEquals(0, broadcaster.getSubscriberCount());
+	}
+	
+	@Test
+	void testTimeoutCancelledWhenOver() throws InterruptedException {
+		Subscription s = new Subscription(new ByteArrayOutputStream(), StreamFormat.CHUNKED, 1, 60 * 1000, new Ended());
+		broadcaster.subscribe(s);
+		assertFalse(s.getTimeoutTask().isDone());
+		broadcaster.publish("first");
+		
+		/* Ending can be seen before the task is cancelled */
+		for(int i = 0; (i < 100) && !s.getTimeoutTask().isCancelled(); i++){
+			Thread.sleep(10);
+		}
+		assertTrue(s.isEnded());
+		assertTrue(s.getTimeoutTask().isCancelled());
+		
+		/* A replay can end the stream before the task is handed over */
+		Ended ended = new Ended();
+		s = new Subscription(new ByteArrayOutputStream(), StreamFormat.CHUNKED, 1, 60 * 1000, ended);
+		broadcaster.subscribe(s, -1);
+		assertTrue(ended.await());
+		for(int i = 0; (i < 100) && !s.getTimeoutTask().isCancelled(); i++){
+			Thread.sleep(10);
+		}
+		assertTrue(s.getTimeoutTask().isCancelled());
+	}
+	
+		@Test
+	void testSlowSubscriberDropped() throws InterruptedException {
+		final CountDownLatch stuck = new CountDownLatch(1);
+		OutputStream slow = new OutputStream(){
+			@Override
+			public void write(int b) throws IOException {
+				try {
+					stuck.await();
+				} catch (InterruptedException e) {
+				}
+				throw new IOException("closed");
+			}
+		};
+		Ended slowEnded = new Ended();
+		broadcaster.subscribe(new Subscription(slow, StreamFormat.CHUNKED, 0, 0, slowEnded));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ended ended = new Ended();
+		broadcaster.subscribe(new Subscription(out, StreamFormat.CHUNKED, 10, 0, ended));
+		
+		String expected = "";
+		for(int i = 0; i < 10; i++){
+			broadcaster.publish(Integer.toString(i));
+			/* Keep up with this one */
+			expected += chunk(i+"\n");
+			long until = System.currentTimeMillis() + 5000;
+			while(!out.toString().startsWith(expected) && (System.currentTimeMillis() < until)){
+				Thread.sleep(1);
+			}
+		}
+		assertFalse(slowEnded.await());
+		stuck.countDown();
+		assertEquals(1, broadcaster.getDropped());
+		
+		/* The others didn't wait for it */
+		assertTrue(ended.await());
+		assertEquals(expected+"0\r\n\r\n", out.toString());
+	}
+	
+	@Test
+	void testQuitting() throws InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Ended ended = new Ended();
+		broadcaster.subscribe(new Subscription(out, StreamFormat.EVENT_STREAM, 0, 0, ended));
+		broadcaster.setQuitting(true);
+		assertTrue(ended.await());
+		assertEquals("0\r\n\r\n", out.toString());
+		assertThrows(IllegalStateException.class, () -> broadcaster.publish("late"));
+		
+		Ended late = new Ended();
+		broadcaster.subscribe(new Subscription(new ByteArrayOutputStream(), StreamFormat.EVENT_STREAM, 0, 0, late));
+		assertFalse(late.await());
+	}
+	
+	@Test
+	void testSettings() {
+		assertThrows(IllegalArgumentException.class, () -> new Broadcaster(0, 0, 1));
+		assertThrows(IllegalArgumentException.class, () -> new Broadcaster(1, -1, 1));
+		assertThrows(IllegalArgumentException.class, () -> new Broadcaster(1, 0, 0));
+		assertThrows(IllegalArgumentException.class, () -> new Subscription(new ByteArrayOutputStream(), null, 0, 0, new Ended()));
+		assertThrows(IllegalArgumentException.class, () -> new Subscription(new ByteArrayOutputStream(), StreamFormat.CHUNKED, -1, 0, new Ended()));
+		assertThrows(IllegalArgumentException.class, () -> broadcaster.publish("bad\nname", "data"));
+	}
+}